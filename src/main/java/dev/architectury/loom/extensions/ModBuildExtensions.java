@@ -1,16 +1,16 @@
 package dev.architectury.loom.extensions;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileSystem;
-import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
-import java.nio.file.Path;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
@@ -25,10 +25,10 @@ import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.loom.task.service.MappingsService;
 import net.fabricmc.loom.util.Constants;
-import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.LfWriter;
 import net.fabricmc.loom.util.aw2at.Aw2At;
 import net.fabricmc.loom.util.service.UnsafeWorkQueueHelper;
+import net.fabricmc.loom.util.zip.ZipAssembler;
 import net.fabricmc.lorenztiny.TinyMappingsReader;
 
 public final class ModBuildExtensions {
@@ -51,7 +51,7 @@ public final class ModBuildExtensions {
 		}
 	}
 
-	public static void convertAwToAt(SetProperty<String> atAccessWidenersProperty, Path outputFile, Property<String> mappingBuildServiceUuid) throws IOException {
+	public static void convertAwToAt(SetProperty<String> atAccessWidenersProperty, ZipAssembler output, Property<String> mappingBuildServiceUuid) throws IOException {
 		if (!atAccessWidenersProperty.isPresent()) {
 			return;
 		}
@@ -64,38 +64,35 @@ public final class ModBuildExtensions {
 
 		AccessTransformSet at = AccessTransformSet.create();
 
-		try (FileSystemUtil.Delegate fileSystem = FileSystemUtil.getJarFileSystem(outputFile, false)) {
-			FileSystem fs = fileSystem.get();
-			Path atPath = fs.getPath(Constants.Forge.ACCESS_TRANSFORMER_PATH);
+		if (output.contains(Constants.Forge.ACCESS_TRANSFORMER_PATH)) {
+			throw new FileAlreadyExistsException("Jar already contains an access transformer - cannot convert AWs!");
+		}
 
-			if (Files.exists(atPath)) {
-				throw new FileAlreadyExistsException("Jar " + outputFile + " already contains an access transformer - cannot convert AWs!");
+		for (String aw : atAccessWideners) {
+			if (!output.contains(aw)) {
+				throw new NoSuchFileException("Could not find AW '" + aw + "' to convert into AT!");
 			}
 
-			for (String aw : atAccessWideners) {
-				Path awPath = fs.getPath(aw);
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(output.read(aw)), StandardCharsets.UTF_8))) {
+				at.merge(Aw2At.toAccessTransformSet(reader));
+			}
 
-				if (Files.notExists(awPath)) {
-					throw new NoSuchFileException("Could not find AW '" + aw + "' to convert into AT!");
-				}
+			output.remove(aw);
+		}
 
-				try (BufferedReader reader = Files.newBufferedReader(awPath, StandardCharsets.UTF_8)) {
-					at.merge(Aw2At.toAccessTransformSet(reader));
-				}
+		MappingsService service = UnsafeWorkQueueHelper.get(mappingBuildServiceUuid, MappingsService.class);
 
-				Files.delete(awPath);
-			}
-
-			MappingsService service = UnsafeWorkQueueHelper.get(mappingBuildServiceUuid, MappingsService.class);
+		try (TinyMappingsReader reader = new TinyMappingsReader(service.getMemoryMappingTree(), service.getFromNamespace(), service.getToNamespace())) {
+			MappingSet mappingSet = reader.read();
+			at = at.remap(mappingSet);
+		}
 
-			try (TinyMappingsReader reader = new TinyMappingsReader(service.getMemoryMappingTree(), service.getFromNamespace(), service.getToNamespace())) {
-				MappingSet mappingSet = reader.read();
-				at = at.remap(mappingSet);
-			}
+		StringWriter atOutput = new StringWriter();
 
-			try (Writer writer = new LfWriter(Files.newBufferedWriter(atPath))) {
-				AccessTransformFormats.FML.write(writer, at);
-			}
+		try (Writer writer = new LfWriter(atOutput)) {
+			AccessTransformFormats.FML.write(writer, at);
 		}
+
+		output.put(Constants.Forge.ACCESS_TRANSFORMER_PATH, atOutput.toString().getBytes(StandardCharsets.UTF_8));
 	}
 }
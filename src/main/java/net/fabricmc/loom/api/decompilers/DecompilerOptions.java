@@ -30,6 +30,7 @@ import java.util.Map;
 import com.google.common.base.Preconditions;
 import org.gradle.api.Named;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
 
@@ -59,12 +60,24 @@ public abstract class DecompilerOptions implements Named {
 	 */
 	public abstract Property<Integer> getMaxThreads();
 
+	/**
+	 * Globs of the classes to decompile, such as {@code net/minecraft/world/**}. Every class is decompiled when empty.
+	 */
+	public abstract ListProperty<String> getIncludes();
+
+	/**
+	 * Globs of the classes not to decompile.
+	 */
+	public abstract ListProperty<String> getExcludes();
+
 	public DecompilerOptions() {
 		getDecompilerClassName().finalizeValueOnRead();
 		getClasspath().finalizeValueOnRead();
 		getOptions().finalizeValueOnRead();
 		getMemory().convention(4096L).finalizeValueOnRead();
 		getMaxThreads().convention(Runtime.getRuntime().availableProcessors()).finalizeValueOnRead();
+		getIncludes().finalizeValueOnRead();
+		getExcludes().finalizeValueOnRead();
 	}
 
 	public String getFormattedName() {
@@ -26,9 +26,12 @@ package net.fabricmc.loom.api.processor;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.BiFunction;
 
 import org.gradle.api.Named;
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
 
 import net.fabricmc.mappingio.tree.MemoryMappingTree;
 
@@ -38,6 +41,18 @@ public interface MinecraftJarProcessor<S extends MinecraftJarProcessor.Spec> ext
 
 	void processJar(Path jar, S spec, ProcessorContext context) throws IOException;
 
+	/**
+	 * Creates a class transform that is fused with the transforms of the other processors into a single pass over the jar.
+	 * When a transform is returned, {@link #processJar} is not called by Loom. A transform without targets
+	 * leaves the jar untouched, for processors that only process the mappings.
+	 *
+	 * @return the class transform, or null if the processor needs access to the whole jar
+	 */
+	@Nullable
+	default ClassTransform createClassTransform(S spec, ProcessorContext context) throws IOException {
+		return null;
+	}
+
 	@Nullable
 	default MappingsProcessor<S> processMappings() {
 		return null;
@@ -47,6 +62,35 @@ public interface MinecraftJarProcessor<S extends MinecraftJarProcessor.Spec> ext
 		// Must make sure hashCode is correctly implemented.
 	}
 
+	interface ClassTransform {
+		/**
+		 * @return the internal names of the classes to transform
+		 */
+		Set<String> getTargets();
+
+		/**
+		 * Creates the visitor that transforms a class, it may be called from multiple threads.
+		 *
+		 * @param className the internal name of the class
+		 * @param next      the visitor to delegate to
+		 */
+		ClassVisitor visit(String className, ClassVisitor next);
+
+		static ClassTransform of(Set<String> targets, BiFunction<String, ClassVisitor, ClassVisitor> visitor) {
+			return new ClassTransform() {
+				@Override
+				public Set<String> getTargets() {
+					return targets;
+				}
+
+				@Override
+				public ClassVisitor visit(String className, ClassVisitor next) {
+					return visitor.apply(className, next);
+				}
+			};
+		}
+	}
+
 	interface MappingsProcessor<S> {
 		boolean transform(MemoryMappingTree mappings, S spec, MappingProcessorContext context);
 	}
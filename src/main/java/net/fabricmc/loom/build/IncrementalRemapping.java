@@ -0,0 +1,510 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.build;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+
+import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.ThreadingUtils;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipAssembler;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
+
+/**
+ * Keeps track of the classes remapped by a remap jar task, so that only the classes that changed since the previous
+ * run have to be remapped again. The other classes are copied from the previous output.
+ *
+ * <p>A class also has to be remapped again when it mentions a class whose hierarchy or members changed, either directly
+ * or through one of its supertypes, as they decide how its references and overrides are remapped. Everything else that
+ * affects the remapped classes, such as the mappings and the classpath, is covered by the key.
+ */
+public final class IncrementalRemapping {
+	private static final String HEADER = "loom-remap-index\t1";
+	private static final String INDEX_NAME = "remap.index";
+	private static final Pattern TYPE_PATTERN = Pattern.compile("L([^;<>.\\[]+)[;<]");
+	private static final int CONSTANT_UTF8 = 1;
+
+	private final Path directory;
+	private final Path outputJar;
+	private final String key;
+	private final Map<String, ClassInfo> classes;
+	private final Map<String, Index.Entry> unchanged;
+	private final Set<String> unchangedOutputs;
+	private final Set<String> changed;
+
+	private IncrementalRemapping(Path directory, Path outputJar, String key, Map<String, ClassInfo> classes, Map<String, Index.Entry> unchanged) {
+		this.directory = directory;
+		this.outputJar = outputJar;
+		this.key = key;
+		this.classes = classes;
+		this.unchanged = unchanged;
+		this.unchangedOutputs = unchanged.values().stream().map(Index.Entry::output).collect(Collectors.toSet());
+		this.changed = classes.keySet().stream().filter(name -> !unchanged.containsKey(name)).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Compares the input jar against the index of the previous run.
+	 *
+	 * @param directory the directory of the index and of the split input jars
+	 * @param inputJar  the jar to remap
+	 * @param outputJar the remapped jar, which contains the output of the previous run if it exists
+	 * @param key       a key of everything else that affects the remapped classes, see {@link #key(Collection, Collection)}
+	 * @return the state of the incremental remap, or null if the jar can't be remapped incrementally
+	 */
+	public static @Nullable IncrementalRemapping create(Path directory, Path inputJar, Path outputJar, String key) throws IOException {
+		final Path indexFile = directory.resolve(INDEX_NAME);
+		final Index previous = Files.exists(outputJar) ? Index.read(indexFile) : null;
+		// The removed classes are still looked for, so that the classes that used them are remapped again
+		final Map<String, ClassInfo> classes = readClasses(inputJar, previous != null ? previous.entries().keySet() : Set.of());
+
+		if (classes == null) {
+			return null;
+		}
+
+		Files.createDirectories(directory);
+
+		// Only written back once the output is complete
+		Files.deleteIfExists(indexFile);
+
+		if (previous == null || !previous.key().equals(key)) {
+			return new IncrementalRemapping(directory, outputJar, key, classes, Map.of());
+		}
+
+		final Map<String, String> outputStates = readStates(outputJar);
+		final Set<String> dirty = getDirty(classes, previous.entries());
+		final Map<String, Index.Entry> unchanged = new HashMap<>();
+
+		for (Map.Entry<String, ClassInfo> entry : classes.entrySet()) {
+			final String name = entry.getKey();
+			final ClassInfo info = entry.getValue();
+			final Index.Entry previousEntry = previous.entries().get(name);
+
+			if (previousEntry == null || !previousEntry.hash().equals(info.hash()) || dirty.contains(name) || info.references().stream().anyMatch(dirty::contains)) {
+				continue;
+			}
+
+			// The previous output may have been replaced since
+			if (previousEntry.outputState().equals(outputStates.get(previousEntry.output()))) {
+				unchanged.put(name, previousEntry);
+			}
+		}
+
+		return new IncrementalRemapping(directory, outputJar, key, classes, unchanged);
+	}
+
+	/**
+	 * Creates the key of everything else that affects the remapped classes, a change to it requires a full remap.
+	 *
+	 * @param values the values, such as the mappings identifier and the namespaces
+	 * @param files  the files, such as the classpath, which are compared by their size and modification time
+	 */
+	public static String key(Collection<String> values, Collection<Path> files) throws IOException {
+		final Hasher hasher = Hashing.sha256().newHasher();
+		values.forEach(value -> putString(hasher, value));
+
+		for (Path file : new TreeSet<>(files.stream().map(Path::toAbsolutePath).toList())) {
+			putString(hasher, file.toString());
+
+			if (Files.isDirectory(file)) {
+				try (Stream<Path> walk = Files.walk(file)) {
+					for (Path child : walk.filter(Files::isRegularFile).sorted().toList()) {
+						putString(hasher, file.relativize(child).toString());
+						hasher.putLong(Files.size(child)).putLong(Files.getLastModifiedTime(child).toMillis());
+					}
+				}
+			} else if (Files.exists(file)) {
+				hasher.putLong(Files.size(file)).putLong(Files.getLastModifiedTime(file).toMillis());
+			}
+		}
+
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * @return true when every class has to be remapped
+	 */
+	public boolean isFull() {
+		return unchanged.isEmpty();
+	}
+
+	/**
+	 * @return the names of the classes that have to be remapped
+	 */
+	public Set<String> getChanged() {
+		return changed;
+	}
+
+	public int getClassCount() {
+		return classes.size();
+	}
+
+	/**
+	 * @return the jar of the classes that have to be remapped, see {@link #splitInput(Path)}
+	 */
+	public Path getChangedJar() {
+		return directory.resolve("changed.jar");
+	}
+
+	/**
+	 * @return the jar of the classes that don't have to be remapped, see {@link #splitInput(Path)}
+	 */
+	public Path getUnchangedJar() {
+		return directory.resolve("unchanged.jar");
+	}
+
+	/**
+	 * Copies the classes that have to be remapped into the {@link #getChangedJar() changed jar}, and the other classes
+	 * into the {@link #getUnchangedJar() unchanged jar} that has to be on the classpath while remapping.
+	 */
+	public void splitInput(Path inputJar) throws IOException {
+		try (RawZipReader reader = RawZipReader.open(inputJar);
+				RawZipWriter changedWriter = RawZipWriter.create(getChangedJar());
+				RawZipWriter unchangedWriter = RawZipWriter.create(getUnchangedJar())) {
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (!entry.name().endsWith(".class")) {
+					continue;
+				}
+
+				(unchanged.containsKey(getClassName(entry.name())) ? unchangedWriter : changedWriter).writeRaw(entry, reader.readRaw(entry));
+			}
+		}
+	}
+
+	/**
+	 * Adds the remapped classes of the unchanged classes from the previous output.
+	 */
+	public void copyUnchanged(ZipAssembler output) throws IOException {
+		try (RawZipReader reader = RawZipReader.open(outputJar)) {
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (unchangedOutputs.contains(entry.name())) {
+					output.putRaw(entry, reader.readRaw(entry));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the output entry was copied from the previous output, with everything that was applied to it already
+	 */
+	public boolean isCopied(String name) {
+		return unchangedOutputs.contains(name);
+	}
+
+	/**
+	 * Writes the index once the output has been written.
+	 *
+	 * @param classNameMapper maps the name of an input class to the name of the remapped class
+	 */
+	public void writeIndex(UnaryOperator<String> classNameMapper) throws IOException {
+		final Map<String, String> outputStates = readStates(outputJar);
+		final Map<String, Index.Entry> entries = new HashMap<>();
+
+		classes.forEach((name, info) -> {
+			final Index.Entry previous = unchanged.get(name);
+			final String output = previous != null ? previous.output() : classNameMapper.apply(name) + ".class";
+			final String outputState = outputStates.get(output);
+
+			if (outputState != null) {
+				entries.put(name, new Index.Entry(info.hash(), info.structure(), output, outputState));
+			}
+		});
+
+		new Index(key, entries).write(directory.resolve(INDEX_NAME));
+		Files.deleteIfExists(getChangedJar());
+		Files.deleteIfExists(getUnchangedJar());
+	}
+
+	/**
+	 * Finds the classes whose hierarchy or members changed, also through one of their supertypes.
+	 */
+	private static Set<String> getDirty(Map<String, ClassInfo> classes, Map<String, Index.Entry> previous) {
+		final Set<String> dirty = new HashSet<>();
+
+		previous.forEach((name, entry) -> {
+			final ClassInfo info = classes.get(name);
+
+			if (info == null || !info.structure().equals(entry.structure())) {
+				dirty.add(name);
+			}
+		});
+
+		for (String name : classes.keySet()) {
+			if (!previous.containsKey(name)) {
+				dirty.add(name);
+			}
+		}
+
+		boolean propagated = true;
+
+		while (propagated) {
+			propagated = false;
+
+			for (Map.Entry<String, ClassInfo> entry : classes.entrySet()) {
+				if (!dirty.contains(entry.getKey()) && entry.getValue().supertypes().stream().anyMatch(dirty::contains)) {
+					dirty.add(entry.getKey());
+					propagated = true;
+				}
+			}
+		}
+
+		return dirty;
+	}
+
+	private static @Nullable Map<String, ClassInfo> readClasses(Path inputJar, Set<String> previousNames) throws IOException {
+		try (RawZipReader reader = RawZipReader.open(inputJar)) {
+			final List<ZipEntryInfo> entries = reader.entries().stream().filter(entry -> entry.name().endsWith(".class")).toList();
+
+			if (entries.stream().anyMatch(entry -> entry.name().startsWith("META-INF/"))) {
+				// Multi-release classes aren't output under their input path
+				return null;
+			}
+
+			final Set<String> names = entries.stream().map(entry -> getClassName(entry.name())).collect(Collectors.toCollection(HashSet::new));
+			names.addAll(previousNames);
+			final List<ClassInfo> infos = ThreadingUtils.get(entries.stream()
+					.<ThreadingUtils.UnsafeCallable<ClassInfo>>map(entry -> () -> ClassInfo.read(reader.read(entry), names))
+					.toList());
+			final Map<String, ClassInfo> classes = new HashMap<>();
+
+			for (int i = 0; i < entries.size(); i++) {
+				classes.put(getClassName(entries.get(i).name()), infos.get(i));
+			}
+
+			return classes;
+		}
+	}
+
+	private static Map<String, String> readStates(Path jar) throws IOException {
+		final Map<String, String> states = new HashMap<>();
+
+		try (RawZipReader reader = RawZipReader.open(jar)) {
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (entry.name().endsWith(".class")) {
+					states.put(entry.name(), Integer.toHexString(entry.crc()) + ":" + entry.size());
+				}
+			}
+		}
+
+		return states;
+	}
+
+	private static String getClassName(String entryName) {
+		return entryName.substring(0, entryName.length() - 6);
+	}
+
+	private static void putString(Hasher hasher, @Nullable String value) {
+		if (value == null) {
+			hasher.putByte((byte) 0);
+		} else {
+			hasher.putByte((byte) 1).putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+		}
+	}
+
+	/**
+	 * A class of the input jar.
+	 *
+	 * @param hash       the hash of the bytecode
+	 * @param structure  the hash of the hierarchy and members
+	 * @param supertypes the supertypes that are in the jar
+	 * @param references the classes of the jar that are mentioned in the constant pool
+	 */
+	record ClassInfo(String hash, String structure, List<String> supertypes, Set<String> references) {
+		static ClassInfo read(byte[] bytes, Set<String> classNames) {
+			final ClassReader reader = new ClassReader(bytes);
+			final Hasher structure = Hashing.sha256().newHasher();
+
+			reader.accept(new ClassVisitor(Constants.ASM_VERSION) {
+				@Override
+				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+					structure.putInt(access);
+					putString(structure, name);
+					putString(structure, signature);
+					putString(structure, superName);
+
+					for (String itf : interfaces) {
+						putString(structure, itf);
+					}
+				}
+
+				@Override
+				public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+					putString(structure.putByte((byte) 'R'), name);
+					putString(structure, descriptor);
+					return null;
+				}
+
+				@Override
+				public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+					putString(structure.putByte((byte) 'F').putInt(access), name);
+					putString(structure, descriptor);
+					putString(structure, signature);
+					return null;
+				}
+
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					putString(structure.putByte((byte) 'M').putInt(access), name);
+					putString(structure, descriptor);
+					putString(structure, signature);
+					return null;
+				}
+			}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+			final List<String> supertypes = new ArrayList<>();
+
+			if (reader.getSuperName() != null && classNames.contains(reader.getSuperName())) {
+				supertypes.add(reader.getSuperName());
+			}
+
+			for (String itf : reader.getInterfaces()) {
+				if (classNames.contains(itf)) {
+					supertypes.add(itf);
+				}
+			}
+
+			return new ClassInfo(Hashing.sha256().hashBytes(bytes).toString(), structure.hash().toString(), supertypes, readReferences(reader, bytes, classNames));
+		}
+
+		/**
+		 * Finds the classes mentioned by the strings of the constant pool, which covers the class and member references,
+		 * descriptors, signatures and annotations, as well as the class names in strings such as mixin targets.
+		 */
+		private static Set<String> readReferences(ClassReader reader, byte[] bytes, Set<String> classNames) {
+			final Set<String> references = new HashSet<>();
+
+			for (int i = 1; i < reader.getItemCount(); i++) {
+				final int offset = reader.getItem(i);
+
+				if (offset == 0 || bytes[offset - 1] != CONSTANT_UTF8) {
+					continue;
+				}
+
+				final String value = new String(bytes, offset + 2, reader.readUnsignedShort(offset), StandardCharsets.UTF_8);
+				addReference(references, value, classNames);
+				addReference(references, value.replace('.', '/'), classNames);
+
+				final Matcher matcher = TYPE_PATTERN.matcher(value);
+
+				while (matcher.find()) {
+					addReference(references, matcher.group(1), classNames);
+				}
+			}
+
+			return references;
+		}
+
+		private static void addReference(Set<String> references, String name, Set<String> classNames) {
+			if (classNames.contains(name)) {
+				references.add(name);
+			}
+		}
+	}
+
+	/**
+	 * The index of a previous run.
+	 *
+	 * @param key     the key of everything else that affected the remapped classes
+	 * @param entries the entries of the input classes
+	 */
+	record Index(String key, Map<String, Entry> entries) {
+		static @Nullable Index read(Path path) throws IOException {
+			if (!Files.exists(path)) {
+				return null;
+			}
+
+			final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+
+			if (lines.size() < 2 || !lines.get(0).equals(HEADER)) {
+				return null;
+			}
+
+			final Map<String, Entry> entries = new HashMap<>();
+
+			for (String line : lines.subList(2, lines.size())) {
+				final String[] parts = line.split("\t");
+
+				if (parts.length != 6 || !parts[0].equals("class")) {
+					return null;
+				}
+
+				entries.put(parts[1], new Entry(parts[2], parts[3], parts[4], parts[5]));
+			}
+
+			return new Index(lines.get(1), entries);
+		}
+
+		void write(Path path) throws IOException {
+			final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+			try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				writer.append(HEADER).append('\n').append(key).append('\n');
+
+				for (String name : new TreeSet<>(entries.keySet())) {
+					final Entry entry = entries.get(name);
+					writer.append("class\t").append(name).append('\t').append(entry.hash()).append('\t').append(entry.structure())
+							.append('\t').append(entry.output()).append('\t').append(entry.outputState()).append('\n');
+				}
+			}
+
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		/**
+		 * @param hash        the hash of the bytecode of the input class
+		 * @param structure   the hash of the hierarchy and members of the input class
+		 * @param output      the name of the output entry
+		 * @param outputState the CRC and size of the output entry
+		 */
+		record Entry(String hash, String structure, String output, String outputState) { }
+	}
+}
@@ -25,51 +25,42 @@
 package net.fabricmc.loom.build.nesting;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import com.google.common.base.Preconditions;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import org.gradle.api.UncheckedIOException;
 import org.slf4j.Logger;
 
 import net.fabricmc.loom.LoomGradlePlugin;
 import net.fabricmc.loom.build.nesting.IncludedJarFactory.NestedFile;
 import net.fabricmc.loom.util.ModPlatform;
-import net.fabricmc.loom.util.Pair;
-import net.fabricmc.loom.util.ZipUtils;
 import net.fabricmc.loom.util.fmj.FabricModJsonFactory;
+import net.fabricmc.loom.util.zip.ZipAssembler;
 
 public class JarNester {
-	public static void nestJars(Collection<File> jars, List<NestedFile> forgeJars, File modJar, ModPlatform platform, Logger logger) {
+	public static void nestJars(Collection<File> jars, List<NestedFile> forgeJars, ZipAssembler modJar, String modJarName, ModPlatform platform, Logger logger) {
 		if (jars.isEmpty()) {
-			logger.debug("Nothing to nest into " + modJar.getName());
+			logger.debug("Nothing to nest into " + modJarName);
 			return;
 		}
 
-		Preconditions.checkArgument(FabricModJsonFactory.isModJar(modJar, platform), "Cannot nest jars into none mod jar " + modJar.getName());
+		Preconditions.checkArgument(FabricModJsonFactory.isModJar(modJar, platform), "Cannot nest jars into none mod jar " + modJarName);
 
-		try {
-			ZipUtils.add(modJar.toPath(), jars.stream().map(file -> {
-				try {
-					return new Pair<>("META-INF/jars/" + file.getName(), Files.readAllBytes(file.toPath()));
-				} catch (IOException e) {
-					throw new UncheckedIOException(e);
-				}
-			}).collect(Collectors.toList()));
+		for (File file : jars) {
+			modJar.put("META-INF/jars/" + file.getName(), file.toPath());
+		}
 
-			if (platform == ModPlatform.FORGE) {
-				handleForgeJarJar(forgeJars, modJar, logger);
-				return;
-			}
+		if (platform == ModPlatform.FORGE) {
+			handleForgeJarJar(forgeJars, modJar, modJarName, logger);
+			return;
+		}
 
-			int count = ZipUtils.transformJson(JsonObject.class, modJar.toPath(), Stream.of(platform == ModPlatform.FABRIC ? new Pair<>("fabric.mod.json", json -> {
+		if (platform == ModPlatform.FABRIC && modJar.contains("fabric.mod.json")) {
+			modJar.transformJson(JsonObject.class, "fabric.mod.json", json -> {
 				JsonArray nestedJars = json.getAsJsonArray("jars");
 
 				if (nestedJars == null || !json.has("jars")) {
@@ -92,13 +83,15 @@ public class JarNester {
 					jsonObject.addProperty("file", nestedJarPath);
 					nestedJars.add(jsonObject);
 
-					logger.debug("Nested " + nestedJarPath + " into " + modJar.getName());
+					logger.debug("Nested " + nestedJarPath + " into " + modJarName);
 				}
 
 				json.add("jars", nestedJars);
 
 				return json;
-			}) : platform == ModPlatform.QUILT ? new Pair<>("quilt.mod.json", json -> {
+			});
+		} else if (platform == ModPlatform.QUILT && modJar.contains("quilt.mod.json")) {
+			modJar.transformJson(JsonObject.class, "quilt.mod.json", json -> {
 				JsonObject loader;
 
 				if (json.has("quilt_loader")) {
@@ -127,21 +120,19 @@ public class JarNester {
 
 					nestedJars.add(nestedJarPath);
 
-					logger.debug("Nested " + nestedJarPath + " into " + modJar.getName());
+					logger.debug("Nested " + nestedJarPath + " into " + modJarName);
 				}
 
 				loader.add("jars", nestedJars);
 
 				return json;
-			}) : null));
-
-			Preconditions.checkState(count > 0, "Failed to transform fabric.mod.json");
-		} catch (IOException e) {
-			throw new java.io.UncheckedIOException("Failed to nest jars into " + modJar.getName(), e);
+			});
+		} else {
+			throw new IllegalStateException("Failed to transform fabric.mod.json");
 		}
 	}
 
-	private static void handleForgeJarJar(List<NestedFile> forgeJars, File modJar, Logger logger) throws IOException {
+	private static void handleForgeJarJar(List<NestedFile> forgeJars, ZipAssembler modJar, String modJarName, Logger logger) {
 		JsonObject json = new JsonObject();
 		JsonArray nestedJars = new JsonArray();
 
@@ -170,11 +161,11 @@ public class JarNester {
 			jsonObject.addProperty("path", nestedJarPath);
 			nestedJars.add(jsonObject);
 
-			logger.debug("Nested " + nestedJarPath + " into " + modJar.getName());
+			logger.debug("Nested " + nestedJarPath + " into " + modJarName);
 		}
 
 		json.add("jars", nestedJars);
 
-		ZipUtils.add(modJar.toPath(), "META-INF/jarjar/metadata.json", LoomGradlePlugin.GSON.toJson(json));
+		modJar.put("META-INF/jarjar/metadata.json", LoomGradlePlugin.GSON.toJson(json).getBytes(StandardCharsets.UTF_8));
 	}
 }
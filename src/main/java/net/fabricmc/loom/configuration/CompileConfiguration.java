@@ -77,6 +77,7 @@ import net.fabricmc.loom.configuration.sources.ForgeSourcesRemapper;
 import net.fabricmc.loom.extension.MixinExtension;
 import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.ExceptionUtil;
+import net.fabricmc.loom.util.LoomExecutorService;
 import net.fabricmc.loom.util.gradle.GradleUtils;
 import net.fabricmc.loom.util.gradle.SourceSetHelper;
 import net.fabricmc.loom.util.service.ScopedSharedServiceManager;
@@ -376,7 +377,8 @@ public abstract class CompileConfiguration implements Runnable {
 	private void afterEvaluationWithService(Consumer<SharedServiceManager> consumer) {
 		GradleUtils.afterSuccessfulEvaluation(getProject(), () -> {
 			try (var serviceManager = new ScopedSharedServiceManager()) {
-				consumer.accept(serviceManager);
+				// Report the parallel work done while configuring this project once the service manager closes.
+				LoomExecutorService.getOrCreate(serviceManager).runCurrent(() -> consumer.accept(serviceManager));
 			}
 		});
 	}
@@ -0,0 +1,217 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.configuration.accesstransformer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.cadixdev.at.AccessChange;
+import org.cadixdev.at.AccessTransform;
+import org.cadixdev.at.AccessTransformSet;
+import org.cadixdev.at.ModifierChange;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * An indexed view of an {@link AccessTransformSet} that applies it to classes in process, matching the behaviour
+ * of Forge's AccessTransformers tool: access is only ever widened, and calls to private methods that are made
+ * accessible are changed from {@code invokespecial} to {@code invokevirtual}.
+ */
+public final class AccessTransformIndex {
+	private static final int ACCESS_MASK = Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED | Opcodes.ACC_PRIVATE;
+
+	private final Map<String, ClassTransforms> classes;
+
+	private AccessTransformIndex(Map<String, ClassTransforms> classes) {
+		this.classes = classes;
+	}
+
+	public static AccessTransformIndex of(AccessTransformSet accessTransformSet) {
+		final Map<String, ClassTransforms> classes = new HashMap<>();
+
+		for (Map.Entry<String, AccessTransformSet.Class> classEntry : accessTransformSet.getClasses().entrySet()) {
+			final AccessTransformSet.Class classTransforms = classEntry.getValue();
+			final Map<String, AccessTransform> fields = new HashMap<>(classTransforms.getFields());
+			final Map<String, AccessTransform> methods = new HashMap<>();
+
+			for (Map.Entry<MethodSignature, AccessTransform> entry : classTransforms.getMethods().entrySet()) {
+				methods.put(entry.getKey().getName() + entry.getKey().getDescriptor(), entry.getValue());
+			}
+
+			classes.put(classEntry.getKey(), new ClassTransforms(
+					classTransforms.get(),
+					classTransforms.allFields(),
+					classTransforms.allMethods(),
+					fields,
+					methods
+			));
+		}
+
+		return new AccessTransformIndex(classes);
+	}
+
+	/**
+	 * @return the internal names of the classes that have to be transformed, including the outer classes of transformed nested classes
+	 */
+	public Set<String> getTargets() {
+		final Set<String> targets = new HashSet<>(classes.keySet());
+
+		for (String name : classes.keySet()) {
+			int index = name.length();
+
+			while ((index = name.lastIndexOf('$', index - 1)) > 0) {
+				targets.add(name.substring(0, index));
+			}
+		}
+
+		return targets;
+	}
+
+	public boolean isEmpty() {
+		return classes.isEmpty();
+	}
+
+	public ClassVisitor createClassVisitor(int api, ClassVisitor classVisitor) {
+		return new AccessTransformClassVisitor(api, classVisitor);
+	}
+
+	static int apply(@Nullable AccessTransform transform, int access) {
+		if (transform == null) {
+			return access;
+		}
+
+		final int target = getAccess(transform.getAccess());
+
+		if (target != -1 && rank(target) > rank(access & ACCESS_MASK)) {
+			access = (access & ~ACCESS_MASK) | target;
+		}
+
+		if (transform.getFinal() == ModifierChange.ADD) {
+			access |= Opcodes.ACC_FINAL;
+		} else if (transform.getFinal() == ModifierChange.REMOVE) {
+			access &= ~Opcodes.ACC_FINAL;
+		}
+
+		return access;
+	}
+
+	private static int getAccess(AccessChange change) {
+		return switch (change) {
+		case PUBLIC -> Opcodes.ACC_PUBLIC;
+		case PROTECTED -> Opcodes.ACC_PROTECTED;
+		case PACKAGE_PRIVATE -> 0;
+		case PRIVATE -> Opcodes.ACC_PRIVATE;
+		default -> -1;
+		};
+	}
+
+	private static int rank(int access) {
+		return switch (access) {
+		case Opcodes.ACC_PUBLIC -> 3;
+		case Opcodes.ACC_PROTECTED -> 2;
+		case 0 -> 1;
+		default -> 0;
+		};
+	}
+
+	private record ClassTransforms(@Nullable AccessTransform transform, @Nullable AccessTransform allFields, @Nullable AccessTransform allMethods, Map<String, AccessTransform> fields, Map<String, AccessTransform> methods) {
+		int applyField(String name, int access) {
+			return apply(fields.get(name), apply(allFields, access));
+		}
+
+		int applyMethod(String name, String descriptor, int access) {
+			return apply(methods.get(name + descriptor), apply(allMethods, access));
+		}
+	}
+
+	private final class AccessTransformClassVisitor extends ClassVisitor {
+		private String className;
+		private @Nullable ClassTransforms transforms;
+
+		AccessTransformClassVisitor(int api, ClassVisitor classVisitor) {
+			super(api, classVisitor);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+			className = name;
+			transforms = classes.get(name);
+
+			if (transforms != null) {
+				access = apply(transforms.transform(), access);
+			}
+
+			super.visit(version, access, name, signature, superName, interfaces);
+		}
+
+		@Override
+		public void visitInnerClass(String name, String outerName, String innerName, int access) {
+			final ClassTransforms innerTransforms = classes.get(name);
+
+			if (innerTransforms != null) {
+				access = apply(innerTransforms.transform(), access);
+			}
+
+			super.visitInnerClass(name, outerName, innerName, access);
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+			if (transforms != null) {
+				access = transforms.applyField(name, access);
+			}
+
+			return super.visitField(access, name, descriptor, signature, value);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+			if (transforms == null) {
+				return super.visitMethod(access, name, descriptor, signature, exceptions);
+			}
+
+			final ClassTransforms classTransforms = transforms;
+
+			return new MethodVisitor(api, super.visitMethod(classTransforms.applyMethod(name, descriptor, access), name, descriptor, signature, exceptions)) {
+				@Override
+				public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+					// Only private methods of the same class are called with invokespecial, apart from constructors
+					if (opcode == Opcodes.INVOKESPECIAL && owner.equals(className) && !name.equals("<init>")
+							&& (classTransforms.applyMethod(name, descriptor, Opcodes.ACC_PRIVATE) & Opcodes.ACC_PRIVATE) == 0) {
+						opcode = isInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL;
+					}
+
+					super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+				}
+			};
+		}
+	}
+}
@@ -29,18 +29,16 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
 import com.google.common.hash.Hashing;
 import com.google.common.io.MoreFiles;
-import dev.architectury.loom.util.TempFiles;
 import org.cadixdev.at.AccessTransformSet;
 import org.cadixdev.at.io.AccessTransformFormats;
 import org.gradle.api.Project;
@@ -54,6 +52,7 @@ import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
 import net.fabricmc.loom.api.processor.MinecraftJarProcessor;
 import net.fabricmc.loom.api.processor.ProcessorContext;
 import net.fabricmc.loom.api.processor.SpecContext;
+import net.fabricmc.loom.configuration.processors.MinecraftJarProcessorManager;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DependencyDownloader;
 import net.fabricmc.loom.util.ExceptionUtil;
@@ -111,22 +110,22 @@ public class AccessTransformerJarProcessor implements MinecraftJarProcessor<Acce
 
 	@Override
 	public void processJar(Path jar, Spec spec, ProcessorContext context) throws IOException {
-		try (var tempFiles = new TempFiles()) {
-			LOGGER.lifecycle(":applying project access transformers");
-			final Path tempInput = tempFiles.file("input", ".jar");
-			Files.copy(jar, tempInput, StandardCopyOption.REPLACE_EXISTING);
-			final Path atPath = mergeAndRemapAccessTransformers(context, spec.accessTransformers(), tempFiles);
-
-			executeAt(project, tempInput, jar, args -> {
-				args.add("--atFile");
-				args.add(atPath.toAbsolutePath().toString());
-			});
+		try {
+			MinecraftJarProcessorManager.applyClassTransforms(jar, List.of(createClassTransform(spec, context)), Map.of());
 		} catch (IOException e) {
 			throw ExceptionUtil.createDescriptiveWrapper(UncheckedIOException::new, "Could not access transform " + jar.toAbsolutePath(), e);
 		}
 	}
 
-	private Path mergeAndRemapAccessTransformers(ProcessorContext context, List<AccessTransformerEntry> accessTransformers, TempFiles tempFiles) throws IOException {
+	@Override
+	public ClassTransform createClassTransform(Spec spec, ProcessorContext context) throws IOException {
+		LOGGER.lifecycle(":applying project access transformers");
+
+		final AccessTransformIndex index = AccessTransformIndex.of(mergeAndRemapAccessTransformers(context, spec.accessTransformers()));
+		return ClassTransform.of(index.getTargets(), (className, next) -> index.createClassVisitor(Constants.ASM_VERSION, next));
+	}
+
+	private AccessTransformSet mergeAndRemapAccessTransformers(ProcessorContext context, List<AccessTransformerEntry> accessTransformers) throws IOException {
 		AccessTransformSet accessTransformSet = AccessTransformSet.create();
 
 		for (AccessTransformerEntry entry : accessTransformers) {
@@ -137,17 +136,7 @@ public class AccessTransformerJarProcessor implements MinecraftJarProcessor<Acce
 			}
 		}
 
-		accessTransformSet = accessTransformSet.remap(new TinyMappingsReader(context.getMappings(), MappingsNamespace.SRG.toString(), MappingsNamespace.NAMED.toString()).read());
-
-		final Path accessTransformerPath = tempFiles.file("accesstransformer-merged", ".cfg");
-
-		try {
-			AccessTransformFormats.FML.write(accessTransformerPath, accessTransformSet);
-		} catch (IOException e) {
-			throw new IOException("Could not write access transformers to " + accessTransformerPath, e);
-		}
-
-		return accessTransformerPath;
+		return accessTransformSet.remap(new TinyMappingsReader(context.getMappings(), MappingsNamespace.SRG.toString(), MappingsNamespace.NAMED.toString()).read());
 	}
 
 	@Override
@@ -129,6 +129,15 @@ public class AccessWidenerJarProcessor implements MinecraftJarProcessor<AccessWi
 
 	@Override
 	public void processJar(Path jar, AccessWidenerJarProcessor.Spec spec, ProcessorContext context) throws IOException {
+		new AccessWidenerTransformer(readAccessWidener(spec, context)).apply(jar);
+	}
+
+	@Override
+	public ClassTransform createClassTransform(AccessWidenerJarProcessor.Spec spec, ProcessorContext context) throws IOException {
+		return new AccessWidenerTransformer(readAccessWidener(spec, context));
+	}
+
+	private AccessWidener readAccessWidener(AccessWidenerJarProcessor.Spec spec, ProcessorContext context) throws IOException {
 		final List<AccessWidenerEntry> accessWideners = spec.accessWidenersForContext(context);
 
 		final var accessWidener = new AccessWidener();
@@ -139,8 +148,7 @@ public class AccessWidenerJarProcessor implements MinecraftJarProcessor<AccessWi
 			}
 		}
 
-		AccessWidenerTransformer transformer = new AccessWidenerTransformer(accessWidener);
-		transformer.apply(jar);
+		return accessWidener;
 	}
 
 	@Override
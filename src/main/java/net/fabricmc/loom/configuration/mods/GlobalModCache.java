@@ -0,0 +1,320 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.configuration.mods;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.IOFunction;
+import net.fabricmc.loom.util.gradle.GradleUtils;
+
+/**
+ * A content-addressed cache of remapped mod jars stored in the Gradle user home, shared by all projects on the machine.
+ *
+ * <p>Entries are keyed by the hash of the input jar, its own dependencies and everything else that affects the
+ * remapping output (see {@link #createKey}), so that unrelated mods don't change the key. They are published
+ * atomically and evicted in least recently used order once the cache grows beyond {@value #DEFAULT_MAX_SIZE_MB} MB
+ * (configurable with {@value Constants.Properties#GLOBAL_MOD_CACHE_SIZE}).
+ * Reading, publishing and evicting entries is serialized with a lock file, so an entry can't be evicted while
+ * it is being copied out of the cache.
+ */
+public final class GlobalModCache {
+	// Bump this when the remapping process changes in a way that affects the output.
+	private static final int VERSION = 2;
+	private static final long DEFAULT_MAX_SIZE_MB = 4096;
+	private static final String JAR_SUFFIX = ".jar";
+	private static final String LOCK_FILE = ".lock";
+	// File locks are held by the whole JVM, so the threads of a JVM take turns first.
+	private static final Map<Path, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+	private final Path root;
+	private final long maxSize;
+	private final Logger logger;
+
+	@VisibleForTesting
+	public GlobalModCache(Path root, long maxSize, Logger logger) {
+		this.root = root.toAbsolutePath().normalize();
+		this.maxSize = maxSize;
+		this.logger = logger;
+	}
+
+	@Nullable
+	public static GlobalModCache create(Project project) {
+		if (GradleUtils.getBooleanProperty(project, Constants.Properties.DISABLE_GLOBAL_MOD_CACHE)) {
+			return null;
+		}
+
+		final LoomGradleExtension extension = LoomGradleExtension.get(project);
+		final long maxSizeMb = project.getProviders().gradleProperty(Constants.Properties.GLOBAL_MOD_CACHE_SIZE)
+				.map(value -> parseMaxSize(value, project.getLogger()))
+				.getOrElse(DEFAULT_MAX_SIZE_MB);
+
+		return new GlobalModCache(extension.getFiles().getGlobalRemappedModCache().toPath(), maxSizeMb * 1024 * 1024, project.getLogger());
+	}
+
+	private static long parseMaxSize(String value, Logger logger) {
+		try {
+			final long maxSizeMb = Long.parseLong(value.trim());
+
+			if (maxSizeMb >= 0) {
+				return maxSizeMb;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+
+		logger.warn("Invalid value for {}: '{}', expected a size in MB. Using the default of {} MB.", Constants.Properties.GLOBAL_MOD_CACHE_SIZE, value, DEFAULT_MAX_SIZE_MB);
+		return DEFAULT_MAX_SIZE_MB;
+	}
+
+	/**
+	 * Creates the cache key for an input jar.
+	 *
+	 * @param inputHash        the hash of the jar to be remapped
+	 * @param context          the state shared by all the jars being remapped, see {@link #createContext}
+	 * @param dependencyHashes the hashes of the jars the input depends on, in any order
+	 * @return the cache key
+	 */
+	public static String createKey(String inputHash, String context, Collection<String> dependencyHashes) {
+		final Hasher hasher = Hashing.sha256().newHasher()
+				.putString(inputHash, StandardCharsets.UTF_8).putChar('\0')
+				.putString(context, StandardCharsets.UTF_8).putChar('\0');
+
+		// Sorted, so that the order the dependencies are resolved in doesn't matter
+		dependencyHashes.stream().sorted().distinct().forEach(hash -> hasher.putString(hash, StandardCharsets.UTF_8).putChar('\0'));
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Hashes the state shared by all the jars remapped together.
+	 *
+	 * @param hashes  the hashes of the mapping files and the Minecraft jars
+	 * @param options the namespaces, platform and remapper options
+	 */
+	public static String createContext(List<String> hashes, String... options) {
+		final Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putInt(VERSION);
+		hasher.putInt(hashes.size());
+
+		for (String hash : hashes) {
+			hasher.putString(hash, StandardCharsets.UTF_8).putChar('\0');
+		}
+
+		for (String option : options) {
+			hasher.putString(option, StandardCharsets.UTF_8).putChar('\0');
+		}
+
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Hashes the names and contents of the files in a directory, where it is doesn't matter.
+	 */
+	public static String hashDirectory(Path directory) {
+		final Hasher hasher = Hashing.sha256().newHasher();
+
+		if (!Files.isDirectory(directory)) {
+			return hasher.hash().toString();
+		}
+
+		try (Stream<Path> stream = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) stream.filter(Files::isRegularFile).sorted()::iterator) {
+				hasher.putString(directory.relativize(path).toString().replace('\\', '/'), StandardCharsets.UTF_8).putChar('\0');
+				hasher.putBytes(Checksum.sha256(path.toFile()));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to hash " + directory, e);
+		}
+
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Passes the cached jar for the key to the action, while holding the cache lock so that it can't be evicted
+	 * in the meantime. A hit marks the entry as recently used.
+	 *
+	 * @param action copies the cached jar, and returns whether it succeeded
+	 * @return whether the key was cached and the action succeeded
+	 */
+	public boolean get(String key, IOFunction<Path, Boolean> action) throws IOException {
+		final Path path = getPath(key);
+
+		return withLock(() -> {
+			try {
+				Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			} catch (NoSuchFileException e) {
+				return false;
+			}
+
+			return action.apply(path);
+		});
+	}
+
+	/**
+	 * Publishes a remapped jar, other processes either see the complete entry or none at all.
+	 */
+	public void put(String key, Path jar) throws IOException {
+		final Path path = getPath(key);
+		Files.createDirectories(path.getParent());
+
+		final Path tempPath = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+		try {
+			// Copied outside of the lock, only the cheap move has to wait for the other processes
+			Files.copy(jar, tempPath);
+
+			withLock(() -> {
+				try {
+					Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				return null;
+			});
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache fits within its maximum size.
+	 * Skipped when another process is already cleaning up the cache.
+	 */
+	public void evict() throws IOException {
+		Files.createDirectories(root);
+		final ReentrantLock jvmLock = getJvmLock();
+
+		if (!jvmLock.tryLock()) {
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(root.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.tryLock()) {
+			if (lock == null) {
+				return;
+			}
+
+			final List<Entry> entries = new ArrayList<>();
+			long totalSize = 0;
+
+			try (Stream<Path> stream = Files.walk(root, 2)) {
+				for (Path path : (Iterable<Path>) stream::iterator) {
+					if (!path.getFileName().toString().endsWith(JAR_SUFFIX) || !Files.isRegularFile(path)) {
+						continue;
+					}
+
+					final Entry entry = new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+					entries.add(entry);
+					totalSize += entry.size();
+				}
+			}
+
+			if (totalSize <= maxSize) {
+				return;
+			}
+
+			entries.sort(Comparator.comparingLong(Entry::lastUsed));
+			int evicted = 0;
+
+			for (Entry entry : entries) {
+				if (totalSize <= maxSize) {
+					break;
+				}
+
+				try {
+					Files.deleteIfExists(entry.path());
+					totalSize -= entry.size();
+					evicted++;
+				} catch (IOException e) {
+					// Most likely in use by another process on Windows, try again next time.
+					logger.debug("Failed to evict global mod cache entry {}", entry.path(), e);
+				}
+			}
+
+			logger.info(":evicted {} entries from the global mod cache", evicted);
+		} finally {
+			jvmLock.unlock();
+		}
+	}
+
+	private <T> T withLock(LockedAction<T> action) throws IOException {
+		Files.createDirectories(root);
+		final ReentrantLock jvmLock = getJvmLock();
+		jvmLock.lock();
+
+		try (FileChannel channel = FileChannel.open(root.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.lock()) {
+			return action.run();
+		} finally {
+			jvmLock.unlock();
+		}
+	}
+
+	private ReentrantLock getJvmLock() {
+		return JVM_LOCKS.computeIfAbsent(root, path -> new ReentrantLock());
+	}
+
+	private Path getPath(String key) {
+		return root.resolve(key.substring(0, 2)).resolve(key + JAR_SUFFIX);
+	}
+
+	private record Entry(Path path, long size, long lastUsed) {
+	}
+
+	@FunctionalInterface
+	private interface LockedAction<T> {
+		T run() throws IOException;
+	}
+}
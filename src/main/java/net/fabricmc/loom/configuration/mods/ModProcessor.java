@@ -31,10 +31,15 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,7 +52,11 @@ import dev.architectury.tinyremapper.OutputConsumerPath;
 import dev.architectury.tinyremapper.TinyRemapper;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.ResolvedDependency;
 import org.gradle.api.attributes.Usage;
+import org.gradle.api.logging.Logger;
+import org.jetbrains.annotations.VisibleForTesting;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.api.RemapConfigurationSettings;
@@ -56,13 +65,19 @@ import net.fabricmc.loom.build.IntermediaryNamespaces;
 import net.fabricmc.loom.configuration.mods.dependency.ModDependency;
 import net.fabricmc.loom.configuration.providers.mappings.MappingConfiguration;
 import net.fabricmc.loom.task.RemapJarTask;
+import net.fabricmc.loom.task.service.ClasspathIndexService;
+import net.fabricmc.loom.util.CloseableList;
 import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.LoggerFilter;
 import net.fabricmc.loom.util.ModPlatform;
 import net.fabricmc.loom.util.Pair;
+import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.loom.util.TinyRemapperHelper;
 import net.fabricmc.loom.util.ZipUtils;
+import net.fabricmc.loom.util.function.CollectionUtil;
 import net.fabricmc.loom.util.kotlin.KotlinClasspathService;
+import net.fabricmc.loom.util.kotlin.KotlinPluginUtils;
 import net.fabricmc.loom.util.kotlin.KotlinRemapperClassloader;
 import net.fabricmc.loom.util.service.SharedServiceManager;
 import net.fabricmc.loom.util.srg.AtRemapper;
@@ -86,13 +101,147 @@ public class ModProcessor {
 
 	public void processMods(List<ModDependency> remapList) throws IOException {
 		try {
-			project.getLogger().lifecycle(":remapping {} mods from {}", remapList.size(), describeConfiguration(sourceConfiguration));
-			remapJars(remapList);
+			final GlobalModCache globalModCache = GlobalModCache.create(project);
+
+			if (globalModCache == null) {
+				project.getLogger().lifecycle(":remapping {} mods from {}", remapList.size(), describeConfiguration(sourceConfiguration));
+				remapJars(remapList);
+				return;
+			}
+
+			final ClasspathIndexService hashes = ClasspathIndexService.getOrCreate(serviceManager, project);
+			final String cacheContext = createCacheContext(hashes);
+			final Map<File, Set<File>> dependencies = collectDependencies(sourceConfiguration.getResolvedConfiguration().getFirstLevelModuleDependencies());
+			final List<Path> otherMods = getOtherMods(remapList);
+			final List<String> keys = ThreadingUtils.get(remapList, dependency -> {
+				final Set<File> resolved = dependencies.get(dependency.getInputFile().toFile());
+				final List<Path> modDependencies = new ArrayList<>();
+
+				if (resolved != null) {
+					resolved.forEach(file -> modDependencies.add(file.toPath()));
+				} else {
+					// Without metadata, every other mod on the remap classpath may be a dependency
+					remapList.stream().map(ModDependency::getInputFile).filter(path -> !path.equals(dependency.getInputFile())).forEach(modDependencies::add);
+					modDependencies.addAll(otherMods);
+				}
+
+				return GlobalModCache.createKey(hash(hashes, dependency.getInputFile()), cacheContext, CollectionUtil.map(modDependencies, path -> hash(hashes, path)));
+			});
+			final List<ModDependency> misses = new ArrayList<>();
+			final Map<ModDependency, String> missKeys = new HashMap<>();
+
+			for (int i = 0; i < remapList.size(); i++) {
+				final ModDependency dependency = remapList.get(i);
+				final boolean hit = globalModCache.get(keys.get(i), cached -> {
+					dependency.copyToCache(project, cached, null);
+					return true;
+				});
+
+				if (!hit) {
+					misses.add(dependency);
+					missKeys.put(dependency, keys.get(i));
+				}
+			}
+
+			project.getLogger().lifecycle(":remapping {} mods from {} ({} global cache hits, {} misses)", remapList.size(), describeConfiguration(sourceConfiguration), remapList.size() - misses.size(), misses.size());
+
+			if (misses.isEmpty()) {
+				return;
+			}
+
+			remapJars(misses);
+
+			for (ModDependency dependency : misses) {
+				globalModCache.put(missKeys.get(dependency), getRemappedOutput(dependency));
+			}
+
+			globalModCache.evict();
 		} catch (Exception e) {
 			throw new RuntimeException(String.format(Locale.ENGLISH, "Failed to remap %d mods", remapList.size()), e);
 		}
 	}
 
+	// Hashes everything other than the input jar and its dependencies that affects the remapped output.
+	private String createCacheContext(ClasspathIndexService hashes) {
+		final LoomGradleExtension extension = LoomGradleExtension.get(project);
+		final MappingConfiguration mappingConfiguration = extension.getMappingConfiguration();
+		final List<Path> files = new ArrayList<>();
+		files.add(mappingConfiguration.tinyMappings);
+
+		if (extension.isForge()) {
+			files.add(mappingConfiguration.tinyMappingsWithSrg);
+		}
+
+		files.addAll(getMinecraftJars());
+
+		final String kotlinVersion = KotlinPluginUtils.hasKotlinPlugin(project) ? KotlinPluginUtils.getKotlinPluginVersion(project) : "none";
+
+		return GlobalModCache.createContext(
+				ThreadingUtils.get(files, path -> hash(hashes, path)),
+				IntermediaryNamespaces.intermediary(project),
+				toM,
+				extension.getPlatform().get().name(),
+				kotlinVersion
+		);
+	}
+
+	private static String hash(ClasspathIndexService hashes, Path path) {
+		if (Files.isDirectory(path)) {
+			return GlobalModCache.hashDirectory(path);
+		}
+
+		try {
+			return hashes.getHash(path);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to hash " + path, e);
+		}
+	}
+
+	/**
+	 * Collects the artifacts that the artifacts of each module in a resolved dependency graph depend on, transitively.
+	 */
+	@VisibleForTesting
+	public static Map<File, Set<File>> collectDependencies(Set<ResolvedDependency> roots) {
+		final Map<File, Set<File>> dependencies = new HashMap<>();
+		final Set<ResolvedDependency> visited = new HashSet<>();
+		final Deque<ResolvedDependency> queue = new ArrayDeque<>(roots);
+
+		while (!queue.isEmpty()) {
+			final ResolvedDependency module = queue.remove();
+
+			if (!visited.add(module)) {
+				continue;
+			}
+
+			final Set<File> files = getTransitiveArtifacts(module);
+
+			for (ResolvedArtifact artifact : module.getModuleArtifacts()) {
+				dependencies.computeIfAbsent(artifact.getFile(), file -> new HashSet<>()).addAll(files);
+			}
+
+			queue.addAll(module.getChildren());
+		}
+
+		return dependencies;
+	}
+
+	private static Set<File> getTransitiveArtifacts(ResolvedDependency module) {
+		final Set<File> files = new HashSet<>();
+		final Set<ResolvedDependency> visited = new HashSet<>();
+		final Deque<ResolvedDependency> queue = new ArrayDeque<>(module.getChildren());
+
+		while (!queue.isEmpty()) {
+			final ResolvedDependency child = queue.remove();
+
+			if (child != module && visited.add(child)) {
+				child.getModuleArtifacts().forEach(artifact -> files.add(artifact.getFile()));
+				queue.addAll(child.getChildren());
+			}
+		}
+
+		return files;
+	}
+
 	// Creates a human-readable descriptive string for the configuration.
 	// This consists primarily of the name with any copy suffixes stripped
 	// (they're not informative), and the usage attribute if present.
@@ -120,43 +269,67 @@ public class ModProcessor {
 		return description;
 	}
 
-	private void stripNestedJars(Path path) {
-		if (!ZipUtils.contains(path, "fabric.mod.json")) {
-			if (ZipUtils.contains(path, "quilt.mod.json")) {
+	private void stripNestedJars(FileSystemUtil.Delegate fs) throws IOException {
+		if (Files.notExists(fs.getPath("fabric.mod.json"))) {
+			if (Files.exists(fs.getPath("quilt.mod.json"))) {
 				// Strip out all contained jar info as we dont want loader to try and load the jars contained in dev.
-				try {
-					ZipUtils.transformJson(JsonObject.class, path, Map.of("quilt.mod.json", json -> {
-						if (json.has("quilt_loader")) {
-							json.getAsJsonObject("quilt_loader").remove("jars");
-						}
+				ZipUtils.transformJson(JsonObject.class, fs, Map.of("quilt.mod.json", json -> {
+					if (json.has("quilt_loader")) {
+						json.getAsJsonObject("quilt_loader").remove("jars");
+					}
 
-						return json;
-					}));
-				} catch (IOException e) {
-					throw new UncheckedIOException("Failed to strip nested jars from %s".formatted(path), e);
-				}
+					return json;
+				}));
 			}
 
 			return;
 		}
 
 		// Strip out all contained jar info as we dont want loader to try and load the jars contained in dev.
-		try {
-			ZipUtils.transformJson(JsonObject.class, path, Map.of("fabric.mod.json", json -> {
-				json.remove("jars");
-				return json;
-			}));
-		} catch (IOException e) {
-			throw new UncheckedIOException("Failed to strip nested jars from %s".formatted(path), e);
+		ZipUtils.transformJson(JsonObject.class, fs, Map.of("fabric.mod.json", json -> {
+			json.remove("jars");
+			return json;
+		}));
+	}
+
+	// The Minecraft jars, their libraries and the other mods, in the order they are read as the remap classpath.
+	private List<Path> getRemapClasspath(List<ModDependency> remapList) {
+		final List<Path> classpath = new ArrayList<>(getMinecraftJars());
+
+		for (File file : project.getConfigurations().getByName(Constants.Configurations.MINECRAFT_COMPILE_LIBRARIES).getFiles()) {
+			classpath.add(file.toPath());
 		}
+
+		classpath.addAll(getOtherMods(remapList));
+		return classpath;
+	}
+
+	private List<Path> getMinecraftJars() {
+		final LoomGradleExtension extension = LoomGradleExtension.get(project);
+		return extension.getMinecraftJars(extension.isForge() ? MappingsNamespace.SRG : MappingsNamespace.INTERMEDIARY);
+	}
+
+	// The mods of the other remap configurations, which aren't remapped together with these.
+	private List<Path> getOtherMods(List<ModDependency> remapList) {
+		final List<Path> mods = new ArrayList<>();
+
+		for (RemapConfigurationSettings entry : LoomGradleExtension.get(project).getRemapConfigurations()) {
+			for (File inputFile : entry.getSourceConfiguration().get().getFiles()) {
+				if (remapList.stream().noneMatch(info -> info.getInputFile().toFile().equals(inputFile))) {
+					project.getLogger().debug("Adding " + inputFile + " onto the remap classpath");
+
+					mods.add(inputFile.toPath());
+				}
+			}
+		}
+
+		return mods;
 	}
 
 	private void remapJars(List<ModDependency> remapList) throws IOException {
 		final LoomGradleExtension extension = LoomGradleExtension.get(project);
 		final MappingConfiguration mappingConfiguration = extension.getMappingConfiguration();
 		String fromM = IntermediaryNamespaces.intermediary(project);
-		Path[] mcDeps = project.getConfigurations().getByName(Constants.Configurations.MINECRAFT_COMPILE_LIBRARIES).getFiles()
-				.stream().map(File::toPath).toArray(Path[]::new);
 
 		Stopwatch stopwatch = Stopwatch.createStarted();
 
@@ -179,26 +352,13 @@ public class ModProcessor {
 
 		final TinyRemapper remapper = builder.build();
 
-		for (Path minecraftJar : extension.getMinecraftJars(extension.isForge() ? MappingsNamespace.SRG : MappingsNamespace.INTERMEDIARY)) {
-			remapper.readClassPathAsync(minecraftJar);
-		}
-
-		remapper.readClassPathAsync(mcDeps);
+		// Reads the skeletons of the Minecraft jars and libraries shared with the other remappers of the build
+		final ClasspathIndexService classpathIndex = ClasspathIndexService.getOrCreate(serviceManager, project);
+		remapper.readClassPathAsync(classpathIndex.getClasspath(getRemapClasspath(remapList)).toArray(Path[]::new));
 
 		final Map<ModDependency, InputTag> tagMap = new HashMap<>();
-		final Map<ModDependency, OutputConsumerPath> outputConsumerMap = new HashMap<>();
 		final Map<ModDependency, Pair<byte[], String>> accessWidenerMap = new HashMap<>();
 
-		for (RemapConfigurationSettings entry : extension.getRemapConfigurations()) {
-			for (File inputFile : entry.getSourceConfiguration().get().getFiles()) {
-				if (remapList.stream().noneMatch(info -> info.getInputFile().toFile().equals(inputFile))) {
-					project.getLogger().debug("Adding " + inputFile + " onto the remap classpath");
-
-					remapper.readClassPathAsync(inputFile.toPath());
-				}
-			}
-		}
-
 		for (ModDependency info : remapList) {
 			InputTag tag = remapper.createInputTag();
 
@@ -210,58 +370,73 @@ public class ModProcessor {
 			Files.deleteIfExists(getRemappedOutput(info));
 		}
 
-		try {
-			// Apply this in a second loop as we need to ensure all the inputs are on the classpath before remapping.
-			for (ModDependency dependency : remapList) {
-				try {
-					OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(getRemappedOutput(dependency)).build();
+		// Closed once every fixup has finished or been cancelled, so that no output file system is left open after a failure.
+		try (CloseableList<OutputConsumerPath> outputConsumers = new CloseableList<>()) {
+			try {
+				// Apply this in a second loop as we need to ensure all the inputs are on the classpath before remapping.
+				for (ModDependency dependency : remapList) {
+					try {
+						OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(getRemappedOutput(dependency)).build();
+						outputConsumers.add(outputConsumer);
 
-					outputConsumer.addNonClassFiles(dependency.getInputFile(), NonClassCopyMode.FIX_META_INF, remapper);
-					outputConsumerMap.put(dependency, outputConsumer);
+						outputConsumer.addNonClassFiles(dependency.getInputFile(), NonClassCopyMode.FIX_META_INF, remapper);
 
-					final ModPlatform platform = LoomGradleExtension.get(project).getPlatform().get();
-					final AccessWidenerUtils.AccessWidenerData accessWidenerData = AccessWidenerUtils.readAccessWidenerData(dependency.getInputFile(), platform);
+						final ModPlatform platform = extension.getPlatform().get();
+						final AccessWidenerUtils.AccessWidenerData accessWidenerData = AccessWidenerUtils.readAccessWidenerData(dependency.getInputFile(), platform);
 
-					if (accessWidenerData != null) {
-						project.getLogger().debug("Remapping access widener in {}", dependency.getInputFile());
-						byte[] remappedAw = AccessWidenerUtils.remapAccessWidener(accessWidenerData.content(), remapper.getEnvironment().getRemapper());
-						accessWidenerMap.put(dependency, new Pair<>(remappedAw, accessWidenerData.path()));
+						if (accessWidenerData != null) {
+							project.getLogger().debug("Remapping access widener in {}", dependency.getInputFile());
+							byte[] remappedAw = AccessWidenerUtils.remapAccessWidener(accessWidenerData.content(), remapper.getEnvironment().getRemapper());
+							accessWidenerMap.put(dependency, new Pair<>(remappedAw, accessWidenerData.path()));
+						}
+
+						remapper.apply(outputConsumer, tagMap.get(dependency));
+					} catch (Exception e) {
+						throw new RuntimeException("Failed to remap: " + dependency, e);
 					}
+				}
+			} finally {
+				remapper.finish();
 
-					remapper.apply(outputConsumer, tagMap.get(dependency));
-				} catch (Exception e) {
-					throw new RuntimeException("Failed to remap: " + dependency, e);
+				if (kotlinRemapperClassloader != null) {
+					kotlinRemapperClassloader.close();
 				}
 			}
-		} finally {
-			remapper.finish();
 
-			if (kotlinRemapperClassloader != null) {
-				kotlinRemapperClassloader.close();
-			}
-		}
+			project.getLogger().lifecycle(":remapped {} mods ({} -> {}) in {}", remapList.size(), fromM, toM, stopwatch.stop());
 
-		project.getLogger().lifecycle(":remapped {} mods ({} -> {}) in {}", remapList.size(), fromM, toM, stopwatch.stop());
+			// The fixups are applied to the still open output file system, so that each jar is only written once when it is closed.
+			final boolean forge = extension.isForge();
+			final Logger logger = project.getLogger();
 
-		for (ModDependency dependency : remapList) {
-			outputConsumerMap.get(dependency).close();
+			ThreadingUtils.run(remapList, dependency -> {
+				final Path output = getRemappedOutput(dependency);
 
-			final Path output = getRemappedOutput(dependency);
-			final Pair<byte[], String> accessWidener = accessWidenerMap.get(dependency);
+				try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(output, true)) {
+					postProcess(fs, output, accessWidenerMap.get(dependency), mappings, forge, logger);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to process remapped mod: " + dependency, e);
+				}
+			});
+		}
 
-			if (accessWidener != null) {
-				ZipUtils.replace(output, accessWidener.right(), accessWidener.left());
-			}
+		// Not on the worker threads, this resolves project state.
+		for (ModDependency dependency : remapList) {
+			dependency.copyToCache(project, getRemappedOutput(dependency), null);
+		}
+	}
 
-			stripNestedJars(output);
-			remapJarManifestEntries(output);
+	private void postProcess(FileSystemUtil.Delegate fs, Path output, Pair<byte[], String> accessWidener, MemoryMappingTree mappings, boolean forge, Logger logger) throws IOException {
+		if (accessWidener != null) {
+			ZipUtils.replace(fs, accessWidener.right(), accessWidener.left());
+		}
 
-			if (extension.isForge()) {
-				AtRemapper.remap(project.getLogger(), output, mappings);
-				CoreModClassRemapper.remapJar(output, mappings, project.getLogger());
-			}
+		stripNestedJars(fs);
+		remapJarManifestEntries(fs);
 
-			dependency.copyToCache(project, output, null);
+		if (forge) {
+			AtRemapper.remap(logger, fs, mappings);
+			CoreModClassRemapper.remapJar(output, fs, mappings, logger);
 		}
 	}
 
@@ -269,8 +444,8 @@ public class ModProcessor {
 		return dependency.getWorkingFile(null);
 	}
 
-	private void remapJarManifestEntries(Path jar) throws IOException {
-		ZipUtils.transform(jar, Map.of(RemapJarTask.MANIFEST_PATH, bytes -> {
+	private void remapJarManifestEntries(FileSystemUtil.Delegate fs) throws IOException {
+		ZipUtils.transform(fs, Map.of(RemapJarTask.MANIFEST_PATH, bytes -> {
 			var manifest = new Manifest(new ByteArrayInputStream(bytes));
 
 			manifest.getMainAttributes().putValue(RemapJarTask.MANIFEST_NAMESPACE_KEY, toM);
@@ -32,13 +32,16 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.StringJoiner;
 import java.util.stream.Collectors;
 
 import org.gradle.api.Project;
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -94,7 +97,7 @@ public final class MinecraftJarProcessorManager {
 		return new MinecraftJarProcessorManager(entries);
 	}
 
-	private String getCacheValue() {
+	public String getCacheValue() {
 		return jarProcessors.stream()
 				.sorted(Comparator.comparing(ProcessorEntry::name))
 				.map(ProcessorEntry::cacheValue)
@@ -150,15 +153,72 @@ public final class MinecraftJarProcessorManager {
 	}
 
 	public void processJar(Path jar, ProcessorContext context) throws IOException {
+		final List<MinecraftJarProcessor.ClassTransform> pending = new ArrayList<>();
+
 		for (ProcessorEntry<?> entry : jarProcessors) {
 			try {
+				final MinecraftJarProcessor.ClassTransform transform = entry.createClassTransform(context);
+
+				if (transform != null) {
+					// A transform without targets leaves the jar untouched
+					if (!transform.getTargets().isEmpty()) {
+						pending.add(transform);
+					}
+
+					continue;
+				}
+
+				// Processors that need the whole jar must see the output of the processors before them
+				if (!pending.isEmpty()) {
+					applyClassTransforms(jar, pending, Map.of());
+					pending.clear();
+				}
+
 				entry.processJar(jar, context);
 			} catch (IOException e) {
 				throw new IOException("Failed to process jar when running jar processor: %s".formatted(entry.name()), e);
 			}
 		}
 
-		ZipUtils.add(jar, CACHE_VALUE_FILE_PATH, getCacheValue());
+		// The cache value is written in the same pass as the remaining class transforms
+		applyClassTransforms(jar, pending, Map.of(CACHE_VALUE_FILE_PATH, getCacheValue().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Applies class transforms in a single pass over the jar, chaining the visitors of the transforms in order.
+	 *
+	 * @param jar        the jar to transform
+	 * @param transforms the class transforms
+	 * @param added      entries to add to the jar, replacing existing entries
+	 */
+	public static void applyClassTransforms(Path jar, List<MinecraftJarProcessor.ClassTransform> transforms, Map<String, byte[]> added) throws IOException {
+		final Map<String, List<MinecraftJarProcessor.ClassTransform>> classTransforms = new HashMap<>();
+
+		for (MinecraftJarProcessor.ClassTransform transform : transforms) {
+			for (String target : transform.getTargets()) {
+				classTransforms.computeIfAbsent(target, k -> new ArrayList<>()).add(transform);
+			}
+		}
+
+		if (classTransforms.isEmpty() && added.isEmpty()) {
+			return;
+		}
+
+		final Map<String, ZipUtils.UnsafeUnaryOperator<byte[]>> operators = new HashMap<>();
+
+		classTransforms.forEach((className, targetTransforms) -> {
+			operators.put(className + ".class", (ZipUtils.AsmClassOperator) writer -> {
+				ClassVisitor visitor = writer;
+
+				for (int i = targetTransforms.size() - 1; i >= 0; i--) {
+					visitor = targetTransforms.get(i).visit(className, visitor);
+				}
+
+				return visitor;
+			});
+		});
+
+		ZipUtils.transformParallel(jar, operators, added);
 	}
 
 	public boolean processMappings(MemoryMappingTree mappings, MappingProcessorContext context) {
@@ -183,6 +243,10 @@ public final class MinecraftJarProcessorManager {
 			processor().processJar(jar, spec, context);
 		}
 
+		private MinecraftJarProcessor.@Nullable ClassTransform createClassTransform(ProcessorContext context) throws IOException {
+			return processor().createClassTransform(spec, context);
+		}
+
 		private boolean processMappings(MemoryMappingTree mappings, MappingProcessorContext context) {
 			if (mappingsProcessor() == null) {
 				return false;
@@ -33,6 +33,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -93,6 +94,12 @@ public abstract class ModJavadocProcessor implements MinecraftJarProcessor<ModJa
 		// Nothing to do for the jar
 	}
 
+	@Override
+	public ClassTransform createClassTransform(Spec spec, ProcessorContext context) {
+		// Only the mappings are processed, a transform without targets is skipped without reading the jar
+		return ClassTransform.of(Set.of(), (className, next) -> next);
+	}
+
 	@Override
 	public @Nullable MappingsProcessor<Spec> processMappings() {
 		return (mappings, spec, context) -> {
@@ -0,0 +1,348 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.configuration.providers.forge;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.zip.Adler32;
+
+import lzma.sdk.lzma.Decoder;
+import lzma.streams.LzmaInputStream;
+import org.jetbrains.annotations.Nullable;
+
+import net.fabricmc.loom.util.ThreadingUtils;
+import net.fabricmc.loom.util.ZipUtils;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
+
+/**
+ * Applies Forge binary patches in process, replacing the {@code net.minecraftforge.binarypatcher.ConsoleTool} fork.
+ *
+ * <p>The patches are read from an LZMA compressed jar of version 1 {@code .binpatch} files, each holding a GDIFF
+ * delta of a class. Legacy patches are converted to this format by {@link PatchProvider}.
+ */
+public final class BinaryPatcher {
+	private static final int GDIFF_MAGIC = 0xD1FFD1FF;
+	private static final int GDIFF_VERSION = 4;
+	// In KiB
+	private static final int MEMORY_BUDGET = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 >> 10);
+
+	private final Map<String, List<Patch>> patches;
+
+	private BinaryPatcher(Map<String, List<Patch>> patches) {
+		this.patches = patches;
+	}
+
+	public static BinaryPatcher read(Path path) throws IOException {
+		final Map<String, List<Patch>> patches = new HashMap<>();
+
+		try (InputStream input = new BufferedInputStream(Files.newInputStream(path));
+				LzmaInputStream lzma = new LzmaInputStream(input, new Decoder());
+				JarInputStream jar = new JarInputStream(lzma)) {
+			for (JarEntry entry; (entry = jar.getNextJarEntry()) != null;) {
+				if (entry.getName().endsWith(".binpatch")) {
+					final Patch patch = Patch.read(new DataInputStream(jar));
+					patches.computeIfAbsent(patch.obf(), k -> new ArrayList<>()).add(patch);
+				}
+			}
+		}
+
+		return new BinaryPatcher(patches);
+	}
+
+	/**
+	 * Patches the classes of a jar, see {@link #apply(Path, Path, boolean, boolean, ClassTransform)}.
+	 */
+	public void apply(Path clean, Path output, boolean copyUnpatched) throws IOException {
+		apply(clean, output, copyUnpatched, false, null);
+	}
+
+	/**
+	 * Patches the classes of a jar, see {@link #apply(Path, Path, boolean, boolean, ClassTransform)}.
+	 */
+	public void apply(Path clean, Path output, boolean copyUnpatched, @Nullable ClassTransform transform) throws IOException {
+		apply(clean, output, copyUnpatched, false, transform);
+	}
+
+	/**
+	 * Patches the classes of a jar, the patches are applied in parallel and each class is written as soon as it and
+	 * the ones before it are done. The classes being processed are bounded by a budget of the available memory.
+	 *
+	 * <p>Classes without a patch are only copied when {@code copyUnpatched} is set, other files when {@code copyData}
+	 * is set. Classes added by the patches are written after the entries of the clean jar. The output is deleted if
+	 * patching fails.
+	 *
+	 * @param clean         the jar to patch
+	 * @param output        the patched jar
+	 * @param copyUnpatched whether to copy the classes that have no patch
+	 * @param copyData      whether to copy the files that aren't classes
+	 * @param transform     a transform applied to the written classes after patching, or {@code null}
+	 */
+	public void apply(Path clean, Path output, boolean copyUnpatched, boolean copyData, @Nullable ClassTransform transform) throws IOException {
+		try {
+			applyTo(clean, output, copyUnpatched, copyData, transform);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(output);
+			throw e;
+		}
+	}
+
+	private void applyTo(Path clean, Path output, boolean copyUnpatched, boolean copyData, @Nullable ClassTransform transform) throws IOException {
+		try (RawZipReader reader = RawZipReader.open(clean);
+				RawZipWriter writer = RawZipWriter.create(output)) {
+			final List<Job> jobs = new ArrayList<>();
+			final Map<String, List<Patch>> added = new TreeMap<>(patches);
+
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (entry.isDirectory()) {
+					continue;
+				} else if (!entry.name().endsWith(".class")) {
+					if (copyData) {
+						jobs.add(new Job(entry, entry.name(), null));
+					}
+
+					continue;
+				}
+
+				final List<Patch> classPatches = added.remove(getClassName(entry));
+
+				if (classPatches != null || copyUnpatched) {
+					jobs.add(new Job(entry, entry.name(), classPatches));
+				}
+			}
+
+			for (Map.Entry<String, List<Patch>> entry : added.entrySet()) {
+				jobs.add(new Job(null, entry.getKey() + ".class", entry.getValue()));
+			}
+
+			ThreadingUtils.runBounded(jobs, Job::cost, MEMORY_BUDGET, job -> job.run(reader, transform), result -> {
+				if (result.prepared() != null) {
+					write(writer, result.prepared());
+				} else if (result.job().source() != null && result.job().patches() == null) {
+					// Unpatched and untouched by the transform
+					writer.writeDirectories(result.job().name(), result.job().source().dosTime());
+					writer.writeRaw(result.job().source(), reader.readRaw(result.job().source()));
+				}
+			});
+		}
+	}
+
+	/**
+	 * An entry to write.
+	 *
+	 * @param source  the entry of the clean jar, or {@code null} if the class is added by the patches
+	 * @param name    the name of the entry
+	 * @param patches the patches of the class, or {@code null} if it isn't patched or isn't a class
+	 */
+	private record Job(@Nullable ZipEntryInfo source, String name, @Nullable List<Patch> patches) {
+		/**
+		 * {@return the memory used by the entry in KiB, its data is held twice while it is patched and compressed}
+		 */
+		int cost() {
+			long bytes = source != null ? source.size() * 2 + source.compressedSize() : 0;
+
+			if (patches != null) {
+				for (Patch patch : patches) {
+					bytes += patch.data().length * 2L;
+				}
+			}
+
+			return (int) Math.min(Integer.MAX_VALUE, (bytes >> 10) + 1);
+		}
+
+		Result run(RawZipReader reader, @Nullable ClassTransform transform) throws IOException {
+			if (patches == null) {
+				final boolean transformed = transform != null && name.endsWith(".class");
+				return new Result(this, transformed ? transformUnpatched(reader, source, transform) : null);
+			}
+
+			final int dosTime = source != null ? source.dosTime() : RawZipWriter.CONSTANT_DOS_TIME;
+			return new Result(this, prepare(name, patch(source != null ? reader.read(source) : new byte[0], patches), dosTime, transform));
+		}
+	}
+
+	/**
+	 * The result of a job.
+	 *
+	 * @param job      the job
+	 * @param prepared the entry to write, or {@code null} to copy the clean one if it isn't patched
+	 */
+	private record Result(Job job, @Nullable RawZipWriter.PreparedEntry prepared) {
+	}
+
+	@Nullable
+	private static RawZipWriter.PreparedEntry transformUnpatched(RawZipReader reader, ZipEntryInfo entry, ClassTransform transform) throws IOException {
+		final byte[] data = reader.read(entry);
+		// Classes that don't need the transform are copied without being recompressed
+		return transform.filter().test(data) ? RawZipWriter.prepare(entry.name(), transform.transform().apply(data), entry.dosTime()) : null;
+	}
+
+	private static void write(RawZipWriter writer, @Nullable RawZipWriter.PreparedEntry entry) throws IOException {
+		if (entry != null) {
+			writer.writeDirectories(entry.name(), entry.dosTime());
+			writer.write(entry);
+		}
+	}
+
+	private static String getClassName(ZipEntryInfo entry) {
+		return entry.name().substring(0, entry.name().length() - ".class".length());
+	}
+
+	@Nullable
+	private static RawZipWriter.PreparedEntry prepare(String name, byte[] data, int dosTime, @Nullable ClassTransform transform) throws IOException {
+		if (data.length == 0) {
+			// The patches remove the class
+			return null;
+		}
+
+		return RawZipWriter.prepare(name, transform != null ? transform.apply(data) : data, dosTime);
+	}
+
+	/**
+	 * A transform applied to the classes written by the patcher.
+	 *
+	 * @param filter    checks whether a class needs the transform, before it is rewritten
+	 * @param transform the transform
+	 */
+	public record ClassTransform(Predicate<byte[]> filter, ZipUtils.UnsafeUnaryOperator<byte[]> transform) implements ZipUtils.UnsafeUnaryOperator<byte[]> {
+		@Override
+		public byte[] apply(byte[] data) throws IOException {
+			return filter.test(data) ? transform.apply(data) : data;
+		}
+	}
+
+	private static byte[] patch(byte[] data, List<Patch> patches) throws IOException {
+		for (Patch patch : patches) {
+			data = patch.apply(data);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Applies a GDIFF delta.
+	 *
+	 * @param source the data the delta was created from
+	 * @param delta  the GDIFF delta
+	 * @return the patched data
+	 */
+	static byte[] applyGDiff(byte[] source, byte[] delta) throws IOException {
+		final DataInputStream input = new DataInputStream(new ByteArrayInputStream(delta));
+
+		if (input.readInt() != GDIFF_MAGIC || input.readUnsignedByte() != GDIFF_VERSION) {
+			throw new IOException("Invalid GDIFF header");
+		}
+
+		final ByteArrayOutputStream output = new ByteArrayOutputStream(source.length + delta.length);
+
+		while (true) {
+			final int command = input.readUnsignedByte();
+
+			if (command == 0) {
+				return output.toByteArray();
+			} else if (command <= 248) {
+				final int length = switch (command) {
+				case 247 -> input.readUnsignedShort();
+				case 248 -> input.readInt();
+				default -> command;
+				};
+
+				output.write(input.readNBytes(length));
+			} else {
+				final long offset = switch (command) {
+				case 249, 250, 251 -> input.readUnsignedShort();
+				case 252, 253, 254 -> input.readInt();
+				default -> input.readLong();
+				};
+				final int length = switch (command) {
+				case 249, 252 -> input.readUnsignedByte();
+				case 250, 253 -> input.readUnsignedShort();
+				default -> input.readInt();
+				};
+
+				if (offset < 0 || length < 0 || offset + length > source.length) {
+					throw new IOException("GDIFF copy of %d bytes at %d is outside of the source".formatted(length, offset));
+				}
+
+				output.write(source, (int) offset, length);
+			}
+		}
+	}
+
+	private record Patch(String obf, String srg, boolean exists, int checksum, byte[] data) {
+		static Patch read(DataInputStream input) throws IOException {
+			final int version = input.readUnsignedByte();
+
+			if (version != 1) {
+				throw new IOException("Unsupported binary patch version " + version);
+			}
+
+			final String obf = input.readUTF();
+			final String srg = input.readUTF();
+			final boolean exists = input.readBoolean();
+			final int checksum = exists ? input.readInt() : 0;
+			final byte[] data = new byte[input.readInt()];
+			input.readFully(data);
+			return new Patch(obf, srg, exists, checksum, data);
+		}
+
+		byte[] apply(byte[] input) throws IOException {
+			if (!exists && input.length > 0) {
+				throw new IOException("Patch expected %s to not exist, but received %d bytes".formatted(obf, input.length));
+			} else if (exists && input.length == 0) {
+				throw new IOException("Patch expected %s to exist, but received empty data".formatted(obf));
+			} else if (exists) {
+				final Adler32 adler = new Adler32();
+				adler.update(input);
+
+				if ((int) adler.getValue() != checksum) {
+					throw new IOException("Patch expected %s to have the checksum %x but it was %x".formatted(obf, checksum, (int) adler.getValue()));
+				}
+			}
+
+			if (data.length == 0) {
+				// The class is removed
+				return new byte[0];
+			}
+
+			return applyGDiff(input, data);
+		}
+	}
+}
@@ -159,5 +159,35 @@ public class ForgeUserdevProvider extends DependencyProvider {
 			List<String> args = List.of(LoomGradlePlugin.GSON.fromJson(json.get("args"), String[].class));
 			return new BinaryPatcherConfig(dependency, args);
 		}
+
+		/**
+		 * Checks the arguments against the options supported by {@link BinaryPatcher}, which applies the patches
+		 * in process instead of running the patcher with them.
+		 *
+		 * @return whether the patcher copies the files of the clean jar that aren't classes
+		 * @throws UnsupportedOperationException if an argument isn't supported
+		 */
+		public boolean copyData() {
+			boolean copyData = false;
+
+			for (int i = 0; i < args.size(); i++) {
+				final String arg = args.get(i);
+				final String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+
+				switch (option) {
+				case "--clean", "--output", "--apply" -> {
+					// The paths are passed to the patcher directly
+					if (!arg.contains("=")) i++;
+				}
+				case "--unpatched" -> {
+					// The unpatched classes are always copied, the later steps need the whole jar
+				}
+				case "--data" -> copyData = true;
+				default -> throw new UnsupportedOperationException("Unsupported binary patcher argument '%s' in %s".formatted(arg, args));
+				}
+			}
+
+			return copyData;
+		}
 	}
 }
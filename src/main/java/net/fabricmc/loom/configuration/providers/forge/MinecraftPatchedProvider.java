@@ -42,7 +42,9 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
@@ -94,22 +96,22 @@ import net.fabricmc.loom.configuration.providers.forge.minecraft.ForgeMinecraftP
 import net.fabricmc.loom.configuration.providers.mappings.TinyMappingsService;
 import net.fabricmc.loom.configuration.providers.minecraft.MinecraftProvider;
 import net.fabricmc.loom.util.Constants;
-import net.fabricmc.loom.util.DependencyDownloader;
 import net.fabricmc.loom.util.FileSystemUtil;
-import net.fabricmc.loom.util.ForgeToolExecutor;
 import net.fabricmc.loom.util.MappingsProviderVerbose;
-import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.loom.util.TinyRemapperHelper;
 import net.fabricmc.loom.util.ZipUtils;
 import net.fabricmc.loom.util.function.FsPathConsumer;
 import net.fabricmc.loom.util.service.ScopedSharedServiceManager;
 import net.fabricmc.loom.util.service.SharedServiceManager;
 import net.fabricmc.loom.util.srg.InnerClassRemapper;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
 import net.fabricmc.mappingio.tree.MemoryMappingTree;
 
 public class MinecraftPatchedProvider {
 	private static final String LOOM_PATCH_VERSION_KEY = "Loom-Patch-Version";
 	private static final String CURRENT_LOOM_PATCH_VERSION = "8";
+	private static final int CONSTANT_UTF8 = 1;
 	private static final String NAME_MAPPING_SERVICE_PATH = "/inject/META-INF/services/cpw.mods.modlauncher.api.INameMappingService";
 
 	private final Project project;
@@ -256,9 +258,6 @@ public class MinecraftPatchedProvider {
 	}
 
 	private void fillClientExtraJar() throws IOException {
-		Files.deleteIfExists(minecraftClientExtra);
-		FileSystemUtil.getJarFileSystem(minecraftClientExtra, true).close();
-
 		copyNonClassFiles(minecraftProvider.getMinecraftClientJar().toPath(), minecraftClientExtra);
 	}
 
@@ -285,92 +284,103 @@ public class MinecraftPatchedProvider {
 		return remapper;
 	}
 
-	private void fixParameterAnnotation(Path jarFile) throws Exception {
-		logger.info(":fixing parameter annotations for " + jarFile.toAbsolutePath());
-		Stopwatch stopwatch = Stopwatch.createStarted();
+	/**
+	 * Creates the transform run on the classes of the patched jar, which deletes the vignette parameter names and,
+	 * when needed, fixes the parameter annotations.
+	 */
+	private BinaryPatcher.ClassTransform createPostPatchTransform() {
+		final Pattern vignetteParameters = Pattern.compile("p_[0-9a-zA-Z]+_(?:[0-9a-zA-Z]+_)?");
+		final boolean fixParameterAnnotations = getExtension().isForgeAndNotOfficial();
+
+		return new BinaryPatcher.ClassTransform(bytes -> needsPostPatchTransform(new ClassReader(bytes), vignetteParameters, fixParameterAnnotations), bytes -> {
+			ClassReader reader = new ClassReader(bytes);
+			ClassWriter writer = new ClassWriter(fixParameterAnnotations ? ClassWriter.COMPUTE_MAXS : 0);
+			ClassNode node = fixParameterAnnotations ? new ClassNode() : null;
+			ClassVisitor next = fixParameterAnnotations ? new ParameterAnnotationFixer(node, null) : writer;
+
+			reader.accept(new ClassVisitor(Opcodes.ASM9, next) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					return new MethodVisitor(Opcodes.ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+						@Override
+						public void visitParameter(String name, int access) {
+							if (vignetteParameters.matcher(name).matches()) {
+								super.visitParameter(null, access);
+							} else {
+								super.visitParameter(name, access);
+							}
+						}
+
+						@Override
+						public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+							if (!vignetteParameters.matcher(name).matches()) {
+								super.visitLocalVariable(name, descriptor, signature, start, end, index);
+							}
+						}
+					};
+				}
+			}, 0);
 
-		try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(jarFile, false)) {
-			ThreadingUtils.TaskCompleter completer = ThreadingUtils.taskCompleter();
+			if (node != null) {
+				node.accept(writer);
+			}
 
-			for (Path file : (Iterable<? extends Path>) Files.walk(fs.getPath("/"))::iterator) {
-				if (!file.toString().endsWith(".class")) continue;
+			return writer.toByteArray();
+		});
+	}
 
-				completer.add(() -> {
-					byte[] bytes = Files.readAllBytes(file);
-					ClassReader reader = new ClassReader(bytes);
-					ClassNode node = new ClassNode();
-					ClassVisitor visitor = new ParameterAnnotationFixer(node, null);
-					reader.accept(visitor, 0);
+	/**
+	 * Checks the constant pool of a class for the vignette parameter names, and for parameter annotations
+	 * when they are fixed, as the post patch transform leaves other classes untouched.
+	 */
+	private static boolean needsPostPatchTransform(ClassReader reader, Pattern vignetteParameters, boolean fixParameterAnnotations) {
+		final char[] buffer = new char[reader.getMaxStringLength()];
 
-					ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
-					node.accept(writer);
-					byte[] out = writer.toByteArray();
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			final int offset = reader.getItem(i);
 
-					if (!Arrays.equals(bytes, out)) {
-						Files.delete(file);
-						Files.write(file, out);
-					}
-				});
+			// The offset is 0 for the second slot of long and double constants, the tag precedes the offset
+			if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_UTF8) {
+				continue;
 			}
 
-			completer.complete();
-		}
-
-		logger.info(":fixed parameter annotations for " + jarFile.toAbsolutePath() + " in " + stopwatch);
-	}
+			final int length = reader.readUnsignedShort(offset);
 
-	private void deleteParameterNames(Path jarFile) throws Exception {
-		logger.info(":deleting parameter names for " + jarFile.toAbsolutePath());
-		Stopwatch stopwatch = Stopwatch.createStarted();
+			// The names looked for are ASCII, which is encoded the same in modified UTF-8
+			for (int j = 0; j < length; j++) {
+				buffer[j] = (char) reader.readByte(offset + 2 + j);
+			}
 
-		try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(jarFile, false)) {
-			ThreadingUtils.TaskCompleter completer = ThreadingUtils.taskCompleter();
-			Pattern vignetteParameters = Pattern.compile("p_[0-9a-zA-Z]+_(?:[0-9a-zA-Z]+_)?");
+			final String value = new String(buffer, 0, length);
 
-			for (Path file : (Iterable<? extends Path>) Files.walk(fs.getPath("/"))::iterator) {
-				if (!file.toString().endsWith(".class")) continue;
+			if (vignetteParameters.matcher(value).matches()) {
+				return true;
+			}
 
-				completer.add(() -> {
-					byte[] bytes = Files.readAllBytes(file);
-					ClassReader reader = new ClassReader(bytes);
-					ClassWriter writer = new ClassWriter(0);
+			if (fixParameterAnnotations && (value.equals("RuntimeVisibleParameterAnnotations") || value.equals("RuntimeInvisibleParameterAnnotations"))) {
+				return true;
+			}
+		}
 
-					reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
-						@Override
-						public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-							return new MethodVisitor(Opcodes.ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
-								@Override
-								public void visitParameter(String name, int access) {
-									if (vignetteParameters.matcher(name).matches()) {
-										super.visitParameter(null, access);
-									} else {
-										super.visitParameter(name, access);
-									}
-								}
-
-								@Override
-								public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
-									if (!vignetteParameters.matcher(name).matches()) {
-										super.visitLocalVariable(name, descriptor, signature, start, end, index);
-									}
-								}
-							};
-						}
-					}, 0);
+		return false;
+	}
 
-					byte[] out = writer.toByteArray();
+	private void transformPatchedClasses(Path jarFile) throws IOException {
+		logger.info(":transforming patched classes in " + jarFile.toAbsolutePath());
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		ZipUtils.UnsafeUnaryOperator<byte[]> transform = createPostPatchTransform();
+		Map<String, ZipUtils.UnsafeUnaryOperator<byte[]>> transforms = new HashMap<>();
 
-					if (!Arrays.equals(bytes, out)) {
-						Files.delete(file);
-						Files.write(file, out);
-					}
-				});
+		try (RawZipReader reader = RawZipReader.open(jarFile)) {
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (!entry.isDirectory() && entry.name().endsWith(".class")) {
+					transforms.put(entry.name(), transform);
+				}
 			}
-
-			completer.complete();
 		}
 
-		logger.info(":deleted parameter names for " + jarFile.toAbsolutePath() + " in " + stopwatch);
+		ZipUtils.transformParallel(jarFile, transforms);
+		logger.info(":transformed patched classes in " + jarFile.toAbsolutePath() + " in " + stopwatch);
 	}
 
 	private File getForgeJar() {
@@ -535,11 +545,14 @@ public class MinecraftPatchedProvider {
 		} finally {
 			remapper.finish();
 		}
-		copyUserdevFiles(forgeUserdevJar, mcOutput);
-		if (getExtension().isLegacyForge()) {
-			patchForge(logger, mcOutput.toFile());
+		// Keep the output file system open so that the following steps share it and the jar is written once
+		try (FileSystemUtil.Delegate outputFs = FileSystemUtil.getJarFileSystem(mcOutput, false)) {
+			copyUserdevFiles(forgeUserdevJar, mcOutput);
+			if (getExtension().isLegacyForge()) {
+				patchForge(logger, mcOutput.toFile());
+			}
+			applyLoomPatchVersion(mcOutput);
 		}
-		applyLoomPatchVersion(mcOutput);
 	}
 
 	private void patchLegacyJars() throws Exception {
@@ -558,12 +571,7 @@ public class MinecraftPatchedProvider {
 		}
 
 		copyMissingClasses(minecraftSrgJar, minecraftPatchedSrgJar);
-		deleteParameterNames(minecraftPatchedSrgJar);
-
-		if (getExtension().isForgeAndNotOfficial()) {
-			fixParameterAnnotation(minecraftPatchedSrgJar);
-		}
-
+		transformPatchedClasses(minecraftPatchedSrgJar);
 
 		logger.lifecycle(":patched jars in " + stopwatch.stop());
 	}
@@ -575,33 +583,15 @@ public class MinecraftPatchedProvider {
 		}
 		Stopwatch stopwatch = Stopwatch.createStarted();
 		logger.lifecycle(":patching jars");
-		patchJars(minecraftSrgJar, minecraftPatchedSrgJar, type.patches.apply(getExtension().getPatchProvider(), getExtension().getForgeUserdevProvider()));
-		copyMissingClasses(minecraftSrgJar, minecraftPatchedSrgJar);
-		deleteParameterNames(minecraftPatchedSrgJar);
-
-		if (getExtension().isForgeAndNotOfficial()) {
-			fixParameterAnnotation(minecraftPatchedSrgJar);
-		}
-
+		final boolean copyData = getExtension().getForgeUserdevProvider().binaryPatcherConfig.copyData();
+		// The post patch transform is applied while the patched jar is written
+		BinaryPatcher.read(type.patches.apply(getExtension().getPatchProvider(), getExtension().getForgeUserdevProvider()))
+				.apply(minecraftSrgJar, minecraftPatchedSrgJar, true, copyData, createPostPatchTransform());
 		logger.lifecycle(":patched jars in " + stopwatch.stop());
 	}
 
-	private void patchJars(Path clean, Path output, Path patches) {
-		ForgeToolExecutor.exec(project, spec -> {
-			ForgeUserdevProvider.BinaryPatcherConfig config = getExtension().getForgeUserdevProvider().binaryPatcherConfig;
-			spec.classpath(DependencyDownloader.download(project, config.dependency()));
-			spec.getMainClass().set("net.minecraftforge.binarypatcher.ConsoleTool");
-
-			for (String arg : config.args()) {
-				String actual = switch (arg) {
-				case "{clean}" -> clean.toAbsolutePath().toString();
-				case "{output}" -> output.toAbsolutePath().toString();
-				case "{patch}" -> patches.toAbsolutePath().toString();
-				default -> arg;
-				};
-				spec.args(actual);
-			}
-		});
+	private void patchJars(Path clean, Path output, Path patches) throws IOException {
+		BinaryPatcher.read(patches).apply(clean, output, false);
 	}
 
 	private void walkFileSystems(Path source, Path target, Predicate<Path> filter, Function<FileSystem, Iterable<Path>> toWalk, FsPathConsumer action)
@@ -647,12 +637,7 @@ public class MinecraftPatchedProvider {
 	}
 
 	private void copyNonClassFiles(Path source, Path target) throws IOException {
-		Predicate<Path> filter = file -> {
-			String s = file.toString();
-			return !s.endsWith(".class") && !s.startsWith("/META-INF");
-		};
-
-		walkFileSystems(source, target, filter, this::copyReplacing);
+		ZipUtils.copyRaw(source, target, name -> !name.endsWith(".class") && !name.startsWith("META-INF"));
 	}
 
 	private void copyReplacing(FileSystem sourceFs, FileSystem targetFs, Path sourcePath, Path targetPath) throws IOException {
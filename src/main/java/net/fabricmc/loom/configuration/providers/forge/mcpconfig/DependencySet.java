@@ -30,6 +30,7 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -89,20 +90,33 @@ public final class DependencySet {
 			if (!allSteps.containsKey(step) || skipRules.stream().anyMatch(rule -> rule.test(data))) continue;
 			steps.add(step);
 
-			if (!ignoreDependenciesFilter.test(allSteps.get(step))) {
-				allSteps.get(step).config().values().forEach(value -> {
-					if (value instanceof ConfigValue.Variable var) {
-						String name = var.name();
+			getDependencies(data).forEach(queue::offer);
+		}
 
-						if (name.endsWith(PREVIOUS_OUTPUT_SUFFIX) && name.length() > PREVIOUS_OUTPUT_SUFFIX.length()) {
-							String substep = name.substring(0, name.length() - PREVIOUS_OUTPUT_SUFFIX.length());
-							queue.offer(substep);
-						}
+		return steps;
+	}
+
+	/**
+	 * Returns the names of the steps whose outputs the specified step depends on directly.
+	 *
+	 * @param step the step
+	 * @return the direct dependencies of the step
+	 */
+	public Set<String> getDependencies(McpConfigStep step) {
+		Set<String> dependencies = new LinkedHashSet<>();
+
+		if (!ignoreDependenciesFilter.test(step)) {
+			for (ConfigValue value : step.config().values()) {
+				if (value instanceof ConfigValue.Variable var) {
+					String name = var.name();
+
+					if (name.endsWith(PREVIOUS_OUTPUT_SUFFIX) && name.length() > PREVIOUS_OUTPUT_SUFFIX.length()) {
+						dependencies.add(name.substring(0, name.length() - PREVIOUS_OUTPUT_SUFFIX.length()));
 					}
-				});
+				}
 			}
 		}
 
-		return steps;
+		return dependencies;
 	}
 }
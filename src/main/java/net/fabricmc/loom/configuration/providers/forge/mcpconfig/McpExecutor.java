@@ -26,21 +26,33 @@ package net.fabricmc.loom.configuration.providers.forge.mcpconfig;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -50,6 +62,7 @@ import org.gradle.api.logging.LogLevel;
 import org.gradle.api.logging.Logger;
 import org.gradle.process.JavaExecSpec;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.configuration.providers.forge.ConfigValue;
@@ -63,27 +76,40 @@ import net.fabricmc.loom.configuration.providers.forge.mcpconfig.steplogic.Patch
 import net.fabricmc.loom.configuration.providers.forge.mcpconfig.steplogic.StepLogic;
 import net.fabricmc.loom.configuration.providers.forge.mcpconfig.steplogic.StripLogic;
 import net.fabricmc.loom.configuration.providers.minecraft.MinecraftProvider;
+import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.ForgeToolExecutor;
+import net.fabricmc.loom.util.LoomExecutorService;
 import net.fabricmc.loom.util.download.DownloadBuilder;
+import net.fabricmc.loom.util.download.DownloadException;
+import net.fabricmc.loom.util.download.DownloadExecutor;
+import net.fabricmc.loom.util.download.GradleDownloadProgressListener;
 import net.fabricmc.loom.util.function.CollectionUtil;
+import net.fabricmc.loom.util.function.IoConsumer;
+import net.fabricmc.loom.util.gradle.ProgressGroup;
 
 public final class McpExecutor {
 	private static final LogLevel STEP_LOG_LEVEL = LogLevel.LIFECYCLE;
 	private final Project project;
+	private final LoomGradleExtension extension;
 	private final MinecraftProvider minecraftProvider;
 	private final Path cache;
+	private final McpStepCache stepCache;
 	private final List<McpConfigStep> steps;
 	private final DependencySet dependencySet;
 	private final Map<String, McpConfigFunction> functions;
 	private final Map<String, String> config = new HashMap<>();
-	private final Map<String, String> extraConfig = new HashMap<>();
+	private final Map<String, String> stepOutputs = new ConcurrentHashMap<>();
+	private final Map<String, Path> toolJars = new ConcurrentHashMap<>();
 	private @Nullable StepLogic.Provider stepLogicProvider = null;
+	private @Nullable Set<File> minecraftLibraries = null;
 
 	public McpExecutor(Project project, MinecraftProvider minecraftProvider, Path cache, McpConfigProvider provider, String environment) {
 		this.project = project;
+		this.extension = LoomGradleExtension.get(project);
 		this.minecraftProvider = minecraftProvider;
 		this.cache = cache;
+		this.stepCache = new McpStepCache(minecraftProvider.dir("mcp-steps/" + environment).toPath(), project.getLogger());
 		this.steps = provider.getData().steps().get(environment);
 		this.functions = provider.getData().functions();
 		this.dependencySet = new DependencySet(this.steps);
@@ -125,12 +151,6 @@ public final class McpExecutor {
 		config.put(key, value);
 	}
 
-	private Path getDownloadCache() throws IOException {
-		Path downloadCache = cache.resolve("downloads");
-		Files.createDirectories(downloadCache);
-		return downloadCache;
-	}
-
 	private Path getStepCache(String step) {
 		return cache.resolve(step);
 	}
@@ -141,7 +161,7 @@ public final class McpExecutor {
 		return stepCache;
 	}
 
-	private String resolve(McpConfigStep step, ConfigValue value) {
+	private String resolve(McpConfigStep step, @Nullable String output, ConfigValue value) {
 		return value.resolve(variable -> {
 			String name = variable.name();
 			@Nullable ConfigValue valueFromStep = step.config().get(name);
@@ -150,15 +170,18 @@ public final class McpExecutor {
 			// Also skip if it would recurse with the same variable.
 			if (valueFromStep != null && !valueFromStep.equals(variable)) {
 				// Otherwise, resolve the nested variable.
-				return resolve(step, valueFromStep);
+				return resolve(step, output, valueFromStep);
 			}
 
 			if (config.containsKey(name)) {
 				return config.get(name);
-			} else if (extraConfig.containsKey(name)) {
-				return extraConfig.get(name);
+			} else if (stepOutputs.containsKey(name)) {
+				return stepOutputs.get(name);
+			} else if (name.equals(ConfigValue.OUTPUT) && output != null) {
+				return output;
 			} else if (name.equals(ConfigValue.LOG)) {
-				return cache.resolve("log.log").toAbsolutePath().toString();
+				// Each step gets its own log since independent steps can run at the same time.
+				return getStepCache(step.name()).resolve("log.log").toAbsolutePath().toString();
 			}
 
 			throw new IllegalArgumentException("Unknown MCP config variable: " + name);
@@ -196,30 +219,175 @@ public final class McpExecutor {
 	}
 
 	/**
-	 * Executes the specified steps.
+	 * Executes the specified steps. Steps that don't depend on each other are executed concurrently,
+	 * and the outputs of cacheable steps are reused if their inputs haven't changed.
 	 *
-	 * @param steps the steps to execute
-	 * @return the output file of the last executed step
+	 * @param steps the steps to execute, sorted so that each step comes after its dependencies
+	 * @return the output file of the last step
 	 */
 	public Path executeSteps(List<McpConfigStep> steps) throws IOException {
-		extraConfig.clear();
+		stepOutputs.clear();
 
 		int totalSteps = steps.size();
-		int currentStepIndex = 0;
+		AtomicInteger currentStepIndex = new AtomicInteger();
+		Map<String, StepLogic> stepLogics = new HashMap<>();
+
+		for (McpConfigStep step : steps) {
+			stepLogics.put(step.name(), getStepLogic(step.name(), step.type()));
+		}
+
+		downloadTools(steps, stepLogics);
+
+		// Resolve the libraries up front: Gradle doesn't allow resolving configurations from the worker threads.
+		if (stepLogics.values().stream().anyMatch(ListLibrariesLogic.class::isInstance)) {
+			getMinecraftLibraries();
+		}
+
+		// Only the tools themselves run on the worker threads, the project's services and toolchain are resolved here.
+		ForgeToolExecutor.Settings toolSettings = ForgeToolExecutor.getSettings(project);
 
 		project.getLogger().log(STEP_LOG_LEVEL, ":executing {} MCP steps", totalSteps);
 
-		for (McpConfigStep currentStep : steps) {
-			currentStepIndex++;
-			StepLogic stepLogic = getStepLogic(currentStep.name(), currentStep.type());
-			project.getLogger().log(STEP_LOG_LEVEL, ":step {}/{} - {}", currentStepIndex, totalSteps, stepLogic.getDisplayName(currentStep.name()));
+		LoomExecutorService executor = LoomExecutorService.get();
+		runSteps(steps, this::getDependencies, task -> executor.getPool().execute(executor.instrument("McpExecutor.executeSteps", task)),
+				step -> executeStep(step, stepLogics.get(step.name()), toolSettings, currentStepIndex.incrementAndGet(), totalSteps));
+
+		for (int i = steps.size() - 1; i >= 0; i--) {
+			@Nullable String output = stepOutputs.get(steps.get(i).name() + ConfigValue.PREVIOUS_OUTPUT_SUFFIX);
+			if (output != null) return Path.of(output);
+		}
+
+		throw new NoSuchElementException("None of the executed MCP steps produced an output");
+	}
+
+	/**
+	 * Runs each step as soon as the steps it depends on have completed, so that independent steps run concurrently.
+	 * When a step fails, the steps depending on it are skipped and the failure is rethrown once the others are done.
+	 *
+	 * @param steps        the steps, sorted so that each step comes after its dependencies
+	 * @param dependencies the names of the steps a step depends on, the steps that aren't run are ignored
+	 * @param executor     the executor to run the steps on
+	 * @param action       runs a step
+	 */
+	@VisibleForTesting
+	public static void runSteps(List<McpConfigStep> steps, Function<McpConfigStep, Set<String>> dependencies, Executor executor, IoConsumer<McpConfigStep> action) throws IOException {
+		Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+
+		for (McpConfigStep step : steps) {
+			CompletableFuture<?>[] stepDependencies = dependencies.apply(step).stream()
+					.map(futures::get)
+					.filter(Objects::nonNull)
+					.toArray(CompletableFuture[]::new);
+
+			futures.put(step.name(), CompletableFuture.allOf(stepDependencies).thenRunAsync(() -> {
+				try {
+					action.accept(step);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, executor));
+		}
+
+		try {
+			CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException uio) {
+				throw uio.getCause();
+			} else if (e.getCause() instanceof RuntimeException re) {
+				throw re;
+			}
+
+			throw e;
+		}
+	}
+
+	private void executeStep(McpConfigStep step, StepLogic stepLogic, ForgeToolExecutor.Settings toolSettings, int stepIndex, int totalSteps) throws IOException {
+		String displayName = stepLogic.getDisplayName(step.name());
+		project.getLogger().log(STEP_LOG_LEVEL, ":step {}/{} - {}", stepIndex, totalSteps, displayName);
 
-			Stopwatch stopwatch = Stopwatch.createStarted();
-			stepLogic.execute(new ExecutionContextImpl(currentStep));
-			project.getLogger().log(STEP_LOG_LEVEL, ":{} done in {}", currentStep.name(), stopwatch.stop());
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		ExecutionContextImpl context = new ExecutionContextImpl(step, toolSettings);
+		@Nullable String cacheKey = getCacheKey(step, stepLogic, context);
+		@Nullable Path cachedOutput = cacheKey != null ? stepCache.get(step.name(), cacheKey, createStepCache(step.name())) : null;
+
+		if (cachedOutput != null) {
+			context.setOutput(cachedOutput);
+			project.getLogger().log(STEP_LOG_LEVEL, ":step {}/{} - {} up-to-date in {}", stepIndex, totalSteps, displayName, stopwatch.stop());
+			return;
 		}
 
-		return Path.of(extraConfig.get(ConfigValue.OUTPUT));
+		stepLogic.execute(context);
+
+		if (cacheKey != null && context.output != null) {
+			stepCache.put(step.name(), cacheKey, Path.of(context.output));
+		}
+
+		project.getLogger().log(STEP_LOG_LEVEL, ":step {}/{} - {} done in {}", stepIndex, totalSteps, displayName, stopwatch.stop());
+	}
+
+	private Set<String> getDependencies(McpConfigStep step) {
+		Set<String> dependencies = new LinkedHashSet<>(dependencySet.getDependencies(step));
+		@Nullable McpConfigFunction function = functions.get(step.type());
+
+		// Function arguments can refer to the outputs of other steps directly.
+		if (function != null && !getStepLogic(step.name(), step.type()).hasNoContext()) {
+			Stream.concat(function.args().stream(), function.jvmArgs().stream())
+					.filter(ConfigValue.Variable.class::isInstance)
+					.map(value -> ((ConfigValue.Variable) value).name())
+					.filter(name -> name.endsWith(ConfigValue.PREVIOUS_OUTPUT_SUFFIX) && name.length() > ConfigValue.PREVIOUS_OUTPUT_SUFFIX.length())
+					.map(name -> name.substring(0, name.length() - ConfigValue.PREVIOUS_OUTPUT_SUFFIX.length()))
+					.forEach(dependencies::add);
+		}
+
+		return dependencies;
+	}
+
+	private @Nullable String getCacheKey(McpConfigStep step, StepLogic stepLogic, ExecutionContextImpl context) throws IOException {
+		@Nullable List<ConfigValue> inputs = stepLogic.getCacheInputs(context);
+		if (inputs == null) return null;
+
+		Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putString(step.type(), StandardCharsets.UTF_8);
+
+		for (ConfigValue input : inputs) {
+			// The output and log paths are chosen by the executor and don't affect the result.
+			if (input instanceof ConfigValue.Variable variable
+					&& (variable.name().equals(ConfigValue.OUTPUT) || variable.name().equals(ConfigValue.LOG))) {
+				continue;
+			}
+
+			hashValue(hasher, context.resolve(input));
+		}
+
+		return hasher.hash().toString();
+	}
+
+	private static void hashValue(Hasher hasher, String value) throws IOException {
+		@Nullable Path path;
+
+		try {
+			path = Path.of(value);
+		} catch (InvalidPathException e) {
+			path = null;
+		}
+
+		if (path == null || !path.isAbsolute() || Files.notExists(path)) {
+			hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+		} else if (Files.isDirectory(path)) {
+			final Path root = path;
+
+			try (Stream<Path> files = Files.walk(root)) {
+				Iterator<Path> iter = files.filter(Files::isRegularFile).sorted(Comparator.comparing(Path::toString)).iterator();
+
+				while (iter.hasNext()) {
+					Path file = iter.next();
+					hasher.putString(root.relativize(file).toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+					hasher.putBytes(Checksum.sha256(file.toFile()));
+				}
+			}
+		} else {
+			hasher.putBytes(Checksum.sha256(path.toFile()));
+		}
 	}
 
 	/**
@@ -257,11 +425,114 @@ public final class McpExecutor {
 		};
 	}
 
+	private synchronized Set<File> getMinecraftLibraries() {
+		if (minecraftLibraries == null) {
+			// (1.2) minecraftRuntimeLibraries contains the compile-time libraries as well.
+			minecraftLibraries = project.getConfigurations().getByName(Constants.Configurations.MINECRAFT_RUNTIME_LIBRARIES).resolve();
+		}
+
+		return minecraftLibraries;
+	}
+
+	/**
+	 * Downloads the programs of all function steps that are going to be executed concurrently
+	 * instead of one at a time when each step starts.
+	 */
+	private void downloadTools(List<McpConfigStep> steps, Map<String, StepLogic> stepLogics) throws IOException {
+		Set<String> urls = new LinkedHashSet<>();
+
+		for (McpConfigStep step : steps) {
+			if (stepLogics.get(step.name()) instanceof FunctionLogic) {
+				String url = toSecureUrl(functions.get(step.type()).getDownloadUrl());
+				if (!toolJars.containsKey(url)) urls.add(url);
+			}
+		}
+
+		if (urls.isEmpty()) return;
+
+		try (ProgressGroup progressGroup = new ProgressGroup(project, "Download MCP tools");
+				DownloadExecutor executor = new DownloadExecutor(Math.min(urls.size(), 4))) {
+			for (String url : urls) {
+				final String name = url.substring(url.lastIndexOf('/') + 1);
+
+				executor.runAsync(() -> {
+					Path path = getToolPath(url);
+					createToolDownload(url, path)
+							.progress(new GradleDownloadProgressListener(name, progressGroup::createProgressLogger))
+							.downloadPath(path);
+					toolJars.put(url, path);
+				});
+			}
+		}
+	}
+
+	private Path download(String url) throws IOException {
+		final String secureUrl = toSecureUrl(url);
+		@Nullable Path path = toolJars.get(secureUrl);
+		if (path != null) return path;
+
+		path = getToolPath(secureUrl);
+		createToolDownload(secureUrl, path).downloadPath(path);
+		toolJars.put(secureUrl, path);
+		return path;
+	}
+
+	private Path getToolPath(String url) {
+		String fileName = url.substring(url.lastIndexOf('/') + 1);
+		String hash = Hashing.sha256().hashString(url, StandardCharsets.UTF_8).toString().substring(0, 24);
+		return extension.getFiles().getUserCache().toPath().resolve("mcp-tools").resolve(hash).resolve(fileName);
+	}
+
+	private DownloadBuilder createToolDownload(String url, Path path) throws DownloadException {
+		DownloadBuilder builder = extension.download(url);
+		@Nullable String sha1 = getToolSha1(url, path);
+
+		if (sha1 != null) {
+			builder.sha1(sha1);
+		} else {
+			builder.defaultCache();
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Reads the checksum published next to a Maven artifact. As release artifacts are immutable,
+	 * the checksum is only downloaded once.
+	 */
+	private @Nullable String getToolSha1(String url, Path path) {
+		Path sha1File = path.resolveSibling(path.getFileName() + ".sha1");
+		String sha1;
+
+		try {
+			if (Files.exists(sha1File)) {
+				sha1 = Files.readString(sha1File, StandardCharsets.UTF_8);
+			} else {
+				sha1 = extension.download(url + ".sha1").downloadString(sha1File);
+			}
+		} catch (IOException e) {
+			project.getLogger().info("Could not get the checksum of {}, downloading without an integrity check", url, e);
+			return null;
+		}
+
+		// Some repositories append the file name after the hash.
+		String[] parts = sha1.trim().split("\\s+");
+		return parts.length > 0 && parts[0].length() == 40 ? parts[0] : null;
+	}
+
+	// Some of these files linked to the old Forge maven over plain HTTP, the new one only serves HTTPS.
+	private static String toSecureUrl(String url) {
+		return url.startsWith("http://") ? "https://" + url.substring("http://".length()) : url;
+	}
+
 	private class ExecutionContextImpl implements StepLogic.ExecutionContext {
 		private final McpConfigStep step;
+		private final ForgeToolExecutor.Settings toolSettings;
+		private @Nullable String output;
 
-		ExecutionContextImpl(McpConfigStep step) {
+		ExecutionContextImpl(McpConfigStep step, ForgeToolExecutor.Settings toolSettings) {
 			this.step = step;
+			this.toolSettings = toolSettings;
 		}
 
 		@Override
@@ -277,8 +548,8 @@ public final class McpExecutor {
 		@Override
 		public Path setOutput(Path output) {
 			String absolutePath = output.toAbsolutePath().toString();
-			extraConfig.put(ConfigValue.OUTPUT, absolutePath);
-			extraConfig.put(step.name() + ConfigValue.PREVIOUS_OUTPUT_SUFFIX, absolutePath);
+			this.output = absolutePath;
+			stepOutputs.put(step.name() + ConfigValue.PREVIOUS_OUTPUT_SUFFIX, absolutePath);
 			return output;
 		}
 
@@ -289,55 +560,32 @@ public final class McpExecutor {
 
 		@Override
 		public Path mappings() {
-			return LoomGradleExtension.get(project).getMcpConfigProvider().getMappings();
+			return extension.getMcpConfigProvider().getMappings();
 		}
 
 		@Override
 		public String resolve(ConfigValue value) {
-			return McpExecutor.this.resolve(step, value);
+			return McpExecutor.this.resolve(step, output, value);
 		}
 
 		@Override
 		public Path download(String url) throws IOException {
-			Path path = getDownloadCache().resolve(Hashing.sha256().hashString(url, StandardCharsets.UTF_8).toString().substring(0, 24));
-			redirectAwareDownload(url, path);
-			return path;
+			return McpExecutor.this.download(url);
 		}
 
 		@Override
 		public DownloadBuilder downloadBuilder(String url) {
-			return LoomGradleExtension.get(project).download(url);
-		}
-
-		// Some of these files linked to the old Forge maven, let's follow the redirects to the new one.
-		private static void redirectAwareDownload(String urlString, Path path) throws IOException {
-			URL url = new URL(urlString);
-
-			if (url.getProtocol().equals("http")) {
-				url = new URL("https", url.getHost(), url.getPort(), url.getFile());
-			}
-
-			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-			connection.connect();
-
-			if (connection.getResponseCode() == HttpURLConnection.HTTP_MOVED_PERM || connection.getResponseCode() == HttpURLConnection.HTTP_MOVED_TEMP) {
-				redirectAwareDownload(connection.getHeaderField("Location"), path);
-			} else {
-				try (InputStream in = connection.getInputStream()) {
-					Files.copy(in, path);
-				}
-			}
+			return extension.download(url);
 		}
 
 		@Override
 		public void javaexec(Action<? super JavaExecSpec> configurator) {
-			ForgeToolExecutor.exec(project, configurator).rethrowFailure().assertNormalExitValue();
+			toolSettings.exec(configurator).rethrowFailure().assertNormalExitValue();
 		}
 
 		@Override
 		public Set<File> getMinecraftLibraries() {
-			// (1.2) minecraftRuntimeLibraries contains the compile-time libraries as well.
-			return project.getConfigurations().getByName(Constants.Configurations.MINECRAFT_RUNTIME_LIBRARIES).resolve();
+			return McpExecutor.this.getMinecraftLibraries();
 		}
 	}
 }
@@ -0,0 +1,197 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.configuration.providers.forge.mcpconfig;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.gradle.api.logging.Logger;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Stores the outputs of cacheable MCP steps by the hash of their inputs, only the latest output of each step is kept.
+ *
+ * <p>The cache is shared by all the builds using the same Minecraft version. Cached outputs are copied out, and old
+ * outputs pruned, while holding a lock file per step, so an output can't be deleted while it is being copied.
+ */
+public final class McpStepCache {
+	private static final String LOCK_FILE = ".lock";
+	private static final String TEMP_SUFFIX = ".tmp";
+	// File locks are held by the whole JVM, so the threads of a JVM take turns first.
+	private static final Map<Path, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+	private final Path root;
+	private final Logger logger;
+
+	public McpStepCache(Path root, Logger logger) {
+		this.root = root.toAbsolutePath().normalize();
+		this.logger = logger;
+	}
+
+	/**
+	 * Copies the cached output of a step to a directory.
+	 *
+	 * @param step      the name of the step
+	 * @param key       the hash of the step's inputs
+	 * @param directory the directory to copy the output to
+	 * @return the copied output, or null if the output isn't cached
+	 */
+	public @Nullable Path get(String step, String key, Path directory) throws IOException {
+		Path stepDir = root.resolve(step);
+		Path entry = stepDir.resolve(key);
+		if (!Files.isDirectory(entry)) return null;
+
+		return withLock(stepDir, () -> {
+			@Nullable Path cached;
+
+			try (Stream<Path> files = Files.list(entry)) {
+				cached = files.filter(Files::isRegularFile).findFirst().orElse(null);
+			} catch (NoSuchFileException e) {
+				// Pruned by another build since the check above.
+				return null;
+			}
+
+			if (cached == null) return null;
+
+			Files.createDirectories(directory);
+			Path output = directory.resolve(cached.getFileName().toString());
+			Files.copy(cached, output, StandardCopyOption.REPLACE_EXISTING);
+			return output;
+		});
+	}
+
+	/**
+	 * Stores the output of a step and prunes the step's older outputs.
+	 * The pruning is skipped while another build holds the step's lock.
+	 *
+	 * @param step   the name of the step
+	 * @param key    the hash of the step's inputs
+	 * @param output the output file
+	 */
+	public void put(String step, String key, Path output) throws IOException {
+		if (!Files.isRegularFile(output)) return;
+
+		Path stepDir = root.resolve(step);
+		Path entry = stepDir.resolve(key);
+		Path tempEntry = stepDir.resolve(key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+		Files.createDirectories(tempEntry);
+		Files.copy(output, tempEntry.resolve(output.getFileName().toString()));
+
+		try {
+			Files.move(tempEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// Another build stored the same output first.
+			logger.info("Could not store the output of MCP step {} in the cache", step, e);
+			deleteRecursively(tempEntry);
+			return;
+		}
+
+		boolean pruned = tryWithLock(stepDir, () -> {
+			try (Stream<Path> entries = Files.list(stepDir)) {
+				for (Path other : (Iterable<Path>) entries::iterator) {
+					String name = other.getFileName().toString();
+
+					// Skips the lock file, and the outputs being stored by other builds.
+					if (!other.equals(entry) && !name.equals(LOCK_FILE) && !name.endsWith(TEMP_SUFFIX)) {
+						deleteRecursively(other);
+					}
+				}
+			}
+
+			return null;
+		});
+
+		if (!pruned) {
+			logger.info("Not pruning the cached outputs of MCP step {}, the cache is in use", step);
+		}
+	}
+
+	private <T> T withLock(Path stepDir, LockedAction<T> action) throws IOException {
+		Files.createDirectories(stepDir);
+		ReentrantLock jvmLock = getJvmLock(stepDir);
+		jvmLock.lock();
+
+		try (FileChannel channel = FileChannel.open(stepDir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.lock()) {
+			return action.run();
+		} finally {
+			jvmLock.unlock();
+		}
+	}
+
+	private boolean tryWithLock(Path stepDir, LockedAction<?> action) throws IOException {
+		ReentrantLock jvmLock = getJvmLock(stepDir);
+		if (!jvmLock.tryLock()) return false;
+
+		try (FileChannel channel = FileChannel.open(stepDir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				@Nullable FileLock lock = tryLock(channel)) {
+			if (lock == null) return false;
+
+			action.run();
+			return true;
+		} finally {
+			jvmLock.unlock();
+		}
+	}
+
+	private static @Nullable FileLock tryLock(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// Held by another copy of Loom loaded in this JVM.
+			return null;
+		}
+	}
+
+	private static ReentrantLock getJvmLock(Path stepDir) {
+		return JVM_LOCKS.computeIfAbsent(stepDir, path -> new ReentrantLock());
+	}
+
+	private static void deleteRecursively(Path path) throws IOException {
+		try (Stream<Path> files = Files.walk(path)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface LockedAction<T> {
+		T run() throws IOException;
+	}
+}
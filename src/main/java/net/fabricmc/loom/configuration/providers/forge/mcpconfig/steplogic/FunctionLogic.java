@@ -26,9 +26,12 @@ package net.fabricmc.loom.configuration.providers.forge.mcpconfig.steplogic;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 
+import net.fabricmc.loom.configuration.providers.forge.ConfigValue;
 import net.fabricmc.loom.configuration.providers.forge.mcpconfig.McpConfigFunction;
 
 /**
@@ -64,6 +67,15 @@ public final class FunctionLogic implements StepLogic {
 		});
 	}
 
+	@Override
+	public List<ConfigValue> getCacheInputs(ExecutionContext context) throws IOException {
+		List<ConfigValue> inputs = new ArrayList<>();
+		inputs.add(new ConfigValue.Constant(context.download(function.getDownloadUrl()).toAbsolutePath().toString()));
+		inputs.addAll(function.args());
+		inputs.addAll(function.jvmArgs());
+		return inputs;
+	}
+
 	@Override
 	public String getDisplayName(String stepName) {
 		return stepName + " with " + function.version();
@@ -30,6 +30,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
+import java.util.List;
 import java.util.stream.Stream;
 
 import net.fabricmc.loom.configuration.providers.forge.ConfigValue;
@@ -63,4 +64,9 @@ public final class InjectLogic implements StepLogic {
 			}
 		}
 	}
+
+	@Override
+	public List<ConfigValue> getCacheInputs(ExecutionContext context) {
+		return List.of(new ConfigValue.Variable("input"), new ConfigValue.Variable("inject"));
+	}
 }
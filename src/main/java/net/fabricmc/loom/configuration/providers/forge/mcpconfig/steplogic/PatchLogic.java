@@ -26,6 +26,7 @@ package net.fabricmc.loom.configuration.providers.forge.mcpconfig.steplogic;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 import codechicken.diffpatch.cli.CliOperation;
 import codechicken.diffpatch.cli.PatchOperation;
@@ -57,4 +58,9 @@ public final class PatchLogic implements StepLogic {
 			throw new RuntimeException("Could not patch " + input + "; rejects saved to " + rejects.toAbsolutePath());
 		}
 	}
+
+	@Override
+	public List<ConfigValue> getCacheInputs(ExecutionContext context) {
+		return List.of(new ConfigValue.Variable("input"), new ConfigValue.Variable("patches"));
+	}
 }
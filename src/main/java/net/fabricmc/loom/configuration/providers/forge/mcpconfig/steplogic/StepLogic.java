@@ -34,6 +34,7 @@ import java.util.Set;
 import org.gradle.api.Action;
 import org.gradle.api.logging.Logger;
 import org.gradle.process.JavaExecSpec;
+import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.loom.configuration.providers.forge.ConfigValue;
 import net.fabricmc.loom.util.download.DownloadBuilder;
@@ -53,6 +54,17 @@ public interface StepLogic {
 		return false;
 	}
 
+	/**
+	 * Returns the values that determine the output of this step. Values that resolve to
+	 * existing files or directories are hashed by their contents.
+	 *
+	 * @param context the execution context of the step
+	 * @return the cache inputs, or {@code null} if the output of this step should not be cached
+	 */
+	default @Nullable List<ConfigValue> getCacheInputs(ExecutionContext context) throws IOException {
+		return null;
+	}
+
 	interface ExecutionContext {
 		Logger logger();
 		Path setOutput(String fileName) throws IOException;
@@ -30,6 +30,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -80,6 +81,11 @@ public final class StripLogic implements StepLogic {
 		}
 	}
 
+	@Override
+	public List<ConfigValue> getCacheInputs(ExecutionContext context) {
+		return List.of(new ConfigValue.Variable("input"), new ConfigValue.Constant(context.mappings().toAbsolutePath().toString()));
+	}
+
 	private static String trimLeadingSlash(String string) {
 		if (string.startsWith(File.separator)) {
 			return string.substring(File.separator.length());
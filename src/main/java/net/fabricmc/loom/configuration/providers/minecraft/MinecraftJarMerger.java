@@ -27,51 +27,45 @@ package net.fabricmc.loom.configuration.providers.minecraft;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.BasicFileAttributeView;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 
 import net.fabricmc.loom.util.Constants;
-import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.SnowmanClassVisitor;
 import net.fabricmc.loom.util.SyntheticParameterClassVisitor;
+import net.fabricmc.loom.util.ThreadingUtils;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
 
+/**
+ * Merges the client and server jars into a single jar.
+ *
+ * <p>Only the central directories of the input jars are read up front. Entries are then merged in sorted order,
+ * in parallel batches to bound the memory used, and written straight to the output jar. Entries that don't
+ * have to be changed are copied without being decompressed.
+ */
 public class MinecraftJarMerger implements AutoCloseable {
-	public static class Entry {
-		public final Path path;
-		public final BasicFileAttributes metadata;
-		public final byte[] data;
-
-		public Entry(Path path, BasicFileAttributes metadata, byte[] data) {
-			this.path = path;
-			this.metadata = metadata;
-			this.data = data;
-		}
-	}
+	/**
+	 * The number of entries that are merged in parallel before being written.
+	 */
+	private static final int BATCH_SIZE = 256;
+	private static final String MANIFEST = "META-INF/MANIFEST.MF";
+	private static final byte[] MANIFEST_DATA = "Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n".getBytes(StandardCharsets.UTF_8);
 
 	private static final MinecraftClassMerger CLASS_MERGER = new MinecraftClassMerger();
-	private final FileSystemUtil.Delegate inputClientFs, inputServerFs, outputFs;
-	private final Path inputClient, inputServer;
-	private final Map<String, Entry> entriesClient, entriesServer;
-	private final Set<String> entriesAll;
+	private final RawZipReader inputClient, inputServer;
+	private final File output;
 	private boolean removeSnowmen = false;
 	private boolean offsetSyntheticsParams = false;
 
@@ -82,13 +76,16 @@ public class MinecraftJarMerger implements AutoCloseable {
 			}
 		}
 
-		this.inputClient = (inputClientFs = FileSystemUtil.getJarFileSystem(inputClient, false)).get().getPath("/");
-		this.inputServer = (inputServerFs = FileSystemUtil.getJarFileSystem(inputServer, false)).get().getPath("/");
-		this.outputFs = FileSystemUtil.getJarFileSystem(output, true);
+		this.inputClient = RawZipReader.open(inputClient.toPath());
 
-		this.entriesClient = new HashMap<>();
-		this.entriesServer = new HashMap<>();
-		this.entriesAll = new TreeSet<>();
+		try {
+			this.inputServer = RawZipReader.open(inputServer.toPath());
+		} catch (IOException e) {
+			this.inputClient.close();
+			throw e;
+		}
+
+		this.output = output;
 	}
 
 	public void enableSnowmanRemoval() {
@@ -101,148 +98,139 @@ public class MinecraftJarMerger implements AutoCloseable {
 
 	@Override
 	public void close() throws IOException {
-		inputClientFs.close();
-		inputServerFs.close();
-		outputFs.close();
+		inputClient.close();
+		inputServer.close();
 	}
 
-	private void readToMap(Map<String, Entry> map, Path input) {
-		try {
-			Files.walkFileTree(input, new SimpleFileVisitor<>() {
-				@Override
-				public FileVisitResult visitFile(Path path, BasicFileAttributes attr) throws IOException {
-					if (attr.isDirectory()) {
-						return FileVisitResult.CONTINUE;
+	public void merge() throws IOException {
+		final Map<String, ZipEntryInfo> entriesClient = index(inputClient);
+		final Map<String, ZipEntryInfo> entriesServer = index(inputServer);
+		final Set<String> names = new TreeSet<>(entriesClient.keySet());
+		names.addAll(entriesServer.keySet());
+
+		final List<String> entriesAll = List.copyOf(names);
+
+		try (RawZipWriter writer = RawZipWriter.create(output.toPath())) {
+			for (int start = 0; start < entriesAll.size(); start += BATCH_SIZE) {
+				final List<String> batch = entriesAll.subList(start, Math.min(start + BATCH_SIZE, entriesAll.size()));
+				final List<Merged> merged = ThreadingUtils.get(batch.stream()
+						.<ThreadingUtils.UnsafeCallable<Merged>>map(name -> () -> mergeEntry(name, entriesClient.get(name), entriesServer.get(name)))
+						.toList());
+
+				for (Merged entry : merged) {
+					if (entry == null) {
+						continue;
 					}
 
-					if (!path.getFileName().toString().endsWith(".class")) {
-						if (path.toString().equals("/META-INF/MANIFEST.MF")) {
-							map.put("META-INF/MANIFEST.MF", new Entry(path, attr,
-									"Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n".getBytes(StandardCharsets.UTF_8)));
-						} else {
-							if (path.toString().startsWith("/META-INF/")) {
-								if (path.toString().endsWith(".SF") || path.toString().endsWith(".RSA")) {
-									return FileVisitResult.CONTINUE;
-								}
-							}
-
-							map.put(path.toString().substring(1), new Entry(path, attr, null));
-						}
-
-						return FileVisitResult.CONTINUE;
-					}
+					writer.writeDirectories(entry.source().name(), entry.source().dosTime());
 
-					byte[] output = Files.readAllBytes(path);
-					map.put(path.toString().substring(1), new Entry(path, attr, output));
-					return FileVisitResult.CONTINUE;
+					if (entry.prepared() != null) {
+						writer.write(entry.prepared());
+					} else {
+						writer.writeRaw(entry.source(), entry.reader().readRaw(entry.source()));
+					}
 				}
-			});
-		} catch (IOException e) {
-			e.printStackTrace();
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(output.toPath());
+			throw e;
 		}
 	}
 
-	private void add(Entry entry) throws IOException {
-		Path outPath = outputFs.get().getPath(entry.path.toString());
+	private static Map<String, ZipEntryInfo> index(RawZipReader reader) {
+		final Map<String, ZipEntryInfo> entries = new HashMap<>();
 
-		if (outPath.getParent() != null) {
-			Files.createDirectories(outPath.getParent());
-		}
+		for (ZipEntryInfo entry : reader.entries()) {
+			final String name = entry.name();
 
-		if (entry.data != null) {
-			Files.write(outPath, entry.data, StandardOpenOption.CREATE_NEW);
-		} else {
-			Files.copy(entry.path, outPath);
+			if (entry.isDirectory()) {
+				continue;
+			}
+
+			if (name.startsWith("META-INF/") && (name.endsWith(".SF") || name.endsWith(".RSA"))) {
+				continue;
+			}
+
+			entries.put(name, entry);
 		}
 
-		Files.getFileAttributeView(outPath, BasicFileAttributeView.class)
-				.setTimes(
-						entry.metadata.creationTime(),
-						entry.metadata.lastAccessTime(),
-						entry.metadata.lastModifiedTime()
-				);
+		return entries;
 	}
 
-	public void merge() throws IOException {
-		ExecutorService service = Executors.newFixedThreadPool(2);
-		service.submit(() -> readToMap(entriesClient, inputClient));
-		service.submit(() -> readToMap(entriesServer, inputServer));
-		service.shutdown();
+	private @Nullable Merged mergeEntry(String name, @Nullable ZipEntryInfo entry1, @Nullable ZipEntryInfo entry2) throws IOException {
+		boolean isClass = name.endsWith(".class");
+		boolean isMinecraft = entry1 != null || name.startsWith("net/minecraft") || !name.contains("/");
+		String side = null;
 
-		try {
-			service.awaitTermination(1, TimeUnit.HOURS);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		if (entry1 == null) {
+			side = "SERVER";
+		} else if (entry2 == null) {
+			side = "CLIENT";
 		}
 
-		entriesAll.addAll(entriesClient.keySet());
-		entriesAll.addAll(entriesServer.keySet());
+		if (isClass && !isMinecraft && "SERVER".equals(side)) {
+			// Server bundles libraries, client doesn't - skip them
+			return null;
+		}
 
-		List<Entry> entries = entriesAll.parallelStream().map((entry) -> {
-			boolean isClass = entry.endsWith(".class");
-			boolean isMinecraft = entriesClient.containsKey(entry) || entry.startsWith("net/minecraft") || !entry.contains("/");
-			Entry result;
-			String side = null;
+		final RawZipReader reader = entry1 != null ? inputClient : inputServer;
+		final ZipEntryInfo source = entry1 != null ? entry1 : entry2;
 
-			Entry entry1 = entriesClient.get(entry);
-			Entry entry2 = entriesServer.get(entry);
+		if (name.equals(MANIFEST)) {
+			return new Merged(reader, source, RawZipWriter.prepare(name, MANIFEST_DATA, source.dosTime()));
+		}
 
-			if (entry1 != null && entry2 != null) {
-				if (Arrays.equals(entry1.data, entry2.data)) {
-					result = entry1;
-				} else {
-					if (isClass) {
-						result = new Entry(entry1.path, entry1.metadata, CLASS_MERGER.merge(entry1.data, entry2.data));
-					} else {
-						// FIXME: More heuristics?
-						result = entry1;
-					}
-				}
-			} else if ((result = entry1) != null) {
-				side = "CLIENT";
-			} else if ((result = entry2) != null) {
-				side = "SERVER";
-			}
+		if (!isClass) {
+			// FIXME: More heuristics?
+			return new Merged(reader, source, null);
+		}
+
+		final boolean transform = isMinecraft && (side != null || removeSnowmen || offsetSyntheticsParams);
+		byte[] data = null;
+
+		if (entry1 != null && entry2 != null) {
+			final byte[] data1 = inputClient.read(entry1);
+			final byte[] data2 = inputServer.read(entry2);
 
-			if (isClass && !isMinecraft && "SERVER".equals(side)) {
-				// Server bundles libraries, client doesn't - skip them
-				return null;
+			if (!Arrays.equals(data1, data2)) {
+				data = CLASS_MERGER.merge(data1, data2);
+			} else if (transform) {
+				data = data1;
 			}
+		}
 
-			if (result != null) {
-				if (isMinecraft && isClass) {
-					byte[] data = result.data;
-					ClassReader reader = new ClassReader(data);
-					ClassWriter writer = new ClassWriter(0);
-					ClassVisitor visitor = writer;
+		if (data == null) {
+			if (!transform) {
+				return new Merged(reader, source, null);
+			}
 
-					if (side != null) {
-						visitor = new MinecraftClassMerger.SidedClassVisitor(Constants.ASM_VERSION, visitor, side);
-					}
+			data = reader.read(source);
+		}
 
-					if (removeSnowmen) {
-						visitor = new SnowmanClassVisitor(Constants.ASM_VERSION, visitor);
-					}
+		if (transform) {
+			ClassReader classReader = new ClassReader(data);
+			ClassWriter writer = new ClassWriter(0);
+			ClassVisitor visitor = writer;
 
-					if (offsetSyntheticsParams) {
-						visitor = new SyntheticParameterClassVisitor(Constants.ASM_VERSION, visitor);
-					}
+			if (side != null) {
+				visitor = new MinecraftClassMerger.SidedClassVisitor(Constants.ASM_VERSION, visitor, side);
+			}
 
-					if (visitor != writer) {
-						reader.accept(visitor, 0);
-						data = writer.toByteArray();
-						result = new Entry(result.path, result.metadata, data);
-					}
-				}
+			if (removeSnowmen) {
+				visitor = new SnowmanClassVisitor(Constants.ASM_VERSION, visitor);
+			}
 
-				return result;
-			} else {
-				return null;
+			if (offsetSyntheticsParams) {
+				visitor = new SyntheticParameterClassVisitor(Constants.ASM_VERSION, visitor);
 			}
-		}).filter(Objects::nonNull).toList();
 
-		for (Entry e : entries) {
-			add(e);
+			classReader.accept(visitor, 0);
+			data = writer.toByteArray();
 		}
+
+		return new Merged(reader, source, RawZipWriter.prepare(name, data, source.dosTime()));
+	}
+
+	private record Merged(RawZipReader reader, ZipEntryInfo source, RawZipWriter.@Nullable PreparedEntry prepared) {
 	}
 }
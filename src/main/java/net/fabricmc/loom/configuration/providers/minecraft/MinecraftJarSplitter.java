@@ -28,19 +28,18 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Objects;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
-import java.util.stream.Stream;
 
 import com.google.common.collect.Sets;
 
 import net.fabricmc.loom.configuration.mods.JarSplitter;
-import net.fabricmc.loom.util.FileSystemUtil;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
 
 public class MinecraftJarSplitter implements AutoCloseable {
 	private final Path clientInputJar;
@@ -81,24 +80,13 @@ public class MinecraftJarSplitter implements AutoCloseable {
 	private Set<String> getJarEntries(Path input) throws IOException {
 		Set<String> entries = Sets.newHashSet();
 
-		try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(input);
-				Stream<Path> walk = Files.walk(fs.get().getPath("/"))) {
-			Iterator<Path> iterator = walk.iterator();
-
-			while (iterator.hasNext()) {
-				Path fsPath = iterator.next();
-
-				if (!Files.isRegularFile(fsPath)) {
-					continue;
-				}
-
-				String entryPath = fs.get().getPath("/").relativize(fsPath).toString();
-
-				if (entryPath.startsWith("META-INF/")) {
+		try (RawZipReader reader = RawZipReader.open(input)) {
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (entry.isDirectory() || entry.name().startsWith("META-INF/")) {
 					continue;
 				}
 
-				entries.add(entryPath);
+				entries.add(entry.name());
 			}
 		}
 
@@ -108,35 +96,27 @@ public class MinecraftJarSplitter implements AutoCloseable {
 	private void copyEntriesToJar(Set<String> entries, Path inputJar, Path outputJar, String env) throws IOException {
 		Files.deleteIfExists(outputJar);
 
-		try (FileSystemUtil.Delegate inputFs = FileSystemUtil.getJarFileSystem(inputJar);
-				FileSystemUtil.Delegate outputFs = FileSystemUtil.getJarFileSystem(outputJar, true)) {
-			for (String entry : entries) {
-				Path inputPath = inputFs.get().getPath(entry);
-				Path outputPath = outputFs.get().getPath(entry);
-
-				assert Files.isRegularFile(inputPath);
-
-				Path outputPathParent = outputPath.getParent();
-
-				if (outputPathParent != null) {
-					Files.createDirectories(outputPathParent);
-				}
+		// The entries are copied as is, without decompressing and compressing them again.
+		try (RawZipReader reader = RawZipReader.open(inputJar);
+				RawZipWriter writer = RawZipWriter.create(outputJar)) {
+			final int copied = writer.copyFrom(reader, entries::contains);
 
-				Files.copy(inputPath, outputPath, StandardCopyOption.COPY_ATTRIBUTES);
+			if (copied != entries.size()) {
+				throw new IOException("%d entries of the %s jar were not found in %s".formatted(entries.size() - copied, env, inputJar));
 			}
 
-			writeManifest(outputFs, env);
+			writeManifest(writer, env);
 		}
 	}
 
-	private void writeManifest(FileSystemUtil.Delegate outputFs, String env) throws IOException {
+	private void writeManifest(RawZipWriter writer, String env) throws IOException {
 		final Manifest manifest = new Manifest();
 		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
 		manifest.getMainAttributes().putValue(JarSplitter.MANIFEST_SPLIT_ENV_NAME_KEY, env);
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		manifest.write(out);
-		Files.createDirectories(outputFs.get().getPath("META-INF"));
-		Files.write(outputFs.get().getPath("META-INF/MANIFEST.MF"), out.toByteArray());
+		writer.writeDirectories("META-INF/MANIFEST.MF", RawZipWriter.CONSTANT_DOS_TIME);
+		writer.write("META-INF/MANIFEST.MF", out.toByteArray());
 	}
 
 	@Override
@@ -29,15 +29,25 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
-import dev.architectury.tinyremapper.OutputConsumerPath;
+import com.google.common.base.Stopwatch;
+import dev.architectury.tinyremapper.InputTag;
 import dev.architectury.tinyremapper.TinyRemapper;
 import org.gradle.api.Project;
+import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
@@ -50,11 +60,15 @@ import net.fabricmc.loom.configuration.providers.minecraft.MinecraftProvider;
 import net.fabricmc.loom.configuration.providers.minecraft.MinecraftSourceSets;
 import net.fabricmc.loom.configuration.providers.minecraft.SignatureFixerApplyVisitor;
 import net.fabricmc.loom.extension.LoomFiles;
+import net.fabricmc.loom.task.service.ClasspathIndexService;
 import net.fabricmc.loom.util.SidedClassVisitor;
+import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.loom.util.TinyRemapperHelper;
 import net.fabricmc.loom.util.service.ScopedSharedServiceManager;
 import net.fabricmc.loom.util.srg.InnerClassRemapper;
 import net.fabricmc.loom.util.srg.RemapObjectHolderVisitor;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
 import net.fabricmc.mappingio.tree.MemoryMappingTree;
 
 public abstract class AbstractMappedMinecraftProvider<M extends MinecraftProvider> implements MappedMinecraftProvider.ProviderImpl {
@@ -163,41 +177,97 @@ public abstract class AbstractMappedMinecraftProvider<M extends MinecraftProvide
 	private void remapInputs(List<RemappedJars> remappedJars) throws IOException {
 		cleanOutputs(remappedJars);
 
-		for (RemappedJars remappedJar : remappedJars) {
-			remapJar(remappedJar);
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		final Map<MappingsNamespace, List<RemappedJars>> bySourceNamespace = remappedJars.stream()
+				.collect(Collectors.groupingBy(RemappedJars::sourceNamespace, LinkedHashMap::new, Collectors.toList()));
+
+		for (List<RemappedJars> jars : bySourceNamespace.values()) {
+			remapJars(jars);
 		}
+
+		ThreadingUtils.run(remappedJars, this::postRemapJar);
+		getProject().getLogger().info(":remapped {} minecraft jar(s) to {} in {}", remappedJars.size(), getTargetNamespace(), stopwatch);
 	}
 
-	private void remapJar(RemappedJars remappedJars) throws IOException {
+	/**
+	 * Remaps all the jars with a single remapper, so that the libraries and the jars themselves
+	 * are only read once, instead of once per output jar.
+	 */
+	private void remapJars(List<RemappedJars> remappedJars) throws IOException {
 		final MappingConfiguration mappingConfiguration = extension.getMappingConfiguration();
-		final String fromM = remappedJars.sourceNamespace().toString();
+		final String fromM = remappedJars.get(0).sourceNamespace().toString();
 		final String toM = getTargetNamespace().toString();
 
-		Files.deleteIfExists(remappedJars.outputJarPath());
-
-		final Set<String> classNames = extension.isForge() ? InnerClassRemapper.readClassNames(remappedJars.inputJar()) : Set.of();
+		final Set<Path> inputs = remappedJars.stream().map(RemappedJars::inputJar).collect(Collectors.toCollection(LinkedHashSet::new));
+		final Set<String> classNames = extension.isForge() ? inputs.stream().flatMap(input -> InnerClassRemapper.readClassNames(input).stream()).collect(Collectors.toSet()) : Set.of();
 		final Map<String, String> remappedSignatures = SignatureFixerApplyVisitor.getRemappedSignatures(getTargetNamespace() == MappingsNamespace.INTERMEDIARY, mappingConfiguration, getProject(), configContext.serviceManager(), toM);
+		final Map<String, TinyRemapper.ApplyVisitorProvider> classPostApplyVisitors = getClassPostApplyVisitors(remappedJars);
 		TinyRemapper remapper = TinyRemapperHelper.getTinyRemapper(getProject(), configContext.serviceManager(), fromM, toM, true, (builder) -> {
 			builder.extraPostApplyVisitor(new SignatureFixerApplyVisitor(remappedSignatures));
-			configureRemapper(remappedJars, builder);
+
+			if (!classPostApplyVisitors.isEmpty()) {
+				builder.extraPostApplyVisitor((cls, next) -> {
+					final TinyRemapper.ApplyVisitorProvider provider = classPostApplyVisitors.get(cls.getName());
+					return provider != null ? provider.insertApplyVisitor(cls, next) : next;
+				});
+			}
 		}, classNames);
 
-		try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(remappedJars.outputJarPath()).build()) {
-			outputConsumer.addNonClassFiles(remappedJars.inputJar());
-			remapper.readClassPath(TinyRemapperHelper.getMinecraftCompileLibraries(getProject()));
+		try {
+			final ClasspathIndexService classpathIndex = ClasspathIndexService.getOrCreate(configContext.serviceManager(), getProject());
+			remapper.readClassPath(classpathIndex.getClasspath(TinyRemapperHelper.getMinecraftCompileLibraries(getProject())));
+
+			// The other jars being remapped are read as inputs, they don't need to be on the classpath.
+			final Set<Path> classpath = new LinkedHashSet<>();
 
-			for (Path path : remappedJars.remapClasspath()) {
-				remapper.readClassPath(path);
+			for (RemappedJars remappedJar : remappedJars) {
+				for (Path path : remappedJar.remapClasspath()) {
+					if (!inputs.contains(path)) {
+						classpath.add(path);
+					}
+				}
 			}
 
-			remapper.readInputs(remappedJars.inputJar());
-			remapper.apply(outputConsumer);
+			remapper.readClassPath(classpathIndex.getClasspath(classpath.toArray(Path[]::new)));
+
+			final Map<RemappedJars, InputTag> tags = new LinkedHashMap<>();
+
+			for (RemappedJars remappedJar : remappedJars) {
+				final InputTag tag = remapper.createInputTag();
+				remapper.readInputs(tag, remappedJar.inputJar());
+				tags.put(remappedJar, tag);
+			}
+
+			for (Map.Entry<RemappedJars, InputTag> entry : tags.entrySet()) {
+				final RemappedJars remappedJar = entry.getKey();
+
+				final Map<String, RawZipWriter.PreparedEntry> classes = new ConcurrentHashMap<>();
+
+				// The classes are compressed on the remapper threads, then written with the non class files copied as is.
+				remapper.apply((name, bytes) -> {
+					if (name.startsWith("/")) name = name.substring(1);
+					classes.put(name + ".class", RawZipWriter.prepare(name + ".class", bytes, RawZipWriter.CONSTANT_DOS_TIME));
+				}, entry.getValue());
+
+				try (RawZipReader input = RawZipReader.open(remappedJar.inputJar());
+						RawZipWriter writer = RawZipWriter.create(remappedJar.outputJarPath())) {
+					writer.copyFrom(input, name -> !name.endsWith(".class"));
+
+					// tiny-remapper outputs the classes in no particular order
+					for (RawZipWriter.PreparedEntry prepared : new TreeMap<>(classes).values()) {
+						writer.writeDirectories(prepared.name(), RawZipWriter.CONSTANT_DOS_TIME);
+						writer.write(prepared);
+					}
+				}
+			}
 		} catch (Exception e) {
-			throw new RuntimeException("Failed to remap JAR " + remappedJars.inputJar() + " with mappings from " + mappingConfiguration.tinyMappings, e);
+			throw new RuntimeException("Failed to remap JARs " + inputs + " with mappings from " + mappingConfiguration.tinyMappings, e);
 		} finally {
 			remapper.finish();
 		}
+	}
 
+	private void postRemapJar(RemappedJars remappedJars) throws IOException {
 		getMavenHelper(remappedJars.name()).savePom();
 
 		if (extension.isForgeAndOfficial()) {
@@ -209,18 +279,45 @@ public abstract class AbstractMappedMinecraftProvider<M extends MinecraftProvide
 		}
 	}
 
-	protected void configureRemapper(RemappedJars remappedJars, TinyRemapper.Builder tinyRemapperBuilder) {
+	// Maps each class of the input jars to the post apply visitor of the jar it is in.
+	private Map<String, TinyRemapper.ApplyVisitorProvider> getClassPostApplyVisitors(List<RemappedJars> remappedJars) throws IOException {
+		final Map<String, TinyRemapper.ApplyVisitorProvider> visitors = new HashMap<>();
+
+		for (RemappedJars remappedJar : remappedJars) {
+			final TinyRemapper.ApplyVisitorProvider provider = getPostApplyVisitor(remappedJar);
+
+			if (provider == null) {
+				continue;
+			}
+
+			try (ZipFile zipFile = new ZipFile(remappedJar.inputJar().toFile())) {
+				zipFile.stream()
+						.map(ZipEntry::getName)
+						.filter(name -> name.endsWith(".class"))
+						.forEach(name -> visitors.put(name.substring(0, name.length() - ".class".length()), provider));
+			}
+		}
+
+		return visitors;
+	}
+
+	@Nullable
+	protected TinyRemapper.ApplyVisitorProvider getPostApplyVisitor(RemappedJars remappedJars) {
+		return null;
 	}
 
-	// Configure the remapper to add the client @Environment annotation to all classes in the client jar.
-	public static void configureSplitRemapper(RemappedJars remappedJars, TinyRemapper.Builder tinyRemapperBuilder) {
+	// Add the client @Environment annotation to all classes in the client jar.
+	@Nullable
+	public static TinyRemapper.ApplyVisitorProvider getSplitPostApplyVisitor(RemappedJars remappedJars) {
 		final MinecraftJar outputJar = remappedJars.outputJar();
 		assert !outputJar.isMerged();
 
 		if (outputJar.includesClient()) {
 			assert !outputJar.includesServer();
-			tinyRemapperBuilder.extraPostApplyVisitor(SidedClassVisitor.CLIENT);
+			return SidedClassVisitor.CLIENT;
 		}
+
+		return null;
 	}
 
 	private void cleanOutputs(List<RemappedJars> remappedJars) throws IOException {
@@ -78,8 +78,8 @@ public abstract sealed class IntermediaryMinecraftProvider<M extends MinecraftPr
 		}
 
 		@Override
-		protected void configureRemapper(RemappedJars remappedJars, TinyRemapper.Builder tinyRemapperBuilder) {
-			configureSplitRemapper(remappedJars, tinyRemapperBuilder);
+		protected TinyRemapper.ApplyVisitorProvider getPostApplyVisitor(RemappedJars remappedJars) {
+			return getSplitPostApplyVisitor(remappedJars);
 		}
 	}
 
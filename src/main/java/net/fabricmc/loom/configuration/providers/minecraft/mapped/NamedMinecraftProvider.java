@@ -83,8 +83,8 @@ public abstract class NamedMinecraftProvider<M extends MinecraftProvider> extend
 		}
 
 		@Override
-		protected void configureRemapper(RemappedJars remappedJars, TinyRemapper.Builder tinyRemapperBuilder) {
-			configureSplitRemapper(remappedJars, tinyRemapperBuilder);
+		protected TinyRemapper.ApplyVisitorProvider getPostApplyVisitor(RemappedJars remappedJars) {
+			return getSplitPostApplyVisitor(remappedJars);
 		}
 
 		@Override
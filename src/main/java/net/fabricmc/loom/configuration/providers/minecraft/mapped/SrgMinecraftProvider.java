@@ -79,10 +79,12 @@ public abstract sealed class SrgMinecraftProvider<M extends MinecraftProvider> e
 		}
 
 		@Override
-		protected void configureRemapper(RemappedJars remappedJars, TinyRemapper.Builder tinyRemapperBuilder) {
+		protected TinyRemapper.ApplyVisitorProvider getPostApplyVisitor(RemappedJars remappedJars) {
 			if (remappedJars.outputJar().equals(getClientOnlyJar())) {
-				tinyRemapperBuilder.extraPostApplyVisitor(SidedClassVisitor.CLIENT);
+				return SidedClassVisitor.CLIENT;
 			}
+
+			return null;
 		}
 	}
 
@@ -0,0 +1,138 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.decompilers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
+
+/**
+ * Selects the classes to decompile with include and exclude globs matched against internal class names,
+ * such as {@code net/minecraft/world/**}. {@code *} matches within a package and {@code **} across packages,
+ * dots in the globs are treated as package separators.
+ *
+ * <p>Inner classes are decompiled together with their outer class, so they are selected by the name of the outer class.
+ */
+public final class ClassFilter implements Predicate<String> {
+	private final List<Pattern> includes;
+	private final List<Pattern> excludes;
+
+	private ClassFilter(List<Pattern> includes, List<Pattern> excludes) {
+		this.includes = includes;
+		this.excludes = excludes;
+	}
+
+	public static ClassFilter of(Collection<String> includes, Collection<String> excludes) {
+		return new ClassFilter(includes.stream().map(ClassFilter::compile).toList(), excludes.stream().map(ClassFilter::compile).toList());
+	}
+
+	/**
+	 * {@return true if every class is selected}
+	 */
+	public boolean isEmpty() {
+		return includes.isEmpty() && excludes.isEmpty();
+	}
+
+	/**
+	 * @param className the internal name of a class
+	 * @return true if the class has to be decompiled
+	 */
+	@Override
+	public boolean test(String className) {
+		final String outerClass = getOuterClass(className);
+
+		if (!includes.isEmpty() && includes.stream().noneMatch(pattern -> pattern.matcher(outerClass).matches())) {
+			return false;
+		}
+
+		return excludes.stream().noneMatch(pattern -> pattern.matcher(outerClass).matches());
+	}
+
+	/**
+	 * Copies the selected classes into the {@code selectedJar}, and the other classes into the {@code otherJar}
+	 * that can be used as a library while decompiling.
+	 *
+	 * @return the number of selected classes
+	 */
+	public static int split(Path inputJar, Predicate<String> filter, Path selectedJar, Path otherJar) throws IOException {
+		int selected = 0;
+
+		try (RawZipReader reader = RawZipReader.open(inputJar);
+				RawZipWriter selectedWriter = RawZipWriter.create(selectedJar);
+				RawZipWriter otherWriter = RawZipWriter.create(otherJar)) {
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (!entry.name().endsWith(".class")) {
+					continue;
+				}
+
+				if (filter.test(entry.name().substring(0, entry.name().length() - 6))) {
+					selectedWriter.writeRaw(entry, reader.readRaw(entry));
+					selected++;
+				} else {
+					otherWriter.writeRaw(entry, reader.readRaw(entry));
+				}
+			}
+		}
+
+		return selected;
+	}
+
+	/**
+	 * {@return the internal name of the outermost class that contains a class}
+	 */
+	public static String getOuterClass(String className) {
+		final int dollarPos = className.indexOf('$');
+		return dollarPos >= 0 ? className.substring(0, dollarPos) : className;
+	}
+
+	private static Pattern compile(String glob) {
+		final String normalized = glob.replace('.', '/');
+		final StringBuilder regex = new StringBuilder();
+
+		for (int i = 0; i < normalized.length(); i++) {
+			final char c = normalized.charAt(i);
+
+			if (c == '*' && i + 1 < normalized.length() && normalized.charAt(i + 1) == '*') {
+				regex.append(".*");
+				i++;
+			} else if (c == '*') {
+				regex.append("[^/]*");
+			} else if (c == '?') {
+				regex.append("[^/]");
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+
+		return Pattern.compile(regex.toString());
+	}
+}
@@ -0,0 +1,486 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.decompilers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import net.fabricmc.loom.decompilers.linemap.LineMapClassFilter;
+import net.fabricmc.loom.decompilers.linemap.LineMapReader;
+import net.fabricmc.loom.decompilers.linemap.LineMapVisitor;
+import net.fabricmc.loom.decompilers.linemap.LineMapWriter;
+import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.ThreadingUtils;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
+import net.fabricmc.mappingio.MappingReader;
+import net.fabricmc.mappingio.tree.MappingTree;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+
+/**
+ * Keeps track of the classes decompiled by genSources, so that only the classes whose bytecode or mappings changed
+ * since the previous run have to be decompiled again.
+ *
+ * <p>Classes are grouped into units by their outer class, as the decompiler emits one source file per outer class.
+ * The fingerprint of a unit ignores line numbers, as the runtime jar (which may be the decompiled jar) is line mapped
+ * in place after decompiling. The size and CRC of each class in the runtime jar is recorded before and after line mapping,
+ * this tells whether an unchanged class is still line mapped or has to be line mapped again using the previous line map.
+ */
+public final class IncrementalDecompilation {
+	private static final String HEADER = "loom-decompile-index\t1";
+
+	private final Path indexFile;
+	private final Path sourcesJar;
+	private final Path linemap;
+	private final String key;
+	private final Map<String, String> fingerprints;
+	private final Map<String, String> runtimeStates;
+	private final Set<String> changed;
+	private final Set<String> relinemap;
+
+	private IncrementalDecompilation(Path indexFile, Path sourcesJar, Path linemap, String key, Map<String, String> fingerprints, Map<String, String> runtimeStates, Set<String> changed, Set<String> relinemap) {
+		this.indexFile = indexFile;
+		this.sourcesJar = sourcesJar;
+		this.linemap = linemap;
+		this.key = key;
+		this.fingerprints = fingerprints;
+		this.runtimeStates = runtimeStates;
+		this.changed = changed;
+		this.relinemap = relinemap;
+	}
+
+	/**
+	 * Compares the input jar against the index of the previous run.
+	 *
+	 * @param indexFile  the index file, written next to the sources jar
+	 * @param inputJar   the jar to decompile
+	 * @param runtimeJar the jar that is line mapped after decompiling
+	 * @param mappings   the mappings that are used for javadoc
+	 * @param sourcesJar the sources jar
+	 * @param linemap    the line map written by the decompiler
+	 * @param key        a key of everything else that affects the decompiled output, see {@link #key(String, Map, Collection)}
+	 */
+	public static IncrementalDecompilation create(Path indexFile, Path inputJar, Path runtimeJar, Path mappings, Path sourcesJar, Path linemap, String key) throws IOException {
+		final Map<String, String> fingerprints = fingerprint(inputJar, mappings);
+		final Map<String, String> runtimeStates = readStates(runtimeJar);
+		final Index previous = Files.exists(sourcesJar) && Files.exists(linemap) ? Index.read(indexFile) : null;
+
+		if (previous == null || !previous.key().equals(key)) {
+			return new IncrementalDecompilation(indexFile, sourcesJar, linemap, key, fingerprints, runtimeStates, fingerprints.keySet(), Set.of());
+		}
+
+		final Map<String, List<String>> runtimeClasses = new HashMap<>();
+
+		for (String name : runtimeStates.keySet()) {
+			runtimeClasses.computeIfAbsent(getUnit(name), k -> new ArrayList<>()).add(name);
+		}
+
+		final Set<String> changed = new HashSet<>();
+		final Set<String> relinemap = new HashSet<>();
+
+		for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+			final String unit = entry.getKey();
+
+			if (!entry.getValue().equals(previous.fingerprints().get(unit))) {
+				changed.add(unit);
+				continue;
+			}
+
+			final List<String> classes = runtimeClasses.getOrDefault(unit, List.of());
+
+			if (classes.stream().allMatch(name -> runtimeStates.get(name).equals(previous.linemappedStates().get(name)))) {
+				// Still line mapped from the previous run, the previous line map stays relative to the state it was created from
+				classes.forEach(name -> runtimeStates.put(name, previous.runtimeStates().get(name)));
+				continue;
+			}
+
+			if (classes.stream().allMatch(name -> runtimeStates.get(name).equals(previous.runtimeStates().get(name)))) {
+				// The runtime jar was recreated with the same bytecode, apply the previous line map again
+				relinemap.add(unit);
+			} else {
+				changed.add(unit);
+			}
+		}
+
+		return new IncrementalDecompilation(indexFile, sourcesJar, linemap, key, fingerprints, runtimeStates, changed, relinemap);
+	}
+
+	/**
+	 * Creates the key of the decompiler and its options and libraries, a change to any of them requires a full decompile.
+	 */
+	public static String key(String decompiler, Map<String, String> options, Collection<Path> libraries) {
+		final Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putString(decompiler, StandardCharsets.UTF_8);
+
+		new TreeMap<>(options).forEach((name, value) -> hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0).putString(value, StandardCharsets.UTF_8).putByte((byte) 0));
+		libraries.stream().map(Path::toAbsolutePath).map(Path::toString).sorted().forEach(path -> hasher.putString(path, StandardCharsets.UTF_8).putByte((byte) 0));
+
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * @return true when every class has to be decompiled
+	 */
+	public boolean isFull() {
+		return changed.size() == fingerprints.size();
+	}
+
+	/**
+	 * @return the outer class names of the classes that have to be decompiled
+	 */
+	public Set<String> getChanged() {
+		return changed;
+	}
+
+	/**
+	 * @return the outer class names of the unchanged classes that have to be line mapped again
+	 */
+	public Set<String> getRelinemap() {
+		return relinemap;
+	}
+
+	/**
+	 * Copies the classes that have to be decompiled into the {@code changedJar}, and the other classes into the {@code unchangedJar}
+	 * that can be used as a library while decompiling.
+	 */
+	public void splitInput(Path inputJar, Path changedJar, Path unchangedJar) throws IOException {
+		ClassFilter.split(inputJar, name -> changed.contains(getUnit(name)), changedJar, unchangedJar);
+	}
+
+	/**
+	 * Merges the newly decompiled sources and line map with the unchanged parts of the previous output.
+	 *
+	 * @param decompiledSources the sources jar of the changed classes, or null if nothing was decompiled
+	 * @param decompiledLinemap the line map of the changed classes, or null if none was written
+	 * @param runtimeLinemap    the file to write the line map that has to be applied to the runtime jar to
+	 * @return true if the runtime jar has to be line mapped
+	 */
+	public boolean merge(@Nullable Path decompiledSources, @Nullable Path decompiledLinemap, Path runtimeLinemap) throws IOException {
+		final Predicate<String> keepPrevious = unit -> fingerprints.containsKey(unit) && !changed.contains(unit);
+		final Path mergedSources = sourcesJar.resolveSibling(sourcesJar.getFileName() + ".tmp");
+		final Set<String> written = new HashSet<>();
+
+		Files.deleteIfExists(mergedSources);
+
+		try (RawZipWriter writer = RawZipWriter.create(mergedSources)) {
+			if (decompiledSources != null) {
+				try (RawZipReader reader = RawZipReader.open(decompiledSources)) {
+					for (ZipEntryInfo entry : reader.entries()) {
+						writer.writeRaw(entry, reader.readRaw(entry));
+						written.add(entry.name());
+					}
+				}
+			}
+
+			try (RawZipReader reader = RawZipReader.open(sourcesJar)) {
+				for (ZipEntryInfo entry : reader.entries()) {
+					final String name = entry.name();
+					final boolean keep = name.endsWith(".java") ? keepPrevious.test(name.substring(0, name.length() - 5)) : !written.contains(name);
+
+					if (keep && written.add(name)) {
+						writer.writeRaw(entry, reader.readRaw(entry));
+					}
+				}
+			}
+		}
+
+		Files.move(mergedSources, sourcesJar, StandardCopyOption.REPLACE_EXISTING);
+
+		final StringWriter merged = new StringWriter();
+		final StringWriter runtime = new StringWriter();
+
+		try (LineMapWriter mergedWriter = new LineMapWriter(merged);
+				LineMapWriter runtimeWriter = new LineMapWriter(runtime)) {
+			if (decompiledLinemap != null) {
+				readLineMap(decompiledLinemap, new Tee(mergedWriter, runtimeWriter));
+			}
+
+			readLineMap(linemap, new LineMapClassFilter(mergedWriter, name -> keepPrevious.test(getUnit(name))));
+			readLineMap(linemap, new LineMapClassFilter(runtimeWriter, name -> relinemap.contains(getUnit(name))));
+		}
+
+		Files.writeString(linemap, merged.toString(), StandardCharsets.UTF_8);
+		Files.writeString(runtimeLinemap, runtime.toString(), StandardCharsets.UTF_8);
+		return !runtime.getBuffer().isEmpty();
+	}
+
+	/**
+	 * Writes the index once the runtime jar has been line mapped.
+	 */
+	public void writeIndex(Path runtimeJar) throws IOException {
+		new Index(key, fingerprints, runtimeStates, readStates(runtimeJar)).write(indexFile);
+	}
+
+	private static void readLineMap(Path path, LineMapVisitor visitor) throws IOException {
+		try (LineMapReader reader = new LineMapReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+			reader.accept(visitor);
+		}
+	}
+
+	private static String getUnit(String className) {
+		final int dollarPos = className.indexOf('$');
+		return dollarPos >= 0 ? className.substring(0, dollarPos) : className;
+	}
+
+	private static Map<String, String> fingerprint(Path inputJar, Path mappings) throws IOException {
+		final Map<String, HashCode> mappingHashes = hashMappings(mappings);
+		final Map<String, Map<String, HashCode>> units = new TreeMap<>();
+
+		try (RawZipReader reader = RawZipReader.open(inputJar)) {
+			final List<ZipEntryInfo> classes = reader.entries().stream().filter(entry -> entry.name().endsWith(".class")).toList();
+			final List<HashCode> hashes = ThreadingUtils.get(classes.stream()
+					.<ThreadingUtils.UnsafeCallable<HashCode>>map(entry -> () -> hashClass(reader.read(entry)))
+					.toList());
+
+			for (int i = 0; i < classes.size(); i++) {
+				final String name = classes.get(i).name().substring(0, classes.get(i).name().length() - 6);
+				units.computeIfAbsent(getUnit(name), k -> new TreeMap<>()).put(name, hashes.get(i));
+			}
+		}
+
+		final Map<String, String> fingerprints = new HashMap<>();
+
+		units.forEach((unit, classes) -> {
+			final Hasher hasher = Hashing.sha256().newHasher();
+
+			classes.forEach((name, hash) -> {
+				hasher.putString(name, StandardCharsets.UTF_8).putBytes(hash.asBytes());
+				final HashCode mappingHash = mappingHashes.get(name);
+
+				if (mappingHash != null) {
+					hasher.putBytes(mappingHash.asBytes());
+				}
+			});
+
+			fingerprints.put(unit, hasher.hash().toString());
+		});
+
+		return fingerprints;
+	}
+
+	private static HashCode hashClass(byte[] bytes) {
+		final ClassWriter writer = new ClassWriter(0);
+
+		new ClassReader(bytes).accept(new ClassVisitor(Constants.ASM_VERSION, writer) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return new MethodVisitor(api, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+					@Override
+					public void visitLineNumber(int line, Label start) {
+						// Line numbers are remapped in place, and don't affect the decompiled output.
+					}
+				};
+			}
+		}, 0);
+
+		return Hashing.sha256().hashBytes(writer.toByteArray());
+	}
+
+	private static Map<String, HashCode> hashMappings(Path mappings) throws IOException {
+		final MemoryMappingTree mappingTree = new MemoryMappingTree();
+
+		try (BufferedReader reader = Files.newBufferedReader(mappings, StandardCharsets.UTF_8)) {
+			MappingReader.read(reader, mappingTree);
+		}
+
+		final int namespaces = mappingTree.getDstNamespaces().size();
+		final Map<String, HashCode> hashes = new HashMap<>();
+
+		for (MappingTree.ClassMapping classMapping : mappingTree.getClasses()) {
+			final Hasher hasher = Hashing.sha256().newHasher();
+			putElement(hasher, classMapping, namespaces);
+
+			for (MappingTree.FieldMapping field : classMapping.getFields()) {
+				putElement(hasher, field, namespaces);
+				putString(hasher, field.getSrcDesc());
+			}
+
+			for (MappingTree.MethodMapping method : classMapping.getMethods()) {
+				putElement(hasher, method, namespaces);
+				putString(hasher, method.getSrcDesc());
+
+				for (MappingTree.MethodArgMapping arg : method.getArgs()) {
+					hasher.putInt(arg.getArgPosition()).putInt(arg.getLvIndex());
+					putElement(hasher, arg, namespaces);
+				}
+
+				for (MappingTree.MethodVarMapping var : method.getVars()) {
+					hasher.putInt(var.getLvtRowIndex()).putInt(var.getLvIndex()).putInt(var.getStartOpIdx());
+					putElement(hasher, var, namespaces);
+				}
+			}
+
+			final String named = classMapping.getName("named");
+			hashes.put(named != null ? named : classMapping.getSrcName(), hasher.hash());
+		}
+
+		return hashes;
+	}
+
+	private static void putElement(Hasher hasher, MappingTree.ElementMapping element, int namespaces) {
+		putString(hasher, element.getSrcName());
+
+		for (int i = 0; i < namespaces; i++) {
+			putString(hasher, element.getDstName(i));
+		}
+
+		putString(hasher, element.getComment());
+	}
+
+	private static void putString(Hasher hasher, @Nullable String value) {
+		if (value == null) {
+			hasher.putByte((byte) 0);
+		} else {
+			hasher.putByte((byte) 1).putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+		}
+	}
+
+	private static Map<String, String> readStates(Path jar) throws IOException {
+		final Map<String, String> states = new HashMap<>();
+
+		try (RawZipReader reader = RawZipReader.open(jar)) {
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (entry.name().endsWith(".class")) {
+					states.put(entry.name().substring(0, entry.name().length() - 6), Integer.toHexString(entry.crc()) + ":" + entry.size());
+				}
+			}
+		}
+
+		return states;
+	}
+
+	/**
+	 * The index of a previous run.
+	 *
+	 * @param key               the key of the decompiler, its options and libraries
+	 * @param fingerprints      the fingerprint of each outer class
+	 * @param runtimeStates     the state of each class in the runtime jar before it was line mapped
+	 * @param linemappedStates  the state of each class in the runtime jar after it was line mapped
+	 */
+	record Index(String key, Map<String, String> fingerprints, Map<String, String> runtimeStates, Map<String, String> linemappedStates) {
+		static @Nullable Index read(Path path) throws IOException {
+			if (!Files.exists(path)) {
+				return null;
+			}
+
+			final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+
+			if (lines.size() < 2 || !lines.get(0).equals(HEADER)) {
+				return null;
+			}
+
+			final Map<String, String> fingerprints = new HashMap<>();
+			final Map<String, String> runtimeStates = new HashMap<>();
+			final Map<String, String> linemappedStates = new HashMap<>();
+
+			for (String line : lines.subList(2, lines.size())) {
+				final String[] parts = line.split("\t");
+
+				switch (parts[0]) {
+				case "unit" -> fingerprints.put(parts[1], parts[2]);
+				case "class" -> {
+					runtimeStates.put(parts[1], parts[2]);
+					linemappedStates.put(parts[1], parts[3]);
+				}
+				default -> {
+					return null;
+				}
+				}
+			}
+
+			return new Index(lines.get(1), fingerprints, runtimeStates, linemappedStates);
+		}
+
+		void write(Path path) throws IOException {
+			final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+			try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				writer.append(HEADER).append('\n').append(key).append('\n');
+
+				for (String unit : new TreeSet<>(fingerprints.keySet())) {
+					writer.append("unit\t").append(unit).append('\t').append(fingerprints.get(unit)).append('\n');
+				}
+
+				for (String name : new TreeSet<>(runtimeStates.keySet())) {
+					final String linemapped = linemappedStates.get(name);
+
+					if (linemapped != null) {
+						writer.append("class\t").append(name).append('\t').append(runtimeStates.get(name)).append('\t').append(linemapped).append('\n');
+					}
+				}
+			}
+
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static final class Tee extends LineMapVisitor {
+		private final LineMapVisitor other;
+
+		Tee(LineMapVisitor next, LineMapVisitor other) {
+			super(next);
+			this.other = other;
+		}
+
+		@Override
+		public void visitClass(String name, int max, int maxDest) throws IOException {
+			super.visitClass(name, max, maxDest);
+			other.visitClass(name, max, maxDest);
+		}
+
+		@Override
+		public void visitLine(int src, int dest) throws IOException {
+			super.visitLine(src, dest);
+			other.visitLine(src, dest);
+		}
+	}
+}
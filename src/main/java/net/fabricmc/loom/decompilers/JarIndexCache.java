@@ -0,0 +1,147 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.decompilers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.fabricmc.loom.util.ZipUtils;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
+
+/**
+ * Keeps the jars read by a decompilation open and indexed until it has finished, so that reading a class doesn't open
+ * a zip file system or read the central directory of its jar again.
+ *
+ * <p>The jars are only kept open for the life of the cache, which must be closed once the decompiler has stopped
+ * reading from it. Decompilations can run in the Gradle daemon, so the jars must not stay open, and locked on Windows,
+ * after they have finished.
+ */
+public final class JarIndexCache implements Closeable {
+	private final Map<Path, Index> indexes = new HashMap<>();
+	private boolean closed = false;
+
+	/**
+	 * Reads an entry of a jar.
+	 *
+	 * @param jar  the jar
+	 * @param name the name of the entry
+	 * @return the uncompressed data
+	 * @throws NoSuchFileException if the jar doesn't contain the entry
+	 */
+	public byte[] read(Path jar, String name) throws IOException {
+		final Index index = getIndex(jar);
+
+		if (index.reader() == null) {
+			// Not supported by the raw reader
+			return ZipUtils.unpack(jar, name);
+		}
+
+		final ZipEntryInfo entry = index.entries().get(name);
+
+		if (entry == null) {
+			throw new NoSuchFileException(name, null, "Not found in " + jar);
+		}
+
+		return index.reader().read(entry);
+	}
+
+	private Index getIndex(Path jar) throws IOException {
+		final Path path = jar.toAbsolutePath().normalize();
+
+		synchronized (indexes) {
+			if (closed) {
+				throw new IllegalStateException("Jar index cache has been closed");
+			}
+
+			Index index = indexes.get(path);
+
+			if (index == null) {
+				index = createIndex(path);
+				indexes.put(path, index);
+			}
+
+			return index;
+		}
+	}
+
+	private static Index createIndex(Path path) throws IOException {
+		final RawZipReader reader;
+
+		try {
+			reader = RawZipReader.open(path);
+		} catch (ZipException e) {
+			return new Index(null, Map.of());
+		}
+
+		final Map<String, ZipEntryInfo> entries = new HashMap<>();
+
+		for (ZipEntryInfo entry : reader.entries()) {
+			entries.put(entry.name(), entry);
+		}
+
+		return new Index(reader, entries);
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (indexes) {
+			closed = true;
+			IOException exception = null;
+
+			for (Index index : indexes.values()) {
+				if (index.reader() == null) {
+					continue;
+				}
+
+				try {
+					index.reader().close();
+				} catch (IOException e) {
+					if (exception == null) {
+						exception = new IOException("Failed to close jar index cache");
+					}
+
+					exception.addSuppressed(e);
+				}
+			}
+
+			indexes.clear();
+
+			if (exception != null) {
+				throw exception;
+			}
+		}
+	}
+
+	private record Index(@Nullable RawZipReader reader, Map<String, ZipEntryInfo> entries) {
+	}
+}
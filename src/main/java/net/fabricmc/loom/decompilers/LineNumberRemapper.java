@@ -30,16 +30,15 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -48,16 +47,28 @@ import org.objectweb.asm.MethodVisitor;
 
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.IOStringConsumer;
+import net.fabricmc.loom.util.ThreadingUtils;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
 
 /**
  * Created by covers1624 on 18/02/19.
  */
 public class LineNumberRemapper {
+	/**
+	 * The number of entries that are processed in parallel before being written, bounding the memory used.
+	 */
+	private static final int BATCH_SIZE = 512;
+
 	private final Map<String, RClass> lineMap = new HashMap<>();
 
 	public void readMappings(File lineMappings) {
+		final Map<String, TreeMap<Integer, Integer>> lines = new HashMap<>();
+
 		try (BufferedReader reader = new BufferedReader(new FileReader(lineMappings))) {
 			RClass clazz = null;
+			TreeMap<Integer, Integer> classLines = null;
 			String line = null;
 			int i = 0;
 
@@ -73,8 +84,9 @@ public class LineNumberRemapper {
 						clazz = lineMap.computeIfAbsent(segs[0], RClass::new);
 						clazz.maxLine = Integer.parseInt(segs[1]);
 						clazz.maxLineDest = Integer.parseInt(segs[2]);
+						classLines = lines.computeIfAbsent(segs[0], k -> new TreeMap<>());
 					} else {
-						clazz.lineMap.put(Integer.parseInt(segs[0]), Integer.parseInt(segs[1]));
+						classLines.put(Integer.parseInt(segs[0]), Integer.parseInt(segs[1]));
 					}
 
 					i++;
@@ -85,55 +97,79 @@ public class LineNumberRemapper {
 		} catch (IOException e) {
 			throw new RuntimeException("Exception reading LineMappings file.", e);
 		}
+
+		for (Map.Entry<String, TreeMap<Integer, Integer>> entry : lines.entrySet()) {
+			lineMap.get(entry.getKey()).setLines(entry.getValue());
+		}
 	}
 
-	public void process(IOStringConsumer logger, Path input, Path output) throws IOException {
-		Files.walkFileTree(input, new SimpleFileVisitor<>() {
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				String rel = input.relativize(file).toString();
-				Path dst = output.resolve(rel);
-				Path parent = dst.getParent();
+	/**
+	 * Remaps the line numbers of the classes in a jar. Classes are processed in parallel, and entries
+	 * that don't need to be remapped are copied without being decompressed. The logger is only called
+	 * from the calling thread.
+	 *
+	 * @param logger the logger, or null
+	 * @param input  the input jar
+	 * @param output the output jar
+	 */
+	public void process(@Nullable IOStringConsumer logger, Path input, Path output) throws IOException {
+		Files.deleteIfExists(output);
+		// Read by the workers, an immutable copy is safely published to them.
+		final Map<String, RClass> classes = Map.copyOf(lineMap);
+
+		try (RawZipReader reader = RawZipReader.open(input);
+				RawZipWriter writer = RawZipWriter.create(output)) {
+			final List<ZipEntryInfo> entries = reader.entries();
+
+			for (int start = 0; start < entries.size(); start += BATCH_SIZE) {
+				final List<ZipEntryInfo> batch = entries.subList(start, Math.min(start + BATCH_SIZE, entries.size()));
+				final List<RawZipWriter.PreparedEntry> remapped = ThreadingUtils.get(batch.stream()
+						.<ThreadingUtils.UnsafeCallable<RawZipWriter.PreparedEntry>>map(entry -> () -> remap(classes, reader, entry))
+						.toList());
+
+				for (int i = 0; i < batch.size(); i++) {
+					final String name = batch.get(i).name();
+
+					if (logger != null && name.endsWith(".class")) {
+						logger.accept("Remapping " + name.substring(0, name.length() - 6));
+					}
 
-				if (parent != null) {
-					Files.createDirectories(parent);
+					if (remapped.get(i) != null) {
+						writer.write(remapped.get(i));
+					} else {
+						writer.writeRaw(batch.get(i), reader.readRaw(batch.get(i)));
+					}
 				}
+			}
+		}
+	}
 
-				String fName = file.getFileName().toString();
+	private static @Nullable RawZipWriter.PreparedEntry remap(Map<String, RClass> classes, RawZipReader reader, ZipEntryInfo entry) throws IOException {
+		final String name = entry.name();
 
-				if (fName.endsWith(".class")) {
-					if (Files.exists(dst)) {
-						Files.delete(dst);
-					}
+		if (!name.endsWith(".class")) {
+			return null;
+		}
 
-					String idx = rel.substring(0, rel.length() - 6);
+		String idx = name.substring(0, name.length() - 6);
 
-					if (logger != null) {
-						logger.accept("Remapping " + idx);
-					}
+		int dollarPos = idx.indexOf('$'); //This makes the assumption that only Java classes are to be remapped.
 
-					int dollarPos = idx.indexOf('$'); //This makes the assumption that only Java classes are to be remapped.
+		if (dollarPos >= 0) {
+			idx = idx.substring(0, dollarPos);
+		}
 
-					if (dollarPos >= 0) {
-						idx = idx.substring(0, dollarPos);
-					}
+		final RClass rClass = classes.get(idx);
 
-					if (lineMap.containsKey(idx)) {
-						try (InputStream is = Files.newInputStream(file)) {
-							ClassReader reader = new ClassReader(is);
-							ClassWriter writer = new ClassWriter(0);
+		if (rClass == null) {
+			return null;
+		}
 
-							reader.accept(new LineNumberVisitor(Constants.ASM_VERSION, writer, lineMap.get(idx)), 0);
-							Files.write(dst, writer.toByteArray());
-							return FileVisitResult.CONTINUE;
-						}
-					}
-				}
+		ClassReader classReader = new ClassReader(reader.read(entry));
+		ClassWriter writer = new ClassWriter(0);
 
-				Files.copy(file, dst, StandardCopyOption.REPLACE_EXISTING);
-				return FileVisitResult.CONTINUE;
-			}
-		});
+		classReader.accept(new LineNumberVisitor(Constants.ASM_VERSION, writer, rClass), 0);
+		return RawZipWriter.prepare(name, writer.toByteArray(), entry.dosTime());
 	}
 
 	private static class LineNumberVisitor extends ClassVisitor {
@@ -156,13 +192,7 @@ public class LineNumberRemapper {
 					} else if (tLine >= rClass.maxLine) {
 						super.visitLineNumber(rClass.maxLineDest, start);
 					} else {
-						Integer matchedLine = null;
-
-						while (tLine <= rClass.maxLine && ((matchedLine = rClass.lineMap.get(tLine)) == null)) {
-							tLine++;
-						}
-
-						super.visitLineNumber(matchedLine != null ? matchedLine : rClass.maxLineDest, start);
+						super.visitLineNumber(rClass.getDestination(tLine), start);
 					}
 				}
 			};
@@ -173,10 +203,37 @@ public class LineNumberRemapper {
 		private final String name;
 		private int maxLine;
 		private int maxLineDest;
-		private final Map<Integer, Integer> lineMap = new HashMap<>();
+		// Sorted source lines and their destinations
+		private int[] lines = new int[0];
+		private int[] destinations = new int[0];
 
 		private RClass(String name) {
 			this.name = name;
 		}
+
+		private void setLines(TreeMap<Integer, Integer> lineMap) {
+			lines = new int[lineMap.size()];
+			destinations = new int[lineMap.size()];
+			int i = 0;
+
+			for (Map.Entry<Integer, Integer> entry : lineMap.entrySet()) {
+				lines[i] = entry.getKey();
+				destinations[i] = entry.getValue();
+				i++;
+			}
+		}
+
+		/**
+		 * Finds the destination of the first mapped line at or after the given line.
+		 */
+		private int getDestination(int line) {
+			int index = Arrays.binarySearch(lines, line);
+
+			if (index < 0) {
+				index = -index - 1;
+			}
+
+			return index < lines.length && lines[index] <= maxLine ? destinations[index] : maxLineDest;
+		}
 	}
 }
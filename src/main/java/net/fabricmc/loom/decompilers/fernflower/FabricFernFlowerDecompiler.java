@@ -24,6 +24,8 @@
 
 package net.fabricmc.loom.decompilers.fernflower;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
@@ -35,6 +37,7 @@ import org.jetbrains.java.decompiler.main.extern.IResultSaver;
 import net.fabricmc.fernflower.api.IFabricJavadocProvider;
 import net.fabricmc.loom.api.decompilers.DecompilationMetadata;
 import net.fabricmc.loom.api.decompilers.LoomDecompiler;
+import net.fabricmc.loom.decompilers.JarIndexCache;
 
 public final class FabricFernFlowerDecompiler implements LoomDecompiler {
 	@Override
@@ -54,18 +57,24 @@ public final class FabricFernFlowerDecompiler implements LoomDecompiler {
 		options.putAll(metaData.options());
 
 		IResultSaver saver = new ThreadSafeResultSaver(sourcesDestination::toFile, linemapDestination::toFile);
-		Fernflower ff = new Fernflower(FernFlowerUtils::getBytecode, saver, options, new FernflowerLogger(metaData.logger()));
 
-		for (Path library : metaData.libraries()) {
-			ff.addLibrary(library.toFile());
-		}
+		// Closed once Fernflower has stopped reading, so that no jar is left open after the decompilation.
+		try (JarIndexCache jarIndexCache = new JarIndexCache()) {
+			Fernflower ff = new Fernflower((externalPath, internalPath) -> FernFlowerUtils.getBytecode(jarIndexCache, externalPath, internalPath), saver, options, new FernflowerLogger(metaData.logger()));
+
+			for (Path library : metaData.libraries()) {
+				ff.addLibrary(library.toFile());
+			}
 
-		ff.addSource(compiledJar.toFile());
+			ff.addSource(compiledJar.toFile());
 
-		try {
-			ff.decompileContext();
-		} finally {
-			ff.clearContext();
+			try {
+				ff.decompileContext();
+			} finally {
+				ff.clearContext();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to close the decompiled jars", e);
 		}
 	}
 }
@@ -29,6 +29,7 @@ import java.io.IOException;
 
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
 
+import net.fabricmc.loom.decompilers.JarIndexCache;
 import net.fabricmc.loom.util.ZipUtils;
 
 public class FernFlowerUtils {
@@ -41,4 +42,17 @@ public class FernFlowerUtils {
 			return ZipUtils.unpack(file.toPath(), internalPath);
 		}
 	}
+
+	/**
+	 * Like {@link #getBytecode(String, String)}, but reads the jar entries through the cache.
+	 */
+	public static byte[] getBytecode(JarIndexCache jarIndexCache, String externalPath, String internalPath) throws IOException {
+		File file = new File(externalPath);
+
+		if (internalPath == null) {
+			return InterpreterUtil.getBytes(file);
+		} else {
+			return jarIndexCache.read(file.toPath(), internalPath);
+		}
+	}
 }
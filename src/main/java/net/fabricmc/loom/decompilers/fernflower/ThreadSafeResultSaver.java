@@ -24,39 +24,51 @@
 
 package net.fabricmc.loom.decompilers.fernflower;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.nio.file.Files;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
-import java.util.jar.JarOutputStream;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.jetbrains.java.decompiler.main.DecompilerContext;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import net.fabricmc.fernflower.api.IFabricResultSaver;
+import net.fabricmc.loom.util.zip.RawZipWriter;
 
 /**
  * Created by covers1624 on 18/02/19.
+ *
+ * <p>Entries are compressed on the decompiler threads that produce them, and only appending the compressed entries
+ * to the archive is serialized.
  */
 public class ThreadSafeResultSaver implements IResultSaver, IFabricResultSaver {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ThreadSafeResultSaver.class);
+
 	private final Supplier<File> output;
 	private final Supplier<File> lineMapFile;
 
-	public Map<String, ZipOutputStream> outputStreams = new HashMap<>();
-	public Map<String, ExecutorService> saveExecutors = new HashMap<>();
-	public PrintWriter lineMapWriter;
+	private final Map<String, RawZipWriter> writers = new ConcurrentHashMap<>();
+	private OutputStream lineMapOutput;
+
+	// Back-pressure statistics: how long the decompiler threads waited for the archive
+	private final LongAdder entries = new LongAdder();
+	private final LongAdder contendedEntries = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
 
 	public ThreadSafeResultSaver(Supplier<File> output, Supplier<File> lineMapFile) {
 		this.output = output;
@@ -69,17 +81,22 @@ public class ThreadSafeResultSaver implements IResultSaver, IFabricResultSaver {
 		File file = output.get();
 
 		try {
-			FileOutputStream fos = new FileOutputStream(file);
-			ZipOutputStream zos = manifest == null ? new ZipOutputStream(fos) : new JarOutputStream(fos, manifest);
-			outputStreams.put(key, zos);
-			saveExecutors.put(key, Executors.newSingleThreadExecutor());
+			RawZipWriter writer = RawZipWriter.create(file.toPath());
+
+			if (manifest != null) {
+				ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+				manifest.write(manifestBytes);
+				writer.write(JarFile.MANIFEST_NAME, manifestBytes.toByteArray());
+			}
+
+			writers.put(key, writer);
 		} catch (IOException e) {
 			throw new RuntimeException("Unable to create archive: " + file, e);
 		}
 
 		if (lineMapFile.get() != null) {
 			try {
-				lineMapWriter = new PrintWriter(new FileWriter(lineMapFile.get()));
+				lineMapOutput = new BufferedOutputStream(Files.newOutputStream(lineMapFile.get().toPath()), 1 << 16);
 			} catch (IOException e) {
 				throw new RuntimeException("Unable to create line mapping file: " + lineMapFile.get(), e);
 			}
@@ -94,65 +111,85 @@ public class ThreadSafeResultSaver implements IResultSaver, IFabricResultSaver {
 	@Override
 	public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content, int[] mapping) {
 		String key = path + "/" + archiveName;
-		ExecutorService executor = saveExecutors.get(key);
-		executor.submit(() -> {
-			ZipOutputStream zos = outputStreams.get(key);
+		RawZipWriter writer = writers.get(key);
 
-			try {
-				zos.putNextEntry(new ZipEntry(entryName));
+		// Compress on the calling thread
+		byte[] data = content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		RawZipWriter.PreparedEntry entry = RawZipWriter.prepare(entryName, data, RawZipWriter.CONSTANT_DOS_TIME);
 
-				if (content != null) {
-					zos.write(content.getBytes(StandardCharsets.UTF_8));
-				}
+		long start = System.nanoTime();
+
+		synchronized (writer) {
+			recordWait(System.nanoTime() - start);
+
+			try {
+				writer.write(entry);
 			} catch (IOException e) {
 				DecompilerContext.getLogger().writeMessage("Cannot write entry " + entryName, e);
 			}
+		}
 
-			if (mapping != null && lineMapWriter != null) {
-				int maxLine = 0;
-				int maxLineDest = 0;
-				StringBuilder builder = new StringBuilder();
+		if (mapping != null && lineMapOutput != null) {
+			byte[] lineMap = encodeLineMap(qualifiedName, mapping);
 
-				for (int i = 0; i < mapping.length; i += 2) {
-					maxLine = Math.max(maxLine, mapping[i]);
-					maxLineDest = Math.max(maxLineDest, mapping[i + 1]);
-					builder.append("\t").append(mapping[i]).append("\t").append(mapping[i + 1]).append("\n");
+			synchronized (lineMapOutput) {
+				try {
+					lineMapOutput.write(lineMap);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Cannot write line map of " + qualifiedName, e);
 				}
-
-				lineMapWriter.println(qualifiedName + "\t" + maxLine + "\t" + maxLineDest);
-				lineMapWriter.println(builder.toString());
 			}
-		});
+		}
+	}
+
+	private void recordWait(long nanos) {
+		entries.increment();
+		waitNanos.add(nanos);
+		maxWaitNanos.accumulate(nanos);
+
+		// An uncontended lock is acquired in well under a microsecond
+		if (nanos > TimeUnit.MICROSECONDS.toNanos(10)) {
+			contendedEntries.increment();
+		}
+	}
+
+	private static byte[] encodeLineMap(String qualifiedName, int[] mapping) {
+		int maxLine = 0;
+		int maxLineDest = 0;
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < mapping.length; i += 2) {
+			maxLine = Math.max(maxLine, mapping[i]);
+			maxLineDest = Math.max(maxLineDest, mapping[i + 1]);
+			builder.append("\t").append(mapping[i]).append("\t").append(mapping[i + 1]).append("\n");
+		}
+
+		return (qualifiedName + "\t" + maxLine + "\t" + maxLineDest + "\n" + builder + "\n").getBytes(StandardCharsets.UTF_8);
 	}
 
 	@Override
 	public void closeArchive(String path, String archiveName) {
 		String key = path + "/" + archiveName;
-		ExecutorService executor = saveExecutors.get(key);
-		Future<?> closeFuture = executor.submit(() -> {
-			ZipOutputStream zos = outputStreams.get(key);
+		RawZipWriter writer = writers.remove(key);
 
+		synchronized (writer) {
 			try {
-				zos.close();
+				writer.close();
 			} catch (IOException e) {
 				throw new RuntimeException("Unable to close zip. " + key, e);
 			}
-		});
-		executor.shutdown();
-
-		try {
-			closeFuture.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new RuntimeException(e);
 		}
 
-		outputStreams.remove(key);
-		saveExecutors.remove(key);
-
-		if (lineMapWriter != null) {
-			lineMapWriter.flush();
-			lineMapWriter.close();
+		if (lineMapOutput != null) {
+			try {
+				lineMapOutput.close();
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to close line mapping file: " + lineMapFile.get(), e);
+			}
 		}
+
+		LOGGER.info("Saved {} entries to {}, {} waited for the archive, {} ms total wait, {} ms longest wait",
+				entries.sum(), key, contendedEntries.sum(), TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
 	}
 
 	@Override
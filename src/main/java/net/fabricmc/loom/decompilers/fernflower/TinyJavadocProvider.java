@@ -28,6 +28,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -39,12 +40,17 @@ import org.objectweb.asm.Opcodes;
 
 import net.fabricmc.fernflower.api.IFabricJavadocProvider;
 import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
+import net.fabricmc.loom.util.gradle.WorkerDaemonClientsManagerHelper;
 import net.fabricmc.mappingio.MappingReader;
 import net.fabricmc.mappingio.adapter.MappingSourceNsSwitch;
 import net.fabricmc.mappingio.tree.MappingTree;
 import net.fabricmc.mappingio.tree.MemoryMappingTree;
 
 public class TinyJavadocProvider implements IFabricJavadocProvider {
+	// Only cached in a forked decompiler worker, which is stopped at the end of the build, as the daemon would keep the mappings alive
+	private static final boolean CACHE_MAPPINGS = System.getProperty(WorkerDaemonClientsManagerHelper.MARKER_PROP) != null;
+	private static volatile CachedMappings lastMappings;
+
 	private final MappingTree mappingTree;
 
 	public TinyJavadocProvider(File tinyFile) {
@@ -166,17 +172,37 @@ public class TinyJavadocProvider implements IFabricJavadocProvider {
 	}
 
 	private static MappingTree readMappings(File input) {
-		try (BufferedReader reader = Files.newBufferedReader(input.toPath())) {
-			MemoryMappingTree mappingTree = new MemoryMappingTree();
-			MappingSourceNsSwitch nsSwitch = new MappingSourceNsSwitch(mappingTree, MappingsNamespace.NAMED.toString());
-			MappingReader.read(reader, nsSwitch);
+		try {
+			// A reused decompiler worker usually decompiles with the same cached mappings again
+			final BasicFileAttributes attributes = Files.readAttributes(input.toPath(), BasicFileAttributes.class);
+			final CachedMappings cached = lastMappings;
+
+			if (cached != null && cached.matches(input, attributes)) {
+				return cached.mappingTree();
+			}
+
+			try (BufferedReader reader = Files.newBufferedReader(input.toPath())) {
+				MemoryMappingTree mappingTree = new MemoryMappingTree();
+				MappingSourceNsSwitch nsSwitch = new MappingSourceNsSwitch(mappingTree, MappingsNamespace.NAMED.toString());
+				MappingReader.read(reader, nsSwitch);
+
+				if (CACHE_MAPPINGS) {
+					lastMappings = new CachedMappings(input.getAbsoluteFile(), attributes.lastModifiedTime().toMillis(), attributes.size(), mappingTree);
+				}
 
-			return mappingTree;
+				return mappingTree;
+			}
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to read mappings", e);
 		}
 	}
 
+	private record CachedMappings(File file, long lastModified, long size, MappingTree mappingTree) {
+		boolean matches(File input, BasicFileAttributes attributes) {
+			return file.equals(input.getAbsoluteFile()) && lastModified == attributes.lastModifiedTime().toMillis() && size == attributes.size();
+		}
+	}
+
 	public static boolean isRecord(StructClass structClass) {
 		return (structClass.getAccessFlags() & Opcodes.ACC_RECORD) != 0;
 	}
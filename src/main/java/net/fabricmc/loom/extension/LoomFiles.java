@@ -43,6 +43,7 @@ public interface LoomFiles {
 	File getProjectPersistentCache();
 	File getProjectBuildCache();
 	File getRemappedModCache();
+	File getGlobalRemappedModCache();
 	File getNativesDirectory(Project project);
 	File getDefaultLog4jConfigFile();
 	File getDevLauncherConfig();
@@ -73,6 +73,11 @@ public abstract class LoomFilesBaseImpl implements LoomFiles {
 		return createFile(getRootProjectPersistentCache(), "remapped_mods");
 	}
 
+	@Override
+	public File getGlobalRemappedModCache() {
+		return createFile(getUserCache(), "remapped_mods-v1");
+	}
+
 	@Override
 	public File getNativesDirectory(Project project) {
 		return createFile(getRootProjectPersistentCache(), "natives/" + LoomGradleExtension.get(project).getMinecraftProvider().minecraftVersion());
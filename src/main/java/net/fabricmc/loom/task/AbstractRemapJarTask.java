@@ -68,6 +68,7 @@ import net.fabricmc.loom.task.service.JarManifestService;
 import net.fabricmc.loom.util.ZipReprocessorUtil;
 import net.fabricmc.loom.util.ZipUtils;
 import net.fabricmc.loom.util.gradle.SourceSetHelper;
+import net.fabricmc.loom.util.zip.ZipAssembler;
 
 public abstract class AbstractRemapJarTask extends Jar {
 	public static final String MANIFEST_PATH = "META-INF/MANIFEST.MF";
@@ -140,8 +141,7 @@ public abstract class AbstractRemapJarTask extends Jar {
 			params.getJarManifestService().set(jarManifestServiceProvider);
 
 			if (getIncludesClientOnlyClasses().get()) {
-				final List<String> clientOnlyEntries = new ArrayList<>(getClientOnlyEntries(getClientSourceSet()));
-				clientOnlyEntries.addAll(getAdditionalClientOnlyEntries().get());
+				final List<String> clientOnlyEntries = collectClientOnlyEntries();
 				applyClientOnlyManifestAttributes(params, clientOnlyEntries);
 				params.getClientOnlyEntries().set(clientOnlyEntries.stream().filter(s -> s.endsWith(".class")).toList());
 			}
@@ -152,6 +152,12 @@ public abstract class AbstractRemapJarTask extends Jar {
 
 	protected abstract List<String> getClientOnlyEntries(SourceSet sourceSet);
 
+	protected List<String> collectClientOnlyEntries() {
+		final List<String> clientOnlyEntries = new ArrayList<>(getClientOnlyEntries(getClientSourceSet()));
+		clientOnlyEntries.addAll(getAdditionalClientOnlyEntries().get());
+		return clientOnlyEntries;
+	}
+
 	public interface AbstractRemapParams extends WorkParameters {
 		RegularFileProperty getInputFile();
 		RegularFileProperty getOutputFile();
@@ -186,18 +192,25 @@ public abstract class AbstractRemapJarTask extends Jar {
 		}
 
 		protected void modifyJarManifest() throws IOException {
-			int count = ZipUtils.transform(outputFile, Map.of(MANIFEST_PATH, bytes -> {
-				var manifest = new Manifest(new ByteArrayInputStream(bytes));
+			int count = ZipUtils.transform(outputFile, Map.of(MANIFEST_PATH, this::modifyJarManifest));
+
+			Preconditions.checkState(count > 0, "Did not transform any jar manifest");
+		}
 
-				getParameters().getJarManifestService().get().apply(manifest, getParameters().getManifestAttributes().get());
-				manifest.getMainAttributes().putValue(MANIFEST_NAMESPACE_KEY, getParameters().getTargetNamespace().get());
+		protected void modifyJarManifest(ZipAssembler output) {
+			Preconditions.checkState(output.contains(MANIFEST_PATH), "Did not transform any jar manifest");
+			output.transform(MANIFEST_PATH, this::modifyJarManifest);
+		}
 
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				manifest.write(out);
-				return out.toByteArray();
-			}));
+		private byte[] modifyJarManifest(byte[] bytes) throws IOException {
+			var manifest = new Manifest(new ByteArrayInputStream(bytes));
 
-			Preconditions.checkState(count > 0, "Did not transform any jar manifest");
+			getParameters().getJarManifestService().get().apply(manifest, getParameters().getManifestAttributes().get());
+			manifest.getMainAttributes().putValue(MANIFEST_NAMESPACE_KEY, getParameters().getTargetNamespace().get());
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			manifest.write(out);
+			return out.toByteArray();
 		}
 
 		protected void rewriteJar() throws IOException {
@@ -208,6 +221,10 @@ public abstract class AbstractRemapJarTask extends Jar {
 				ZipReprocessorUtil.reprocessZip(outputFile.toFile(), isReproducibleFileOrder, isPreserveFileTimestamps);
 			}
 		}
+
+		protected void writeJar(ZipAssembler output) throws IOException {
+			output.write(outputFile, getParameters().getArchiveReproducibleFileOrder().get(), getParameters().getArchivePreserveFileTimestamps().get());
+		}
 	}
 
 	@Deprecated
@@ -34,6 +34,7 @@ import javax.inject.Inject;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
 
@@ -44,11 +45,11 @@ import net.fabricmc.loom.configuration.providers.minecraft.MinecraftProvider;
 import net.fabricmc.loom.configuration.providers.minecraft.MinecraftVersionMeta;
 import net.fabricmc.loom.configuration.providers.minecraft.assets.AssetIndex;
 import net.fabricmc.loom.util.MirrorUtil;
+import net.fabricmc.loom.util.download.BulkDownload;
 import net.fabricmc.loom.util.download.DownloadExecutor;
 import net.fabricmc.loom.util.download.GradleDownloadProgressListener;
 import net.fabricmc.loom.util.gradle.ProgressGroup;
 
-// TODO: Reintroduce the progress bar.
 public abstract class DownloadAssetsTask extends AbstractLoomTask {
 	@Input
 	public abstract Property<String> getAssetsHash();
@@ -59,6 +60,12 @@ public abstract class DownloadAssetsTask extends AbstractLoomTask {
 	@Input
 	public abstract Property<String> getMinecraftVersion();
 
+	/**
+	 * Whether to download the assets with a {@link BulkDownload} instead of one download per asset.
+	 */
+	@Internal
+	public abstract Property<Boolean> getBulkDownload();
+
 	@OutputDirectory
 	public abstract RegularFileProperty getAssetsDirectory();
 
@@ -73,6 +80,7 @@ public abstract class DownloadAssetsTask extends AbstractLoomTask {
 		getAssetsDirectory().set(assetsDir);
 		getAssetsHash().set(versionInfo.assetIndex().sha1());
 		getDownloadThreads().convention(Math.min(Runtime.getRuntime().availableProcessors(), 10));
+		getBulkDownload().convention(true);
 		getMinecraftVersion().set(versionInfo.id());
 		getMinecraftVersion().finalizeValue();
 
@@ -93,6 +101,11 @@ public abstract class DownloadAssetsTask extends AbstractLoomTask {
 	public void downloadAssets() throws IOException {
 		final AssetIndex assetIndex = getAssetIndex();
 
+		if (getBulkDownload().get()) {
+			bulkDownloadAssets(assetIndex);
+			return;
+		}
+
 		try (ProgressGroup progressGroup = new ProgressGroup(getProject(), "Download Assets");
 				DownloadExecutor executor = new DownloadExecutor(getDownloadThreads().get())) {
 			for (AssetIndex.Object object : assetIndex.getObjects()) {
@@ -108,16 +121,48 @@ public abstract class DownloadAssetsTask extends AbstractLoomTask {
 		}
 	}
 
+	private void bulkDownloadAssets(AssetIndex assetIndex) throws IOException {
+		final BulkDownload download = BulkDownload.create()
+				.maxConcurrentRequests(getDownloadThreads().get() * 8)
+				.verificationManifest(getAssetIndexFile(".verified").toPath());
+
+		if (getProject().getGradle().getStartParameter().isOffline()) {
+			download.offline();
+		}
+
+		for (AssetIndex.Object object : assetIndex.getObjects()) {
+			final String sha1 = object.hash();
+			final String url = MirrorUtil.getResourcesBase(getProject()) + sha1.substring(0, 2) + "/" + sha1;
+			download.add(url, sha1, object.size(), getAssetsPath(object, assetIndex));
+		}
+
+		final BulkDownload.Result result;
+
+		try (ProgressGroup progressGroup = new ProgressGroup(getProject(), "Download Assets")) {
+			result = download.progress(new GradleDownloadProgressListener("assets", progressGroup::createProgressLogger))
+					.download();
+		}
+
+		if (result.downloaded() > 0) {
+			getProject().getLogger().lifecycle(":downloaded {} of {} assets ({} KB) in {} ms ({} KB/s)",
+					result.downloaded(), result.files(), result.bytes() / 1024, result.duration().toMillis(), (long) (result.bytesPerSecond() / 1024));
+		}
+	}
+
 	private MinecraftVersionMeta.AssetIndex getAssetIndexMeta() {
 		MinecraftVersionMeta versionInfo = getExtension().getMinecraftProvider().getVersionInfo();
 		return versionInfo.assetIndex();
 	}
 
+	private File getAssetIndexFile(String extension) {
+		final MinecraftProvider minecraftProvider = getExtension().getMinecraftProvider();
+		return new File(getAssetsDirectory().get().getAsFile(), "indexes" + File.separator + getAssetIndexMeta().fabricId(minecraftProvider.minecraftVersion()) + extension);
+	}
+
 	private AssetIndex getAssetIndex() throws IOException {
 		final LoomGradleExtension extension = getExtension();
-		final MinecraftProvider minecraftProvider = extension.getMinecraftProvider();
 		final MinecraftVersionMeta.AssetIndex assetIndex = getAssetIndexMeta();
-		final File indexFile = new File(getAssetsDirectory().get().getAsFile(), "indexes" + File.separator + assetIndex.fabricId(minecraftProvider.minecraftVersion()) + ".json");
+		final File indexFile = getAssetIndexFile(".json");
 
 		final String json = extension.download(assetIndex.url())
 				.sha1(assetIndex.sha1())
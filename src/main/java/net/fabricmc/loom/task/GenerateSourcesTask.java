@@ -27,6 +27,7 @@ package net.fabricmc.loom.task;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
@@ -37,22 +38,32 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
+import org.apache.commons.io.FileUtils;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
 import org.gradle.work.DisableCachingByDefault;
 import org.gradle.workers.WorkAction;
 import org.gradle.workers.WorkParameters;
@@ -69,19 +80,27 @@ import net.fabricmc.loom.configuration.ConfigContextImpl;
 import net.fabricmc.loom.configuration.processors.MappingProcessorContextImpl;
 import net.fabricmc.loom.configuration.processors.MinecraftJarProcessorManager;
 import net.fabricmc.loom.configuration.sources.ForgeSourcesRemapper;
+import net.fabricmc.loom.decompilers.ClassFilter;
+import net.fabricmc.loom.decompilers.IncrementalDecompilation;
 import net.fabricmc.loom.decompilers.LineNumberRemapper;
 import net.fabricmc.loom.decompilers.linemap.LineMapClassFilter;
+import net.fabricmc.loom.decompilers.linemap.LineMapReader;
 import net.fabricmc.loom.decompilers.linemap.LineMapVisitor;
+import net.fabricmc.loom.decompilers.linemap.LineMapWriter;
+import net.fabricmc.loom.task.service.DecompilerWorkerService;
+import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
-import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.IOStringConsumer;
 import net.fabricmc.loom.util.Platform;
+import net.fabricmc.loom.util.gradle.GradleUtils;
 import net.fabricmc.loom.util.gradle.ThreadedProgressLoggerConsumer;
-import net.fabricmc.loom.util.gradle.ThreadedSimpleProgressLogger;
 import net.fabricmc.loom.util.gradle.WorkerDaemonClientsManagerHelper;
 import net.fabricmc.loom.util.ipc.IPCClient;
 import net.fabricmc.loom.util.ipc.IPCServer;
 import net.fabricmc.loom.util.service.ScopedSharedServiceManager;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
 import net.fabricmc.mappingio.MappingReader;
 import net.fabricmc.mappingio.adapter.MappingSourceNsSwitch;
 import net.fabricmc.mappingio.format.Tiny2Writer;
@@ -89,7 +108,11 @@ import net.fabricmc.mappingio.tree.MemoryMappingTree;
 
 @DisableCachingByDefault
 public abstract class GenerateSourcesTask extends AbstractLoomTask {
+	private static final String MAPPINGS_TRANSFORMED = "transformed";
+	private static final String MAPPINGS_UNCHANGED = "unchanged";
+
 	private final DecompilerOptions decompilerOptions;
+	private final Provider<DecompilerWorkerService> workerService;
 
 	/**
 	 * The jar to decompile, can be the unpick jar.
@@ -109,6 +132,28 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 	@OutputFile
 	public abstract RegularFileProperty getOutputJar();
 
+	/**
+	 * When enabled, only the classes whose bytecode or mappings changed since the previous run are decompiled.
+	 */
+	@Internal
+	public abstract Property<Boolean> getIncremental();
+
+	/**
+	 * When enabled, the decompiler worker JVM is kept alive until the end of the build, and reused by the genSources
+	 * tasks of every project that use the same decompiler, heap size and classpath. Only the warm JVM is reused, each
+	 * decompilation indexes the jars it reads again.
+	 */
+	@Internal
+	public abstract Property<Boolean> getReuseWorker();
+
+	/**
+	 * Classes to decompile on demand, merged into the existing sources jar. When set, the includes and excludes of
+	 * the decompiler options are ignored.
+	 */
+	@Internal
+	@Option(option = "class", description = "Only decompile the given class, for example net.minecraft.world.level.Level")
+	public abstract ListProperty<String> getClasses();
+
 	@Inject
 	public abstract WorkerExecutor getWorkerExecutor();
 
@@ -124,6 +169,11 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 		dependsOn(decompilerOptions.getClasspath().getBuiltBy());
 
 		getOutputJar().fileProvider(getProject().provider(() -> getMappedJarFileWithSuffix("-sources.jar")));
+		getIncremental().convention(true);
+		getReuseWorker().convention(GradleUtils.getBooleanPropertyProvider(getProject(), Constants.Properties.REUSE_DECOMPILER_WORKER).orElse(false));
+
+		workerService = DecompilerWorkerService.get(getProject());
+		usesService(workerService);
 	}
 
 	@TaskAction
@@ -163,7 +213,8 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 	}
 
 	private void doWork(@Nullable IPCServer ipcServer) {
-		final String jvmMarkerValue = UUID.randomUUID().toString();
+		final boolean reuseWorker = getReuseWorker().get() && useProcessIsolation();
+		final String jvmMarkerValue = reuseWorker ? getWorkerKey() : UUID.randomUUID().toString();
 		final WorkQueue workQueue = createWorkQueue(jvmMarkerValue);
 
 		workQueue.submit(DecompileAction.class, params -> {
@@ -175,6 +226,16 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 			params.getLinemap().set(getMappedJarFileWithSuffix("-sources.lmap"));
 			params.getLinemapJar().set(getMappedJarFileWithSuffix("-linemapped.jar"));
 			params.getMappings().set(getMappings().toFile());
+			params.getIndex().set(getMappedJarFileWithSuffix("-sources.index"));
+			params.getIncremental().set(getIncremental());
+			params.getIncludes().set(decompilerOptions.getIncludes());
+			params.getExcludes().set(decompilerOptions.getExcludes());
+			params.getClasses().set(getClasses());
+
+			if (getExtension().isForge() && !getExtension().isLegacyForge()) {
+				// Forge's own sources are injected afterwards
+				params.getExcludes().add("net/minecraftforge/**");
+			}
 
 			if (ipcServer != null) {
 				params.getIPCPath().set(ipcServer.getPath().toFile());
@@ -189,7 +250,10 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 		try {
 			workQueue.await();
 		} finally {
-			if (ipcServer != null) {
+			if (reuseWorker) {
+				// Stopped once the build has finished
+				workerService.get().keepAlive(jvmMarkerValue, getWorkerDaemonClientsManager());
+			} else if (ipcServer != null) {
 				boolean stopped = WorkerDaemonClientsManagerHelper.stopIdleJVM(getWorkerDaemonClientsManager(), jvmMarkerValue);
 
 				if (!stopped && ipcServer.hasReceivedMessage()) {
@@ -199,6 +263,22 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 		}
 	}
 
+	/**
+	 * Identifies the worker JVMs that can be reused by this task. Gradle only reuses a worker daemon with the same fork
+	 * options, so the heap size is part of them already.
+	 */
+	private String getWorkerKey() {
+		final StringBuilder key = new StringBuilder()
+				.append(decompilerOptions.getDecompilerClassName().get()).append('\n')
+				.append(decompilerOptions.getMemory().get()).append('\n');
+
+		for (File file : getClasspath().getFiles()) {
+			key.append(file.getAbsolutePath()).append('\n');
+		}
+
+		return Checksum.toHex(Checksum.sha256(key.toString()));
+	}
+
 	private WorkQueue createWorkQueue(String jvmMarkerValue) {
 		if (!useProcessIsolation()) {
 			return getWorkerExecutor().classLoaderIsolation(spec -> {
@@ -230,6 +310,11 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 		RegularFileProperty getLinemap();
 		RegularFileProperty getLinemapJar();
 		RegularFileProperty getMappings();
+		RegularFileProperty getIndex();
+		Property<Boolean> getIncremental();
+		ListProperty<String> getIncludes();
+		ListProperty<String> getExcludes();
+		ListProperty<String> getClasses();
 
 		RegularFileProperty getIPCPath();
 
@@ -240,6 +325,8 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 	}
 
 	public abstract static class DecompileAction implements WorkAction<DecompileParams> {
+		private static final Logger LOGGER = Logging.getLogger(DecompileAction.class);
+
 		@Override
 		public void execute() {
 			if (!getParameters().getIPCPath().isPresent() || !Platform.CURRENT.supportsUnixDomainSockets()) {
@@ -251,7 +338,7 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 			final Path ipcPath = getParameters().getIPCPath().get().getAsFile().toPath();
 
 			try (IPCClient ipcClient = new IPCClient(ipcPath)) {
-				doDecompile(new ThreadedSimpleProgressLogger(ipcClient));
+				doDecompile(ipcClient);
 			} catch (Exception e) {
 				throw new RuntimeException("Failed to decompile", e);
 			}
@@ -263,6 +350,8 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 			final Path linemap = getParameters().getLinemap().get().getAsFile().toPath();
 			final Path linemapJar = getParameters().getLinemapJar().get().getAsFile().toPath();
 			final Path runtimeJar = getParameters().getRuntimeJar().get().getAsFile().toPath();
+			final Path mappings = getParameters().getMappings().get().getAsFile().toPath();
+			final Path index = getParameters().getIndex().get().getAsFile().toPath();
 
 			final DecompilerOptions.Dto decompilerOptions = getParameters().getDecompilerOptions().get();
 
@@ -278,10 +367,189 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 				throw new RuntimeException("Failed to create decompiler", e);
 			}
 
+			final Collection<Path> libraries = getLibraries();
+			final ClassFilter filter = ClassFilter.of(getParameters().getIncludes().get(), getParameters().getExcludes().get());
+
+			try {
+				if (!getParameters().getClasses().get().isEmpty()) {
+					// Partial outputs can't be updated incrementally
+					Files.deleteIfExists(index);
+					decompileOnDemand(decompiler, decompilerOptions, logger, inputJar, sourcesDestinationJar, linemap, runtimeJar, linemapJar, mappings, libraries);
+					return;
+				}
+
+				IncrementalDecompilation incremental = null;
+
+				// Forge's sources are injected into the sources jar afterwards, always decompile everything.
+				if (getParameters().getIncremental().get() && !getParameters().getForge().get() && filter.isEmpty()) {
+					final String key = IncrementalDecompilation.key(decompilerOptions.className(), decompilerOptions.options(), libraries);
+					incremental = IncrementalDecompilation.create(index, inputJar, runtimeJar, mappings, sourcesDestinationJar, linemap, key);
+				}
+
+				// Only written back once the outputs are complete, filtered outputs can't be updated incrementally
+				Files.deleteIfExists(index);
+
+				if (incremental == null || incremental.isFull()) {
+					if (filter.isEmpty()) {
+						decompile(decompiler, decompilerOptions, logger, inputJar, sourcesDestinationJar, linemap, mappings, libraries);
+					} else {
+						decompileSelected(decompiler, decompilerOptions, logger, filter, inputJar, sourcesDestinationJar, linemap, mappings, libraries);
+					}
+
+					if (Files.exists(linemap)) {
+						if (getParameters().getForge().get()) {
+							// Remove Forge classes from linemap, legacy Forge still decompiles them
+							LineMapVisitor.process(linemap, next -> new LineMapClassFilter(next, name -> !name.startsWith("net/minecraftforge/")));
+						}
+
+						remapRuntimeJar(logger, runtimeJar, linemap, linemapJar);
+					}
+				} else {
+					LOGGER.info("Reusing the previous decompilation, {} changed classes", incremental.getChanged().size());
+					decompileIncrementally(incremental, decompiler, decompilerOptions, logger, inputJar, runtimeJar, linemapJar, mappings, libraries);
+				}
+
+				if (incremental != null) {
+					incremental.writeIndex(runtimeJar);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to decompile", e);
+			}
+		}
+
+		/**
+		 * Decompiles the selected classes, using the other classes of the input jar as a library.
+		 */
+		private static void decompileSelected(LoomDecompiler decompiler, DecompilerOptions.Dto decompilerOptions, IOStringConsumer logger, Predicate<String> filter, Path inputJar, Path sourcesDestinationJar, Path linemap, Path mappings, Collection<Path> libraries) throws IOException {
+			final Path tempDir = Files.createTempDirectory("loom-decompile");
+
+			try {
+				final Path selectedJar = tempDir.resolve("selected.jar");
+				final Path otherJar = tempDir.resolve("other.jar");
+				ClassFilter.split(inputJar, filter, selectedJar, otherJar);
+
+				final List<Path> decompileLibraries = new ArrayList<>(libraries);
+				decompileLibraries.add(otherJar);
+
+				Files.deleteIfExists(linemap);
+				decompile(decompiler, decompilerOptions, logger, selectedJar, sourcesDestinationJar, linemap, mappings, decompileLibraries);
+			} finally {
+				FileUtils.deleteDirectory(tempDir.toFile());
+			}
+		}
+
+		/**
+		 * Decompiles the requested classes and merges them into the existing sources jar and line map. Only the classes
+		 * that weren't in the sources jar yet are line mapped in the runtime jar, the others have been already.
+		 */
+		private void decompileOnDemand(LoomDecompiler decompiler, DecompilerOptions.Dto decompilerOptions, IOStringConsumer logger, Path inputJar, Path sourcesDestinationJar, Path linemap, Path runtimeJar, Path linemapJar, Path mappings, Collection<Path> libraries) throws IOException {
+			final Set<String> classes = getParameters().getClasses().get().stream()
+					.map(name -> name.replace('.', '/'))
+					.collect(Collectors.toSet());
+			final Predicate<String> filter = name -> classes.contains(ClassFilter.getOuterClass(name));
+			final Path tempDir = Files.createTempDirectory("loom-decompile");
+
+			try {
+				final Path decompiledSources = tempDir.resolve("sources.jar");
+				final Path decompiledLinemap = tempDir.resolve("sources.lmap");
+				decompileSelected(decompiler, decompilerOptions, logger, filter, inputJar, decompiledSources, decompiledLinemap, mappings, libraries);
+
+				final Set<String> existing = new HashSet<>();
+
+				if (Files.exists(sourcesDestinationJar)) {
+					try (RawZipReader reader = RawZipReader.open(sourcesDestinationJar)) {
+						for (ZipEntryInfo entry : reader.entries()) {
+							existing.add(entry.name());
+						}
+					}
+				}
+
+				final Path mergedSources = tempDir.resolve("merged.jar");
+
+				try (RawZipWriter writer = RawZipWriter.create(mergedSources)) {
+					try (RawZipReader reader = RawZipReader.open(decompiledSources)) {
+						writer.copyFrom(reader, name -> true);
+					}
+
+					if (Files.exists(sourcesDestinationJar)) {
+						try (RawZipReader reader = RawZipReader.open(sourcesDestinationJar)) {
+							writer.copyFrom(reader, name -> true);
+						}
+					}
+				}
+
+				Files.move(mergedSources, sourcesDestinationJar, StandardCopyOption.REPLACE_EXISTING);
+
+				if (!Files.exists(decompiledLinemap)) {
+					return;
+				}
+
+				final Predicate<String> notLinemapped = name -> !existing.contains(ClassFilter.getOuterClass(name) + ".java");
+				final StringWriter merged = new StringWriter();
+				final StringWriter runtime = new StringWriter();
+
+				try (LineMapWriter mergedWriter = new LineMapWriter(merged);
+						LineMapWriter runtimeWriter = new LineMapWriter(runtime)) {
+					readLineMap(decompiledLinemap, mergedWriter);
+					readLineMap(decompiledLinemap, new LineMapClassFilter(runtimeWriter, notLinemapped));
+
+					if (Files.exists(linemap)) {
+						readLineMap(linemap, new LineMapClassFilter(mergedWriter, filter.negate()));
+					}
+				}
+
+				Files.writeString(linemap, merged.toString(), StandardCharsets.UTF_8);
+
+				if (!runtime.getBuffer().isEmpty()) {
+					final Path runtimeLinemap = tempDir.resolve("runtime.lmap");
+					Files.writeString(runtimeLinemap, runtime.toString(), StandardCharsets.UTF_8);
+					remapRuntimeJar(logger, runtimeJar, runtimeLinemap, linemapJar);
+				}
+			} finally {
+				FileUtils.deleteDirectory(tempDir.toFile());
+			}
+		}
+
+		private void decompileIncrementally(IncrementalDecompilation incremental, LoomDecompiler decompiler, DecompilerOptions.Dto decompilerOptions, IOStringConsumer logger, Path inputJar, Path runtimeJar, Path linemapJar, Path mappings, Collection<Path> libraries) throws IOException {
+			final Path tempDir = Files.createTempDirectory("loom-decompile");
+
+			try {
+				Path decompiledSources = null;
+				Path decompiledLinemap = null;
+
+				if (!incremental.getChanged().isEmpty()) {
+					final Path changedJar = tempDir.resolve("changed.jar");
+					final Path unchangedJar = tempDir.resolve("unchanged.jar");
+					incremental.splitInput(inputJar, changedJar, unchangedJar);
+
+					// The unchanged classes are still needed to resolve references from the changed classes
+					final List<Path> decompileLibraries = new ArrayList<>(libraries);
+					decompileLibraries.add(unchangedJar);
+
+					decompiledSources = tempDir.resolve("sources.jar");
+					decompiledLinemap = tempDir.resolve("sources.lmap");
+					decompile(decompiler, decompilerOptions, logger, changedJar, decompiledSources, decompiledLinemap, mappings, decompileLibraries);
+
+					if (!Files.exists(decompiledLinemap)) {
+						decompiledLinemap = null;
+					}
+				}
+
+				final Path runtimeLinemap = tempDir.resolve("runtime.lmap");
+
+				if (incremental.merge(decompiledSources, decompiledLinemap, runtimeLinemap)) {
+					remapRuntimeJar(logger, runtimeJar, runtimeLinemap, linemapJar);
+				}
+			} finally {
+				FileUtils.deleteDirectory(tempDir.toFile());
+			}
+		}
+
+		private static void decompile(LoomDecompiler decompiler, DecompilerOptions.Dto decompilerOptions, IOStringConsumer logger, Path inputJar, Path sourcesDestinationJar, Path linemap, Path mappings, Collection<Path> libraries) {
 			DecompilationMetadata metadata = new DecompilationMetadata(
 					decompilerOptions.maxThreads(),
-					getParameters().getMappings().get().getAsFile().toPath(),
-					getLibraries(),
+					mappings,
+					libraries,
 					logger,
 					decompilerOptions.options()
 			);
@@ -294,43 +562,33 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 			);
 
 			// Close the decompile loggers
-			try {
-				metadata.logger().accept(ThreadedProgressLoggerConsumer.CLOSE_LOGGERS);
-			} catch (IOException e) {
-				throw new UncheckedIOException("Failed to close loggers", e);
-			}
-
-			if (Files.exists(linemap)) {
-				if (getParameters().getForge().get()) {
-					try {
-						// Remove Forge classes from linemap
-						// TODO: We should instead not decompile Forge's classes at all
-						LineMapVisitor.process(linemap, next -> new LineMapClassFilter(next, name -> !name.startsWith("net/minecraftforge/")));
-					} catch (IOException e) {
-						throw new UncheckedIOException("Failed to process linemap", e);
-					}
-				}
-
+			if (logger instanceof IPCClient ipcClient) {
 				try {
-					// Line map the actually jar used to run the game, not the one used to decompile
-					remapLineNumbers(metadata.logger(), runtimeJar, linemap, linemapJar);
-
-					Files.copy(linemapJar, runtimeJar, StandardCopyOption.REPLACE_EXISTING);
-					Files.delete(linemapJar);
+					ipcClient.reset();
 				} catch (IOException e) {
-					throw new UncheckedIOException("Failed to remap line numbers", e);
+					throw new UncheckedIOException("Failed to close loggers", e);
 				}
 			}
 		}
 
+		private static void readLineMap(Path path, LineMapVisitor visitor) throws IOException {
+			try (LineMapReader reader = new LineMapReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+				reader.accept(visitor);
+			}
+		}
+
+		private static void remapRuntimeJar(IOStringConsumer logger, Path runtimeJar, Path linemap, Path linemapJar) throws IOException {
+			// Line map the actually jar used to run the game, not the one used to decompile
+			remapLineNumbers(logger, runtimeJar, linemap, linemapJar);
+
+			Files.copy(linemapJar, runtimeJar, StandardCopyOption.REPLACE_EXISTING);
+			Files.delete(linemapJar);
+		}
+
 		static void remapLineNumbers(IOStringConsumer logger, Path oldCompiledJar, Path linemap, Path linemappedJarDestination) throws IOException {
 			LineNumberRemapper remapper = new LineNumberRemapper();
 			remapper.readMappings(linemap.toFile());
-
-			try (FileSystemUtil.Delegate inFs = FileSystemUtil.getJarFileSystem(oldCompiledJar.toFile(), true);
-					FileSystemUtil.Delegate outFs = FileSystemUtil.getJarFileSystem(linemappedJarDestination.toFile(), true)) {
-				remapper.process(logger, inFs.get().getPath("/"), outFs.get().getPath("/"));
-			}
+			remapper.process(logger, oldCompiledJar, linemappedJarDestination);
 		}
 
 		private Collection<Path> getLibraries() {
@@ -363,6 +621,35 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 	private Path getMappings() {
 		Path inputMappings = getExtension().isForge() ? getExtension().getMappingConfiguration().tinyMappingsWithSrg : getExtension().getMappingConfiguration().tinyMappings;
 
+		MinecraftJarProcessorManager minecraftJarProcessorManager = MinecraftJarProcessorManager.create(getProject());
+
+		if (minecraftJarProcessorManager == null) {
+			return inputMappings;
+		}
+
+		// The processed mappings are cached until the mappings or the processors change
+		final Path outputMappings = getMappedJarFileWithSuffix("-sources-mappings.tiny").toPath();
+		final Path cacheKeyFile = getMappedJarFileWithSuffix("-sources-mappings.key").toPath();
+		final String cacheKey;
+
+		try {
+			cacheKey = Checksum.sha1Hex(inputMappings) + "\n" + minecraftJarProcessorManager.getCacheValue() + "\n";
+
+			if (Files.exists(cacheKeyFile)) {
+				final String existingKey = Files.readString(cacheKeyFile, StandardCharsets.UTF_8);
+
+				if (existingKey.equals(cacheKey + MAPPINGS_TRANSFORMED) && Files.exists(outputMappings)) {
+					return outputMappings;
+				} else if (existingKey.equals(cacheKey + MAPPINGS_UNCHANGED)) {
+					return inputMappings;
+				}
+			}
+
+			Files.deleteIfExists(cacheKeyFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read the mappings cache", e);
+		}
+
 		MemoryMappingTree mappingTree = new MemoryMappingTree();
 
 		try (Reader reader = Files.newBufferedReader(inputMappings, StandardCharsets.UTF_8)) {
@@ -373,20 +660,12 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 
 		final List<MappingsProcessor> mappingsProcessors = new ArrayList<>();
 
-		MinecraftJarProcessorManager minecraftJarProcessorManager = MinecraftJarProcessorManager.create(getProject());
-
-		if (minecraftJarProcessorManager != null) {
-			mappingsProcessors.add(mappings -> {
-				try (var serviceManager = new ScopedSharedServiceManager()) {
-					final var configContext = new ConfigContextImpl(getProject(), serviceManager, getExtension());
-					return minecraftJarProcessorManager.processMappings(mappings, new MappingProcessorContextImpl(configContext));
-				}
-			});
-		}
-
-		if (mappingsProcessors.isEmpty()) {
-			return inputMappings;
-		}
+		mappingsProcessors.add(mappings -> {
+			try (var serviceManager = new ScopedSharedServiceManager()) {
+				final var configContext = new ConfigContextImpl(getProject(), serviceManager, getExtension());
+				return minecraftJarProcessorManager.processMappings(mappings, new MappingProcessorContextImpl(configContext));
+			}
+		});
 
 		boolean transformed = false;
 
@@ -396,21 +675,19 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 			}
 		}
 
-		if (!transformed) {
-			return inputMappings;
-		}
-
-		final Path outputMappings;
-
 		try {
-			outputMappings = Files.createTempFile("loom-transitive-mappings", ".tiny");
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to create temp file", e);
-		}
+			if (!transformed) {
+				Files.writeString(cacheKeyFile, cacheKey + MAPPINGS_UNCHANGED, StandardCharsets.UTF_8);
+				return inputMappings;
+			}
+
+			try (Writer writer = Files.newBufferedWriter(outputMappings, StandardCharsets.UTF_8)) {
+				Tiny2Writer tiny2Writer = new Tiny2Writer(writer, false);
+				mappingTree.accept(new MappingSourceNsSwitch(tiny2Writer, MappingsNamespace.NAMED.toString()));
+			}
 
-		try (Writer writer = Files.newBufferedWriter(outputMappings, StandardCharsets.UTF_8)) {
-			Tiny2Writer tiny2Writer = new Tiny2Writer(writer, false);
-			mappingTree.accept(new MappingSourceNsSwitch(tiny2Writer, MappingsNamespace.NAMED.toString()));
+			// Written last, so that an interrupted write is never used
+			Files.writeString(cacheKeyFile, cacheKey + MAPPINGS_TRANSFORMED, StandardCharsets.UTF_8);
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to write mappings", e);
 		}
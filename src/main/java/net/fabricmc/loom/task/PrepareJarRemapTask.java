@@ -24,10 +24,15 @@
 
 package net.fabricmc.loom.task;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 
 import javax.inject.Inject;
 
+import dev.architectury.tinyremapper.InputTag;
+import dev.architectury.tinyremapper.TinyRemapper;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.InputFile;
@@ -36,7 +41,9 @@ import org.gradle.workers.WorkAction;
 import org.gradle.workers.WorkParameters;
 import org.gradle.workers.WorkQueue;
 import org.gradle.workers.WorkerExecutor;
+import org.jetbrains.annotations.Nullable;
 
+import net.fabricmc.loom.build.IncrementalRemapping;
 import net.fabricmc.loom.task.service.TinyRemapperService;
 import net.fabricmc.loom.util.service.UnsafeWorkQueueHelper;
 
@@ -77,12 +84,22 @@ public abstract class PrepareJarRemapTask extends AbstractLoomTask {
 		workQueue.submit(ReadInputsAction.class, params -> {
 			params.getTinyRemapperBuildServiceUuid().set(UnsafeWorkQueueHelper.create(remapJarTask.getTinyRemapperService()));
 			params.getInputFile().set(getInputFile());
+
+			if (remapJarTask.getIncremental().get()) {
+				params.getOutputFile().set(remapJarTask.getArchiveFile());
+				params.getIncrementalDirectory().set(remapJarTask.incrementalDirectory());
+				params.getIncrementalKey().set(remapJarTask.createIncrementalKey());
+			}
 		});
 	}
 
 	public interface ReadInputsParams extends WorkParameters {
 		Property<String> getTinyRemapperBuildServiceUuid();
 		RegularFileProperty getInputFile();
+		RegularFileProperty getOutputFile();
+
+		DirectoryProperty getIncrementalDirectory();
+		Property<String> getIncrementalKey();
 	}
 
 	public abstract static class ReadInputsAction implements WorkAction<ReadInputsParams> {
@@ -95,11 +112,43 @@ public abstract class PrepareJarRemapTask extends AbstractLoomTask {
 		@Override
 		public void execute() {
 			final Path inputFile = getParameters().getInputFile().getAsFile().get().toPath();
-			prepare(tinyRemapperService, inputFile);
+
+			try {
+				prepare(tinyRemapperService, inputFile, createIncrementalRemapping(inputFile, getParameters().getOutputFile(), getParameters().getIncrementalDirectory(), getParameters().getIncrementalKey()));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to read inputs from " + inputFile, e);
+			}
 		}
 	}
 
-	static void prepare(TinyRemapperService tinyRemapperService, Path inputFile) {
-		tinyRemapperService.getTinyRemapperForInputs().readInputs(tinyRemapperService.getOrCreateTag(inputFile), inputFile);
+	static void prepare(TinyRemapperService tinyRemapperService, Path inputFile, @Nullable IncrementalRemapping incrementalRemapping) throws IOException {
+		final TinyRemapper tinyRemapper = tinyRemapperService.getTinyRemapperForInputs();
+		final InputTag tag = tinyRemapperService.getOrCreateTag(inputFile);
+
+		if (incrementalRemapping == null) {
+			tinyRemapper.readInputs(tag, inputFile);
+			return;
+		}
+
+		tinyRemapperService.setIncrementalRemapping(inputFile, incrementalRemapping);
+
+		if (incrementalRemapping.isFull()) {
+			tinyRemapper.readInputs(tag, inputFile);
+			return;
+		}
+
+		// Only the changed classes are remapped, the others are still needed to remap their hierarchy and references
+		incrementalRemapping.splitInput(inputFile);
+		tinyRemapper.readInputs(tag, incrementalRemapping.getChangedJar());
+		tinyRemapper.readClassPath(incrementalRemapping.getUnchangedJar());
+	}
+
+	@Nullable
+	static IncrementalRemapping createIncrementalRemapping(Path inputFile, RegularFileProperty outputFile, DirectoryProperty directory, Property<String> key) throws IOException {
+		if (!key.isPresent()) {
+			return null;
+		}
+
+		return IncrementalRemapping.create(directory.get().getAsFile().toPath(), inputFile, outputFile.get().getAsFile().toPath(), key.get());
 	}
 }
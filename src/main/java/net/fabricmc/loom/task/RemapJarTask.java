@@ -27,6 +27,7 @@ package net.fabricmc.loom.task;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -37,17 +38,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
 import com.google.gson.JsonObject;
 import dev.architectury.loom.extensions.ModBuildExtensions;
-import dev.architectury.tinyremapper.OutputConsumerPath;
 import dev.architectury.tinyremapper.TinyRemapper;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.plugins.JavaPlugin;
@@ -62,6 +64,7 @@ import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.TaskDependency;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,14 +72,19 @@ import net.fabricmc.accesswidener.AccessWidenerReader;
 import net.fabricmc.accesswidener.AccessWidenerRemapper;
 import net.fabricmc.accesswidener.AccessWidenerWriter;
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.LoomGradlePlugin;
+import net.fabricmc.loom.build.IncrementalRemapping;
+import net.fabricmc.loom.build.mixin.AnnotationProcessorInvoker;
 import net.fabricmc.loom.build.nesting.IncludedJarFactory;
 import net.fabricmc.loom.build.nesting.IncludedJarFactory.LazyNestedFile;
 import net.fabricmc.loom.build.nesting.IncludedJarFactory.NestedFile;
 import net.fabricmc.loom.build.nesting.JarNester;
 import net.fabricmc.loom.configuration.accesswidener.AccessWidenerFile;
+import net.fabricmc.loom.configuration.providers.mappings.MappingConfiguration;
 import net.fabricmc.loom.extension.MixinExtension;
 import net.fabricmc.loom.task.service.MappingsService;
 import net.fabricmc.loom.task.service.TinyRemapperService;
+import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.ExceptionUtil;
 import net.fabricmc.loom.util.ModPlatform;
@@ -85,8 +93,12 @@ import net.fabricmc.loom.util.SidedClassVisitor;
 import net.fabricmc.loom.util.ZipUtils;
 import net.fabricmc.loom.util.fmj.FabricModJson;
 import net.fabricmc.loom.util.fmj.FabricModJsonFactory;
+import net.fabricmc.loom.util.gradle.GradleUtils;
+import net.fabricmc.loom.util.gradle.SourceSetHelper;
+import net.fabricmc.loom.util.kotlin.KotlinPluginUtils;
 import net.fabricmc.loom.util.service.BuildSharedServiceManager;
 import net.fabricmc.loom.util.service.UnsafeWorkQueueHelper;
+import net.fabricmc.loom.util.zip.ZipAssembler;
 
 public abstract class RemapJarTask extends AbstractRemapJarTask {
 	@InputFiles
@@ -133,6 +145,17 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 	@ApiStatus.Internal
 	public abstract Property<Boolean> getUseMixinAP();
 
+	/**
+	 * When enabled, only the classes that changed since the previous run, or that depend on the hierarchy or members
+	 * of a changed class, are remapped. The other classes are copied from the previous output.
+	 *
+	 * <p>This is disabled by default.
+	 *
+	 * @return the property
+	 */
+	@Internal
+	public abstract Property<Boolean> getIncremental();
+
 	private final Provider<BuildSharedServiceManager> serviceManagerProvider;
 
 	@Inject
@@ -144,6 +167,7 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 		getAddNestedDependencies().convention(true).finalizeValueOnRead();
 		getReadMixinConfigsFromManifest().convention(LoomGradleExtension.get(getProject()).isForge()).finalizeValueOnRead();
 		getInjectAccessWidener().convention(false);
+		getIncremental().convention(false);
 
 		Configuration includeConfiguration = getProject().getConfigurations().getByName(Constants.Configurations.INCLUDE);
 		IncludedJarFactory factory = new IncludedJarFactory(getProject());
@@ -200,6 +224,12 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 			params.getRemapClasspath().from(getClasspath());
 			params.getMultiProjectOptimisation().set(getLoomExtension().multiProjectOptimisation());
 
+			// Otherwise the inputs have been read, and the incremental state created, by the preparation task
+			if (getIncremental().get() && !getLoomExtension().multiProjectOptimisation()) {
+				params.getIncrementalDirectory().set(incrementalDirectory());
+				params.getIncrementalKey().set(createIncrementalKey());
+			}
+
 			final boolean mixinAp = getUseMixinAP().get();
 			params.getUseMixinExtension().set(!mixinAp);
 
@@ -224,6 +254,58 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 		});
 	}
 
+	File incrementalDirectory() {
+		return new File(getLoomExtension().getFiles().getProjectBuildCache(), "remap-" + getName());
+	}
+
+	/**
+	 * Creates the key of everything that affects the remapped classes other than the input classes.
+	 */
+	String createIncrementalKey() {
+		final LoomGradleExtension extension = getLoomExtension();
+		final MappingConfiguration mappingConfiguration = extension.getMappingConfiguration();
+		final List<String> values = new ArrayList<>();
+		final List<Path> files = new ArrayList<>();
+
+		values.add(LoomGradlePlugin.LOOM_VERSION);
+		values.add(Objects.requireNonNullElse(TinyRemapper.class.getPackage().getImplementationVersion(), "unknown"));
+		values.add(KotlinPluginUtils.hasKotlinPlugin(getProject()) ? "kotlin-" + KotlinPluginUtils.getKotlinPluginVersion(getProject()) + ":" + KotlinPluginUtils.getKotlinMetadataVersion() : "no-kotlin");
+		values.add(mappingConfiguration.getBuildServiceName("remapJarService", getSourceNamespace().get(), getTargetNamespace().get()));
+		values.add(extension.getPlatform().get().name());
+		values.add(getUseMixinAP().get().toString());
+
+		// Copied classes are already marked as client only
+		if (getIncludesClientOnlyClasses().get()) {
+			values.addAll(collectClientOnlyEntries());
+		}
+
+		getClasspath().forEach(file -> files.add(file.toPath()));
+		Stream.of(mappingConfiguration.tinyMappings, mappingConfiguration.tinyMappingsWithSrg).filter(Objects::nonNull).forEach(files::add);
+
+		try {
+			if (getUseMixinAP().get()) {
+				final List<Path> mixinMappings = new ArrayList<>();
+
+				GradleUtils.allLoomProjects(getProject().getGradle(), project -> {
+					for (SourceSet sourceSet : SourceSetHelper.getSourceSets(project)) {
+						mixinMappings.add(AnnotationProcessorInvoker.getMixinMappingsForSourceSet(project, sourceSet).toPath());
+					}
+				});
+
+				// The mixin mappings are written by every compile, compare their content instead
+				for (Path path : mixinMappings) {
+					if (Files.exists(path)) {
+						values.add(Checksum.sha1Hex(path));
+					}
+				}
+			}
+
+			return IncrementalRemapping.key(values, files);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to create the incremental remap key", e);
+		}
+	}
+
 	private void setupLegacyMixinRefmapRemapping(RemapParams params) {
 		final LoomGradleExtension extension = LoomGradleExtension.get(getProject());
 		final MixinExtension mixinExtension = extension.getMixin();
@@ -279,6 +361,9 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 		Property<Boolean> getUseMixinExtension();
 		Property<Boolean> getMultiProjectOptimisation();
 
+		DirectoryProperty getIncrementalDirectory();
+		Property<String> getIncrementalKey();
+
 		record RefmapData(List<String> mixinConfigs, String refmapName) implements Serializable { }
 		ListProperty<RefmapData> getMixinData();
 
@@ -291,6 +376,7 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 
 		private final TinyRemapperService tinyRemapperService;
 		private TinyRemapper tinyRemapper;
+		private @Nullable IncrementalRemapping incrementalRemapping;
 
 		public RemapAction() {
 			this.tinyRemapperService = UnsafeWorkQueueHelper.get(getParameters().getTinyRemapperBuildServiceUuid(), TinyRemapperService.class);
@@ -306,26 +392,34 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 				}
 
 				tinyRemapper = tinyRemapperService.getTinyRemapperForRemapping();
+				incrementalRemapping = tinyRemapperService.getIncrementalRemapping(inputFile);
 
-				remap();
+				// Every edit of the output is registered on the assembler, the jar is then written once
+				try (ZipAssembler output = ZipAssembler.open(inputFile, name -> !name.endsWith(".class"))) {
+					remap(output);
 
-				if (getParameters().getClientOnlyEntries().isPresent()) {
-					markClientOnlyClasses();
-				}
+					if (getParameters().getClientOnlyEntries().isPresent()) {
+						markClientOnlyClasses(output);
+					}
 
-				if (!injectAccessWidener()) {
-					remapAccessWidener();
-				}
+					if (!injectAccessWidener(output)) {
+						remapAccessWidener(output);
+					}
 
-				addRefmaps();
-				addNestedJars();
-				ModBuildExtensions.convertAwToAt(getParameters().getAtAccessWideners(), outputFile, getParameters().getMappingBuildServiceUuid());
+					addRefmaps(output);
+					addNestedJars(output);
+					ModBuildExtensions.convertAwToAt(getParameters().getAtAccessWideners(), output, getParameters().getMappingBuildServiceUuid());
 
-				if (getParameters().getPlatform().get() != ModPlatform.FORGE) {
-					modifyJarManifest();
+					if (getParameters().getPlatform().get() != ModPlatform.FORGE) {
+						modifyJarManifest(output);
+					}
+
+					writeJar(output);
 				}
 
-				rewriteJar();
+				if (incrementalRemapping != null) {
+					incrementalRemapping.writeIndex(name -> tinyRemapper.getEnvironment().getRemapper().map(name));
+				}
 
 				if (!getParameters().getMultiProjectOptimisation().get()) {
 					tinyRemapperService.close();
@@ -343,53 +437,64 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 			}
 		}
 
-		private void prepare() {
-			final Path inputFile = getParameters().getInputFile().getAsFile().get().toPath();
-			PrepareJarRemapTask.prepare(tinyRemapperService, inputFile);
+		private void prepare() throws IOException {
+			final IncrementalRemapping incrementalRemapping = PrepareJarRemapTask.createIncrementalRemapping(inputFile, getParameters().getOutputFile(), getParameters().getIncrementalDirectory(), getParameters().getIncrementalKey());
+			PrepareJarRemapTask.prepare(tinyRemapperService, inputFile, incrementalRemapping);
 		}
 
-		private void remap() throws IOException {
-			try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(outputFile).build()) {
-				outputConsumer.addNonClassFiles(inputFile);
-				tinyRemapper.apply(outputConsumer, tinyRemapperService.getOrCreateTag(inputFile));
+		private void remap(ZipAssembler output) throws IOException {
+			final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+			tinyRemapper.apply((name, bytes) -> {
+				if (name.startsWith("/")) name = name.substring(1);
+				classes.put(name + ".class", bytes);
+			}, tinyRemapperService.getOrCreateTag(inputFile));
+
+			// tiny-remapper outputs the classes in no particular order
+			new TreeMap<>(classes).forEach(output::put);
+
+			if (incrementalRemapping != null) {
+				LOGGER.info("Remapped {} of {} classes in {}", incrementalRemapping.getChanged().size(), incrementalRemapping.getClassCount(), inputFile);
+				incrementalRemapping.copyUnchanged(output);
 			}
 		}
 
-		private void markClientOnlyClasses() throws IOException {
-			final Stream<Pair<String, ZipUtils.UnsafeUnaryOperator<byte[]>>> tranformers = getParameters().getClientOnlyEntries().get().stream()
-					.map(s -> new Pair<>(s,
-							(ZipUtils.AsmClassOperator) classVisitor -> SidedClassVisitor.CLIENT.insertApplyVisitor(null, classVisitor)
-					));
+		private void markClientOnlyClasses(ZipAssembler output) {
+			for (String entry : getParameters().getClientOnlyEntries().get()) {
+				if (incrementalRemapping != null && incrementalRemapping.isCopied(entry)) {
+					continue;
+				}
 
-			ZipUtils.transform(outputFile, tranformers);
+				output.transform(entry, (ZipUtils.AsmClassOperator) classVisitor -> SidedClassVisitor.CLIENT.insertApplyVisitor(null, classVisitor));
+			}
 		}
 
-		private boolean injectAccessWidener() throws IOException {
+		private boolean injectAccessWidener(ZipAssembler output) throws IOException {
 			if (!getParameters().getInjectAccessWidener().isPresent()) return false;
 
 			Path path = getParameters().getInjectAccessWidener().getAsFile().get().toPath();
 
 			byte[] remapped = remapAccessWidener(Files.readAllBytes(path));
 
-			ZipUtils.add(outputFile, path.getFileName().toString(), remapped);
+			output.put(path.getFileName().toString(), remapped);
 
 			if (getParameters().getPlatform().get() == ModPlatform.QUILT) {
-				ZipUtils.transformJson(JsonObject.class, outputFile, Map.of("quilt.mod.json", json -> {
+				output.transformJson(JsonObject.class, "quilt.mod.json", json -> {
 					json.addProperty("access_widener", path.getFileName().toString());
 					return json;
-				}));
+				});
 				return true;
 			}
 
-			ZipUtils.transformJson(JsonObject.class, outputFile, Map.of("fabric.mod.json", json -> {
+			output.transformJson(JsonObject.class, "fabric.mod.json", json -> {
 				json.addProperty("accessWidener", path.getFileName().toString());
 				return json;
-			}));
+			});
 
 			return true;
 		}
 
-		private void remapAccessWidener() throws IOException {
+		private void remapAccessWidener(ZipAssembler output) throws IOException {
 			final AccessWidenerFile accessWidenerFile = AccessWidenerFile.fromModJar(inputFile);
 
 			if (accessWidenerFile == null) {
@@ -399,7 +504,7 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 			byte[] remapped = remapAccessWidener(accessWidenerFile.content());
 
 			// Finally, replace the output with the remaped aw
-			ZipUtils.replace(outputFile, accessWidenerFile.path(), remapped);
+			output.put(accessWidenerFile.path(), remapped);
 		}
 
 		private byte[] remapAccessWidener(byte[] input) {
@@ -418,7 +523,7 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 			return writer.write();
 		}
 
-		private void addNestedJars() {
+		private void addNestedJars(ZipAssembler output) {
 			FileCollection nestedJars = getParameters().getNestedJars();
 			ListProperty<NestedFile> forgeNestedJars = getParameters().getForgeNestedJars();
 
@@ -429,22 +534,24 @@ public abstract class RemapJarTask extends AbstractRemapJarTask {
 
 			Set<File> jars = new HashSet<>(nestedJars.getFiles());
 			jars.addAll(forgeNestedJars.get().stream().map(NestedFile::file).toList());
-			JarNester.nestJars(jars, forgeNestedJars.getOrElse(List.of()), outputFile.toFile(), getParameters().getPlatform().get(), LOGGER);
+			JarNester.nestJars(jars, forgeNestedJars.getOrElse(List.of()), output, outputFile.getFileName().toString(), getParameters().getPlatform().get(), LOGGER);
 		}
 
-		private void addRefmaps() throws IOException {
+		private void addRefmaps(ZipAssembler output) {
 			if (getParameters().getUseMixinExtension().get()) {
 				return;
 			}
 
 			for (RemapParams.RefmapData refmapData : getParameters().getMixinData().get()) {
-				int transformed = ZipUtils.transformJson(JsonObject.class, outputFile, refmapData.mixinConfigs().stream().collect(Collectors.toMap(s -> s, s -> json -> {
-					if (!json.has("refmap")) {
-						json.addProperty("refmap", refmapData.refmapName());
-					}
-
-					return json;
-				})));
+				for (String mixinConfig : refmapData.mixinConfigs()) {
+					output.transformJson(JsonObject.class, mixinConfig, json -> {
+						if (!json.has("refmap")) {
+							json.addProperty("refmap", refmapData.refmapName());
+						}
+
+						return json;
+					});
+				}
 			}
 		}
 	}
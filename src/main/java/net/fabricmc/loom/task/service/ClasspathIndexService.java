@@ -0,0 +1,434 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+import org.gradle.api.Project;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.ThreadingUtils;
+import net.fabricmc.loom.util.gradle.GradleUtils;
+import net.fabricmc.loom.util.service.SharedService;
+import net.fabricmc.loom.util.service.SharedServiceManager;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
+
+/**
+ * Replaces the jars on a remap classpath with skeletons that only contain the class structure read by tiny remapper:
+ * the hierarchy, members, signatures and annotations, without any code or debug info.
+ *
+ * <p>The skeletons are keyed by the hash of their jar and stored uncompressed in the user cache, so every remapper
+ * of the build, and of later builds, parses the large Minecraft and library jars from a much smaller, immutable copy.
+ * Only the jars in the Gradle user home are indexed, other jars are likely to change from one build to the next.
+ *
+ * <p>The hashes of the jars are remembered by path, size and modification time across builds, and the least recently
+ * used skeletons are evicted once the index grows beyond {@value #DEFAULT_MAX_SIZE_MB} MB
+ * (configurable with {@value Constants.Properties#CLASSPATH_INDEX_SIZE}).
+ */
+public final class ClasspathIndexService implements SharedService {
+	// Bump this when the skeletons change in a way that affects remapping.
+	private static final int VERSION = 1;
+	private static final long DEFAULT_MAX_SIZE_MB = 1024;
+	// Skeletons used this recently may still be read by another build, and are never evicted.
+	private static final long MIN_EVICTION_AGE = TimeUnit.HOURS.toMillis(1);
+	private static final String MANIFEST_PATH = "META-INF/MANIFEST.MF";
+	private static final String JAR_SUFFIX = ".jar";
+	private static final String HASHES_FILE = "hashes.txt";
+	private static final String LOCK_FILE = ".lock";
+	private static final int SKIP_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+	private static final Logger LOGGER = LoggerFactory.getLogger(ClasspathIndexService.class);
+	// File locks are held by the whole JVM, so the threads of a JVM take turns first.
+	private static final Map<Path, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+	public static ClasspathIndexService getOrCreate(SharedServiceManager serviceManager, Project project) {
+		if (GradleUtils.getBooleanProperty(project, Constants.Properties.DISABLE_CLASSPATH_INDEX)) {
+			return serviceManager.getOrCreateService("classpathIndex:disabled", () -> new ClasspathIndexService(null, null, 0));
+		}
+
+		final LoomGradleExtension extension = LoomGradleExtension.get(project);
+		final Path directory = new File(extension.getFiles().getUserCache(), "classpath-index/v" + VERSION).toPath();
+		final Path root = project.getGradle().getGradleUserHomeDir().toPath();
+		final long maxSizeMb = project.getProviders().gradleProperty(Constants.Properties.CLASSPATH_INDEX_SIZE)
+				.map(ClasspathIndexService::parseMaxSize)
+				.getOrElse(DEFAULT_MAX_SIZE_MB);
+		return serviceManager.getOrCreateService("classpathIndex", () -> new ClasspathIndexService(directory, root, maxSizeMb * 1024 * 1024));
+	}
+
+	private static long parseMaxSize(String value) {
+		try {
+			final long maxSizeMb = Long.parseLong(value.trim());
+
+			if (maxSizeMb >= 0) {
+				return maxSizeMb;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+
+		LOGGER.warn("Invalid value for {}: '{}', expected a size in MB. Using the default of {} MB.", Constants.Properties.CLASSPATH_INDEX_SIZE, value, DEFAULT_MAX_SIZE_MB);
+		return DEFAULT_MAX_SIZE_MB;
+	}
+
+	@Nullable
+	private final Path directory;
+	@Nullable
+	private final Path root;
+	private final long maxSize;
+	private final Map<Path, Skeleton> skeletons = new HashMap<>();
+	// The hashes known from previous builds, loaded on first use
+	@Nullable
+	private Map<Path, JarHash> knownHashes;
+	// The hashes computed by this build, merged into the hashes file when the service is closed
+	private final Map<Path, JarHash> newHashes = new ConcurrentHashMap<>();
+
+	/**
+	 * @param directory the directory to store the skeletons in, or null to disable the index
+	 * @param root      the directory containing the jars to index
+	 * @param maxSize   the size in bytes the skeletons are evicted down to when the service is closed
+	 */
+	public ClasspathIndexService(@Nullable Path directory, @Nullable Path root, long maxSize) {
+		this.directory = directory != null ? directory.toAbsolutePath().normalize() : null;
+		this.root = root != null ? root.toAbsolutePath().normalize() : null;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Replaces the indexed jars of a classpath with their skeletons, the other entries are returned as is.
+	 * The missing skeletons are created in parallel.
+	 */
+	public Path[] getClasspath(Path... paths) {
+		return getClasspath(Arrays.asList(paths)).toArray(Path[]::new);
+	}
+
+	public List<Path> getClasspath(List<Path> paths) {
+		if (directory == null) {
+			return paths;
+		}
+
+		return ThreadingUtils.get(paths, path -> {
+			try {
+				return getClasspathEntry(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to index classpath entry " + path, e);
+			}
+		});
+	}
+
+	private Path getClasspathEntry(Path path) throws IOException {
+		final Path jar = path.toAbsolutePath().normalize();
+
+		if (!jar.startsWith(root) || !jar.getFileName().toString().endsWith(JAR_SUFFIX) || !Files.isRegularFile(jar)) {
+			return path;
+		}
+
+		final Skeleton skeleton;
+
+		synchronized (skeletons) {
+			skeleton = skeletons.computeIfAbsent(jar, Skeleton::new);
+		}
+
+		return skeleton.get();
+	}
+
+	/**
+	 * Hashes a file, the hash is remembered by path, size and modification time across builds.
+	 */
+	public String getHash(Path file) throws IOException {
+		final Path path = file.toAbsolutePath().normalize();
+
+		if (directory == null) {
+			return Checksum.toHex(Checksum.sha256(path.toFile()));
+		}
+
+		return getHash(path, Files.readAttributes(path, BasicFileAttributes.class));
+	}
+
+	private String getHash(Path jar, BasicFileAttributes attributes) {
+		final long size = attributes.size();
+		final long lastModified = attributes.lastModifiedTime().toMillis();
+
+		// Hashed earlier in this build, or in a previous one
+		final JarHash computed = newHashes.get(jar);
+		final JarHash known = computed != null ? computed : getKnownHashes().get(jar);
+
+		if (known != null && known.size() == size && known.lastModified() == lastModified) {
+			return known.hash();
+		}
+
+		final String hash = Checksum.toHex(Checksum.sha256(jar.toFile()));
+		newHashes.put(jar, new JarHash(size, lastModified, hash));
+		return hash;
+	}
+
+	private synchronized Map<Path, JarHash> getKnownHashes() {
+		if (knownHashes == null) {
+			knownHashes = readHashes(directory.resolve(HASHES_FILE));
+		}
+
+		return knownHashes;
+	}
+
+	private Path createSkeleton(Path jar, String hash) throws IOException {
+		final Path skeleton = directory.resolve(hash + JAR_SUFFIX);
+
+		try {
+			// Marks the skeleton as recently used, for the eviction
+			Files.setLastModifiedTime(skeleton, FileTime.fromMillis(System.currentTimeMillis()));
+			return skeleton;
+		} catch (NoSuchFileException e) {
+			// Created below
+		}
+
+		Files.createDirectories(directory);
+		final Path tempPath = skeleton.resolveSibling(skeleton.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+		try {
+			try (RawZipReader reader = RawZipReader.open(jar);
+					RawZipWriter writer = RawZipWriter.create(tempPath)) {
+				for (ZipEntryInfo entry : reader.entries()) {
+					if (entry.name().endsWith(".class")) {
+						// Stored, so that reading the skeleton doesn't need to inflate anything
+						writer.write(RawZipWriter.prepareStored(entry.name(), strip(reader.read(entry)), entry.dosTime()));
+					} else if (entry.name().equals(MANIFEST_PATH)) {
+						// Keeps the Multi-Release attribute
+						writer.writeRaw(entry, reader.readRaw(entry));
+					}
+				}
+			} catch (ZipException e) {
+				// Not supported by the raw zip reader or writer, such as entries larger than 2 GiB
+				LOGGER.debug("Not indexing {}", jar, e);
+				return jar;
+			}
+
+			move(tempPath, skeleton);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+
+		return skeleton;
+	}
+
+	/**
+	 * Removes the code and debug info of a class, everything tiny remapper reads from a classpath class is kept.
+	 */
+	public static byte[] strip(byte[] bytes) {
+		final ClassReader reader = new ClassReader(bytes);
+		// Not sharing the constant pool with the reader, so that the constants only used by the code are dropped
+		final ClassWriter writer = new ClassWriter(0);
+		reader.accept(writer, SKIP_FLAGS);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Saves the new hashes and evicts the least recently used skeletons, while holding the index lock.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (directory == null || (newHashes.isEmpty() && !Files.isDirectory(directory))) {
+			return;
+		}
+
+		Files.createDirectories(directory);
+
+		final ReentrantLock jvmLock = JVM_LOCKS.computeIfAbsent(directory, path -> new ReentrantLock());
+		jvmLock.lock();
+
+		try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.lock()) {
+			if (!newHashes.isEmpty()) {
+				saveHashes();
+			}
+
+			evict();
+		} finally {
+			jvmLock.unlock();
+		}
+	}
+
+	private void saveHashes() throws IOException {
+		final Path hashesFile = directory.resolve(HASHES_FILE);
+		// Merged with the hashes saved by other builds in the meantime
+		final Map<Path, JarHash> hashes = readHashes(hashesFile);
+		hashes.putAll(newHashes);
+		hashes.keySet().removeIf(jar -> !Files.exists(jar));
+
+		final List<String> lines = new ArrayList<>(hashes.size());
+
+		for (Map.Entry<Path, JarHash> entry : hashes.entrySet()) {
+			final JarHash hash = entry.getValue();
+			lines.add(hash.size() + "\t" + hash.lastModified() + "\t" + hash.hash() + "\t" + entry.getKey());
+		}
+
+		final Path tempPath = hashesFile.resolveSibling(HASHES_FILE + "." + UUID.randomUUID() + ".tmp");
+
+		try {
+			Files.write(tempPath, lines);
+			move(tempPath, hashesFile);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	private void evict() throws IOException {
+		final List<Entry> entries = new ArrayList<>();
+		long totalSize = 0;
+
+		try (Stream<Path> stream = Files.list(directory)) {
+			for (Path path : (Iterable<Path>) stream::iterator) {
+				if (!path.getFileName().toString().endsWith(JAR_SUFFIX) || !Files.isRegularFile(path)) {
+					continue;
+				}
+
+				final Entry entry = new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+				entries.add(entry);
+				totalSize += entry.size();
+			}
+		}
+
+		if (totalSize <= maxSize) {
+			return;
+		}
+
+		entries.sort(Comparator.comparingLong(Entry::lastUsed));
+		final long evictBefore = System.currentTimeMillis() - MIN_EVICTION_AGE;
+		int evicted = 0;
+
+		for (Entry entry : entries) {
+			if (totalSize <= maxSize || entry.lastUsed() > evictBefore) {
+				break;
+			}
+
+			try {
+				Files.deleteIfExists(entry.path());
+				totalSize -= entry.size();
+				evicted++;
+			} catch (IOException e) {
+				// Most likely in use by another process on Windows, try again next time.
+				LOGGER.debug("Failed to evict classpath skeleton {}", entry.path(), e);
+			}
+		}
+
+		LOGGER.info(":evicted {} skeletons from the classpath index", evicted);
+	}
+
+	private static Map<Path, JarHash> readHashes(Path hashesFile) {
+		final Map<Path, JarHash> hashes = new ConcurrentHashMap<>();
+
+		if (!Files.exists(hashesFile)) {
+			return hashes;
+		}
+
+		try {
+			for (String line : Files.readAllLines(hashesFile)) {
+				final String[] parts = line.split("\t", 4);
+
+				if (parts.length != 4) {
+					continue;
+				}
+
+				try {
+					hashes.put(Path.of(parts[3]), new JarHash(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+				} catch (RuntimeException e) {
+					// A corrupt line, the jar is hashed again
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to read the classpath index hashes", e);
+		}
+
+		return hashes;
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private record JarHash(long size, long lastModified, String hash) {
+	}
+
+	private record Entry(Path path, long size, long lastUsed) {
+	}
+
+	private final class Skeleton {
+		private final Path jar;
+		private long lastModified = -1;
+		private long size = -1;
+		@Nullable
+		private Path path;
+
+		private Skeleton(Path jar) {
+			this.jar = jar;
+		}
+
+		private synchronized Path get() throws IOException {
+			final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+
+			if (path == null || attributes.lastModifiedTime().toMillis() != lastModified || attributes.size() != size) {
+				path = createSkeleton(jar, getHash(jar, attributes));
+				lastModified = attributes.lastModifiedTime().toMillis();
+				size = attributes.size();
+			}
+
+			return path;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.workers.internal.WorkerDaemonClientsManager;
+
+import net.fabricmc.loom.util.gradle.WorkerDaemonClientsManagerHelper;
+
+/**
+ * Keeps track of the decompiler worker JVMs that are reused by the genSources tasks of a build, and stops them
+ * once the build has finished.
+ */
+public abstract class DecompilerWorkerService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+	private static final String NAME = "loom:decompilerWorkers";
+
+	private final Map<String, WorkerDaemonClientsManager> workers = new ConcurrentHashMap<>();
+
+	public static synchronized Provider<DecompilerWorkerService> get(Project project) {
+		return project.getGradle().getSharedServices().registerIfAbsent(NAME, DecompilerWorkerService.class, spec -> {
+		});
+	}
+
+	/**
+	 * Keeps the worker JVM identified by the marker alive until the end of the build.
+	 */
+	public void keepAlive(String jvmMarkerValue, WorkerDaemonClientsManager manager) {
+		workers.put(jvmMarkerValue, manager);
+	}
+
+	@Override
+	public void close() {
+		workers.forEach((jvmMarkerValue, manager) -> WorkerDaemonClientsManagerHelper.stopIdleJVM(manager, jvmMarkerValue));
+		workers.clear();
+	}
+}
@@ -45,6 +45,7 @@ import org.gradle.api.tasks.SourceSet;
 import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.build.IncrementalRemapping;
 import net.fabricmc.loom.build.IntermediaryNamespaces;
 import net.fabricmc.loom.build.mixin.AnnotationProcessorInvoker;
 import net.fabricmc.loom.task.AbstractRemapJarTask;
@@ -95,7 +96,8 @@ public class TinyRemapperService implements SharedService {
 			return new TinyRemapperService(mappings, !legacyMixin, kotlinClasspathService);
 		});
 
-		service.readClasspath(remapJarTask.getClasspath().getFiles().stream().map(File::toPath).filter(Files::exists).toList());
+		final List<Path> classpath = remapJarTask.getClasspath().getFiles().stream().map(File::toPath).filter(Files::exists).toList();
+		service.readClasspath(ClasspathIndexService.getOrCreate(serviceManager, project).getClasspath(classpath));
 
 		return service;
 	}
@@ -128,6 +130,7 @@ public class TinyRemapperService implements SharedService {
 	@Nullable
 	private KotlinRemapperClassloader kotlinRemapperClassloader;
 	private final Map<String, InputTag> inputTagMap = new HashMap<>();
+	private final Map<String, IncrementalRemapping> incrementalRemappings = new HashMap<>();
 	private final HashSet<Path> classpath = new HashSet<>();
 	// Set to true once remapping has started, once set no inputs can be read.
 	private boolean isRemapping = false;
@@ -162,6 +165,18 @@ public class TinyRemapperService implements SharedService {
 		return tag;
 	}
 
+	public synchronized void setIncrementalRemapping(Path file, IncrementalRemapping incrementalRemapping) {
+		incrementalRemappings.put(file.toAbsolutePath().toString(), incrementalRemapping);
+	}
+
+	/**
+	 * @return the state of the incremental remap of an input, if it was prepared to be remapped incrementally
+	 */
+	@Nullable
+	public synchronized IncrementalRemapping getIncrementalRemapping(Path file) {
+		return incrementalRemappings.get(file.toAbsolutePath().toString());
+	}
+
 	public TinyRemapper getTinyRemapperForRemapping() {
 		synchronized (this) {
 			isRemapping = true;
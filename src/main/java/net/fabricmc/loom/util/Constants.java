@@ -187,6 +187,11 @@ public class Constants {
 		public static final String DISABLE_REMAPPED_VARIANTS = "fabric.loom.disableRemappedVariants";
 		public static final String DISABLE_PROJECT_DEPENDENT_MODS = "fabric.loom.disableProjectDependentMods";
 		public static final String LIBRARY_PROCESSORS = "fabric.loom.libraryProcessors";
+		public static final String DISABLE_GLOBAL_MOD_CACHE = "fabric.loom.disableGlobalModCache";
+		public static final String GLOBAL_MOD_CACHE_SIZE = "fabric.loom.globalModCacheSize";
+		public static final String REUSE_DECOMPILER_WORKER = "fabric.loom.reuseDecompilerWorker";
+		public static final String DISABLE_CLASSPATH_INDEX = "fabric.loom.disableClasspathIndex";
+		public static final String CLASSPATH_INDEX_SIZE = "fabric.loom.classpathIndexSize";
 	}
 
 	public static final class Forge {
@@ -35,6 +35,7 @@ import org.gradle.api.plugins.JavaPluginExtension;
 import org.gradle.jvm.toolchain.JavaLauncher;
 import org.gradle.jvm.toolchain.JavaToolchainService;
 import org.gradle.jvm.toolchain.JavaToolchainSpec;
+import org.gradle.process.ExecOperations;
 import org.gradle.process.ExecResult;
 import org.gradle.process.JavaExecSpec;
 import org.jetbrains.annotations.Nullable;
@@ -48,7 +49,7 @@ public abstract class ForgeToolExecutor {
 	protected abstract JavaToolchainService getToolchainService();
 
 	@Inject
-	protected abstract Project getProject();
+	protected abstract ExecOperations getExecOperations();
 
 	public static boolean shouldShowVerboseStdout(Project project) {
 		// if running with INFO or DEBUG logging
@@ -61,45 +62,26 @@ public abstract class ForgeToolExecutor {
 	}
 
 	/**
-	 * Executes a {@link Project#javaexec(Action) javaexec} action with suppressed output.
+	 * Executes a {@link ExecOperations#javaexec(Action) javaexec} action with suppressed output.
 	 *
 	 * @param project      the project
 	 * @param configurator the {@code javaexec} configuration action
 	 * @return the execution result
 	 */
 	public static ExecResult exec(Project project, Action<? super JavaExecSpec> configurator) {
-		return project.getObjects().newInstance(ForgeToolExecutor.class)
-				.exec(configurator);
+		return getSettings(project).exec(configurator);
 	}
 
-	private ExecResult exec(Action<? super JavaExecSpec> configurator) {
-		final Project project = getProject();
-		return project.javaexec(spec -> {
-			configurator.execute(spec);
-
-			if (shouldShowVerboseStdout(project)) {
-				spec.setStandardOutput(System.out);
-			} else {
-				spec.setStandardOutput(NullOutputStream.NULL_OUTPUT_STREAM);
-			}
-
-			if (shouldShowVerboseStderr(project)) {
-				spec.setErrorOutput(System.err);
-			} else {
-				spec.setErrorOutput(NullOutputStream.NULL_OUTPUT_STREAM);
-			}
-
-			// Use project toolchain for executing if possible.
-			// Note: This feature cannot be tested using the test kit since
-			//  - Gradle disables native services in test kit environments.
-			//  - The only resolver plugin I could find, foojay-resolver,
-			//    requires the services for finding the OS architecture.
-			final @Nullable String executable = findJavaToolchainExecutable(project);
-
-			if (executable != null) {
-				spec.setExecutable(executable);
-			}
-		});
+	/**
+	 * Resolves the toolchain and output settings of the project, so that tools can then be executed
+	 * from other threads without accessing the project.
+	 *
+	 * @param project the project
+	 * @return the settings
+	 */
+	public static Settings getSettings(Project project) {
+		final ForgeToolExecutor executor = project.getObjects().newInstance(ForgeToolExecutor.class);
+		return new Settings(executor.getExecOperations(), executor.findJavaToolchainExecutable(project), shouldShowVerboseStdout(project), shouldShowVerboseStderr(project));
 	}
 
 	private @Nullable String findJavaToolchainExecutable(Project project) {
@@ -114,4 +96,37 @@ public abstract class ForgeToolExecutor {
 		final JavaLauncher launcher = getToolchainService().launcherFor(toolchain).get();
 		return launcher.getExecutablePath().getAsFile().getAbsolutePath();
 	}
+
+	/**
+	 * The settings used to execute the tools of a project.
+	 *
+	 * @param execOperations the exec operations
+	 * @param executable     the Java executable of the project toolchain, or null to use the runtime Java version
+	 * @param showStdout     whether the standard output of the tools is shown
+	 * @param showStderr     whether the error output of the tools is shown
+	 */
+	public record Settings(ExecOperations execOperations, @Nullable String executable, boolean showStdout, boolean showStderr) {
+		/**
+		 * Executes a {@code javaexec} action with suppressed output.
+		 *
+		 * @param configurator the {@code javaexec} configuration action
+		 * @return the execution result
+		 */
+		public ExecResult exec(Action<? super JavaExecSpec> configurator) {
+			return execOperations.javaexec(spec -> {
+				configurator.execute(spec);
+				spec.setStandardOutput(showStdout ? System.out : NullOutputStream.NULL_OUTPUT_STREAM);
+				spec.setErrorOutput(showStderr ? System.err : NullOutputStream.NULL_OUTPUT_STREAM);
+
+				// Use project toolchain for executing if possible.
+				// Note: This feature cannot be tested using the test kit since
+				//  - Gradle disables native services in test kit environments.
+				//  - The only resolver plugin I could find, foojay-resolver,
+				//    requires the services for finding the OS architecture.
+				if (executable != null) {
+					spec.setExecutable(executable);
+				}
+			});
+		}
+	}
 }
@@ -0,0 +1,203 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.fabricmc.loom.util.service.SharedService;
+import net.fabricmc.loom.util.service.SharedServiceManager;
+
+/**
+ * A single work-stealing executor shared by all of Loom's parallel work, replacing the per-call thread pools.
+ *
+ * <p>The pool is bounded by {@value #PARALLELISM_PROPERTY} (defaulting to the number of available processors) and is
+ * shared by every project in the Gradle daemon, so projects configuring in parallel cannot oversubscribe the cores.
+ * Tasks are accounted per call site in the service that is current on the submitting thread, see {@link #runCurrent}.
+ * The metrics of a service created by {@link #getOrCreate} are logged when the owning {@link SharedServiceManager}
+ * is closed.
+ */
+public final class LoomExecutorService implements SharedService {
+	public static final String PARALLELISM_PROPERTY = "loom.parallelism";
+	private static final Logger LOGGER = LoggerFactory.getLogger(LoomExecutorService.class);
+	private static final ForkJoinPool POOL = createPool(defaultParallelism());
+	private static final LoomExecutorService GLOBAL = new LoomExecutorService();
+	private static final ThreadLocal<LoomExecutorService> CURRENT = new ThreadLocal<>();
+
+	private final Map<String, CallSiteMetrics> metrics = new ConcurrentHashMap<>();
+
+	private LoomExecutorService() {
+	}
+
+	private static ForkJoinPool createPool(int parallelism) {
+		final AtomicInteger threadId = new AtomicInteger();
+		final ClassLoader classLoader = LoomExecutorService.class.getClassLoader();
+
+		return new ForkJoinPool(parallelism, pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("Loom Worker " + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			// Make sure that service loaders used by tasks can see the plugin's classes.
+			thread.setContextClassLoader(classLoader);
+			return thread;
+		}, null, false);
+	}
+
+	/**
+	 * Gets the service that is current on this thread, or the one that is shared by the whole daemon.
+	 */
+	public static LoomExecutorService get() {
+		final LoomExecutorService current = CURRENT.get();
+		return current != null ? current : GLOBAL;
+	}
+
+	/**
+	 * Gets the service of the given service manager, its call site metrics are reported when the manager closes.
+	 */
+	public static LoomExecutorService getOrCreate(SharedServiceManager serviceManager) {
+		return serviceManager.getOrCreateService("LoomExecutorService", LoomExecutorService::new);
+	}
+
+	private static int defaultParallelism() {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		final String property = System.getProperty(PARALLELISM_PROPERTY);
+
+		if (property == null) {
+			return processors;
+		}
+
+		try {
+			return Math.max(1, Integer.parseInt(property));
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Invalid value for {}: {}", PARALLELISM_PROPERTY, property);
+			return processors;
+		}
+	}
+
+	public ForkJoinPool getPool() {
+		return POOL;
+	}
+
+	public int getParallelism() {
+		return POOL.getParallelism();
+	}
+
+	/**
+	 * Runs an action with this service as the current one, so that the tasks it submits are recorded in this service.
+	 */
+	public void runCurrent(Runnable action) {
+		final LoomExecutorService previous = CURRENT.get();
+		CURRENT.set(this);
+
+		try {
+			action.run();
+		} finally {
+			if (previous != null) {
+				CURRENT.set(previous);
+			} else {
+				CURRENT.remove();
+			}
+		}
+	}
+
+	/**
+	 * Wraps a task so that its queue wait and run time are recorded against the given call site. The task runs with
+	 * this service as the current one, so the tasks it submits are recorded in this service too.
+	 */
+	public Runnable instrument(String callSite, Runnable runnable) {
+		final CallSiteMetrics callSiteMetrics = metrics.computeIfAbsent(callSite, s -> new CallSiteMetrics());
+		final long submitted = System.nanoTime();
+
+		return () -> {
+			final long started = System.nanoTime();
+
+			try {
+				runCurrent(runnable);
+			} catch (Throwable t) {
+				callSiteMetrics.failed.increment();
+				throw t;
+			} finally {
+				final long finished = System.nanoTime();
+				callSiteMetrics.tasks.increment();
+				callSiteMetrics.queueWait.add(started - submitted);
+				callSiteMetrics.runTime.add(finished - started);
+			}
+		};
+	}
+
+	public Map<String, CallSiteMetrics> getMetrics() {
+		return new TreeMap<>(metrics);
+	}
+
+	@Override
+	public void close() {
+		if (metrics.isEmpty()) {
+			return;
+		}
+
+		for (Map.Entry<String, CallSiteMetrics> entry : getMetrics().entrySet()) {
+			LOGGER.info("{}: {}", entry.getKey(), entry.getValue());
+		}
+
+		metrics.clear();
+	}
+
+	public static final class CallSiteMetrics {
+		private final LongAdder tasks = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LongAdder queueWait = new LongAdder();
+		private final LongAdder runTime = new LongAdder();
+
+		public long getTasks() {
+			return tasks.sum();
+		}
+
+		public long getFailed() {
+			return failed.sum();
+		}
+
+		public long getQueueWait(TimeUnit unit) {
+			return unit.convert(queueWait.sum(), TimeUnit.NANOSECONDS);
+		}
+
+		public long getRunTime(TimeUnit unit) {
+			return unit.convert(runTime.sum(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public String toString() {
+			return "%d tasks (%d failed), queue wait %d ms, run time %d ms".formatted(getTasks(), getFailed(), getQueueWait(TimeUnit.MILLISECONDS), getRunTime(TimeUnit.MILLISECONDS));
+		}
+	}
+}
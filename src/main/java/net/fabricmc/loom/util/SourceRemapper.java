@@ -29,11 +29,22 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
 
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.mercury.Mercury;
@@ -45,6 +56,7 @@ import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.compile.JavaCompile;
 import org.gradle.internal.logging.progress.ProgressLogger;
 import org.gradle.internal.logging.progress.ProgressLoggerFactory;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import net.fabricmc.loom.LoomGradleExtension;
@@ -54,15 +66,41 @@ import net.fabricmc.loom.build.IntermediaryNamespaces;
 import net.fabricmc.loom.configuration.providers.mappings.MappingConfiguration;
 import net.fabricmc.loom.task.service.LorenzMappingService;
 import net.fabricmc.loom.util.service.SharedServiceManager;
-
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
+import net.fabricmc.lorenztiny.TinyMappingsReader;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+
+/**
+ * Remaps dependency source jars with Mercury.
+ *
+ * <p>The scheduled jars are remapped in parallel, each on its own {@link Mercury} instance as Mercury and the
+ * mappings it completes are not thread safe. The number of jars remapped at once is bounded by a heap budget
+ * estimated from the size of each jar.
+ */
 public class SourceRemapper {
+	/**
+	 * The estimated heap used to remap a jar regardless of its size, mostly for the mappings and the bindings of the classpath.
+	 */
+	private static final long MERCURY_BASE_COST = 256L << 20;
+	/**
+	 * The estimated heap used per byte of a compressed source jar, for the syntax trees built from it.
+	 */
+	private static final int SOURCE_COST_FACTOR = 64;
+
 	private final Project project;
 	private final SharedServiceManager serviceManager;
 	private String from;
 	private String to;
-	private final List<Consumer<ProgressLogger>> remapTasks = new ArrayList<>();
+	private final List<RemapTask> remapTasks = new ArrayList<>();
 
-	private Mercury mercury;
+	private final Deque<Mercury> idleMercuries = new ConcurrentLinkedDeque<>();
+	private final AtomicBoolean sharedMappingsUsed = new AtomicBoolean();
+	private List<Path> classPath;
+	private int javaCompileRelease;
+	private MappingSet sharedMappings;
+	private MemoryMappingTree mappingTree;
 
 	public SourceRemapper(Project project, SharedServiceManager serviceManager, boolean toNamed) {
 		this(project, serviceManager, toNamed ? IntermediaryNamespaces.intermediary(project) : "named", !toNamed ? IntermediaryNamespaces.intermediary(project) : "named");
@@ -76,21 +114,18 @@ public class SourceRemapper {
 	}
 
 	public void scheduleRemapSources(File source, File destination, boolean reproducibleFileOrder, boolean preserveFileTimestamps, Runnable completionCallback) {
-		remapTasks.add((logger) -> {
+		remapTasks.add(new RemapTask(source, mercury -> {
 			try {
-				logger.progress("remapping sources - " + source.getName());
-				remapSourcesInner(source, destination);
-				ZipReprocessorUtil.reprocessZip(destination, reproducibleFileOrder, preserveFileTimestamps);
+				remapSourcesInner(mercury, source, destination, reproducibleFileOrder, preserveFileTimestamps);
 
 				// Set the remapped sources creation date to match the sources if we're likely succeeded in making it
 				destination.setLastModified(source.lastModified());
-				completionCallback.run();
 			} catch (Exception e) {
 				// Failed to remap, lets clean up to ensure we try again next time
 				destination.delete();
 				throw new RuntimeException("Failed to remap sources for " + source, e);
 			}
-		});
+		}, completionCallback));
 	}
 
 	public void remapAll() {
@@ -104,17 +139,45 @@ public class SourceRemapper {
 		ProgressLogger progressLogger = progressLoggerFactory.newOperation(SourceRemapper.class.getName());
 		progressLogger.start("Remapping dependency sources", "sources");
 
-		remapTasks.forEach(consumer -> consumer.accept(progressLogger));
+		// Everything that needs the project is resolved up front, the workers only share immutable state.
+		prepareMercury();
+
+		final int budget = (int) (Math.max(Runtime.getRuntime().maxMemory() / 2, MERCURY_BASE_COST) >> 20);
+		final Queue<RemapTask> completedTasks = new ConcurrentLinkedQueue<>();
 
-		progressLogger.completed();
+		try {
+			ThreadingUtils.runBounded(remapTasks, RemapTask::getCost, budget, task -> {
+				Mercury mercury = idleMercuries.poll();
+
+				try {
+					if (mercury == null) {
+						mercury = createMercury();
+					}
+
+					synchronized (progressLogger) {
+						progressLogger.progress("remapping sources - " + task.source().getName());
+					}
+
+					task.action().accept(mercury);
+					completedTasks.add(task);
+				} finally {
+					if (mercury != null) {
+						idleMercuries.push(mercury);
+					}
+				}
+			});
+		} finally {
+			// The callbacks use the project, so they run on this thread, even for the jars remapped before a failure.
+			for (RemapTask task : completedTasks) {
+				task.completionCallback().run();
+			}
 
-		// TODO: FIXME - WORKAROUND https://github.com/FabricMC/fabric-loom/issues/45
-		System.gc();
+			progressLogger.completed();
+		}
 	}
 
-	private void remapSourcesInner(File source, File destination) throws Exception {
+	private void remapSourcesInner(Mercury mercury, File source, File destination, boolean reproducibleFileOrder, boolean preserveFileTimestamps) throws Exception {
 		project.getLogger().info(":remapping source jar");
-		Mercury mercury = getMercuryInstance();
 
 		if (source.equals(destination)) {
 			if (source.isDirectory()) {
@@ -130,6 +193,18 @@ public class SourceRemapper {
 			}
 		}
 
+		if (!source.isDirectory() && !destination.isDirectory()) {
+			final RawZipReader reader = openRawZip(source.toPath());
+
+			if (reader != null) {
+				try (reader) {
+					remapSourcesJar(mercury, reader, source, destination.toPath(), reproducibleFileOrder, preserveFileTimestamps);
+				}
+
+				return;
+			}
+		}
+
 		Path srcPath = source.toPath();
 		boolean isSrcTmp = false;
 
@@ -149,16 +224,12 @@ public class SourceRemapper {
 		FileSystemUtil.Delegate dstFs = destination.isDirectory() ? null : FileSystemUtil.getJarFileSystem(destination, true);
 		Path dstPath = dstFs != null ? dstFs.get().getPath("/") : destination.toPath();
 
-		try {
-			mercury.rewrite(srcPath, dstPath);
-		} catch (Exception e) {
-			project.getLogger().warn("Could not remap " + source.getName() + " fully!", e);
-		}
-
+		rewrite(mercury, srcPath, dstPath, source);
 		copyNonJavaFiles(srcPath, dstPath, project.getLogger(), source.toPath());
 
 		if (dstFs != null) {
 			dstFs.close();
+			ZipReprocessorUtil.reprocessZip(destination, reproducibleFileOrder, preserveFileTimestamps);
 		}
 
 		if (isSrcTmp) {
@@ -166,43 +237,124 @@ public class SourceRemapper {
 		}
 	}
 
-	private Mercury getMercuryInstance() {
-		if (this.mercury != null) {
-			return this.mercury;
+	/**
+	 * Remaps a source jar, extracting only the java files for Mercury and copying the other files straight from the
+	 * input jar. The entries are sorted by name when the file order is reproducible and keep the order of the input jar
+	 * otherwise. They keep the timestamps of the input entries when those are preserved.
+	 */
+	private void remapSourcesJar(Mercury mercury, RawZipReader reader, File source, Path destination, boolean reproducibleFileOrder, boolean preserveFileTimestamps) throws IOException {
+		final Path tempDir = Files.createTempDirectory("fabric-loom-src");
+
+		try {
+			final Path inputDir = Files.createDirectory(tempDir.resolve("input"));
+			final Path outputDir = Files.createDirectory(tempDir.resolve("output"));
+			final Map<String, ZipEntryInfo> entries = new LinkedHashMap<>();
+
+			for (ZipEntryInfo entry : reader.entries()) {
+				if (entry.isDirectory()) {
+					continue;
+				}
+
+				entries.putIfAbsent(entry.name(), entry);
+
+				if (isJavaFile(entry.name())) {
+					final Path path = inputDir.resolve(entry.name()).normalize();
+
+					if (!path.startsWith(inputDir)) {
+						throw new IOException("Entry %s is outside of the source jar".formatted(entry.name()));
+					}
+
+					Files.createDirectories(path.getParent());
+					Files.write(path, reader.read(entry));
+				}
+			}
+
+			rewrite(mercury, inputDir, outputDir, source);
+
+			final Map<String, Path> remapped = new HashMap<>();
+
+			try (Stream<Path> walk = Files.walk(outputDir)) {
+				walk.filter(Files::isRegularFile).forEach(path -> remapped.put(outputDir.relativize(path).toString().replace(File.separatorChar, '/'), path));
+			}
+
+			final Set<String> names = reproducibleFileOrder ? new TreeSet<>() : new LinkedHashSet<>();
+
+			for (String name : entries.keySet()) {
+				// Java files that Mercury didn't output are left out
+				if (!isJavaFile(name) || remapped.containsKey(name)) {
+					names.add(name);
+				}
+			}
+
+			names.addAll(new TreeSet<>(remapped.keySet()));
+
+			try (RawZipWriter writer = RawZipWriter.create(destination)) {
+				for (String name : names) {
+					final ZipEntryInfo entry = entries.get(name);
+					final int dosTime = preserveFileTimestamps && entry != null ? entry.dosTime() : RawZipWriter.CONSTANT_DOS_TIME;
+					final Path remappedPath = remapped.get(name);
+
+					writer.writeDirectories(name, dosTime);
+
+					if (remappedPath != null) {
+						writer.write(RawZipWriter.prepare(name, Files.readAllBytes(remappedPath), dosTime));
+					} else {
+						writer.writeRaw(entry, reader.readRaw(entry), dosTime);
+					}
+				}
+			}
+		} finally {
+			Files.walkFileTree(tempDir, new DeletingFileVisitor());
+		}
+	}
+
+	private void rewrite(Mercury mercury, Path srcPath, Path dstPath, File source) {
+		try {
+			mercury.rewrite(srcPath, dstPath);
+		} catch (Exception e) {
+			project.getLogger().warn("Could not remap " + source.getName() + " fully!", e);
+		}
+	}
+
+	@Nullable
+	private static RawZipReader openRawZip(Path path) throws IOException {
+		try {
+			return RawZipReader.open(path);
+		} catch (ZipException e) {
+			// Not readable by the raw zip reader, go through the zip file system instead
+			return null;
+		}
+	}
+
+	private void prepareMercury() {
+		if (this.classPath != null) {
+			return;
 		}
 
 		LoomGradleExtension extension = LoomGradleExtension.get(project);
 		MappingConfiguration mappingConfiguration = extension.getMappingConfiguration();
+		MappingsNamespace fromNamespace = Objects.requireNonNull(MappingsNamespace.of(from));
+		MappingsNamespace toNamespace = Objects.requireNonNull(MappingsNamespace.of(to));
 
-		MappingSet mappings = LorenzMappingService.create(serviceManager,
-															mappingConfiguration,
-															Objects.requireNonNull(MappingsNamespace.of(from)),
-															Objects.requireNonNull(MappingsNamespace.of(to))
-		).mappings();
+		this.sharedMappings = LorenzMappingService.create(serviceManager, mappingConfiguration, fromNamespace, toNamespace).mappings();
+		this.mappingTree = mappingConfiguration.getMappingsService(serviceManager, fromNamespace == MappingsNamespace.SRG || toNamespace == MappingsNamespace.SRG).getMappingTree();
+		this.javaCompileRelease = getJavaCompileRelease(project);
 
-		Mercury mercury = createMercuryWithClassPath(project, MappingsNamespace.of(to) == MappingsNamespace.NAMED);
-		mercury.setSourceCompatibilityFromRelease(getJavaCompileRelease(project));
+		List<Path> classPath = getClassPath(project, toNamespace == MappingsNamespace.NAMED);
 
 		for (File file : extension.getUnmappedModCollection()) {
 			Path path = file.toPath();
 
 			if (Files.isRegularFile(path)) {
-				mercury.getClassPath().add(path);
+				classPath.add(path);
 			}
 		}
 
-		for (Path intermediaryJar : extension.getMinecraftJars(MappingsNamespace.INTERMEDIARY)) {
-			mercury.getClassPath().add(intermediaryJar);
-		}
-
-		for (Path intermediaryJar : extension.getMinecraftJars(MappingsNamespace.NAMED)) {
-			mercury.getClassPath().add(intermediaryJar);
-		}
+		classPath.addAll(extension.getMinecraftJars(MappingsNamespace.INTERMEDIARY));
+		classPath.addAll(extension.getMinecraftJars(MappingsNamespace.NAMED));
 
 		if (extension.isForge()) {
-			for (Path srgJar : extension.getMinecraftJars(MappingsNamespace.SRG)) {
-				mercury.getClassPath().add(srgJar);
-			}
+			classPath.addAll(extension.getMinecraftJars(MappingsNamespace.SRG));
 		}
 
 		Set<File> files = project.getConfigurations()
@@ -210,13 +362,30 @@ public class SourceRemapper {
 				.resolve();
 
 		for (File file : files) {
-			mercury.getClassPath().add(file.toPath());
+			classPath.add(file.toPath());
 		}
 
-		mercury.getProcessors().add(MercuryRemapper.create(mappings));
+		this.classPath = classPath.stream().distinct().toList();
+	}
+
+	private Mercury createMercury() throws IOException {
+		final MappingSet mappings;
 
-		this.mercury = mercury;
-		return this.mercury;
+		if (sharedMappingsUsed.compareAndSet(false, true)) {
+			mappings = sharedMappings;
+		} else {
+			// Mercury completes the mappings as it goes, so every instance needs its own copy
+			try (var reader = new TinyMappingsReader(mappingTree, from, to)) {
+				mappings = reader.read();
+			}
+		}
+
+		Mercury mercury = new Mercury();
+		mercury.setGracefulClasspathChecks(true);
+		mercury.setSourceCompatibilityFromRelease(javaCompileRelease);
+		mercury.getClassPath().addAll(classPath);
+		mercury.getProcessors().add(MercuryRemapper.create(mappings));
+		return mercury;
 	}
 
 	public static int getJavaCompileRelease(Project project) {
@@ -260,7 +429,11 @@ public class SourceRemapper {
 	public static Mercury createMercuryWithClassPath(Project project, boolean toNamed) {
 		Mercury m = new Mercury();
 		m.setGracefulClasspathChecks(true);
+		m.getClassPath().addAll(getClassPath(project, toNamed));
+		return m;
+	}
 
+	private static List<Path> getClassPath(Project project, boolean toNamed) {
 		final List<Path> classPath = new ArrayList<>();
 
 		for (File file : project.getConfigurations().getByName(Constants.Configurations.MINECRAFT_COMPILE_LIBRARIES).getFiles()) {
@@ -281,18 +454,26 @@ public class SourceRemapper {
 			}
 		}
 
-		for (Path path : classPath) {
-			if (Files.exists(path)) {
-				m.getClassPath().add(path);
-			}
-		}
-
-		return m;
+		classPath.removeIf(Files::notExists);
+		return classPath;
 	}
 
 	private static boolean isJavaFile(Path path) {
-		String name = path.getFileName().toString();
+		return isJavaFile(path.getFileName().toString());
+	}
+
+	private static boolean isJavaFile(String name) {
 		// ".java" is not a valid java file
-		return name.endsWith(".java") && name.length() != 5;
+		return name.endsWith(".java") && !name.endsWith("/.java") && name.length() != 5;
+	}
+
+	private record RemapTask(File source, ThreadingUtils.UnsafeConsumer<Mercury> action, Runnable completionCallback) {
+		/**
+		 * {@return the estimated heap used to remap the source, in megabytes}
+		 */
+		int getCost() {
+			final long size = source.isFile() ? source.length() : 0;
+			return (int) Math.min(Integer.MAX_VALUE, (MERCURY_BASE_COST + size * SOURCE_COST_FACTOR) >> 20);
+		}
 	}
 }
@@ -24,22 +24,31 @@
 
 package net.fabricmc.loom.util;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 import com.google.common.base.Stopwatch;
 
+/**
+ * Runs jobs in parallel on the shared {@link LoomExecutorService}.
+ *
+ * <p>When a job fails, the jobs that have not yet started are cancelled and the first failure is rethrown.
+ */
 public class ThreadingUtils {
+	private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
 	public static <T> void run(T[] values, UnsafeConsumer<T> action) {
 		run(Arrays.stream(values)
 				.<UnsafeRunnable>map(t -> () -> action.accept(t))
@@ -57,28 +66,136 @@ public class ThreadingUtils {
 	}
 
 	public static void run(Collection<UnsafeRunnable> jobs) {
+		final String callSite = getCallSite();
+		final List<CompletableFuture<Void>> futures = new ArrayList<>(jobs.size());
+
+		for (UnsafeRunnable runnable : jobs) {
+			futures.add(submit(callSite, () -> {
+				runnable.run();
+				return null;
+			}));
+		}
+
+		await(futures);
+	}
+
+	/**
+	 * Runs the action for each value, while limiting the total cost of the values being processed at once.
+	 * The calling thread waits for enough of the budget to be free before submitting each job, so the workers
+	 * never block on it. No more jobs are submitted once one has failed.
+	 *
+	 * @param cost   the cost of a value, a value costing more than the budget runs alone
+	 * @param budget the total cost of the values that can be processed at once
+	 */
+	public static <T> void runBounded(Collection<T> values, ToIntFunction<T> cost, int budget, UnsafeConsumer<T> action) {
+		final String callSite = getCallSite();
+		final Semaphore permits = new Semaphore(budget);
+		final AtomicBoolean failed = new AtomicBoolean();
+		final List<CompletableFuture<Void>> futures = new ArrayList<>(values.size());
+
+		for (T value : values) {
+			final int permitCost = Math.min(budget, cost.applyAsInt(value));
+
+			try {
+				permits.acquire(permitCost);
+			} catch (InterruptedException e) {
+				futures.forEach(future -> future.cancel(false));
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			if (failed.get()) {
+				break;
+			}
+
+			futures.add(submit(callSite, () -> {
+				try {
+					action.accept(value);
+					return null;
+				} catch (Throwable throwable) {
+					// Set before the permits are released, so that the calling thread sees it
+					failed.set(true);
+					throw throwable;
+				} finally {
+					permits.release(permitCost);
+				}
+			}));
+		}
+
+		await(futures);
+	}
+
+	/**
+	 * Like {@link #runBounded(Collection, ToIntFunction, int, UnsafeConsumer)}, but the results are passed to the
+	 * consumer on the calling thread, in the order of the values and as soon as they are available. The cost of a value
+	 * is only freed once its result has been consumed, so the results waiting for an earlier one count against the budget.
+	 *
+	 * @param cost     the cost of a value and its result, a value costing more than the budget runs alone
+	 * @param budget   the total cost of the values and results that can be held at once
+	 * @param action   computes the result of a value
+	 * @param consumer consumes the results
+	 */
+	public static <T, R> void runBounded(Collection<T> values, ToIntFunction<T> cost, int budget, UnsafeFunction<T, R> action, UnsafeConsumer<R> consumer) {
+		final String callSite = getCallSite();
+		final Deque<Pending<R>> pending = new ArrayDeque<>();
+		final AtomicBoolean failed = new AtomicBoolean();
+		long used = 0;
+
 		try {
-			ExecutorService service = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs.size(), Runtime.getRuntime().availableProcessors())));
-			List<Future<?>> futures = new LinkedList<>();
-
-			for (UnsafeRunnable runnable : jobs) {
-				futures.add(service.submit(() -> {
-					try {
-						runnable.run();
-					} catch (Throwable throwable) {
-						throw new RuntimeException(throwable);
+			for (T value : values) {
+				final int valueCost = Math.min(budget, cost.applyAsInt(value));
+
+				while (used + valueCost > budget) {
+					used -= consume(pending.remove(), consumer);
+				}
+
+				if (failed.get()) {
+					// Consume up to the failure
+					break;
+				}
+
+				final CompletableFuture<R> future = submit(callSite, () -> action.apply(value));
+				future.whenComplete((result, throwable) -> {
+					if (throwable != null) {
+						failed.set(true);
 					}
-				}));
+				});
+				pending.add(new Pending<>(future, valueCost));
+				used += valueCost;
 			}
 
-			for (Future<?> future : futures) {
-				future.get();
+			while (!pending.isEmpty()) {
+				consume(pending.remove(), consumer);
 			}
+		} finally {
+			pending.forEach(remaining -> remaining.future().cancel(false));
+		}
+	}
+
+	private static <R> int consume(Pending<R> pending, UnsafeConsumer<R> consumer) {
+		final R result;
 
-			service.shutdownNow();
-		} catch (InterruptedException | ExecutionException e) {
+		try {
+			result = pending.future().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(unwrap(e.getCause()));
+		}
+
+		try {
+			consumer.accept(result);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable throwable) {
+			throw new RuntimeException(throwable);
 		}
+
+		return pending.cost();
+	}
+
+	private record Pending<R>(CompletableFuture<R> future, int cost) {
 	}
 
 	public static <T, R> List<R> get(Collection<T> values, Function<T, R> action) {
@@ -93,32 +210,86 @@ public class ThreadingUtils {
 	}
 
 	public static <T> List<T> get(Collection<UnsafeCallable<T>> jobs) {
-		try {
-			ExecutorService service = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs.size(), Runtime.getRuntime().availableProcessors())));
-			List<Future<T>> futures = new LinkedList<>();
-			List<T> result = new ArrayList<>();
-
-			for (UnsafeCallable<T> runnable : jobs) {
-				futures.add(service.submit(() -> {
-					try {
-						return runnable.call();
-					} catch (Throwable throwable) {
-						throw new RuntimeException(throwable);
-					}
-				}));
+		final String callSite = getCallSite();
+		final List<CompletableFuture<T>> futures = new ArrayList<>(jobs.size());
+
+		for (UnsafeCallable<T> callable : jobs) {
+			futures.add(submit(callSite, callable));
+		}
+
+		await(futures);
+
+		final List<T> result = new ArrayList<>(futures.size());
+
+		for (CompletableFuture<T> future : futures) {
+			result.add(future.join());
+		}
+
+		return result;
+	}
+
+	private static <T> CompletableFuture<T> submit(String callSite, UnsafeCallable<T> callable) {
+		final LoomExecutorService executor = LoomExecutorService.get();
+		final CompletableFuture<T> future = new CompletableFuture<>();
+
+		executor.getPool().execute(executor.instrument(callSite, () -> {
+			if (future.isDone()) {
+				// Cancelled because a sibling task failed.
+				return;
 			}
 
-			for (Future<T> future : futures) {
-				result.add(future.get());
+			try {
+				future.complete(callable.call());
+			} catch (Throwable throwable) {
+				future.completeExceptionally(throwable);
 			}
+		}));
+
+		return future;
+	}
+
+	/**
+	 * Waits for all the futures to complete, cancelling the remaining ones as soon as one of them fails.
+	 */
+	private static void await(List<? extends CompletableFuture<?>> futures) {
+		final CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
 
-			service.shutdownNow();
-			return result;
-		} catch (InterruptedException | ExecutionException e) {
+		for (CompletableFuture<?> future : futures) {
+			future.whenComplete((result, throwable) -> {
+				if (throwable != null) {
+					all.completeExceptionally(throwable);
+				}
+			});
+		}
+
+		try {
+			all.get();
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(false));
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			futures.forEach(future -> future.cancel(false));
+			throw new RuntimeException(unwrap(e.getCause()));
 		}
 	}
 
+	private static Throwable unwrap(Throwable throwable) {
+		while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+
+		return throwable;
+	}
+
+	private static String getCallSite() {
+		return STACK_WALKER.walk(frames -> frames
+				.filter(frame -> !frame.getClassName().startsWith(ThreadingUtils.class.getName()))
+				.findFirst()
+				.map(frame -> frame.getClassName() + "." + frame.getMethodName())
+				.orElse("unknown"));
+	}
+
 	public interface UnsafeRunnable {
 		void run() throws Throwable;
 	}
@@ -131,28 +302,33 @@ public class ThreadingUtils {
 		void accept(T value) throws Throwable;
 	}
 
+	public interface UnsafeFunction<T, R> {
+		R apply(T value) throws Throwable;
+	}
+
 	public static TaskCompleter taskCompleter() {
-		return new TaskCompleter();
+		return new TaskCompleter(getCallSite());
 	}
 
-	public static class TaskCompleter implements Function<Throwable, Void> {
+	public static class TaskCompleter {
+		final String callSite;
 		Stopwatch stopwatch = Stopwatch.createUnstarted();
 		List<CompletableFuture<?>> tasks = new ArrayList<>();
-		ExecutorService service = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
 		List<UnsafeConsumer<Stopwatch>> completionListener = new ArrayList<>();
 
+		TaskCompleter(String callSite) {
+			this.callSite = callSite;
+		}
+
 		public TaskCompleter add(UnsafeRunnable job) {
 			if (!stopwatch.isRunning()) {
 				stopwatch.start();
 			}
 
-			tasks.add(CompletableFuture.runAsync(() -> {
-				try {
-					job.run();
-				} catch (Throwable throwable) {
-					throw new RuntimeException(throwable);
-				}
-			}, service).exceptionally(this));
+			tasks.add(submit(callSite, () -> {
+				job.run();
+				return null;
+			}));
 
 			return this;
 		}
@@ -164,15 +340,12 @@ public class ThreadingUtils {
 
 		public void complete() {
 			try {
-				CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).exceptionally(this).get();
-				service.shutdownNow();
-
+				await(tasks);
+			} finally {
 				if (stopwatch.isRunning()) {
 					stopwatch.stop();
 				}
-			} catch (Throwable e) {
-				throw new RuntimeException(e);
-			} finally {
+
 				try {
 					for (UnsafeConsumer<Stopwatch> consumer : completionListener) {
 						consumer.accept(stopwatch);
@@ -182,11 +355,5 @@ public class ThreadingUtils {
 				}
 			}
 		}
-
-		@Override
-		public Void apply(Throwable throwable) {
-			throwable.printStackTrace();
-			return null;
-		}
 	}
 }
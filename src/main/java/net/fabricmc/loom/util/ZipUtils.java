@@ -39,8 +39,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import org.jetbrains.annotations.Nullable;
@@ -49,8 +51,13 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 
 import net.fabricmc.loom.LoomGradlePlugin;
+import net.fabricmc.loom.util.zip.RawZipReader;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipEntryInfo;
 
 public class ZipUtils {
+	private static final int TRANSFORM_BATCH_SIZE = 512;
+
 	public static boolean isZip(Path zip) throws IOException {
 		if (Files.notExists(zip)) {
 			throw new NoSuchFileException("Cannot check if '" + zip + "' is a zip because it doesn't exist!");
@@ -153,6 +160,23 @@ public class ZipUtils {
 		}
 	}
 
+	/**
+	 * Copies the files accepted by the filter into a new zip, without decompressing and compressing them again.
+	 *
+	 * @param from   the zip to copy from
+	 * @param zip    the zip to create
+	 * @param filter the filter of entry names
+	 * @return the number of copied files
+	 */
+	public static int copyRaw(Path from, Path zip, Predicate<String> filter) throws IOException {
+		Files.deleteIfExists(zip);
+
+		try (RawZipReader reader = RawZipReader.open(from);
+				RawZipWriter writer = RawZipWriter.create(zip)) {
+			return writer.copyFrom(reader, filter);
+		}
+	}
+
 	public static void add(Path zip, String path, String str) throws IOException {
 		add(zip, path, str.getBytes(StandardCharsets.UTF_8));
 	}
@@ -174,13 +198,17 @@ public class ZipUtils {
 
 	public static void replace(Path zip, String path, byte[] bytes) throws IOException {
 		try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(zip, true)) {
-			Path fsPath = fs.get().getPath(path);
+			replace(fs, path, bytes);
+		}
+	}
 
-			if (Files.exists(fsPath)) {
-				Files.write(fsPath, bytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-			} else {
-				throw new NoSuchFileException(fsPath.toString());
-			}
+	public static void replace(FileSystemUtil.Delegate fs, String path, byte[] bytes) throws IOException {
+		Path fsPath = fs.get().getPath(path);
+
+		if (Files.exists(fsPath)) {
+			Files.write(fsPath, bytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		} else {
+			throw new NoSuchFileException(fsPath.toString());
 		}
 	}
 
@@ -205,7 +233,15 @@ public class ZipUtils {
 	}
 
 	public static <T> int transformJson(Class<T> typeOfT, Path zip, Map<String, UnsafeUnaryOperator<T>> transforms) throws IOException {
-		return transformMapped(zip, transforms, bytes -> LoomGradlePlugin.GSON.fromJson(new InputStreamReader(new ByteArrayInputStream(bytes)), typeOfT),
+		return transform(zip, mapJsonTransformers(typeOfT, transforms));
+	}
+
+	public static <T> int transformJson(Class<T> typeOfT, FileSystemUtil.Delegate fs, Map<String, UnsafeUnaryOperator<T>> transforms) throws IOException {
+		return transform(fs, mapJsonTransformers(typeOfT, transforms));
+	}
+
+	private static <T> Map<String, UnsafeUnaryOperator<byte[]>> mapJsonTransformers(Class<T> typeOfT, Map<String, UnsafeUnaryOperator<T>> transforms) {
+		return mapTransformers(transforms, bytes -> LoomGradlePlugin.GSON.fromJson(new InputStreamReader(new ByteArrayInputStream(bytes)), typeOfT),
 				s -> LoomGradlePlugin.GSON.toJson(s, typeOfT).getBytes(StandardCharsets.UTF_8));
 	}
 
@@ -218,6 +254,10 @@ public class ZipUtils {
 	}
 
 	public static <T> int transformMapped(Path zip, Map<String, UnsafeUnaryOperator<T>> transforms, Function<byte[], T> deserializer, Function<T, byte[]> serializer) throws IOException {
+		return transform(zip, mapTransformers(transforms, deserializer, serializer));
+	}
+
+	private static <T> Map<String, UnsafeUnaryOperator<byte[]>> mapTransformers(Map<String, UnsafeUnaryOperator<T>> transforms, Function<byte[], T> deserializer, Function<T, byte[]> serializer) {
 		Map<String, UnsafeUnaryOperator<byte[]>> newTransforms = new HashMap<>();
 
 		for (Map.Entry<String, UnsafeUnaryOperator<T>> entry : transforms.entrySet()) {
@@ -228,23 +268,82 @@ public class ZipUtils {
 			}
 		}
 
-		return transform(zip, newTransforms);
+		return newTransforms;
 	}
 
 	public static int transform(Path zip, Map<String, UnsafeUnaryOperator<byte[]>> transforms) throws IOException {
+		try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(zip, false)) {
+			return transform(fs, transforms);
+		}
+	}
+
+	/**
+	 * Applies the transforms to an already open zip file system, allowing several edits to share a single rewrite of the zip.
+	 */
+	public static int transform(FileSystemUtil.Delegate fs, Map<String, UnsafeUnaryOperator<byte[]>> transforms) throws IOException {
 		int replacedCount = 0;
 
-		try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(zip, false)) {
-			for (Map.Entry<String, UnsafeUnaryOperator<byte[]>> entry : transforms.entrySet()) {
-				Path fsPath = fs.get().getPath(entry.getKey());
+		for (Map.Entry<String, UnsafeUnaryOperator<byte[]>> entry : transforms.entrySet()) {
+			Path fsPath = fs.get().getPath(entry.getKey());
 
-				if (Files.exists(fsPath) && entry.getValue() != null) {
-					Files.write(fsPath, entry.getValue().apply(Files.readAllBytes(fsPath)), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-					replacedCount++;
+			if (Files.exists(fsPath) && entry.getValue() != null) {
+				Files.write(fsPath, entry.getValue().apply(Files.readAllBytes(fsPath)), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+				replacedCount++;
+			}
+		}
+
+		return replacedCount;
+	}
+
+	/**
+	 * Applies the transforms in a single streaming pass over the zip. The transformed entries are processed
+	 * in parallel batches, the other entries are copied without being decompressed.
+	 */
+	public static int transformParallel(Path zip, Map<String, UnsafeUnaryOperator<byte[]>> transforms) throws IOException {
+		return transformParallel(zip, transforms, Map.of());
+	}
+
+	/**
+	 * Applies the transforms like {@link #transformParallel(Path, Map)}, and adds entries to the end of the zip
+	 * in the same pass, replacing existing entries with the same name.
+	 */
+	public static int transformParallel(Path zip, Map<String, UnsafeUnaryOperator<byte[]>> transforms, Map<String, byte[]> added) throws IOException {
+		final Path tmp = zip.resolveSibling(zip.getFileName() + ".tmp");
+		int replacedCount = 0;
+
+		try (RawZipReader reader = RawZipReader.open(zip);
+				RawZipWriter writer = RawZipWriter.create(tmp)) {
+			final List<ZipEntryInfo> entries = reader.entries();
+
+			for (int start = 0; start < entries.size(); start += TRANSFORM_BATCH_SIZE) {
+				final List<ZipEntryInfo> batch = entries.subList(start, Math.min(start + TRANSFORM_BATCH_SIZE, entries.size()));
+				final List<RawZipWriter.PreparedEntry> transformed = ThreadingUtils.get(batch.stream()
+						.<ThreadingUtils.UnsafeCallable<RawZipWriter.PreparedEntry>>map(entry -> () -> {
+							final UnsafeUnaryOperator<byte[]> transform = transforms.get(entry.name());
+							return transform != null ? RawZipWriter.prepare(entry.name(), transform.apply(reader.read(entry)), entry.dosTime()) : null;
+						})
+						.toList());
+
+				for (int i = 0; i < batch.size(); i++) {
+					if (transformed.get(i) != null) {
+						writer.write(transformed.get(i));
+						replacedCount++;
+					} else if (!added.containsKey(batch.get(i).name())) {
+						writer.writeRaw(batch.get(i), reader.readRaw(batch.get(i)));
+					}
 				}
 			}
+
+			for (Map.Entry<String, byte[]> entry : added.entrySet()) {
+				writer.writeDirectories(entry.getKey(), RawZipWriter.CONSTANT_DOS_TIME);
+				writer.write(entry.getKey(), entry.getValue());
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
 		}
 
+		Files.move(tmp, zip, StandardCopyOption.REPLACE_EXISTING);
 		return replacedCount;
 	}
 
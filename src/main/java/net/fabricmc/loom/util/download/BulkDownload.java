@@ -0,0 +1,696 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.ThreadingUtils;
+
+/**
+ * Downloads a large number of small files, such as assets, multiplexed over a few HTTP/2 connections.
+ *
+ * <p>Existing files are checked with a single listing of each output directory against the expected sizes,
+ * and interrupted downloads are resumed with range requests. Progress is reported for all files together.
+ *
+ * <p>With a {@linkplain #verificationManifest(Path) verification manifest}, files that were verified before
+ * are only checked by their size and modification time. Other existing files are verified by their hash.
+ *
+ * <p>Each partial file is locked while it is written, so other threads and processes downloading the same files
+ * don't write to it at the same time. Files that another process already downloaded are skipped.
+ */
+@SuppressWarnings("UnusedReturnValue")
+public final class BulkDownload {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BulkDownload.class);
+	private static final String PART_SUFFIX = ".part";
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final long PROGRESS_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final Map<Path, Entry> entries = new LinkedHashMap<>();
+	private int connections = 4;
+	private int maxConcurrentRequests = 64;
+	private int maxRetries = 3;
+	private boolean offline = false;
+	private DownloadProgressListener progressListener = DownloadProgressListener.NONE;
+	private @Nullable Path manifestFile = null;
+
+	private BulkDownload() {
+	}
+
+	public static BulkDownload create() {
+		return new BulkDownload();
+	}
+
+	/**
+	 * Adds a file to download.
+	 *
+	 * @param url    the url to download from
+	 * @param sha1   the expected SHA-1 hash of the file
+	 * @param size   the expected size of the file in bytes, or a negative number if unknown
+	 * @param output the path to download to
+	 * @return this download
+	 */
+	public BulkDownload add(String url, String sha1, long size, Path output) {
+		final URI uri = URI.create(url);
+
+		if (!DownloadBuilder.isSecureUrl(uri)) {
+			throw new IllegalArgumentException("Cannot create download for url (%s) with insecure protocol".formatted(url));
+		}
+
+		// Several entries may share the same content addressed output, only download it once.
+		entries.putIfAbsent(output.toAbsolutePath(), new Entry(uri, sha1, size, output.toAbsolutePath()));
+		return this;
+	}
+
+	public BulkDownload connections(int connections) {
+		this.connections = connections;
+		return this;
+	}
+
+	public BulkDownload maxConcurrentRequests(int maxConcurrentRequests) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		return this;
+	}
+
+	public BulkDownload maxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+		return this;
+	}
+
+	public BulkDownload offline() {
+		this.offline = true;
+		return this;
+	}
+
+	public BulkDownload progress(DownloadProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	public BulkDownload verificationManifest(Path manifestFile) {
+		this.manifestFile = manifestFile;
+		return this;
+	}
+
+	/**
+	 * Downloads all files that are missing or incomplete.
+	 *
+	 * @return the result of the download
+	 * @throws DownloadException if any of the files could not be downloaded
+	 */
+	public Result download() throws DownloadException {
+		final long start = System.nanoTime();
+		final @Nullable VerificationManifest manifest = manifestFile != null ? VerificationManifest.load(manifestFile) : null;
+
+		try {
+			return download(manifest, start);
+		} finally {
+			if (manifest != null) {
+				try {
+					manifest.save();
+				} catch (IOException e) {
+					LOGGER.warn("Failed to save verification manifest {}", manifestFile, e);
+				}
+			}
+		}
+	}
+
+	private Result download(@Nullable VerificationManifest manifest, long start) throws DownloadException {
+		final List<Entry> missing = findMissing(manifest);
+
+		if (missing.isEmpty()) {
+			return new Result(entries.size(), 0, 0, Duration.ofNanos(System.nanoTime() - start));
+		}
+
+		if (offline) {
+			throw new DownloadException("Unable to download %d files in offline mode".formatted(missing.size()));
+		}
+
+		final HttpClient[] clients = new HttpClient[Math.max(1, connections)];
+
+		for (int i = 0; i < clients.length; i++) {
+			clients[i] = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_2)
+					.followRedirects(HttpClient.Redirect.ALWAYS)
+					.proxy(ProxySelector.getDefault())
+					.build();
+		}
+
+		final Progress progress = new Progress(missing.stream().mapToLong(entry -> Math.max(entry.size(), 0)).sum());
+		final Semaphore permits = new Semaphore(Math.max(1, maxConcurrentRequests));
+		final List<CompletableFuture<Void>> futures = new ArrayList<>();
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+		final List<Entry> busy = new ArrayList<>();
+		final AtomicInteger skipped = new AtomicInteger();
+
+		progressListener.onStart();
+
+		try {
+			for (int i = 0; i < missing.size() && failures.isEmpty(); i++) {
+				final Entry entry = missing.get(i);
+				permits.acquire();
+
+				final PartLock lock;
+
+				try {
+					lock = PartLock.tryLock(entry.partFile());
+				} catch (IOException e) {
+					permits.release();
+					failures.add(e);
+					break;
+				}
+
+				if (lock == null) {
+					// Downloaded by another thread or process, check it once the others are done.
+					permits.release();
+					busy.add(entry);
+					continue;
+				}
+
+				futures.add(downloadLocked(clients[i % clients.length], entry, lock, progress, manifest, skipped).whenComplete((result, throwable) -> {
+					permits.release();
+
+					if (throwable != null) {
+						failures.add(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+					}
+				}));
+			}
+
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(throwable -> null).join();
+
+			for (int i = 0; i < busy.size() && failures.isEmpty(); i++) {
+				final Entry entry = busy.get(i);
+
+				try {
+					downloadLocked(clients[i % clients.length], entry, PartLock.lock(entry.partFile()), progress, manifest, skipped).join();
+				} catch (CompletionException e) {
+					failures.add(e.getCause());
+				} catch (IOException e) {
+					failures.add(e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DownloadException("Interrupted while downloading", e);
+		} finally {
+			progressListener.onEnd();
+		}
+
+		if (!failures.isEmpty()) {
+			DownloadException exception = new DownloadException("Failed to download %d files".formatted(failures.size()));
+
+			for (Throwable failure : failures) {
+				exception.addSuppressed(failure);
+			}
+
+			throw exception;
+		}
+
+		return new Result(entries.size(), missing.size() - skipped.get(), progress.bytes.get(), Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	private List<Entry> findMissing(@Nullable VerificationManifest manifest) throws DownloadException {
+		Collection<Entry> unverified = entries.values();
+
+		if (manifest != null) {
+			// A stat of each file is enough for the ones that were verified before.
+			unverified = ThreadingUtils.get(unverified, entry -> manifest.isVerified(entry.output(), entry.sha1()) ? null : entry)
+					.stream()
+					.filter(Objects::nonNull)
+					.toList();
+		}
+
+		final Map<Path, List<Entry>> byDirectory = new LinkedHashMap<>();
+
+		for (Entry entry : unverified) {
+			byDirectory.computeIfAbsent(entry.output().getParent(), k -> new ArrayList<>()).add(entry);
+		}
+
+		final List<Entry> missing = new ArrayList<>();
+		final List<Entry> present = new ArrayList<>();
+
+		for (Map.Entry<Path, List<Entry>> directory : byDirectory.entrySet()) {
+			final Map<String, Long> sizes = listSizes(directory.getKey());
+
+			for (Entry entry : directory.getValue()) {
+				final String name = entry.output().getFileName().toString();
+				final Long size = sizes.get(name);
+
+				// A lock file is left behind by an interrupted single file download.
+				if (size == null || (entry.size() >= 0 && size != entry.size()) || sizes.containsKey(name + LOCK_SUFFIX)) {
+					missing.add(entry);
+				} else {
+					present.add(entry);
+				}
+			}
+		}
+
+		if (manifest != null && !present.isEmpty()) {
+			// Fall back to a full verification of the files that aren't in the manifest or have changed.
+			ThreadingUtils.get(present, entry -> verify(entry, manifest) ? null : entry)
+					.stream()
+					.filter(Objects::nonNull)
+					.forEach(missing::add);
+		}
+
+		return missing;
+	}
+
+	private static boolean verify(Entry entry, VerificationManifest manifest) {
+		try {
+			if (!Checksum.sha1Hex(entry.output()).equalsIgnoreCase(entry.sha1())) {
+				LOGGER.info("Found existing file ({}) with unexpected hash.", entry.output());
+				return false;
+			}
+
+			manifest.markVerified(entry.output(), entry.sha1());
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static Map<String, Long> listSizes(Path directory) throws DownloadException {
+		if (!Files.isDirectory(directory)) {
+			return Map.of();
+		}
+
+		final Map<String, Long> sizes = new HashMap<>();
+
+		try {
+			Files.walkFileTree(directory, Set.of(), 1, new SimpleFileVisitor<>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (attrs.isRegularFile()) {
+						sizes.put(file.getFileName().toString(), attrs.size());
+					}
+
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			throw new DownloadException("Failed to list files in (%s)".formatted(directory), e);
+		}
+
+		return sizes;
+	}
+
+	/**
+	 * Downloads an entry while holding the lock of its partial file, unless another process completed it before.
+	 */
+	private CompletableFuture<Void> downloadLocked(HttpClient client, Entry entry, PartLock lock, Progress progress, @Nullable VerificationManifest manifest, AtomicInteger skipped) {
+		final CompletableFuture<Void> future;
+
+		if (isDownloaded(entry, manifest)) {
+			progress.add(Math.max(entry.size(), 0));
+			skipped.incrementAndGet();
+			future = CompletableFuture.completedFuture(null);
+		} else {
+			future = downloadAsync(client, entry, 1, progress, manifest);
+		}
+
+		return future.whenComplete((result, throwable) -> lock.close());
+	}
+
+	private static boolean isDownloaded(Entry entry, @Nullable VerificationManifest manifest) {
+		try {
+			if (!Files.isRegularFile(entry.output())
+					|| (entry.size() >= 0 && Files.size(entry.output()) != entry.size())
+					|| !Checksum.sha1Hex(entry.output()).equalsIgnoreCase(entry.sha1())) {
+				return false;
+			}
+
+			if (manifest != null) {
+				manifest.markVerified(entry.output(), entry.sha1());
+			}
+
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private CompletableFuture<Void> downloadAsync(HttpClient client, Entry entry, int attempt, Progress progress, @Nullable VerificationManifest manifest) {
+		final Path part = entry.partFile();
+		long existing;
+
+		try {
+			Files.createDirectories(part.getParent());
+			existing = Files.exists(part) ? Files.size(part) : 0;
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+
+		if (entry.size() >= 0 && existing >= entry.size()) {
+			// The partial file can't be resumed, start over.
+			existing = 0;
+		}
+
+		final HttpRequest.Builder request = HttpRequest.newBuilder(entry.url()).GET();
+		// The bytes counted by this attempt, taken back from the progress when it is retried.
+		final AtomicLong counted = new AtomicLong();
+		final LongConsumer counter = count -> {
+			counted.addAndGet(count);
+			progress.add(count);
+		};
+
+		if (existing > 0) {
+			request.header("Range", "bytes=" + existing + "-");
+			counter.accept(existing);
+		}
+
+		if (attempt == maxRetries) {
+			// Last ditch attempt, try over HTTP 1.1
+			request.version(HttpClient.Version.HTTP_1_1);
+		}
+
+		final long offset = existing;
+		return client.sendAsync(request.build(), responseInfo -> createSubscriber(responseInfo, part, offset, counter))
+				.thenAccept(response -> complete(entry, response.statusCode(), manifest))
+				.exceptionallyCompose(throwable -> {
+					final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+					progress.add(-counted.get());
+
+					if (attempt >= maxRetries) {
+						return CompletableFuture.failedFuture(new DownloadException("Failed to download (%s) after %d attempts".formatted(entry.url(), attempt), cause));
+					}
+
+					LOGGER.debug("Retrying download of {}", entry.url(), cause);
+					return downloadAsync(client, entry, attempt + 1, progress, manifest);
+				});
+	}
+
+	private static HttpResponse.BodySubscriber<Void> createSubscriber(HttpResponse.ResponseInfo responseInfo, Path part, long offset, LongConsumer counter) {
+		final int statusCode = responseInfo.statusCode();
+
+		if (statusCode != HttpURLConnection.HTTP_OK && statusCode != HttpURLConnection.HTTP_PARTIAL) {
+			return HttpResponse.BodySubscribers.replacing(null);
+		}
+
+		final boolean resume = statusCode == HttpURLConnection.HTTP_PARTIAL && offset > 0
+				&& responseInfo.headers().firstValue("Content-Range").orElse("").startsWith("bytes " + offset + "-");
+		final OpenOption[] options = resume
+				? new OpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND }
+				: new OpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING };
+
+		if (!resume && offset > 0) {
+			// The server sent the whole file, the partial file is overwritten.
+			counter.accept(-offset);
+		}
+
+		return HttpResponse.BodySubscribers.mapping(new CountingSubscriber(HttpResponse.BodySubscribers.ofFile(part, options), counter), path -> null);
+	}
+
+	private static void complete(Entry entry, int statusCode, @Nullable VerificationManifest manifest) {
+		final Path part = entry.partFile();
+
+		try {
+			if (statusCode != HttpURLConnection.HTTP_OK && statusCode != HttpURLConnection.HTTP_PARTIAL) {
+				if (statusCode == 416) {
+					// Range not satisfiable, the partial file is unusable.
+					Files.deleteIfExists(part);
+				}
+
+				throw new DownloadException("HTTP request to (%s) returned unsuccessful status (%d)".formatted(entry.url(), statusCode));
+			}
+
+			final String hash = Checksum.sha1Hex(part);
+
+			if (!hash.equalsIgnoreCase(entry.sha1())) {
+				Files.deleteIfExists(part);
+				throw new DownloadException("Failed to download (%s) with expected hash: %s got %s".formatted(entry.url(), entry.sha1(), hash));
+			}
+
+			Files.move(part, entry.output(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.deleteIfExists(entry.output().resolveSibling(entry.output().getFileName() + LOCK_SUFFIX));
+
+			if (manifest != null) {
+				manifest.markVerified(entry.output(), entry.sha1());
+			}
+		} catch (IOException e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	/**
+	 * The result of a bulk download.
+	 *
+	 * @param files      the number of files that were requested
+	 * @param downloaded the number of files that had to be downloaded
+	 * @param bytes      the number of bytes that were downloaded
+	 * @param duration   the time spent checking and downloading the files
+	 */
+	public record Result(int files, int downloaded, long bytes, Duration duration) {
+		public double bytesPerSecond() {
+			final long millis = Math.max(duration.toMillis(), 1);
+			return bytes * 1000.0 / millis;
+		}
+	}
+
+	private record Entry(URI url, String sha1, long size, Path output) {
+		Path partFile() {
+			return output.resolveSibling(output.getFileName() + PART_SUFFIX);
+		}
+	}
+
+	private final class Progress {
+		private final long total;
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong lastUpdate = new AtomicLong();
+
+		Progress(long total) {
+			this.total = total;
+		}
+
+		void add(long count) {
+			final long current = bytes.addAndGet(count);
+			final long now = System.nanoTime();
+			final long last = lastUpdate.get();
+
+			if (now - last >= PROGRESS_INTERVAL && lastUpdate.compareAndSet(last, now)) {
+				progressListener.onProgress(Math.min(current, total), total);
+			}
+		}
+	}
+
+	private record CountingSubscriber(HttpResponse.BodySubscriber<Path> delegate, LongConsumer counter) implements HttpResponse.BodySubscriber<Path> {
+		@Override
+		public CompletableFuture<Path> getBody() {
+			return delegate.getBody().toCompletableFuture();
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			delegate.onSubscribe(subscription);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> items) {
+			long count = 0;
+
+			for (ByteBuffer item : items) {
+				count += item.remaining();
+			}
+
+			delegate.onNext(items);
+			counter.accept(count);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			delegate.onError(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			delegate.onComplete();
+		}
+	}
+
+	/**
+	 * A lock on the partial file of a download, held against the other threads and processes.
+	 *
+	 * <p>The partial files of a directory share a lock file, each one locks a byte of it at an offset derived from its
+	 * name. A JVM uses a single channel for each lock file, as closing any channel may release all the locks on a file.
+	 */
+	private static final class PartLock implements AutoCloseable {
+		private static final String LOCK_FILE = ".loom-download.lock";
+		private static final Map<Region, CompletableFuture<Void>> JVM_LOCKS = new ConcurrentHashMap<>();
+		private static final Map<Path, SharedChannel> CHANNELS = new HashMap<>();
+
+		private final Region region;
+		private final CompletableFuture<Void> released;
+		private boolean opened;
+		private @Nullable FileLock lock;
+
+		private PartLock(Region region, CompletableFuture<Void> released) {
+			this.region = region;
+			this.released = released;
+		}
+
+		/**
+		 * @return the lock, or null if another thread or process holds it
+		 */
+		static @Nullable PartLock tryLock(Path part) throws IOException {
+			return acquire(part, false);
+		}
+
+		static PartLock lock(Path part) throws IOException {
+			return Objects.requireNonNull(acquire(part, true));
+		}
+
+		private static @Nullable PartLock acquire(Path part, boolean wait) throws IOException {
+			final Region region = new Region(part.resolveSibling(LOCK_FILE), Integer.toUnsignedLong(part.getFileName().toString().hashCode()));
+			final CompletableFuture<Void> released = new CompletableFuture<>();
+			CompletableFuture<Void> holder;
+
+			while ((holder = JVM_LOCKS.putIfAbsent(region, released)) != null) {
+				if (!wait) {
+					return null;
+				}
+
+				holder.join();
+			}
+
+			final PartLock partLock = new PartLock(region, released);
+
+			try {
+				final FileChannel channel = openChannel(region.lockFile());
+				partLock.opened = true;
+				partLock.lock = wait ? channel.lock(region.position(), 1, false) : channel.tryLock(region.position(), 1, false);
+			} catch (IOException | RuntimeException e) {
+				partLock.close();
+				throw e;
+			}
+
+			if (partLock.lock == null) {
+				partLock.close();
+				return null;
+			}
+
+			return partLock;
+		}
+
+		private static FileChannel openChannel(Path lockFile) throws IOException {
+			synchronized (CHANNELS) {
+				SharedChannel shared = CHANNELS.get(lockFile);
+
+				if (shared == null) {
+					Files.createDirectories(lockFile.getParent());
+					shared = new SharedChannel(FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+					CHANNELS.put(lockFile, shared);
+				}
+
+				shared.users++;
+				return shared.channel;
+			}
+		}
+
+		private static void releaseChannel(Path lockFile) throws IOException {
+			synchronized (CHANNELS) {
+				final SharedChannel shared = CHANNELS.get(lockFile);
+
+				if (--shared.users == 0) {
+					CHANNELS.remove(lockFile);
+					shared.channel.close();
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				if (lock != null) {
+					lock.release();
+				}
+			} catch (IOException e) {
+				LOGGER.debug("Failed to release the lock of {}", region.lockFile(), e);
+			}
+
+			try {
+				if (opened) {
+					releaseChannel(region.lockFile());
+				}
+			} catch (IOException e) {
+				LOGGER.debug("Failed to close {}", region.lockFile(), e);
+			} finally {
+				JVM_LOCKS.remove(region, released);
+				released.complete(null);
+			}
+		}
+
+		private record Region(Path lockFile, long position) {
+		}
+
+		private static final class SharedChannel {
+			private final FileChannel channel;
+			private int users;
+
+			SharedChannel(FileChannel channel) {
+				this.channel = channel;
+			}
+		}
+	}
+}
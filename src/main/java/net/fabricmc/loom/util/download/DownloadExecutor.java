@@ -40,7 +40,7 @@ public class DownloadExecutor implements AutoCloseable {
 		executorService = Executors.newFixedThreadPool(threads);
 	}
 
-	void runAsync(DownloadRunner downloadRunner) {
+	public void runAsync(DownloadRunner downloadRunner) {
 		if (!downloadExceptions.isEmpty()) {
 			return;
 		}
@@ -0,0 +1,184 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persisted record of files that have been verified against their expected SHA-1 hash.
+ *
+ * <p>A file is trusted without reading it again while its size and modification time match the recorded ones.
+ * Anything else falls back to a full verification by the caller.
+ */
+public final class VerificationManifest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(VerificationManifest.class);
+	private static final int MAGIC = 0x4C564D31;
+	private static final HexFormat HEX = HexFormat.of();
+
+	private final Path file;
+	private final Map<String, Record> records;
+	private volatile boolean dirty = false;
+
+	private VerificationManifest(Path file, Map<String, Record> records) {
+		this.file = file;
+		this.records = records;
+	}
+
+	/**
+	 * Reads the manifest from a file. A missing or unreadable manifest results in an empty one.
+	 *
+	 * @param file the manifest file
+	 * @return the manifest
+	 */
+	public static VerificationManifest load(Path file) {
+		final Map<String, Record> records = new ConcurrentHashMap<>();
+
+		try {
+			final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Invalid header");
+			}
+
+			final int count = buffer.getInt();
+
+			for (int i = 0; i < count; i++) {
+				final byte[] path = new byte[buffer.getShort() & 0xFFFF];
+				buffer.get(path);
+				final long size = buffer.getLong();
+				final long lastModified = buffer.getLong();
+				final byte[] sha1 = new byte[20];
+				buffer.get(sha1);
+				records.put(new String(path, StandardCharsets.UTF_8), new Record(HEX.formatHex(sha1), size, lastModified));
+			}
+		} catch (NoSuchFileException e) {
+			// Nothing has been verified yet.
+		} catch (IOException | BufferUnderflowException e) {
+			LOGGER.info("Ignoring unreadable verification manifest {}", file, e);
+			records.clear();
+		}
+
+		return new VerificationManifest(file, records);
+	}
+
+	/**
+	 * Checks if a file was verified with the given hash and hasn't changed since.
+	 *
+	 * @param path the file
+	 * @param sha1 the expected SHA-1 hash of the file
+	 * @return true if the file can be trusted without reading it
+	 */
+	public boolean isVerified(Path path, String sha1) {
+		final Record record = records.get(key(path));
+
+		if (record == null || !record.sha1().equalsIgnoreCase(sha1)) {
+			return false;
+		}
+
+		try {
+			final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return attributes.size() == record.size() && lastModified(attributes) == record.lastModified();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Records that a file was verified with the given hash.
+	 *
+	 * @param path the file
+	 * @param sha1 the SHA-1 hash of the file
+	 */
+	public void markVerified(Path path, String sha1) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		records.put(key(path), new Record(sha1.toLowerCase(Locale.ROOT), attributes.size(), lastModified(attributes)));
+		dirty = true;
+	}
+
+	/**
+	 * Writes the manifest if anything has been verified since it was loaded.
+	 */
+	public void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+
+		Files.createDirectories(file.getParent());
+		// A unique temp file, concurrent builds may save the same manifest.
+		final Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+		try {
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				final Map<String, Record> snapshot = Map.copyOf(records);
+				output.writeInt(MAGIC);
+				output.writeInt(snapshot.size());
+
+				for (Map.Entry<String, Record> entry : snapshot.entrySet()) {
+					final byte[] path = entry.getKey().getBytes(StandardCharsets.UTF_8);
+					output.writeShort(path.length);
+					output.write(path);
+					output.writeLong(entry.getValue().size());
+					output.writeLong(entry.getValue().lastModified());
+					output.write(HEX.parseHex(entry.getValue().sha1()));
+				}
+			}
+
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+
+		dirty = false;
+	}
+
+	private static String key(Path path) {
+		return path.toAbsolutePath().toString();
+	}
+
+	private static long lastModified(BasicFileAttributes attributes) {
+		return attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+	}
+
+	private record Record(String sha1, long size, long lastModified) {
+	}
+}
@@ -47,6 +47,7 @@ import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.ModPlatform;
 import net.fabricmc.loom.util.ZipUtils;
 import net.fabricmc.loom.util.gradle.SourceSetHelper;
+import net.fabricmc.loom.util.zip.ZipAssembler;
 
 public final class FabricModJsonFactory {
 	private static final String FABRIC_MOD_JSON = "fabric.mod.json";
@@ -175,6 +176,16 @@ public final class FabricModJsonFactory {
 		return ZipUtils.contains(input, FABRIC_MOD_JSON);
 	}
 
+	public static boolean isModJar(ZipAssembler input, ModPlatform platform) {
+		if (platform == ModPlatform.FORGE) {
+			return input.contains("META-INF/mods.toml");
+		} else if (platform == ModPlatform.QUILT) {
+			return input.contains("quilt.mod.json") || isModJar(input, ModPlatform.FABRIC);
+		}
+
+		return input.contains(FABRIC_MOD_JSON);
+	}
+
 	public static boolean containsMod(FileSystemUtil.Delegate fs, ModPlatform platform) {
 		if (Files.exists(fs.getPath("architectury.common.marker"))) {
 			return true;
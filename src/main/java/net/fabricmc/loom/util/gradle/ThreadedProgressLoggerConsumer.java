@@ -26,7 +26,9 @@ package net.fabricmc.loom.util.gradle;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.gradle.api.Project;
@@ -34,16 +36,22 @@ import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.internal.logging.progress.ProgressLogger;
 import org.gradle.internal.logging.progress.ProgressLoggerFactory;
 
-public class ThreadedProgressLoggerConsumer implements Consumer<String>, AutoCloseable {
-	public static final String CLOSE_LOGGERS = "LOOM_CLOSE_LOGGERS";
+import net.fabricmc.loom.util.ipc.IPCMessage;
 
+public class ThreadedProgressLoggerConsumer implements Consumer<IPCMessage>, AutoCloseable {
 	private final Project project;
 	private final String name;
 	private final String desc;
 
 	private final ProgressLoggerFactory progressLoggerFactory;
 	private final ProgressLogger progressGroup;
-	private final Map<String, ProgressLogger> loggers = Collections.synchronizedMap(new HashMap<>());
+	private final Map<Long, ProgressLogger> loggers = Collections.synchronizedMap(new HashMap<>());
+
+	// Metrics, only accessed from the IPC receiver thread
+	private long timedMessages;
+	private long totalNanos;
+	private IPCMessage.Timing slowest;
+	private long peakMemory;
 
 	public ThreadedProgressLoggerConsumer(Project project, String name, String desc) {
 		this.project = project;
@@ -56,25 +64,24 @@ public class ThreadedProgressLoggerConsumer implements Consumer<String>, AutoClo
 	}
 
 	@Override
-	public void accept(String line) {
-		if (!line.contains("::")) {
-			project.getLogger().debug("Malformed threaded IPC log message: " + line);
-			return;
-		}
-
-		int idx = line.indexOf("::");
-		String id = line.substring(0, idx).trim();
-		String data = line.substring(idx + 2).trim();
-
-		if (data.equals(CLOSE_LOGGERS)) {
+	public void accept(IPCMessage message) {
+		if (message instanceof IPCMessage.Progress progress) {
+			loggers.computeIfAbsent(progress.threadId(), this::createLogger).progress(progress.message());
+		} else if (message instanceof IPCMessage.Reset) {
 			resetLoggers();
-			return;
+		} else if (message instanceof IPCMessage.Timing timing) {
+			timedMessages++;
+			totalNanos += timing.nanos();
+
+			if (slowest == null || timing.nanos() > slowest.nanos()) {
+				slowest = timing;
+			}
+		} else if (message instanceof IPCMessage.Memory memory) {
+			peakMemory = Math.max(peakMemory, memory.used());
 		}
-
-		loggers.computeIfAbsent(id, this::createLogger).progress(data);
 	}
 
-	private ProgressLogger createLogger(String id) {
+	private ProgressLogger createLogger(long threadId) {
 		ProgressLogger progressLogger = progressLoggerFactory.newOperation(getClass(), progressGroup);
 		progressLogger.setDescription(desc);
 		progressLogger.started();
@@ -86,9 +93,19 @@ public class ThreadedProgressLoggerConsumer implements Consumer<String>, AutoClo
 		loggers.clear();
 	}
 
+	private void logMetrics() {
+		if (timedMessages == 0) {
+			return;
+		}
+
+		project.getLogger().info(String.format(Locale.ENGLISH, "%s: %d steps in %d ms of worker time, slowest: '%s' (%d ms), peak heap usage: %d MB",
+				name, timedMessages, TimeUnit.NANOSECONDS.toMillis(totalNanos), slowest.message(), TimeUnit.NANOSECONDS.toMillis(slowest.nanos()), peakMemory / (1024 * 1024)));
+	}
+
 	@Override
 	public void close() {
 		resetLoggers();
+		logMetrics();
 
 		progressGroup.completed();
 	}
@@ -25,21 +25,54 @@
 package net.fabricmc.loom.util.ipc;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import net.fabricmc.loom.util.IOStringConsumer;
 
+/**
+ * Sends messages to an {@link IPCServer}.
+ *
+ * <p>Each thread writes its messages into its own buffer without contending with the other threads, the buffers are
+ * written to the socket in batches when they are full, and periodically by a background thread. If a background write
+ * fails, the connection is closed and the following messages throw the failure.
+ */
 public final class IPCClient implements IOStringConsumer, AutoCloseable {
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final long FLUSH_INTERVAL_MS = 100;
+	private static final long MEMORY_SAMPLE_INTERVAL_MS = 1000;
+	// Length, kind, thread id and time
+	private static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES * 2;
+
 	private final Path path;
 	private final SocketChannel socketChannel;
+	private final List<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+	private final ThreadLocal<ThreadBuffer> threadBuffer = ThreadLocal.withInitial(this::createBuffer);
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "Loom IPC flusher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile IOException failure;
 
 	public IPCClient(Path path) throws IOException {
 		this.path = path;
 		socketChannel = setupChannel();
+
+		flusher.scheduleWithFixedDelay(() -> runInBackground(this::flushAll), FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		flusher.scheduleWithFixedDelay(() -> runInBackground(this::sampleMemory), 0, MEMORY_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
 	}
 
 	private SocketChannel setupChannel() throws IOException {
@@ -47,21 +80,182 @@ public final class IPCClient implements IOStringConsumer, AutoCloseable {
 		return SocketChannel.open(address);
 	}
 
+	/**
+	 * Sends a progress message for the current thread, along with the time spent since its previous progress message.
+	 */
 	@Override
 	public void accept(String s) throws IOException {
-		synchronized (socketChannel) {
-			ByteBuffer buf = ByteBuffer.wrap((s + "\n").getBytes(StandardCharsets.UTF_8));
+		ensureConnected();
+		final ThreadBuffer buffer = threadBuffer.get();
+		final long now = System.nanoTime();
+
+		synchronized (buffer) {
+			buffer.writeTiming(now);
+			buffer.writeString(IPCMessage.PROGRESS, buffer.threadId, 0, s);
+			buffer.lastMessage = s;
+			buffer.lastMessageTime = now;
+		}
+	}
+
+	/**
+	 * Sends all pending messages followed by a {@link IPCMessage.Reset}.
+	 */
+	public void reset() throws IOException {
+		ensureConnected();
+		final ThreadBuffer current = threadBuffer.get();
+		final long now = System.nanoTime();
+
+		// Flush the messages of the other threads first, as they were sent before this call
+		for (ThreadBuffer buffer : buffers) {
+			if (buffer == current) {
+				continue;
+			}
+
+			synchronized (buffer) {
+				buffer.writeTiming(now);
+				buffer.flush();
+			}
+		}
+
+		synchronized (current) {
+			current.writeTiming(now);
+			current.ensureCapacity(HEADER_SIZE);
+			current.buffer.putInt(1).put(IPCMessage.RESET);
+			current.flush();
+		}
+	}
+
+	private void ensureConnected() throws IOException {
+		if (failure != null) {
+			throw new IOException("IPC connection to %s failed".formatted(path), failure);
+		}
+	}
+
+	// A scheduled task that throws is silently never run again, so fail the whole connection instead
+	private void runInBackground(Runnable task) {
+		try {
+			task.run();
+		} catch (UncheckedIOException e) {
+			failure = e.getCause();
+			flusher.shutdown();
+
+			try {
+				socketChannel.close();
+			} catch (IOException ex) {
+				failure.addSuppressed(ex);
+			}
+		}
+	}
+
+	private void flushAll() {
+		try {
+			for (ThreadBuffer buffer : buffers) {
+				synchronized (buffer) {
+					buffer.flush();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to flush IPC messages", e);
+		}
+	}
 
-			while (buf.hasRemaining()) {
-				socketChannel.write(buf);
+	private void sampleMemory() {
+		final Runtime runtime = Runtime.getRuntime();
+		final ThreadBuffer buffer = threadBuffer.get();
+
+		synchronized (buffer) {
+			try {
+				buffer.ensureCapacity(HEADER_SIZE);
+				buffer.buffer.putInt(1 + Long.BYTES * 2).put(IPCMessage.MEMORY).putLong(runtime.totalMemory() - runtime.freeMemory()).putLong(runtime.maxMemory());
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to sample memory usage", e);
 			}
 		}
 	}
 
+	private ThreadBuffer createBuffer() {
+		final ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread().getId());
+		buffers.add(buffer);
+		return buffer;
+	}
+
 	@Override
 	public void close() throws Exception {
+		// Don't interrupt a running flush, that would close the channel
+		flusher.shutdown();
+		flusher.awaitTermination(10, TimeUnit.SECONDS);
+
+		if (failure == null) {
+			flushAll();
+		}
+
 		synchronized (socketChannel) {
 			socketChannel.close();
 		}
 	}
+
+	private final class ThreadBuffer {
+		private final long threadId;
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		private String lastMessage;
+		private long lastMessageTime;
+
+		private ThreadBuffer(long threadId) {
+			this.threadId = threadId;
+		}
+
+		private void writeTiming(long now) throws IOException {
+			if (lastMessage != null) {
+				writeString(IPCMessage.TIMING, threadId, now - lastMessageTime, lastMessage);
+				lastMessage = null;
+			}
+		}
+
+		private void writeString(byte kind, long threadId, long nanos, String str) throws IOException {
+			ensureCapacity(HEADER_SIZE + (int) (str.length() * encoder.maxBytesPerChar()));
+
+			final int start = buffer.position();
+			buffer.position(start + Integer.BYTES);
+			buffer.put(kind).putLong(threadId);
+
+			if (kind == IPCMessage.TIMING) {
+				buffer.putLong(nanos);
+			}
+
+			encoder.reset();
+			encoder.encode(CharBuffer.wrap(str), buffer, true);
+			encoder.flush(buffer);
+			buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+		}
+
+		private void ensureCapacity(int size) throws IOException {
+			if (buffer.remaining() >= size) {
+				return;
+			}
+
+			flush();
+
+			if (buffer.capacity() < size) {
+				buffer = ByteBuffer.allocate(size);
+			}
+		}
+
+		private void flush() throws IOException {
+			if (buffer.position() == 0) {
+				return;
+			}
+
+			buffer.flip();
+
+			synchronized (socketChannel) {
+				while (buffer.hasRemaining()) {
+					socketChannel.write(buffer);
+				}
+			}
+
+			buffer.clear();
+		}
+	}
 }
@@ -0,0 +1,89 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.ipc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message sent from an {@link IPCClient} to an {@link IPCServer}.
+ *
+ * <p>Each message is sent as a frame made of the length of the rest of the frame, the kind of the message and its payload.
+ */
+public sealed interface IPCMessage {
+	byte PROGRESS = 0;
+	byte RESET = 1;
+	byte TIMING = 2;
+	byte MEMORY = 3;
+
+	/**
+	 * A progress message logged by a thread of the client.
+	 */
+	record Progress(long threadId, String message) implements IPCMessage {
+	}
+
+	/**
+	 * Sent once all the progress of the client has been reported, after the progress sent before it.
+	 */
+	record Reset() implements IPCMessage {
+	}
+
+	/**
+	 * The time a thread of the client spent between logging a progress message and its next one.
+	 */
+	record Timing(long threadId, String message, long nanos) implements IPCMessage {
+	}
+
+	/**
+	 * A sample of the heap usage of the client.
+	 */
+	record Memory(long used, long max) implements IPCMessage {
+	}
+
+	/**
+	 * Reads a message from the payload of a frame, starting with its kind.
+	 */
+	static IPCMessage read(ByteBuffer frame) {
+		final byte kind = frame.get();
+
+		return switch (kind) {
+		case PROGRESS -> new Progress(frame.getLong(), readString(frame));
+		case RESET -> new Reset();
+		case TIMING -> {
+			final long threadId = frame.getLong();
+			final long nanos = frame.getLong();
+			yield new Timing(threadId, readString(frame), nanos);
+		}
+		case MEMORY -> new Memory(frame.getLong(), frame.getLong());
+		default -> throw new IllegalArgumentException("Unknown IPC message kind: " + kind);
+		};
+	}
+
+	private static String readString(ByteBuffer frame) {
+		final String str = new String(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), StandardCharsets.UTF_8);
+		frame.position(frame.limit());
+		return str;
+	}
+}
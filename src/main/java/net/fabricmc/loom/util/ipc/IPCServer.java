@@ -28,11 +28,11 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.StandardProtocolFamily;
 import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.Scanner;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -40,15 +40,18 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public class IPCServer implements AutoCloseable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
 	private final ExecutorService loggerReceiverService = Executors.newSingleThreadExecutor();
 	private final Path path;
-	private final Consumer<String> consumer;
+	private final Consumer<IPCMessage> consumer;
 
 	private final CountDownLatch startupLock = new CountDownLatch(1);
 
-	private boolean receivedMessage = false;
+	private volatile boolean receivedMessage = false;
 
-	public IPCServer(Path path, Consumer<String> consumer) {
+	public IPCServer(Path path, Consumer<IPCMessage> consumer) {
 		this.path = path;
 		this.consumer = consumer;
 
@@ -69,20 +72,52 @@ public class IPCServer implements AutoCloseable {
 
 			startupLock.countDown();
 
-			try (SocketChannel clientChannel = serverChannel.accept();
-					Scanner scanner = new Scanner(clientChannel, StandardCharsets.UTF_8)) {
-				while (!Thread.currentThread().isInterrupted()) {
-					if (scanner.hasNextLine()) {
-						receivedMessage = true;
-						this.consumer.accept(scanner.nextLine());
-					}
-				}
+			try (SocketChannel clientChannel = serverChannel.accept()) {
+				receive(clientChannel);
 			}
+		} catch (ClosedByInterruptException e) {
+			// The server has been closed
 		} catch (IOException e) {
 			throw new UncheckedIOException("Failed to listen for IPC messages", e);
 		}
 	}
 
+	private void receive(SocketChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		while (channel.read(buffer) != -1) {
+			buffer.flip();
+
+			// Consume every complete frame that has been received
+			while (buffer.remaining() >= Integer.BYTES) {
+				final int length = buffer.getInt(buffer.position());
+
+				// A frame holds at least the kind of the message
+				if (length < 1 || length > MAX_FRAME_SIZE) {
+					throw new IOException("Invalid IPC frame length %d".formatted(length));
+				}
+
+				if (buffer.remaining() < Integer.BYTES + length) {
+					break;
+				}
+
+				final int end = buffer.position() + Integer.BYTES + length;
+				final ByteBuffer frame = buffer.duplicate().position(buffer.position() + Integer.BYTES).limit(end);
+				buffer.position(end);
+
+				receivedMessage = true;
+				consumer.accept(IPCMessage.read(frame));
+			}
+
+			buffer.compact();
+
+			if (!buffer.hasRemaining()) {
+				// A single frame is bigger than the buffer
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+			}
+		}
+	}
+
 	@Override
 	public void close() throws InterruptedException {
 		loggerReceiverService.shutdownNow();
@@ -49,52 +49,56 @@ import net.fabricmc.mappingio.tree.MappingTree;
 public final class AtRemapper {
 	public static void remap(Logger logger, Path jar, MappingTree mappings) throws IOException {
 		try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(jar, false)) {
-			Path atPath = fs.getPath(Constants.Forge.ACCESS_TRANSFORMER_PATH);
+			remap(logger, fs, mappings);
+		}
+	}
 
-			if (Files.exists(atPath)) {
-				String atContent = Files.readString(atPath, StandardCharsets.UTF_8);
+	public static void remap(Logger logger, FileSystemUtil.Delegate fs, MappingTree mappings) throws IOException {
+		Path atPath = fs.getPath(Constants.Forge.ACCESS_TRANSFORMER_PATH);
 
-				String[] lines = atContent.split("\n");
-				List<String> output = new ArrayList<>(lines.length);
+		if (Files.exists(atPath)) {
+			String atContent = Files.readString(atPath, StandardCharsets.UTF_8);
 
-				for (int i = 0; i < lines.length; i++) {
-					String line = lines[i].trim();
+			String[] lines = atContent.split("\n");
+			List<String> output = new ArrayList<>(lines.length);
 
-					if (line.startsWith("#") || line.isBlank()) {
-						output.add(i, line);
-						continue;
-					}
+			for (int i = 0; i < lines.length; i++) {
+				String line = lines[i].trim();
 
-					String[] parts = line.split("\\s+");
+				if (line.startsWith("#") || line.isBlank()) {
+					output.add(i, line);
+					continue;
+				}
 
-					if (parts.length < 2) {
-						logger.warn("Invalid AT Line: " + line);
-						output.add(i, line);
-						continue;
-					}
+				String[] parts = line.split("\\s+");
 
-					String name = parts[1].replace('.', '/');
-					parts[1] = CollectionUtil.find(
-							mappings.getClasses(),
-							def -> def.getName("srg").equals(name)
-					).map(def -> def.getName("named")).orElse(name).replace('/', '.');
-
-					if (parts.length >= 3) {
-						if (parts[2].contains("(")) {
-							parts[2] = parts[2].substring(0, parts[2].indexOf('(')) + remapDescriptor(parts[2].substring(parts[2].indexOf('(')), s -> {
-								return CollectionUtil.find(
-										mappings.getClasses(),
-										def -> def.getName("srg").equals(s)
-								).map(def -> def.getName("named")).orElse(s);
-							});
-						}
-					}
+				if (parts.length < 2) {
+					logger.warn("Invalid AT Line: " + line);
+					output.add(i, line);
+					continue;
+				}
 
-					output.add(i, String.join(" ", parts));
+				String name = parts[1].replace('.', '/');
+				parts[1] = CollectionUtil.find(
+						mappings.getClasses(),
+						def -> def.getName("srg").equals(name)
+				).map(def -> def.getName("named")).orElse(name).replace('/', '.');
+
+				if (parts.length >= 3) {
+					if (parts[2].contains("(")) {
+						parts[2] = parts[2].substring(0, parts[2].indexOf('(')) + remapDescriptor(parts[2].substring(parts[2].indexOf('(')), s -> {
+							return CollectionUtil.find(
+									mappings.getClasses(),
+									def -> def.getName("srg").equals(s)
+							).map(def -> def.getName("named")).orElse(s);
+						});
+					}
 				}
 
-				Files.write(atPath, String.join("\n", output).getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
+				output.add(i, String.join(" ", parts));
 			}
+
+			Files.write(atPath, String.join("\n", output).getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
 		}
 	}
 
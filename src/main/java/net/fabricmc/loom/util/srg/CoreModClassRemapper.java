@@ -56,29 +56,33 @@ public final class CoreModClassRemapper {
 
 	public static void remapJar(Path jar, MappingTree mappings, Logger logger) throws IOException {
 		try (FileSystemUtil.Delegate fs = FileSystemUtil.getJarFileSystem(jar, false)) {
-			Path coremodsJsonPath = fs.getPath("META-INF", "coremods.json");
+			remapJar(jar, fs, mappings, logger);
+		}
+	}
 
-			if (Files.notExists(coremodsJsonPath)) {
-				logger.info(":no coremods in " + jar.getFileName());
-				return;
-			}
+	public static void remapJar(Path jar, FileSystemUtil.Delegate fs, MappingTree mappings, Logger logger) throws IOException {
+		Path coremodsJsonPath = fs.getPath("META-INF", "coremods.json");
+
+		if (Files.notExists(coremodsJsonPath)) {
+			logger.info(":no coremods in " + jar.getFileName());
+			return;
+		}
 
-			JsonObject coremodsJson;
+		JsonObject coremodsJson;
 
-			try (Reader reader = Files.newBufferedReader(coremodsJsonPath)) {
-				coremodsJson = new Gson().fromJson(reader, JsonObject.class);
-			}
+		try (Reader reader = Files.newBufferedReader(coremodsJsonPath)) {
+			coremodsJson = new Gson().fromJson(reader, JsonObject.class);
+		}
 
-			for (Map.Entry<String, JsonElement> nameFileEntry : coremodsJson.entrySet()) {
-				String file = nameFileEntry.getValue().getAsString();
-				Path js = fs.getPath(file);
+		for (Map.Entry<String, JsonElement> nameFileEntry : coremodsJson.entrySet()) {
+			String file = nameFileEntry.getValue().getAsString();
+			Path js = fs.getPath(file);
 
-				if (Files.exists(js)) {
-					logger.info(":remapping coremod '" + file + "'");
-					remap(js, mappings);
-				} else {
-					logger.warn("Coremod '" + file + "' listed in coremods.json but not found");
-				}
+			if (Files.exists(js)) {
+				logger.info(":remapping coremod '" + file + "'");
+				remap(js, mappings);
+			} else {
+				logger.warn("Coremod '" + file + "' listed in coremods.json but not found");
 			}
 		}
 	}
@@ -0,0 +1,328 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.zip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads zip entries without going through a zip file system, giving access to the compressed data of each entry
+ * so that it can be copied into another zip as is. Reads are positional and can be done from multiple threads.
+ *
+ * <p>Zip64 archives are supported, but the data of an entry is read in memory and must be smaller than 2 GiB.
+ */
+public final class RawZipReader implements Closeable {
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_END_SIZE = 56;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private static final int UTF8_FLAG = 1 << 11;
+
+	private final FileChannel channel;
+	private final List<ZipEntryInfo> entries;
+
+	private RawZipReader(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.entries = readCentralDirectory();
+	}
+
+	public static RawZipReader open(Path path) throws IOException {
+		final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			return new RawZipReader(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * {@return the entries of the zip, in the order of its central directory}
+	 */
+	public List<ZipEntryInfo> entries() {
+		return entries;
+	}
+
+	/**
+	 * Reads the data of an entry as it is stored in the zip.
+	 *
+	 * @param entry the entry
+	 * @return the compressed data
+	 */
+	public byte[] readRaw(ZipEntryInfo entry) throws IOException {
+		final ByteBuffer header = read(entry.localHeaderOffset(), LOCAL_HEADER_SIZE);
+
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException("Invalid local header for " + entry.name());
+		}
+
+		final long dataOffset = entry.localHeaderOffset() + LOCAL_HEADER_SIZE + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+		return read(dataOffset, toIntSize(entry, entry.compressedSize())).array();
+	}
+
+	/**
+	 * Reads and decompresses the data of an entry.
+	 *
+	 * @param entry the entry
+	 * @return the uncompressed data
+	 */
+	public byte[] read(ZipEntryInfo entry) throws IOException {
+		return decompress(entry, readRaw(entry));
+	}
+
+	/**
+	 * Decompresses the data of an entry that was read with {@link #readRaw(ZipEntryInfo)}.
+	 *
+	 * @param entry the entry
+	 * @param raw   the compressed data
+	 * @return the uncompressed data
+	 */
+	public static byte[] decompress(ZipEntryInfo entry, byte[] raw) throws ZipException {
+		return switch (entry.method()) {
+		case ZipEntryInfo.STORED -> raw;
+		case ZipEntryInfo.DEFLATED -> inflate(entry, raw);
+		default -> throw new ZipException("Unsupported compression method %d for %s".formatted(entry.method(), entry.name()));
+		};
+	}
+
+	private static byte[] inflate(ZipEntryInfo entry, byte[] raw) throws ZipException {
+		final Inflater inflater = new Inflater(true);
+
+		try {
+			final byte[] data = new byte[toIntSize(entry, entry.size())];
+			inflater.setInput(raw);
+			int length = 0;
+
+			while (length < data.length && !inflater.finished()) {
+				final int read = inflater.inflate(data, length, data.length - length);
+
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+
+				length += read;
+			}
+
+			if (length != data.length) {
+				throw new ZipException("Unexpected size of %s, expected %d bytes but got %d".formatted(entry.name(), data.length, length));
+			}
+
+			return data;
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid compressed data for %s: %s".formatted(entry.name(), e.getMessage()));
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private List<ZipEntryInfo> readCentralDirectory() throws IOException {
+		final long endOffset = findEnd();
+		final ByteBuffer end = read(endOffset, END_SIZE);
+		long count = Short.toUnsignedInt(end.getShort(10));
+		long size = Integer.toUnsignedLong(end.getInt(12));
+		long offset = Integer.toUnsignedLong(end.getInt(16));
+
+		if (count == 0xFFFF || size == ZIP64_MAGIC || offset == ZIP64_MAGIC) {
+			final ByteBuffer zip64End = readZip64End(endOffset);
+
+			if (zip64End != null) {
+				count = zip64End.getLong(32);
+				size = zip64End.getLong(40);
+				offset = zip64End.getLong(48);
+			}
+		}
+
+		if (count > Integer.MAX_VALUE || size > Integer.MAX_VALUE - 8) {
+			throw new ZipException("The central directory is too large");
+		}
+
+		final ByteBuffer directory = read(offset, (int) size);
+		final List<ZipEntryInfo> entries = new ArrayList<>((int) count);
+
+		for (int i = 0; i < count; i++) {
+			final int position = directory.position();
+
+			if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory header");
+			}
+
+			final int flags = Short.toUnsignedInt(directory.getShort(position + 8));
+			final int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+			final int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+			final int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+			final byte[] nameBytes = new byte[nameLength];
+			directory.get(position + CENTRAL_HEADER_SIZE, nameBytes);
+			final Charset charset = (flags & UTF8_FLAG) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+			final String name = new String(nameBytes, charset);
+
+			long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+			long uncompressedSize = Integer.toUnsignedLong(directory.getInt(position + 24));
+			long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+
+			if (uncompressedSize == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+				// The zip64 field only has the values that don't fit in the header, in this order.
+				final ByteBuffer zip64 = findZip64Extra(directory, position + CENTRAL_HEADER_SIZE + nameLength, extraLength, name);
+
+				try {
+					if (uncompressedSize == ZIP64_MAGIC) {
+						uncompressedSize = zip64.getLong();
+					}
+
+					if (compressedSize == ZIP64_MAGIC) {
+						compressedSize = zip64.getLong();
+					}
+
+					if (localHeaderOffset == ZIP64_MAGIC) {
+						localHeaderOffset = zip64.getLong();
+					}
+				} catch (BufferUnderflowException e) {
+					throw new ZipException("Invalid zip64 extra field for " + name);
+				}
+			}
+
+			entries.add(new ZipEntryInfo(
+					name,
+					flags,
+					Short.toUnsignedInt(directory.getShort(position + 10)),
+					directory.getInt(position + 12),
+					directory.getInt(position + 16),
+					compressedSize,
+					uncompressedSize,
+					directory.getInt(position + 38),
+					localHeaderOffset
+			));
+
+			directory.position(position + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength);
+		}
+
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Reads the zip64 end of central directory record, if the zip has one.
+	 */
+	private @Nullable ByteBuffer readZip64End(long endOffset) throws IOException {
+		if (endOffset < ZIP64_LOCATOR_SIZE) {
+			return null;
+		}
+
+		final ByteBuffer locator = read(endOffset - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+
+		if (locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE) {
+			// Exactly 65535 entries, without the zip64 extensions.
+			return null;
+		}
+
+		final ByteBuffer zip64End = read(locator.getLong(8), ZIP64_END_SIZE);
+
+		if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+			throw new ZipException("Invalid zip64 end of central directory");
+		}
+
+		return zip64End;
+	}
+
+	private static ByteBuffer findZip64Extra(ByteBuffer directory, int start, int length, String name) throws ZipException {
+		int position = start;
+
+		while (position + 4 <= start + length) {
+			final int id = Short.toUnsignedInt(directory.getShort(position));
+			final int size = Short.toUnsignedInt(directory.getShort(position + 2));
+
+			if (id == ZIP64_EXTRA_ID) {
+				return directory.slice(position + 4, Math.min(size, start + length - position - 4)).order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			position += 4 + size;
+		}
+
+		throw new ZipException("Missing zip64 extra field for " + name);
+	}
+
+	private long findEnd() throws IOException {
+		final long fileSize = channel.size();
+		final int searchSize = (int) Math.min(fileSize, END_SIZE + 0xFFFF);
+		final long searchStart = fileSize - searchSize;
+		final ByteBuffer tail = read(searchStart, searchSize);
+
+		for (int i = searchSize - END_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_SIGNATURE) {
+				return searchStart + i;
+			}
+		}
+
+		throw new ZipException("Could not find the end of the central directory");
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new ZipException("Unexpected end of zip file");
+			}
+		}
+
+		return buffer.flip();
+	}
+
+	private static int toIntSize(ZipEntryInfo entry, long size) throws ZipException {
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new ZipException("Entry %s is too large".formatted(entry.name()));
+		}
+
+		return (int) size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,406 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip file from entries that are already compressed, either copied as is from a {@link RawZipReader}
+ * or {@linkplain #prepare(String, byte[], int) prepared} up front. Preparing entries is thread safe, which allows
+ * compressing them in parallel while a single thread writes the zip.
+ *
+ * <p>Zip64 extensions are only written for the entries and archives that need them.
+ */
+public final class RawZipWriter implements Closeable {
+	/**
+	 * The MS-DOS time of 1980-02-01 00:00, used by Gradle for reproducible archives.
+	 */
+	public static final int CONSTANT_DOS_TIME = ((2 << 5) | 1) << 16;
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final int ZIP64_VERSION = 45;
+	private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+	private static final int UTF8_FLAG = 1 << 11;
+	// Values of at least these need the zip64 extensions.
+	private static final long MAX_SIZE = 0xFFFFFFFFL;
+	private static final int MAX_ENTRIES = 0xFFFF;
+
+	private final OutputStream output;
+	private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+	private final Set<String> names = new HashSet<>();
+	private final Set<String> directories = new HashSet<>();
+	private long position = 0;
+	private long count = 0;
+	// Set while an entry is being written, stays set if writing it failed.
+	private boolean partialEntry = false;
+
+	private RawZipWriter(OutputStream output) {
+		this.output = output;
+	}
+
+	/**
+	 * Converts a Java timestamp to an MS-DOS modification time in the system time zone, like {@link java.util.zip.ZipEntry#setTime(long)}.
+	 *
+	 * @param time the timestamp in milliseconds since the epoch
+	 * @return the MS-DOS time
+	 */
+	public static int toDosTime(long time) {
+		final LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+
+		if (dateTime.getYear() < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+
+		final int date = ((dateTime.getYear() - 1980) << 9) | (dateTime.getMonthValue() << 5) | dateTime.getDayOfMonth();
+		final int timeOfDay = (dateTime.getHour() << 11) | (dateTime.getMinute() << 5) | (dateTime.getSecond() >> 1);
+		return (date << 16) | timeOfDay;
+	}
+
+	public static RawZipWriter create(Path path) throws IOException {
+		return create(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+	}
+
+	/**
+	 * Creates a writer to a stream, the stream is closed when the writer is closed.
+	 */
+	public static RawZipWriter create(OutputStream output) {
+		return new RawZipWriter(output);
+	}
+
+	/**
+	 * Compresses an entry so that it can be {@linkplain #write(PreparedEntry) written} later.
+	 *
+	 * @param name    the name of the entry
+	 * @param data    the uncompressed data
+	 * @param dosTime the MS-DOS modification time, see {@link ZipEntryInfo#dosTime()}
+	 * @return the prepared entry
+	 */
+	public static PreparedEntry prepare(String name, byte[] data, int dosTime) {
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+
+		if (data.length == 0) {
+			return new PreparedEntry(name, ZipEntryInfo.STORED, dosTime, (int) crc.getValue(), 0, data);
+		}
+
+		final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+			final byte[] buffer = new byte[8192];
+
+			while (!deflater.finished()) {
+				final int length = deflater.deflate(buffer);
+				compressed.write(buffer, 0, length);
+			}
+
+			return new PreparedEntry(name, ZipEntryInfo.DEFLATED, dosTime, (int) crc.getValue(), data.length, compressed.toByteArray());
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Like {@link #prepare(String, byte[], int)}, but the entry is stored without compression.
+	 */
+	public static PreparedEntry prepareStored(String name, byte[] data, int dosTime) {
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		return new PreparedEntry(name, ZipEntryInfo.STORED, dosTime, (int) crc.getValue(), data.length, data);
+	}
+
+	/**
+	 * Copies an entry of another zip without decompressing it.
+	 *
+	 * @param entry          the entry to copy
+	 * @param compressedData the data of the entry, as returned by {@link RawZipReader#readRaw(ZipEntryInfo)}
+	 */
+	public void writeRaw(ZipEntryInfo entry, byte[] compressedData) throws IOException {
+		writeRaw(entry, compressedData, entry.dosTime());
+	}
+
+	/**
+	 * Copies an entry of another zip without decompressing it, changing its modification time.
+	 *
+	 * @param entry          the entry to copy
+	 * @param compressedData the data of the entry, as returned by {@link RawZipReader#readRaw(ZipEntryInfo)}
+	 * @param dosTime        the MS-DOS modification time of the copy
+	 */
+	public void writeRaw(ZipEntryInfo entry, byte[] compressedData, int dosTime) throws IOException {
+		// The sizes are known up front, so the copy never needs a data descriptor.
+		final int flags = entry.flags() & ~DATA_DESCRIPTOR_FLAG;
+		writeEntry(entry.name(), flags, entry.method(), dosTime, entry.crc(), entry.size(), entry.externalAttributes(), compressedData);
+	}
+
+	/**
+	 * Writes a file as a stored entry without loading it in memory. The file is read twice, once to compute its
+	 * checksum and once to copy it.
+	 *
+	 * @param name    the name of the entry
+	 * @param file    the file to write
+	 * @param dosTime the MS-DOS modification time
+	 */
+	public void writeStored(String name, Path file, int dosTime) throws IOException {
+		final CRC32 crc = new CRC32();
+		final byte[] buffer = new byte[8192];
+		long size = 0;
+
+		try (InputStream input = Files.newInputStream(file)) {
+			for (int read; (read = input.read(buffer)) >= 0;) {
+				crc.update(buffer, 0, read);
+				size += read;
+			}
+		}
+
+		writeHeaders(name, UTF8_FLAG, ZipEntryInfo.STORED, dosTime, (int) crc.getValue(), size, size, 0);
+
+		try (InputStream input = Files.newInputStream(file)) {
+			if (input.transferTo(output) != size) {
+				throw new ZipException("%s changed while it was written".formatted(file));
+			}
+		}
+
+		position += size;
+		partialEntry = false;
+	}
+
+	/**
+	 * Copies the files of another zip that are accepted by the filter without decompressing them, skipping files
+	 * that have already been written. Directory entries are created for the parents of the copied files.
+	 *
+	 * @param reader the zip to copy from
+	 * @param filter the filter of entry names
+	 * @return the number of copied files
+	 */
+	public int copyFrom(RawZipReader reader, Predicate<String> filter) throws IOException {
+		int copied = 0;
+
+		for (ZipEntryInfo entry : reader.entries()) {
+			if (entry.isDirectory() || names.contains(entry.name()) || !filter.test(entry.name())) {
+				continue;
+			}
+
+			writeDirectories(entry.name(), entry.dosTime());
+			writeRaw(entry, reader.readRaw(entry));
+			copied++;
+		}
+
+		return copied;
+	}
+
+	/**
+	 * Writes the entries of the parent directories of an entry that haven't been written yet.
+	 *
+	 * @param name    the name of the entry
+	 * @param dosTime the MS-DOS modification time of the directories
+	 */
+	public void writeDirectories(String name, int dosTime) throws IOException {
+		int index = 0;
+
+		while ((index = name.indexOf('/', index) + 1) > 0) {
+			final String directory = name.substring(0, index);
+
+			if (directories.add(directory) && !names.contains(directory)) {
+				write(prepare(directory, new byte[0], dosTime));
+			}
+		}
+	}
+
+	public void write(PreparedEntry entry) throws IOException {
+		writeEntry(entry.name(), UTF8_FLAG, entry.method(), entry.dosTime(), entry.crc(), entry.size(), 0, entry.compressedData());
+	}
+
+	public void write(String name, byte[] data) throws IOException {
+		write(prepare(name, data, CONSTANT_DOS_TIME));
+	}
+
+	private void writeEntry(String name, int flags, int method, int dosTime, int crc, long size, int externalAttributes, byte[] data) throws IOException {
+		writeHeaders(name, flags, method, dosTime, crc, data.length, size, externalAttributes);
+		output.write(data);
+		position += data.length;
+		partialEntry = false;
+	}
+
+	/**
+	 * Writes the local header of an entry and records its central directory header, the data must follow.
+	 */
+	private void writeHeaders(String name, int flags, int method, int dosTime, int crc, long compressedSize, long size, int externalAttributes) throws IOException {
+		if (partialEntry) {
+			throw new ZipException("Can't write %s, a previous entry failed to be written".formatted(name));
+		}
+
+		if (!names.add(name)) {
+			throw new ZipException("duplicate entry: " + name);
+		}
+
+		partialEntry = true;
+		final byte[] nameBytes = name.getBytes((flags & UTF8_FLAG) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+		final boolean zip64Sizes = size >= MAX_SIZE || compressedSize >= MAX_SIZE;
+		final boolean zip64Offset = position >= MAX_SIZE;
+		final int version = zip64Sizes || zip64Offset ? ZIP64_VERSION : method == ZipEntryInfo.DEFLATED ? 20 : 10;
+		// The local zip64 field has both sizes, the central one only has the values that don't fit in the header.
+		final int localExtraLength = zip64Sizes ? 20 : 0;
+		final int centralZip64Length = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+		final int centralExtraLength = centralZip64Length > 0 ? 4 + centralZip64Length : 0;
+
+		final ByteBuffer local = ByteBuffer.allocate(30 + nameBytes.length + localExtraLength).order(ByteOrder.LITTLE_ENDIAN);
+		local.putInt(LOCAL_HEADER_SIGNATURE);
+		local.putShort((short) version);
+		local.putShort((short) flags);
+		local.putShort((short) method);
+		local.putInt(dosTime);
+		local.putInt(crc);
+		local.putInt(zip64Sizes ? -1 : (int) compressedSize);
+		local.putInt(zip64Sizes ? -1 : (int) size);
+		local.putShort((short) nameBytes.length);
+		local.putShort((short) localExtraLength);
+		local.put(nameBytes);
+
+		if (zip64Sizes) {
+			local.putShort((short) ZIP64_EXTRA_ID);
+			local.putShort((short) 16);
+			local.putLong(size);
+			local.putLong(compressedSize);
+		}
+
+		final ByteBuffer central = ByteBuffer.allocate(46 + nameBytes.length + centralExtraLength).order(ByteOrder.LITTLE_ENDIAN);
+		central.putInt(CENTRAL_HEADER_SIGNATURE);
+		central.putShort((short) version);
+		central.putShort((short) version);
+		central.putShort((short) flags);
+		central.putShort((short) method);
+		central.putInt(dosTime);
+		central.putInt(crc);
+		central.putInt(zip64Sizes ? -1 : (int) compressedSize);
+		central.putInt(zip64Sizes ? -1 : (int) size);
+		central.putShort((short) nameBytes.length);
+		central.putShort((short) centralExtraLength);
+		central.putShort((short) 0);
+		central.putShort((short) 0);
+		central.putShort((short) 0);
+		central.putInt(externalAttributes);
+		central.putInt(zip64Offset ? -1 : (int) position);
+		central.put(nameBytes);
+
+		if (centralZip64Length > 0) {
+			central.putShort((short) ZIP64_EXTRA_ID);
+			central.putShort((short) centralZip64Length);
+
+			if (zip64Sizes) {
+				central.putLong(size);
+				central.putLong(compressedSize);
+			}
+
+			if (zip64Offset) {
+				central.putLong(position);
+			}
+		}
+
+		output.write(local.array());
+		centralDirectory.write(central.array());
+		position += local.capacity();
+		count++;
+	}
+
+	/**
+	 * Writes the central directory and closes the stream. When an entry failed to be written, the central directory
+	 * is left out so that the truncated zip can't be read as valid.
+	 */
+	@Override
+	public void close() throws IOException {
+		try (output) {
+			if (partialEntry) {
+				throw new ZipException("Not finishing the zip, an entry failed to be written");
+			}
+
+			final long directoryOffset = position;
+			final long directorySize = centralDirectory.size();
+			centralDirectory.writeTo(output);
+
+			if (count >= MAX_ENTRIES || directorySize >= MAX_SIZE || directoryOffset >= MAX_SIZE) {
+				final ByteBuffer zip64End = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+				zip64End.putInt(ZIP64_END_SIGNATURE);
+				zip64End.putLong(44);
+				zip64End.putShort((short) ZIP64_VERSION);
+				zip64End.putShort((short) ZIP64_VERSION);
+				zip64End.putInt(0);
+				zip64End.putInt(0);
+				zip64End.putLong(count);
+				zip64End.putLong(count);
+				zip64End.putLong(directorySize);
+				zip64End.putLong(directoryOffset);
+
+				zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+				zip64End.putInt(0);
+				zip64End.putLong(directoryOffset + directorySize);
+				zip64End.putInt(1);
+				output.write(zip64End.array());
+			}
+
+			final ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(END_SIGNATURE);
+			end.putShort((short) 0);
+			end.putShort((short) 0);
+			end.putShort((short) Math.min(count, MAX_ENTRIES));
+			end.putShort((short) Math.min(count, MAX_ENTRIES));
+			end.putInt(directorySize >= MAX_SIZE ? -1 : (int) directorySize);
+			end.putInt(directoryOffset >= MAX_SIZE ? -1 : (int) directoryOffset);
+			end.putShort((short) 0);
+			output.write(end.array());
+		}
+	}
+
+	/**
+	 * An entry that has been compressed and is ready to be written.
+	 */
+	public record PreparedEntry(String name, int method, int dosTime, int crc, long size, byte[] compressedData) {
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import net.fabricmc.loom.LoomGradlePlugin;
+import net.fabricmc.loom.util.ThreadingUtils;
+import net.fabricmc.loom.util.ZipUtils;
+
+/**
+ * Assembles a zip from the entries of a base zip and entries supplied by the caller. Edits are registered up front
+ * and the output is written once: untouched entries are copied without being decompressed, transformed entries are
+ * processed in parallel batches and files are streamed into the output.
+ *
+ * <p>Transforms registered for the same entry are chained in registration order. Replacing or removing an entry
+ * discards the transforms registered for it before, like editing the zip in place would.
+ */
+public final class ZipAssembler implements Closeable {
+	private static final int BATCH_SIZE = 512;
+
+	private final RawZipReader reader;
+	private final Map<String, ZipEntryInfo> baseEntries = new HashMap<>();
+	private final Map<String, Source> entries = new LinkedHashMap<>();
+	private final Map<String, List<ZipUtils.UnsafeUnaryOperator<byte[]>>> transforms = new HashMap<>();
+
+	private ZipAssembler(RawZipReader reader, Predicate<String> filter) {
+		this.reader = reader;
+
+		for (ZipEntryInfo entry : reader.entries()) {
+			baseEntries.putIfAbsent(entry.name(), entry);
+
+			if (filter.test(entry.name())) {
+				entries.putIfAbsent(entry.name(), new Source.Base(entry));
+			}
+		}
+	}
+
+	/**
+	 * Opens a zip to assemble a new one from.
+	 *
+	 * @param base   the base zip
+	 * @param filter the filter of the base entries to keep
+	 * @return the assembler
+	 */
+	public static ZipAssembler open(Path base, Predicate<String> filter) throws IOException {
+		return new ZipAssembler(RawZipReader.open(base), filter);
+	}
+
+	public boolean contains(String name) {
+		return entries.containsKey(name);
+	}
+
+	/**
+	 * Reads the current content of an entry, with the transforms registered so far applied.
+	 *
+	 * @param name the name of the entry
+	 * @return the content of the entry
+	 * @throws NoSuchFileException if there is no such entry
+	 */
+	public byte[] read(String name) throws IOException {
+		final Source source = entries.get(name);
+
+		if (source == null) {
+			throw new NoSuchFileException(name);
+		}
+
+		return transform(name, read(source));
+	}
+
+	/**
+	 * Adds an entry, replacing the existing one with the same name in place.
+	 */
+	public void put(String name, byte[] data) {
+		put(name, new Source.Bytes(data));
+	}
+
+	/**
+	 * Adds an entry with the content of a file, which is streamed into the output as a stored entry when writing.
+	 */
+	public void put(String name, Path file) {
+		put(name, new Source.File(file));
+	}
+
+	/**
+	 * Adds an entry read from another zip, which is copied into the output without being decompressed unless it is transformed.
+	 *
+	 * @param entry          the entry
+	 * @param compressedData the data of the entry, as returned by {@link RawZipReader#readRaw(ZipEntryInfo)}
+	 */
+	public void putRaw(ZipEntryInfo entry, byte[] compressedData) {
+		put(entry.name(), new Source.Raw(entry, compressedData));
+	}
+
+	private void put(String name, Source source) {
+		entries.put(name, source);
+		transforms.remove(name);
+	}
+
+	public void remove(String name) {
+		entries.remove(name);
+		transforms.remove(name);
+	}
+
+	/**
+	 * Registers a transform of an entry, it is ignored if the entry doesn't exist when writing.
+	 */
+	public void transform(String name, ZipUtils.UnsafeUnaryOperator<byte[]> transform) {
+		transforms.computeIfAbsent(name, k -> new ArrayList<>()).add(transform);
+	}
+
+	public <T> void transformJson(Class<T> typeOfT, String name, ZipUtils.UnsafeUnaryOperator<T> transform) {
+		transform(name, bytes -> {
+			final T json = LoomGradlePlugin.GSON.fromJson(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8), typeOfT);
+			return LoomGradlePlugin.GSON.toJson(transform.apply(json), typeOfT).getBytes(StandardCharsets.UTF_8);
+		});
+	}
+
+	/**
+	 * Writes the assembled zip.
+	 *
+	 * @param output                 the output zip, it may be the base zip
+	 * @param reproducibleFileOrder  whether to sort the entries by name instead of keeping the base order first
+	 * @param preserveFileTimestamps whether to keep the timestamps of the base entries and files, or to use a constant one
+	 */
+	public void write(Path output, boolean reproducibleFileOrder, boolean preserveFileTimestamps) throws IOException {
+		final Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+		final List<Map.Entry<String, Source>> sorted = new ArrayList<>(reproducibleFileOrder ? new TreeMap<>(entries).entrySet() : entries.entrySet());
+		final int now = RawZipWriter.toDosTime(System.currentTimeMillis());
+
+		try (RawZipWriter writer = RawZipWriter.create(tmp)) {
+			for (int start = 0; start < sorted.size(); start += BATCH_SIZE) {
+				final List<Map.Entry<String, Source>> batch = sorted.subList(start, Math.min(start + BATCH_SIZE, sorted.size()));
+				final List<RawZipWriter.PreparedEntry> prepared = ThreadingUtils.get(batch.stream()
+						.<ThreadingUtils.UnsafeCallable<RawZipWriter.PreparedEntry>>map(entry -> () -> prepare(entry.getKey(), entry.getValue(), preserveFileTimestamps, now))
+						.toList());
+
+				for (int i = 0; i < batch.size(); i++) {
+					final String name = batch.get(i).getKey();
+					final Source source = batch.get(i).getValue();
+					final int dosTime = getDosTime(name, source, preserveFileTimestamps, now);
+
+					writer.writeDirectories(name, dosTime);
+
+					if (name.endsWith("/")) {
+						continue;
+					}
+
+					if (prepared.get(i) != null) {
+						writer.write(prepared.get(i));
+					} else if (source instanceof Source.Base base) {
+						writer.writeRaw(base.entry(), reader.readRaw(base.entry()), dosTime);
+					} else if (source instanceof Source.Raw raw) {
+						writer.writeRaw(raw.entry(), raw.data(), dosTime);
+					} else if (source instanceof Source.File file) {
+						writer.writeStored(name, file.path(), dosTime);
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+
+		Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private RawZipWriter.PreparedEntry prepare(String name, Source source, boolean preserveFileTimestamps, int now) throws IOException {
+		if (name.endsWith("/") || (!transforms.containsKey(name) && !(source instanceof Source.Bytes))) {
+			// Copied or streamed as is
+			return null;
+		}
+
+		return RawZipWriter.prepare(name, transform(name, read(source)), getDosTime(name, source, preserveFileTimestamps, now));
+	}
+
+	private int getDosTime(String name, Source source, boolean preserveFileTimestamps, int now) throws IOException {
+		if (!preserveFileTimestamps) {
+			return RawZipWriter.CONSTANT_DOS_TIME;
+		}
+
+		if (source instanceof Source.File file) {
+			return RawZipWriter.toDosTime(Files.getLastModifiedTime(file.path()).toMillis());
+		}
+
+		// Entries derived from the base, such as remapped classes, keep the time of the base entry
+		final ZipEntryInfo baseEntry = baseEntries.get(name);
+		return baseEntry != null ? baseEntry.dosTime() : now;
+	}
+
+	private byte[] transform(String name, byte[] data) throws IOException {
+		for (ZipUtils.UnsafeUnaryOperator<byte[]> transform : transforms.getOrDefault(name, List.of())) {
+			data = transform.apply(data);
+		}
+
+		return data;
+	}
+
+	private byte[] read(Source source) throws IOException {
+		if (source instanceof Source.Base base) {
+			return reader.read(base.entry());
+		} else if (source instanceof Source.Raw raw) {
+			return RawZipReader.decompress(raw.entry(), raw.data());
+		} else if (source instanceof Source.File file) {
+			return Files.readAllBytes(file.path());
+		}
+
+		return ((Source.Bytes) source).data();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private sealed interface Source {
+		record Base(ZipEntryInfo entry) implements Source { }
+
+		record Raw(ZipEntryInfo entry, byte[] data) implements Source { }
+
+		record Bytes(byte[] data) implements Source { }
+
+		record File(Path path) implements Source { }
+	}
+}
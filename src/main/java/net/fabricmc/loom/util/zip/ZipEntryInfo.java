@@ -0,0 +1,47 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.zip;
+
+/**
+ * An entry of a zip file as described by its central directory.
+ *
+ * @param name               the name of the entry
+ * @param flags              the general purpose bit flags
+ * @param method             the compression method
+ * @param dosTime            the MS-DOS modification date in the high 16 bits and time in the low 16 bits
+ * @param crc                the CRC-32 of the uncompressed data
+ * @param compressedSize     the size of the compressed data
+ * @param size               the size of the uncompressed data
+ * @param externalAttributes the external file attributes
+ * @param localHeaderOffset  the offset of the local file header in the zip file
+ */
+public record ZipEntryInfo(String name, int flags, int method, int dosTime, int crc, long compressedSize, long size, int externalAttributes, long localHeaderOffset) {
+	public static final int STORED = 0;
+	public static final int DEFLATED = 8;
+
+	public boolean isDirectory() {
+		return name.endsWith("/");
+	}
+}
@@ -73,4 +73,18 @@ class DecompileTest extends Specification implements GradleProjectTestTrait {
 		where:
 		version << STANDARD_TEST_VERSIONS
 	}
+
+	def "unfiltered genSources reuses the previous decompilation"() {
+		setup:
+		def gradle = gradleProject(project: "decompile", version: DEFAULT_GRADLE)
+
+		when:
+		def first = gradle.run(task: "genSourcesWithFernFlower")
+		def second = gradle.run(task: "genSourcesWithFernFlower", args: ["--rerun-tasks", "--info"])
+
+		then:
+		first.task(":genSourcesWithFernFlower").outcome == SUCCESS
+		second.task(":genSourcesWithFernFlower").outcome == SUCCESS
+		second.output.contains("Reusing the previous decompilation")
+	}
 }
@@ -0,0 +1,61 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import net.fabricmc.loom.decompilers.ClassFilter
+
+class ClassFilterTest extends Specification {
+	@Unroll
+	def "filter '#className'"() {
+		given:
+		def filter = ClassFilter.of(["net/minecraft/world/**", "net.minecraft.Util"], ["net/minecraft/world/level/*"])
+
+		expect:
+		filter.test(className) == expected
+
+		where:
+		className | expected
+		'net/minecraft/world/Foo' | true
+		'net/minecraft/world/entity/Bar$Inner' | true
+		'net/minecraft/world/level/Level' | false
+		'net/minecraft/world/level/chunk/Chunk' | true
+		'net/minecraft/Util' | true
+		'net/minecraft/Util$1' | true
+		'net/minecraft/UtilX' | false
+		'net/minecraft/client/Main' | false
+	}
+
+	def "empty filter"() {
+		when:
+		def filter = ClassFilter.of([], [])
+
+		then:
+		filter.isEmpty()
+		filter.test("net/minecraft/client/Main")
+	}
+}
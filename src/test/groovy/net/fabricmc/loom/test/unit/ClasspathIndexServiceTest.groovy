@@ -0,0 +1,163 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.TimeUnit
+
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.ClassNode
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import net.fabricmc.loom.task.service.ClasspathIndexService
+import net.fabricmc.loom.util.ZipUtils
+import net.fabricmc.loom.util.zip.RawZipWriter
+
+class ClasspathIndexServiceTest extends Specification {
+	@TempDir
+	Path dir
+
+	def "replace jars with skeletons"() {
+		given:
+		def jar = writeJar(dir.resolve("home/lib.jar"), 1)
+		def service = new ClasspathIndexService(dir.resolve("index"), dir.resolve("home"), Long.MAX_VALUE)
+
+		when:
+		def classpath = service.getClasspath(jar)
+		def classNode = new ClassNode()
+		new ClassReader(ZipUtils.unpack(classpath[0], "a/A.class")).accept(classNode, 0)
+
+		then:
+		classpath[0].startsWith(dir.resolve("index"))
+		ZipUtils.contains(classpath[0], "META-INF/MANIFEST.MF")
+		!ZipUtils.contains(classpath[0], "data.txt")
+		classNode.superName == "a/B"
+		classNode.fields*.name == ["field"]
+		classNode.methods*.name == ["method"]
+		classNode.methods[0].instructions.size() == 0
+		classNode.sourceFile == null
+	}
+
+	def "reuse skeletons of identical jars"() {
+		given:
+		def service = new ClasspathIndexService(dir.resolve("index"), dir.resolve("home"), Long.MAX_VALUE)
+		def first = service.getClasspath(writeJar(dir.resolve("home/first.jar"), 1))
+		def second = service.getClasspath(writeJar(dir.resolve("home/second.jar"), 1))
+
+		when:
+		def modified = Files.getLastModifiedTime(dir.resolve("home/first.jar")).toMillis()
+		def changedJar = writeJar(dir.resolve("home/first.jar"), 2)
+		// Same size, make sure the change is noticed on file systems with a coarse modification time
+		Files.setLastModifiedTime(changedJar, FileTime.fromMillis(modified + 2000))
+		def changed = service.getClasspath(changedJar)
+
+		then:
+		first == second
+		changed != first
+	}
+
+	def "keep other classpath entries"() {
+		given:
+		def service = new ClasspathIndexService(dir.resolve("index"), dir.resolve("home"), Long.MAX_VALUE)
+		def outside = writeJar(dir.resolve("project/lib.jar"), 1)
+		def directory = Files.createDirectories(dir.resolve("home/classes"))
+
+		expect:
+		service.getClasspath(outside, directory) == [outside, directory] as Path[]
+		new ClasspathIndexService(null, null, 0).getClasspath(outside) == [outside] as Path[]
+	}
+
+	def "remember jar hashes across builds"() {
+		given:
+		def jar = writeJar(dir.resolve("home/lib.jar"), 1)
+		def modified = Files.getLastModifiedTime(jar)
+		def first = new ClasspathIndexService(dir.resolve("index"), dir.resolve("home"), Long.MAX_VALUE)
+		def skeleton = first.getClasspath(jar)
+		first.close()
+
+		when:
+		// Same size and modification time, only a jar that is hashed again would notice the change
+		Files.write(jar, new byte[Files.size(jar)])
+		Files.setLastModifiedTime(jar, modified)
+		def second = new ClasspathIndexService(dir.resolve("index"), dir.resolve("home"), Long.MAX_VALUE)
+
+		then:
+		second.getClasspath(jar) == skeleton
+	}
+
+	def "evict least recently used skeletons"() {
+		given:
+		def service = new ClasspathIndexService(dir.resolve("index"), dir.resolve("home"), 1)
+		def old = service.getClasspath(writeJar(dir.resolve("home/old.jar"), 1))[0]
+		def older = service.getClasspath(writeJar(dir.resolve("home/older.jar"), 2))[0]
+		def recent = service.getClasspath(writeJar(dir.resolve("home/recent.jar"), 3))[0]
+		def now = System.currentTimeMillis()
+		Files.setLastModifiedTime(old, FileTime.fromMillis(now - TimeUnit.HOURS.toMillis(2)))
+		Files.setLastModifiedTime(older, FileTime.fromMillis(now - TimeUnit.HOURS.toMillis(3)))
+
+		when:
+		service.close()
+
+		then:
+		// Skeletons used in the last hour are kept, even beyond the maximum size
+		!Files.exists(old)
+		!Files.exists(older)
+		Files.exists(recent)
+	}
+
+	private static Path writeJar(Path path, int value) {
+		Files.createDirectories(path.parent)
+		Files.deleteIfExists(path)
+
+		RawZipWriter.create(path).withCloseable { writer ->
+			writer.write("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8))
+			writer.write("a/A.class", createClass(value))
+			writer.write("data.txt", "data".getBytes(StandardCharsets.UTF_8))
+		}
+
+		return path
+	}
+
+	private static byte[] createClass(int value) {
+		def writer = new ClassWriter(0)
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "a/A", null, "a/B", null)
+		writer.visitSource("A.java", null)
+		writer.visitField(Opcodes.ACC_PUBLIC, "field", "I", null, null).visitEnd()
+		def method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "method", "()I", null, null)
+		method.visitCode()
+		method.visitLdcInsn(value)
+		method.visitInsn(Opcodes.IRETURN)
+		method.visitMaxs(1, 0)
+		method.visitEnd()
+		writer.visitEnd()
+		return writer.toByteArray()
+	}
+}
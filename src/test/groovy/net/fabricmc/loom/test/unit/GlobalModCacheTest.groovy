@@ -0,0 +1,169 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import org.gradle.api.artifacts.ResolvedArtifact
+import org.gradle.api.artifacts.ResolvedDependency
+import org.gradle.api.logging.Logging
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import net.fabricmc.loom.configuration.mods.GlobalModCache
+import net.fabricmc.loom.configuration.mods.ModProcessor
+import net.fabricmc.loom.util.Checksum
+
+class GlobalModCacheTest extends Specification {
+	@TempDir
+	Path dir
+
+	def "context depends on the hashes and options"() {
+		given:
+		def context = GlobalModCache.createContext(["mappings", "minecraft"], "intermediary", "named")
+
+		expect:
+		GlobalModCache.createContext(["mappings", "patched minecraft"], "intermediary", "named") != context
+		GlobalModCache.createContext(["mappings"], "intermediary", "named") != context
+		GlobalModCache.createContext(["mappings", "minecraft"], "intermediary", "srg") != context
+	}
+
+	def "key depends on the input, the context and the dependencies"() {
+		given:
+		def key = GlobalModCache.createKey("mod", "context", ["library", "api"])
+
+		expect:
+		GlobalModCache.createKey("mod", "context", ["api", "library"]) == key
+		GlobalModCache.createKey("changed mod", "context", ["library", "api"]) != key
+		GlobalModCache.createKey("mod", "other context", ["library", "api"]) != key
+		GlobalModCache.createKey("mod", "context", ["library"]) != key
+	}
+
+	def "key doesn't depend on the order or unrelated mods"() {
+		given:
+		def library = dependency(write("library.jar", "library"))
+		def mod = dependency(write("mod.jar", "mod"), library)
+		def unrelated = dependency(write("unrelated.jar", "unrelated"))
+		def context = GlobalModCache.createContext(["mappings", "minecraft"], "intermediary", "named")
+
+		when:
+		def keys = [[mod, unrelated], [unrelated, mod], [mod]].collect { roots ->
+			def dependencies = ModProcessor.collectDependencies(roots as LinkedHashSet)
+			GlobalModCache.createKey(hash(mod.moduleArtifacts[0].file), context, dependencies[mod.moduleArtifacts[0].file].collect { hash(it) })
+		}
+
+		then:
+		keys.unique().size() == 1
+	}
+
+	def "directory hash depends on the contents"() {
+		given:
+		def hash = GlobalModCache.hashDirectory(write("classes/a/A.class", "A").parent.parent)
+
+		expect:
+		// Where the directory is doesn't matter, so that the entries are shared between projects
+		GlobalModCache.hashDirectory(write("other/a/A.class", "A").parent.parent) == hash
+		GlobalModCache.hashDirectory(write("changed/a/A.class", "B").parent.parent) != hash
+	}
+
+	def "get cached entries"() {
+		given:
+		def cache = new GlobalModCache(dir.resolve("cache"), Long.MAX_VALUE, Logging.getLogger(GlobalModCacheTest))
+		cache.put("aa01", write("mod.jar", "remapped"))
+		def copied = []
+
+		when:
+		def hit = cache.get("aa01") { copied << Files.readString(it); true }
+		def miss = cache.get("bb01") { copied << Files.readString(it); true }
+
+		then:
+		hit
+		!miss
+		copied == ["remapped"]
+	}
+
+	def "evict least recently used entries"() {
+		given:
+		def cache = new GlobalModCache(dir.resolve("cache"), 20, Logging.getLogger(GlobalModCacheTest))
+		def jar = write("mod.jar", "0123456789")
+
+		["aa01", "bb01", "cc01"].eachWithIndex { String key, int i ->
+			cache.put(key, jar)
+			Files.setLastModifiedTime(dir.resolve("cache/${key.substring(0, 2)}/${key}.jar"), FileTime.fromMillis(1000 * (i + 1)))
+		}
+
+		when:
+		// Marks the oldest entry as recently used
+		cache.get("aa01") { true }
+		cache.evict()
+
+		then:
+		cache.get("aa01") { true }
+		!cache.get("bb01") { true }
+		cache.get("cc01") { true }
+	}
+
+	def "concurrent puts"() {
+		given:
+		def cache = new GlobalModCache(dir.resolve("cache"), Long.MAX_VALUE, Logging.getLogger(GlobalModCacheTest))
+		def jars = (0..<4).collect { write("mod${it}.jar", "remapped ${it}".repeat(10000)) }
+		def executor = Executors.newFixedThreadPool(8)
+
+		when:
+		def futures = (0..<32).collect { i ->
+			executor.submit {
+				cache.put("aa0${i % 4}", jars[i % 4])
+				cache.evict()
+			}
+		}
+		futures*.get()
+		executor.shutdown()
+		executor.awaitTermination(10, TimeUnit.SECONDS)
+
+		then:
+		(0..<4).every { i -> cache.get("aa0${i}") { Files.readString(it) == "remapped ${i}".repeat(10000) } }
+		Files.list(dir.resolve("cache/aa")).withCloseable { stream -> stream.noneMatch { it.toString().endsWith(".tmp") } }
+	}
+
+	private static ResolvedDependency dependency(Path file, ResolvedDependency... children) {
+		def artifact = [getFile: { file.toFile() }] as ResolvedArtifact
+		return [getModuleArtifacts: { [artifact] as Set }, getChildren: { children as Set }] as ResolvedDependency
+	}
+
+	private static String hash(File file) {
+		return Checksum.toHex(Checksum.sha256(file))
+	}
+
+	private Path write(String name, String content) {
+		def path = dir.resolve(name)
+		Files.createDirectories(path.parent)
+		Files.writeString(path, content)
+		return path
+	}
+}
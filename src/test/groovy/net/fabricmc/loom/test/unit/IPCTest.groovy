@@ -24,13 +24,18 @@
 
 package net.fabricmc.loom.test.unit
 
+import java.net.UnixDomainSocketAddress
+import java.nio.ByteBuffer
+import java.nio.channels.SocketChannel
 import java.nio.file.Files
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.function.Consumer
 
 import spock.lang.Specification
 import spock.lang.Timeout
 
 import net.fabricmc.loom.util.ipc.IPCClient
+import net.fabricmc.loom.util.ipc.IPCMessage
 import net.fabricmc.loom.util.ipc.IPCServer
 
 @Timeout(20)
@@ -40,10 +45,10 @@ class IPCTest extends Specification {
 		def path = Files.createTempFile("loom", "ipc")
 		Files.deleteIfExists(path)
 
-		def received = []
-		Consumer<String> consumer = { str ->
-			println str
-			received << str
+		def received = new CopyOnWriteArrayList<IPCMessage>()
+		Consumer<IPCMessage> consumer = { message ->
+			println message
+			received << message
 		}
 
 		when:
@@ -52,15 +57,107 @@ class IPCTest extends Specification {
 		new IPCClient(path).withCloseable { client ->
 			client.accept("Test")
 			client.accept("Hello")
+			client.reset()
 		}
 
 		// Allow ipcServer to finish reading, before closing.
-		while (received.size() != 2) { }
+		while (!received.any { it instanceof IPCMessage.Reset }) { }
 		ipcServer.close()
 
+		def progress = received.findAll { it instanceof IPCMessage.Progress }
+		def timings = received.findAll { it instanceof IPCMessage.Timing }
+
+		then:
+		progress*.message() == ["Test", "Hello"]
+		progress*.threadId().unique() == [Thread.currentThread().getId()]
+		timings*.message() == ["Test", "Hello"]
+		timings.every { it.nanos() >= 0 }
+	}
+
+	def "ipc test multiple threads"() {
+		given:
+		def path = Files.createTempFile("loom", "ipc")
+		Files.deleteIfExists(path)
+
+		def received = new CopyOnWriteArrayList<IPCMessage>()
+		Consumer<IPCMessage> consumer = { message ->
+			received << message
+		}
+
+		when:
+		def ipcServer = new IPCServer(path, consumer)
+
+		new IPCClient(path).withCloseable { client ->
+			def threads = (0..<4).collect { thread ->
+				Thread.start {
+					for (i in 0..<1000) {
+						client.accept("Thread ${thread} message ${i}")
+					}
+				}
+			}
+
+			threads*.join()
+			client.reset()
+		}
+
+		while (!received.any { it instanceof IPCMessage.Reset }) { }
+		ipcServer.close()
+
+		def progress = received.findAll { it instanceof IPCMessage.Progress }
+
 		then:
-		received.size() == 2
-		received[0] == "Test"
-		received[1] == "Hello"
+		progress.size() == 4000
+		// Messages from a single thread keep their order
+		progress.groupBy { it.threadId() }.values().every { messages ->
+			messages*.message() == messages*.message().sort(false) { it.split(" ")[3] as int }
+		}
+		// All the progress is received before the reset
+		received.findLastIndexOf { it instanceof IPCMessage.Progress } < received.findIndexOf { it instanceof IPCMessage.Reset }
+	}
+
+	def "invalid frame length"() {
+		given:
+		def path = Files.createTempFile("loom", "ipc")
+		Files.deleteIfExists(path)
+
+		def ipcServer = new IPCServer(path, { })
+
+		when:
+		def read = SocketChannel.open(UnixDomainSocketAddress.of(path)).withCloseable { channel ->
+			channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(length).flip())
+			// The server closes the connection rather than waiting for the frame
+			channel.read(ByteBuffer.allocate(1))
+		}
+		ipcServer.close()
+
+		then:
+		read == -1
+		!ipcServer.hasReceivedMessage()
+
+		where:
+		length << [-1, 0, Integer.MAX_VALUE]
+	}
+
+	def "client fails when the server is gone"() {
+		given:
+		def path = Files.createTempFile("loom", "ipc")
+		Files.deleteIfExists(path)
+
+		def ipcServer = new IPCServer(path, { })
+		def client = new IPCClient(path)
+		ipcServer.close()
+
+		when:
+		// The background flush fails once the server has closed the connection
+		for (i in 0..<1000) {
+			client.accept("Message ${i}")
+			Thread.sleep(10)
+		}
+
+		then:
+		thrown(IOException)
+
+		cleanup:
+		client.close()
 	}
 }
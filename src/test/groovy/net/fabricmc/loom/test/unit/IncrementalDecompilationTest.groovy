@@ -0,0 +1,185 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Label
+import org.objectweb.asm.Opcodes
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import net.fabricmc.loom.decompilers.IncrementalDecompilation
+import net.fabricmc.loom.util.ZipUtils
+import net.fabricmc.loom.util.zip.RawZipWriter
+
+class IncrementalDecompilationTest extends Specification {
+	@TempDir
+	Path dir
+
+	def "decompile everything without an index"() {
+		given:
+		def jar = writeJar("input.jar", ["a/A": 1, "b/B": 1])
+		def mappings = writeMappings("Docs")
+
+		when:
+		def incremental = create(jar, mappings)
+
+		then:
+		incremental.full
+		incremental.changed == ["a/A", "b/B"] as Set
+	}
+
+	def "only decompile changed classes"() {
+		given:
+		def jar = writeJar("input.jar", ["a/A": 1, "b/B": 1, "b/B\$Inner": 1])
+		writeOutputs(create(jar, writeMappings("Docs")), jar)
+
+		when:
+		def incremental = create(writeJar("input.jar", inputs), writeMappings(docs))
+
+		then:
+		!incremental.full
+		incremental.changed == changed as Set
+		incremental.relinemap.empty
+
+		where:
+		inputs                                           | docs       | changed
+		["a/A": 1, "b/B": 1, "b/B\$Inner": 1]            | "Docs"     | []
+		["a/A": 1, "b/B": 1, "b/B\$Inner": 1]            | "New docs" | ["b/B"]
+		["a/A": 1, "b/B": 1]                             | "Docs"     | ["b/B"]
+		["a/A": 1, "b/B": 1, "b/B\$Inner": 1, "c/C": 1]  | "Docs"     | ["c/C"]
+	}
+
+	def "ignore line numbers of the input"() {
+		given:
+		def runtimeJar = writeJar("runtime.jar", ["a/A": 1, "b/B": 1])
+		writeOutputs(create(runtimeJar, writeMappings("Docs")), runtimeJar)
+
+		when:
+		def incremental = create(writeJar("input.jar", ["a/A": 2, "b/B": 2]), writeMappings("Docs"), runtimeJar)
+
+		then:
+		!incremental.full
+		incremental.changed.empty
+	}
+
+	def "line map a recreated runtime jar again"() {
+		given:
+		def jar = writeJar("input.jar", ["a/A": 1, "b/B": 1])
+		def incremental = create(jar, writeMappings("Docs"))
+		writeOutputs(incremental, writeJar("linemapped.jar", ["a/A": 2, "b/B": 2]))
+
+		when:
+		incremental = create(jar, writeMappings("New docs"))
+		def runtimeLinemap = dir.resolve("runtime.lmap")
+		def linemapRuntime = incremental.merge(null, null, runtimeLinemap)
+
+		then:
+		incremental.changed == ["b/B"] as Set
+		incremental.relinemap == ["a/A"] as Set
+		linemapRuntime
+		runtimeLinemap.text == "a/A\t1\t2\n\t1\t2\n"
+	}
+
+	def "merge decompiled sources"() {
+		given:
+		def jar = writeJar("input.jar", ["a/A": 1, "b/B": 1])
+		writeOutputs(create(jar, writeMappings("Docs")), jar)
+		def incremental = create(jar, writeMappings("New docs"))
+		def decompiledSources = dir.resolve("decompiled.jar")
+		def decompiledLinemap = dir.resolve("decompiled.lmap")
+		def runtimeLinemap = dir.resolve("runtime.lmap")
+
+		RawZipWriter.create(decompiledSources).withCloseable { writer ->
+			writer.write("b/B.java", "New B".getBytes(StandardCharsets.UTF_8))
+		}
+
+		decompiledLinemap.text = "b/B\t1\t3\n\t1\t3\n"
+
+		when:
+		def linemapRuntime = incremental.merge(decompiledSources, decompiledLinemap, runtimeLinemap)
+
+		then:
+		linemapRuntime
+		runtimeLinemap.text == "b/B\t1\t3\n\t1\t3\n"
+		dir.resolve("sources.lmap").text == "b/B\t1\t3\n\t1\t3\na/A\t1\t2\n\t1\t2\n"
+		new String(ZipUtils.unpack(dir.resolve("sources.jar"), "a/A.java"), StandardCharsets.UTF_8) == "A"
+		new String(ZipUtils.unpack(dir.resolve("sources.jar"), "b/B.java"), StandardCharsets.UTF_8) == "New B"
+	}
+
+	private IncrementalDecompilation create(Path jar, Path mappings, Path runtimeJar = jar) {
+		return IncrementalDecompilation.create(dir.resolve("sources.index"), jar, runtimeJar, mappings, dir.resolve("sources.jar"), dir.resolve("sources.lmap"), "key")
+	}
+
+	private void writeOutputs(IncrementalDecompilation incremental, Path linemappedJar) {
+		RawZipWriter.create(dir.resolve("sources.jar")).withCloseable { writer ->
+			writer.write("a/A.java", "A".getBytes(StandardCharsets.UTF_8))
+			writer.write("b/B.java", "B".getBytes(StandardCharsets.UTF_8))
+		}
+
+		dir.resolve("sources.lmap").text = "a/A\t1\t2\n\t1\t2\nb/B\t1\t2\n\t1\t2\n"
+		incremental.writeIndex(linemappedJar)
+	}
+
+	private Path writeJar(String name, Map<String, Integer> classes) {
+		def jar = dir.resolve(name)
+		Files.deleteIfExists(jar)
+
+		RawZipWriter.create(jar).withCloseable { writer ->
+			classes.each { className, line ->
+				writer.write(className + ".class", createClass(className, line))
+			}
+		}
+
+		return jar
+	}
+
+	private Path writeMappings(String docs) {
+		def mappings = dir.resolve("mappings.tiny")
+		mappings.text = "tiny\t2\t0\tintermediary\tnamed\nc\ta/A\ta/A\nc\tb/B\tb/B\n\tc\t${docs}\n"
+		return mappings
+	}
+
+	private static byte[] createClass(String name, int line) {
+		def writer = new ClassWriter(0)
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null)
+
+		def method = writer.visitMethod(Opcodes.ACC_PUBLIC, "test", "()V", null, null)
+		def label = new Label()
+		method.visitCode()
+		method.visitLabel(label)
+		method.visitLineNumber(line, label)
+		method.visitInsn(Opcodes.RETURN)
+		method.visitMaxs(0, 1)
+		method.visitEnd()
+
+		writer.visitEnd()
+		return writer.toByteArray()
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import net.fabricmc.loom.build.IncrementalRemapping
+import net.fabricmc.loom.util.ZipUtils
+import net.fabricmc.loom.util.zip.RawZipWriter
+import net.fabricmc.loom.util.zip.ZipAssembler
+
+class IncrementalRemappingTest extends Specification {
+	private static final Map<String, Map> CLASSES = [
+		"a/A": [value: 1],
+		"b/B": [value: 1],
+		"b/C": [value: 1, superName: "b/B"],
+		"c/D": [value: 1, references: ["b/C"]],
+		"c/E": [value: 1, references: ["a/A"]]
+	]
+
+	@TempDir
+	Path dir
+
+	def "remap everything without an index"() {
+		when:
+		def incremental = create(writeJar("input.jar", CLASSES))
+
+		then:
+		incremental.full
+		incremental.changed == CLASSES.keySet()
+	}
+
+	def "only remap changed classes"() {
+		given:
+		def input = writeJar("input.jar", CLASSES)
+		writeOutput(create(input), input)
+
+		when:
+		def incremental = create(writeJar("input.jar", CLASSES + changes))
+
+		then:
+		incremental.changed == changed as Set
+
+		where:
+		changes                                           | changed
+		[:]                                               | []
+		["a/A": [value: 2]]                               | ["a/A"]
+		// A changed member changes how the classes that mention it are remapped
+		["a/A": [value: 1, methods: ["added"]]]           | ["a/A", "c/E"]
+		// Also when it is only inherited
+		["b/B": [value: 1, methods: ["added"]]]           | ["b/B", "b/C", "c/D"]
+		["d/F": [value: 1, references: ["a/A"]]]          | ["d/F"]
+	}
+
+	def "remap classes whose previous output was replaced"() {
+		given:
+		def input = writeJar("input.jar", CLASSES)
+		writeOutput(create(input), input)
+		writeJar("output.jar", CLASSES + ["a/A": [value: 3]])
+
+		when:
+		def incremental = create(input)
+
+		then:
+		incremental.changed == ["a/A"] as Set
+	}
+
+	def "remap everything when the key changed"() {
+		given:
+		def input = writeJar("input.jar", CLASSES)
+		writeOutput(create(input), input)
+
+		when:
+		def incremental = create(input, "other key")
+
+		then:
+		incremental.full
+	}
+
+	def "split the input and copy the unchanged classes"() {
+		given:
+		def input = writeJar("input.jar", CLASSES)
+		writeOutput(create(input), input)
+		input = writeJar("input.jar", CLASSES + ["a/A": [value: 2]])
+		def incremental = create(input)
+		def output = dir.resolve("assembled.jar")
+
+		when:
+		incremental.splitInput(input)
+
+		ZipAssembler.open(input, { !it.endsWith(".class") }).withCloseable { assembler ->
+			incremental.copyUnchanged(assembler)
+			assembler.write(output, true, false)
+		}
+
+		then:
+		ZipUtils.contains(incremental.changedJar, "a/A.class")
+		!ZipUtils.contains(incremental.changedJar, "b/B.class")
+		ZipUtils.contains(incremental.unchangedJar, "b/B.class")
+		!ZipUtils.contains(output, "a/A.class")
+		ZipUtils.unpack(output, "b/B.class") == ZipUtils.unpack(input, "b/B.class")
+		incremental.isCopied("b/B.class")
+		!incremental.isCopied("a/A.class")
+	}
+
+	def "don't emit deleted classes"() {
+		given:
+		def input = writeJar("input.jar", CLASSES)
+		writeOutput(create(input), input)
+		input = writeJar("input.jar", CLASSES.findAll { it.key != "b/C" })
+		def incremental = create(input)
+		def output = dir.resolve("assembled.jar")
+
+		when:
+		incremental.splitInput(input)
+
+		ZipAssembler.open(input, { !it.endsWith(".class") }).withCloseable { assembler ->
+			incremental.copyUnchanged(assembler)
+			assembler.write(output, true, false)
+		}
+
+		then:
+		// c/D used the deleted class
+		incremental.changed == ["c/D"] as Set
+		!incremental.isCopied("b/C.class")
+		!ZipUtils.contains(output, "b/C.class")
+		!ZipUtils.contains(output, "c/D.class")
+		ZipUtils.unpack(output, "b/B.class") == ZipUtils.unpack(input, "b/B.class")
+	}
+
+	def "don't remap multi-release jars incrementally"() {
+		when:
+		def incremental = create(writeJar("input.jar", CLASSES + ["META-INF/versions/17/a/A": [value: 1]]))
+
+		then:
+		incremental == null
+	}
+
+	private IncrementalRemapping create(Path input, String key = "key") {
+		return IncrementalRemapping.create(dir.resolve("state"), input, dir.resolve("output.jar"), key)
+	}
+
+	private void writeOutput(IncrementalRemapping incremental, Path input) {
+		Files.copy(input, dir.resolve("output.jar"))
+		incremental.writeIndex { it }
+	}
+
+	private Path writeJar(String name, Map<String, Map> classes) {
+		def jar = dir.resolve(name)
+		Files.deleteIfExists(jar)
+
+		RawZipWriter.create(jar).withCloseable { writer ->
+			writer.write("fabric.mod.json", "{}".getBytes(StandardCharsets.UTF_8))
+
+			classes.each { className, spec ->
+				writer.write(className + ".class", createClass(className, spec))
+			}
+		}
+
+		return jar
+	}
+
+	private static byte[] createClass(String name, Map spec) {
+		def writer = new ClassWriter(0)
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, spec.superName ?: "java/lang/Object", null)
+
+		for (String methodName : spec.methods ?: []) {
+			writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, methodName, "()V", null, null).visitEnd()
+		}
+
+		def method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "test", "()V", null, null)
+		method.visitCode()
+		method.visitLdcInsn(spec.value)
+		method.visitInsn(Opcodes.POP)
+
+		for (String reference : spec.references ?: []) {
+			method.visitLdcInsn(Type.getObjectType(reference))
+			method.visitInsn(Opcodes.POP)
+		}
+
+		method.visitInsn(Opcodes.RETURN)
+		method.visitMaxs(1, 0)
+		method.visitEnd()
+
+		writer.visitEnd()
+		return writer.toByteArray()
+	}
+}
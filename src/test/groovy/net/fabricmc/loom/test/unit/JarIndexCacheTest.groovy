@@ -0,0 +1,113 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import net.fabricmc.loom.decompilers.JarIndexCache
+import net.fabricmc.loom.util.zip.RawZipWriter
+
+class JarIndexCacheTest extends Specification {
+	@TempDir
+	Path dir
+
+	def "read entries"() {
+		given:
+		def jar = writeJar("test.jar", ["a/A.class": "A", "b/B.class": "B"])
+		def cache = new JarIndexCache()
+
+		when:
+		def entries = (1..100).collect { it % 2 == 0 ? "a/A.class" : "b/B.class" }
+		def contents = entries.parallelStream().map { new String(cache.read(jar, it), StandardCharsets.UTF_8) }.toList()
+		cache.close()
+
+		then:
+		contents == entries.collect { it == "a/A.class" ? "A" : "B" }
+	}
+
+	def "missing entry"() {
+		given:
+		def jar = writeJar("test.jar", ["a/A.class": "A"])
+		def cache = new JarIndexCache()
+
+		when:
+		cache.read(jar, "b/B.class")
+
+		then:
+		thrown(NoSuchFileException)
+	}
+
+	def "closing releases the jars"() {
+		given:
+		def jar = writeJar("test.jar", ["a/A.class": "A"])
+		def cache = new JarIndexCache()
+		cache.read(jar, "a/A.class")
+
+		when:
+		cache.close()
+		// Fails on Windows while the jar is open
+		Files.delete(jar)
+		cache.read(jar, "a/A.class")
+
+		then:
+		thrown(IllegalStateException)
+	}
+
+	def "caches are independent"() {
+		given:
+		def jar = writeJar("test.jar", ["a/A.class": "A"])
+		def first = new JarIndexCache()
+		def second = new JarIndexCache()
+		first.read(jar, "a/A.class")
+		second.read(jar, "a/A.class")
+
+		when:
+		// A decompilation finishing doesn't affect another one that is still running
+		first.close()
+		def content = second.read(jar, "a/A.class")
+		second.close()
+
+		then:
+		new String(content, StandardCharsets.UTF_8) == "A"
+	}
+
+	private Path writeJar(String name, Map<String, String> entries) {
+		def jar = dir.resolve(name)
+
+		RawZipWriter.create(jar).withCloseable { writer ->
+			entries.each { entryName, content ->
+				writer.write(entryName, content.getBytes(StandardCharsets.UTF_8))
+			}
+		}
+
+		return jar
+	}
+}
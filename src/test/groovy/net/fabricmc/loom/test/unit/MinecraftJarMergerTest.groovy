@@ -0,0 +1,128 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Path
+import java.util.zip.ZipFile
+
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.ClassNode
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import net.fabricmc.loom.configuration.providers.minecraft.MinecraftJarMerger
+import net.fabricmc.loom.util.ZipUtils
+import net.fabricmc.loom.util.zip.RawZipWriter
+
+class MinecraftJarMergerTest extends Specification {
+	@TempDir
+	Path dir
+
+	def "merge jars"() {
+		given:
+		def client = writeJar("client.jar", [
+			"META-INF/MANIFEST.MF": "Manifest-Version: 1.0\n".bytes,
+			"META-INF/MOJANGCS.SF": "Signature".bytes,
+			"net/minecraft/Common.class": createClass("net/minecraft/Common", "common", "client"),
+			"net/minecraft/Same.class": createClass("net/minecraft/Same", "common"),
+			"net/minecraft/Client.class": createClass("net/minecraft/Client"),
+			"assets/test.txt": "Asset".bytes
+		])
+		def server = writeJar("server.jar", [
+			"net/minecraft/Common.class": createClass("net/minecraft/Common", "common", "server"),
+			"net/minecraft/Same.class": createClass("net/minecraft/Same", "common"),
+			"net/minecraft/Server.class": createClass("net/minecraft/Server"),
+			"com/example/Library.class": createClass("com/example/Library"),
+			"data/test.txt": "Data".bytes
+		])
+		def output = dir.resolve("merged.jar")
+
+		when:
+		new MinecraftJarMerger(client.toFile(), server.toFile(), output.toFile()).withCloseable {
+			it.merge()
+		}
+
+		def names = new ZipFile(output.toFile()).withCloseable { zip -> zip.entries().collect { it.name } }
+		def common = readClass(output, "net/minecraft/Common.class")
+
+		then:
+		names == [
+			"META-INF/",
+			"META-INF/MANIFEST.MF",
+			"assets/",
+			"assets/test.txt",
+			"data/",
+			"data/test.txt",
+			"net/",
+			"net/minecraft/",
+			"net/minecraft/Client.class",
+			"net/minecraft/Common.class",
+			"net/minecraft/Same.class",
+			"net/minecraft/Server.class"
+		]
+		new String(ZipUtils.unpack(output, "META-INF/MANIFEST.MF"), StandardCharsets.UTF_8).contains("Main-Class: net.minecraft.client.Main")
+		common.methods*.name == ["common", "client", "server"]
+		common.methods.find { it.name == "client" }.visibleAnnotations*.desc == ["Lnet/fabricmc/api/Environment;"]
+		common.methods.find { it.name == "common" }.visibleAnnotations == null
+		readClass(output, "net/minecraft/Client.class").visibleAnnotations*.desc == ["Lnet/fabricmc/api/Environment;"]
+	}
+
+	private Path writeJar(String name, Map<String, byte[]> entries) {
+		def jar = dir.resolve(name)
+
+		RawZipWriter.create(jar).withCloseable { writer ->
+			entries.each { entryName, data ->
+				writer.write(entryName, data)
+			}
+		}
+
+		return jar
+	}
+
+	private static ClassNode readClass(Path jar, String name) {
+		def node = new ClassNode()
+		new ClassReader(ZipUtils.unpack(jar, name)).accept(node, 0)
+		return node
+	}
+
+	private static byte[] createClass(String name, String... methods) {
+		def writer = new ClassWriter(0)
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null)
+
+		for (String method : methods) {
+			def visitor = writer.visitMethod(Opcodes.ACC_PUBLIC, method, "()V", null, null)
+			visitor.visitCode()
+			visitor.visitInsn(Opcodes.RETURN)
+			visitor.visitMaxs(0, 1)
+			visitor.visitEnd()
+		}
+
+		writer.visitEnd()
+		return writer.toByteArray()
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+import spock.lang.Specification
+
+import net.fabricmc.loom.util.ZipUtils
+import net.fabricmc.loom.util.zip.RawZipReader
+import net.fabricmc.loom.util.zip.RawZipWriter
+import net.fabricmc.loom.util.zip.ZipAssembler
+
+class RawZipTest extends Specification {
+	def "copy raw entries"() {
+		given:
+		def dir = File.createTempDir()
+		def input = File.createTempFile("loom-zip-test", ".zip").toPath()
+		def output = File.createTempFile("loom-zip-test", ".zip").toPath()
+		new File(dir, "test.txt").text = "This is a test of copying " * 100
+		new File(dir, "sub").mkdirs()
+		new File(dir, "sub/empty.txt").text = ""
+		ZipUtils.pack(dir.toPath(), input)
+
+		when:
+		def names = RawZipReader.open(input).withCloseable { reader ->
+			RawZipWriter.create(output).withCloseable { writer ->
+				for (def entry : reader.entries()) {
+					writer.writeRaw(entry, reader.readRaw(entry))
+				}
+
+				writer.write("added.txt", "Added".getBytes(StandardCharsets.UTF_8))
+			}
+
+			reader.entries()*.name() + "added.txt"
+		}
+
+		then:
+		new String(ZipUtils.unpack(output, "test.txt"), StandardCharsets.UTF_8) == "This is a test of copying " * 100
+		ZipUtils.unpack(output, "sub/empty.txt").length == 0
+		new String(ZipUtils.unpack(output, "added.txt"), StandardCharsets.UTF_8) == "Added"
+		new ZipFile(output.toFile()).withCloseable { zip -> zip.entries().collect { it.name } } == names
+	}
+
+	def "read entries"() {
+		given:
+		def dir = File.createTempDir()
+		def input = File.createTempFile("loom-zip-test", ".zip").toPath()
+		new File(dir, "test.txt").text = "Hello World"
+		ZipUtils.pack(dir.toPath(), input)
+
+		when:
+		def data = RawZipReader.open(input).withCloseable { reader ->
+			reader.read(reader.entries().find { it.name() == "test.txt" })
+		}
+
+		then:
+		new String(data, StandardCharsets.UTF_8) == "Hello World"
+	}
+
+	def "zip64 entry count"() {
+		given:
+		def output = File.createTempFile("loom-zip-test", ".zip").toPath()
+		def copy = File.createTempFile("loom-zip-test", ".zip").toPath()
+		def count = 70000
+
+		when:
+		RawZipWriter.create(output).withCloseable { writer ->
+			for (int i = 0; i < count; i++) {
+				writer.write("entry$i", new byte[0])
+			}
+		}
+
+		def names = RawZipReader.open(output).withCloseable { reader ->
+			RawZipWriter.create(copy).withCloseable { writer ->
+				writer.copyFrom(reader) { true }
+			}
+
+			reader.entries()*.name()
+		}
+
+		then:
+		names.size() == count
+		names.last() == "entry${count - 1}"
+		new ZipFile(output.toFile()).withCloseable { it.size() } == count
+		new ZipFile(copy.toFile()).withCloseable { it.size() } == count
+	}
+
+	def "read zip64 archives"() {
+		given:
+		def input = File.createTempFile("loom-zip-test", ".zip").toPath()
+		def count = 70000
+
+		// The JDK writes the zip64 end of central directory for more than 65535 entries
+		new ZipOutputStream(Files.newOutputStream(input)).withCloseable { zip ->
+			for (int i = 0; i < count; i++) {
+				zip.putNextEntry(new ZipEntry("entry$i"))
+				zip.write("Entry $i".getBytes(StandardCharsets.UTF_8))
+				zip.closeEntry()
+			}
+		}
+
+		when:
+		def reader = RawZipReader.open(input)
+		def entries = reader.entries()
+		def last = new String(reader.read(entries.last()), StandardCharsets.UTF_8)
+		reader.close()
+
+		then:
+		entries.size() == count
+		last == "Entry ${count - 1}"
+	}
+
+	def "duplicate entries"() {
+		given:
+		def output = File.createTempFile("loom-zip-test", ".zip").toPath()
+
+		when:
+		RawZipWriter.create(output).withCloseable { writer ->
+			writer.write("test.txt", new byte[0])
+			writer.write("test.txt", new byte[0])
+		}
+
+		then:
+		thrown IOException
+		Files.exists(output)
+	}
+
+	def "don't finish a zip after a failed write"() {
+		given:
+		def bytes = new ByteArrayOutputStream()
+		def writes = new AtomicInteger()
+		def output = new FilterOutputStream(bytes) {
+			@Override
+			void write(byte[] b, int off, int len) {
+				// The local header is written, its data isn't
+				if (writes.incrementAndGet() == 2) {
+					throw new IOException("Disk full")
+				}
+
+				bytes.write(b, off, len)
+			}
+		}
+		def writer = RawZipWriter.create(output)
+
+		when:
+		writer.write("a.txt", "a".getBytes(StandardCharsets.UTF_8))
+
+		then:
+		thrown IOException
+
+		when:
+		writer.write("b.txt", "b".getBytes(StandardCharsets.UTF_8))
+
+		then:
+		thrown ZipException
+
+		when:
+		writer.close()
+
+		then:
+		thrown ZipException
+		bytes.size() == 30 + "a.txt".length()
+	}
+
+	def "assemble zip"() {
+		given:
+		def dir = File.createTempDir()
+		def input = File.createTempFile("loom-zip-test", ".zip").toPath()
+		def output = File.createTempFile("loom-zip-test", ".zip").toPath()
+		def nested = File.createTempFile("loom-zip-test", ".jar").toPath()
+		new File(dir, "kept.txt").text = "Kept"
+		new File(dir, "removed.txt").text = "Removed"
+		new File(dir, "filtered.class").text = "Filtered"
+		new File(dir, "a").mkdirs()
+		new File(dir, "a/transformed.txt").text = "Hello"
+		ZipUtils.pack(dir.toPath(), input)
+		nested.text = "Nested"
+
+		when:
+		ZipAssembler.open(input, { !it.endsWith(".class") }).withCloseable { assembler ->
+			assembler.transform("a/transformed.txt") { it + " World".getBytes(StandardCharsets.UTF_8) }
+			assembler.transform("a/transformed.txt") { it + "!".getBytes(StandardCharsets.UTF_8) }
+			assembler.remove("removed.txt")
+			assembler.put("b/added.txt", "Added".getBytes(StandardCharsets.UTF_8))
+			assembler.put("META-INF/jars/nested.jar", nested)
+			assembler.write(output, true, false)
+		}
+
+		then:
+		new String(ZipUtils.unpack(output, "kept.txt"), StandardCharsets.UTF_8) == "Kept"
+		new String(ZipUtils.unpack(output, "a/transformed.txt"), StandardCharsets.UTF_8) == "Hello World!"
+		new String(ZipUtils.unpack(output, "b/added.txt"), StandardCharsets.UTF_8) == "Added"
+		new String(ZipUtils.unpack(output, "META-INF/jars/nested.jar"), StandardCharsets.UTF_8) == "Nested"
+		!ZipUtils.contains(output, "removed.txt")
+		!ZipUtils.contains(output, "filtered.class")
+		new ZipFile(output.toFile()).withCloseable { zip -> zip.entries().collect { it.name } } == [
+			"META-INF/",
+			"META-INF/jars/",
+			"META-INF/jars/nested.jar",
+			"a/",
+			"a/transformed.txt",
+			"b/",
+			"b/added.txt",
+			"kept.txt"
+		]
+	}
+}
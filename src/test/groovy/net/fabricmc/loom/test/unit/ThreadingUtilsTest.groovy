@@ -0,0 +1,184 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+import spock.lang.Specification
+
+import net.fabricmc.loom.util.LoomExecutorService
+import net.fabricmc.loom.util.ThreadingUtils
+import net.fabricmc.loom.util.service.ScopedSharedServiceManager
+
+class ThreadingUtilsTest extends Specification {
+	def "get returns results in order"() {
+		when:
+		def result = ThreadingUtils.get((1..100).toList()) { it * 2 }
+
+		then:
+		result == (1..100).collect { it * 2 }
+	}
+
+	def "run uses the shared executor"() {
+		given:
+		def threads = ConcurrentHashMap.newKeySet()
+
+		when:
+		ThreadingUtils.run((1..50).toList()) { threads.add(Thread.currentThread().name) }
+
+		then:
+		threads.every { it.startsWith("Loom Worker") }
+		threads.size() <= LoomExecutorService.get().parallelism
+	}
+
+	def "failure cancels pending tasks"() {
+		given:
+		def started = new AtomicInteger()
+		def latch = new CountDownLatch(1)
+		def jobs = (1..1000).collect { i ->
+			{ ->
+				started.incrementAndGet()
+
+				if (i == 1) {
+					throw new IllegalStateException("Failed")
+				}
+
+				latch.await()
+			} as ThreadingUtils.UnsafeRunnable
+		}
+
+		when:
+		ThreadingUtils.run(jobs)
+
+		then:
+		def e = thrown(RuntimeException)
+		e.cause instanceof IllegalStateException
+		latch.countDown()
+		started.get() < 1000
+	}
+
+	def "run bounded limits the cost of the running jobs"() {
+		given:
+		def running = new AtomicInteger()
+		def maxRunning = new AtomicInteger()
+
+		when:
+		ThreadingUtils.runBounded((1..50).toList(), { 4 }, 10) {
+			maxRunning.accumulateAndGet(running.addAndGet(4), Math::max)
+			Thread.sleep(2)
+			running.addAndGet(-4)
+		}
+
+		then:
+		maxRunning.get() <= 8
+	}
+
+	def "run bounded runs expensive jobs alone"() {
+		given:
+		def counter = new AtomicInteger()
+
+		when:
+		ThreadingUtils.runBounded((1..5).toList(), { 100 }, 10) { counter.incrementAndGet() }
+
+		then:
+		counter.get() == 5
+	}
+
+	def "run bounded stops submitting after a failure"() {
+		given:
+		def started = new AtomicInteger()
+
+		when:
+		ThreadingUtils.runBounded((1..10).toList(), { 1 }, 1) {
+			started.incrementAndGet()
+			throw new IllegalStateException("Failed")
+		}
+
+		then:
+		def e = thrown(RuntimeException)
+		e.cause instanceof IllegalStateException
+		started.get() == 1
+	}
+
+	def "run bounded consumes the results in order"() {
+		given:
+		def held = new AtomicInteger()
+		def maxHeld = new AtomicInteger()
+		def results = []
+
+		when:
+		ThreadingUtils.runBounded((1..50).toList(), { 4 }, 10, { int value ->
+			maxHeld.accumulateAndGet(held.addAndGet(4), Math::max)
+			Thread.sleep(value % 3)
+			value
+		}) {
+			results << it
+			held.addAndGet(-4)
+		}
+
+		then:
+		results == (1..50).toList()
+		maxHeld.get() <= 8
+	}
+
+	def "task completer records metrics"() {
+		given:
+		def completer = ThreadingUtils.taskCompleter()
+		def counter = new AtomicInteger()
+
+		when:
+		10.times { completer.add { counter.incrementAndGet() } }
+		completer.complete()
+
+		then:
+		counter.get() == 10
+		LoomExecutorService.get().metrics.values().any { it.tasks >= 10 }
+	}
+
+	def "metrics are recorded in the current service"() {
+		given:
+		def manager1 = new ScopedSharedServiceManager()
+		def manager2 = new ScopedSharedServiceManager()
+		def service1 = LoomExecutorService.getOrCreate(manager1)
+		def service2 = LoomExecutorService.getOrCreate(manager2)
+
+		when:
+		service1.runCurrent {
+			// Nested tasks are recorded in the service of the task that submitted them
+			ThreadingUtils.run((1..10).toList()) { ThreadingUtils.get([it]) { it } }
+		}
+		manager2.close()
+
+		then:
+		service1.metrics.values().sum { it.tasks } == 20
+		service2.metrics.isEmpty()
+		LoomExecutorService.get() != service1
+
+		cleanup:
+		manager1.close()
+	}
+}
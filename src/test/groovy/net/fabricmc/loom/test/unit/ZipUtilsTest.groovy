@@ -49,6 +49,30 @@ class ZipUtilsTest extends Specification {
 		new String( ZipUtils.unpack(zip, "test.txt"), StandardCharsets.UTF_8) == "This is a test of packing"
 	}
 
+	def "copy raw"() {
+		given:
+		def dir = File.createTempDir()
+		def zip = File.createTempFile("loom-zip-test", ".zip").toPath()
+		def copy = File.createTempFile("loom-zip-test", ".zip").toPath()
+		new File(dir, "test.txt").text = "This is a test of copying"
+		new File(dir, "sub").mkdirs()
+		new File(dir, "sub/test.class").text = "Class"
+		new File(dir, "sub/other/test.txt").with {
+			parentFile.mkdirs()
+			text = "Nested"
+		}
+
+		when:
+		ZipUtils.pack(dir.toPath(), zip)
+		def copied = ZipUtils.copyRaw(zip, copy, { !it.endsWith(".class") })
+
+		then:
+		copied == 2
+		new String(ZipUtils.unpack(copy, "test.txt"), StandardCharsets.UTF_8) == "This is a test of copying"
+		new String(ZipUtils.unpack(copy, "sub/other/test.txt"), StandardCharsets.UTF_8) == "Nested"
+		!ZipUtils.contains(copy, "sub/test.class")
+	}
+
 	def "transform string"() {
 		given:
 		def dir = File.createTempDir()
@@ -0,0 +1,202 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit.download
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+import net.fabricmc.loom.util.download.BulkDownload
+import net.fabricmc.loom.util.download.DownloadException
+import net.fabricmc.loom.util.download.VerificationManifest
+
+class BulkDownloadTest extends DownloadTest {
+	static final String CONTENT = "Hello World"
+	static final String SHA1 = "0a4d55a8d778e5022fab701977c5d840bbc486d0"
+
+	def "Bulk: Simple"() {
+		setup:
+		server.get("/bulk/{name}") {
+			it.result(CONTENT)
+		}
+
+		def dir = File.createTempDir().toPath()
+
+		when:
+		def result = BulkDownload.create()
+				.add("$PATH/bulk/a", SHA1, CONTENT.length(), dir.resolve("a/file.txt"))
+				.add("$PATH/bulk/b", SHA1, CONTENT.length(), dir.resolve("b/file.txt"))
+				.download()
+
+		then:
+		result.files() == 2
+		result.downloaded() == 2
+		Files.readString(dir.resolve("a/file.txt")) == CONTENT
+		Files.readString(dir.resolve("b/file.txt")) == CONTENT
+	}
+
+	def "Bulk: Skips existing files"() {
+		setup:
+		int requestCount = 0
+
+		server.get("/bulkExisting") {
+			it.result(CONTENT)
+			requestCount ++
+		}
+
+		def output = new File(File.createTempDir(), "file.txt").toPath()
+
+		when:
+		for (i in 0..<2) {
+			BulkDownload.create()
+					.add("$PATH/bulkExisting", SHA1, CONTENT.length(), output)
+					.download()
+		}
+
+		then:
+		requestCount == 1
+	}
+
+	def "Bulk: Resume"() {
+		setup:
+		String range = null
+
+		server.get("/bulkResume") {
+			range = it.req.getHeader("Range")
+			int offset = range.substring("bytes=".length(), range.length() - 1).toInteger()
+			it.status(206)
+			it.header("Content-Range", "bytes $offset-${CONTENT.length() - 1}/${CONTENT.length()}")
+			it.result(CONTENT.substring(offset))
+		}
+
+		def output = new File(File.createTempDir(), "file.txt").toPath()
+		Files.writeString(output.resolveSibling("file.txt.part"), CONTENT.substring(0, 5))
+
+		when:
+		BulkDownload.create()
+				.add("$PATH/bulkResume", SHA1, CONTENT.length(), output)
+				.download()
+
+		then:
+		range == "bytes=5-"
+		Files.readString(output) == CONTENT
+		Files.notExists(output.resolveSibling("file.txt.part"))
+	}
+
+	def "Bulk: Concurrent downloads of the same file"() {
+		setup:
+		int requestCount = 0
+
+		server.get("/bulkConcurrent") {
+			requestCount ++
+			Thread.sleep(500)
+			it.result(CONTENT)
+		}
+
+		def output = new File(File.createTempDir(), "file.txt").toPath()
+		def download = {
+			BulkDownload.create()
+					.add("$PATH/bulkConcurrent", SHA1, CONTENT.length(), output)
+					.download()
+		}
+
+		when:
+		def first = Thread.start(download)
+		Thread.sleep(100)
+		download()
+		first.join()
+
+		then:
+		// The second download waits for the lock of the partial file, then finds the completed file.
+		requestCount == 1
+		Files.readString(output) == CONTENT
+	}
+
+	def "Bulk: Invalid Sha1"() {
+		setup:
+		server.get("/bulkInvalid") {
+			it.result(CONTENT)
+		}
+
+		def output = new File(File.createTempDir(), "file.txt").toPath()
+
+		when:
+		BulkDownload.create()
+				.add("$PATH/bulkInvalid", "d139cccf047a749691416ce385d3f168c1e28309", CONTENT.length(), output)
+				.download()
+
+		then:
+		thrown DownloadException
+		Files.notExists(output)
+	}
+
+	def "Bulk: Offline"() {
+		setup:
+		def output = new File(File.createTempDir(), "file.txt").toPath()
+
+		when:
+		BulkDownload.create()
+				.add("$PATH/bulkOffline", SHA1, CONTENT.length(), output)
+				.offline()
+				.download()
+
+		then:
+		thrown DownloadException
+	}
+
+	def "Bulk: Verification manifest"() {
+		setup:
+		int requestCount = 0
+
+		server.get("/bulkManifest") {
+			it.result(CONTENT)
+			requestCount ++
+		}
+
+		def dir = File.createTempDir().toPath()
+		def output = dir.resolve("file.txt")
+		def manifest = dir.resolve("manifest.verified")
+
+		when:
+		BulkDownload.create()
+				.add("$PATH/bulkManifest", SHA1, CONTENT.length(), output)
+				.verificationManifest(manifest)
+				.download()
+		// Same size, different content: must be caught by the full verification.
+		def modified = Files.getLastModifiedTime(output).toMillis()
+		Files.writeString(output, "Hello Earth")
+		// Make sure the change is noticed on file systems with a coarse modification time
+		Files.setLastModifiedTime(output, FileTime.fromMillis(modified + 2000))
+		BulkDownload.create()
+				.add("$PATH/bulkManifest", SHA1, CONTENT.length(), output)
+				.verificationManifest(manifest)
+				.download()
+
+		then:
+		requestCount == 2
+		Files.readString(output) == CONTENT
+		VerificationManifest.load(manifest).isVerified(output, SHA1)
+		Files.list(dir).withCloseable { files -> files.noneMatch { it.fileName.toString().endsWith(".tmp") } }
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit.forge
+
+import org.cadixdev.at.io.AccessTransformFormats
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.MethodInsnNode
+import spock.lang.Specification
+
+import net.fabricmc.loom.configuration.accesstransformer.AccessTransformIndex
+import net.fabricmc.loom.util.Constants
+
+class AccessTransformIndexTest extends Specification {
+	private static final String ACCESS_TRANSFORMER = '''\
+public-f test.Example
+public test.Example field
+protected test.Example helper()V
+public test.Example$Inner
+'''
+
+	def "apply access transformers"() {
+		given:
+		def index = AccessTransformIndex.of(AccessTransformFormats.FML.read(new StringReader(ACCESS_TRANSFORMER)))
+
+		when:
+		def node = transform(index, createClass())
+
+		then:
+		index.targets == ["test/Example", "test/Example\$Inner"] as Set
+		node.access == Opcodes.ACC_PUBLIC
+		node.fields.find { it.name == "field" }.access == Opcodes.ACC_PUBLIC
+		node.fields.find { it.name == "other" }.access == Opcodes.ACC_PRIVATE
+		node.methods.find { it.name == "helper" }.access == Opcodes.ACC_PROTECTED
+		node.innerClasses.find { it.name == "test/Example\$Inner" }.access == Opcodes.ACC_PUBLIC
+		// The call to the now protected method must be virtual
+		node.methods.find { it.name == "run" }.instructions.find { it instanceof MethodInsnNode }.opcode == Opcodes.INVOKEVIRTUAL
+	}
+
+	private static ClassNode transform(AccessTransformIndex index, byte[] bytes) {
+		def writer = new ClassWriter(0)
+		new ClassReader(bytes).accept(index.createClassVisitor(Constants.ASM_VERSION, writer), 0)
+
+		def node = new ClassNode()
+		new ClassReader(writer.toByteArray()).accept(node, 0)
+		return node
+	}
+
+	private static byte[] createClass() {
+		def writer = new ClassWriter(0)
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_FINAL, "test/Example", null, "java/lang/Object", null)
+		writer.visitInnerClass("test/Example\$Inner", "test/Example", "Inner", Opcodes.ACC_PRIVATE)
+		writer.visitField(Opcodes.ACC_PRIVATE, "field", "I", null, null).visitEnd()
+		writer.visitField(Opcodes.ACC_PRIVATE, "other", "I", null, null).visitEnd()
+
+		def helper = writer.visitMethod(Opcodes.ACC_PRIVATE, "helper", "()V", null, null)
+		helper.visitCode()
+		helper.visitInsn(Opcodes.RETURN)
+		helper.visitMaxs(0, 1)
+		helper.visitEnd()
+
+		def run = writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null)
+		run.visitCode()
+		run.visitVarInsn(Opcodes.ALOAD, 0)
+		run.visitMethodInsn(Opcodes.INVOKESPECIAL, "test/Example", "helper", "()V", false)
+		run.visitInsn(Opcodes.RETURN)
+		run.visitMaxs(1, 1)
+		run.visitEnd()
+
+		writer.visitEnd()
+		return writer.toByteArray()
+	}
+}
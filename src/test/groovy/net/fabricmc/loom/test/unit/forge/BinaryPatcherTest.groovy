@@ -0,0 +1,234 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit.forge
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.jar.JarOutputStream
+import java.util.zip.Adler32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+import lzma.sdk.lzma.Encoder
+import lzma.streams.LzmaOutputStream
+import spock.lang.Specification
+
+import net.fabricmc.loom.configuration.providers.forge.BinaryPatcher
+import net.fabricmc.loom.configuration.providers.forge.ForgeUserdevProvider
+
+class BinaryPatcherTest extends Specification {
+	def "apply patches"() {
+		given:
+		def clean = Files.createTempFile("loom-binpatch-test", ".jar")
+		def output = Files.createTempFile("loom-binpatch-test", ".jar")
+		def patches = Files.createTempFile("loom-binpatch-test", ".lzma")
+
+		new ZipOutputStream(Files.newOutputStream(clean)).withCloseable { zip ->
+			for (def name : ["a/Patched", "a/Unpatched", "a/Removed"]) {
+				zip.putNextEntry(new ZipEntry(name + ".class"))
+				zip.write(bytes("clean " + name))
+			}
+
+			zip.putNextEntry(new ZipEntry("data.txt"))
+			zip.write(bytes("data"))
+		}
+
+		writePatches(patches, [
+			patch("a/Patched", bytes("clean a/Patched"), gdiff("patched ", 0, 15)),
+			patch("a/Removed", bytes("clean a/Removed"), new byte[0]),
+			patch("b/Added", null, gdiff("added", 0, 0)),
+		])
+
+		when:
+		BinaryPatcher.read(patches).apply(clean, output, copyUnpatched)
+		def entries = new ZipFile(output.toFile()).withCloseable { zip ->
+			zip.entries().findAll { !it.directory }.collectEntries { [it.name, new String(zip.getInputStream(it).bytes, StandardCharsets.UTF_8)] }
+		}
+
+		then:
+		entries == expected
+
+		where:
+		copyUnpatched | expected
+		true          | ["a/Patched.class": "patched clean a/Patched", "a/Unpatched.class": "clean a/Unpatched", "b/Added.class": "added"]
+		false         | ["a/Patched.class": "patched clean a/Patched", "b/Added.class": "added"]
+	}
+
+	def "only transform the classes that need it"() {
+		given:
+		def clean = Files.createTempFile("loom-binpatch-test", ".jar")
+		def output = Files.createTempFile("loom-binpatch-test", ".jar")
+		def patches = Files.createTempFile("loom-binpatch-test", ".lzma")
+
+		new ZipOutputStream(Files.newOutputStream(clean)).withCloseable { zip ->
+			for (def name : ["a/Patched", "a/Unpatched", "a/Transformed"]) {
+				zip.putNextEntry(new ZipEntry(name + ".class"))
+				zip.write(bytes("clean " + name))
+			}
+		}
+
+		writePatches(patches, [patch("a/Patched", bytes("clean a/Patched"), gdiff("patched ", 0, 15))])
+		def transformed = []
+		def transform = new BinaryPatcher.ClassTransform({ byte[] data -> new String(data, StandardCharsets.UTF_8).contains("Transformed") }, { byte[] data ->
+			transformed << new String(data, StandardCharsets.UTF_8)
+			return bytes("transformed")
+		})
+
+		when:
+		BinaryPatcher.read(patches).apply(clean, output, true, transform)
+		def entries = new ZipFile(output.toFile()).withCloseable { zip ->
+			zip.entries().findAll { !it.directory }.collectEntries { [it.name, new String(zip.getInputStream(it).bytes, StandardCharsets.UTF_8)] }
+		}
+
+		then:
+		// The filter is checked before a class is rewritten
+		transformed == ["clean a/Transformed"]
+		entries == ["a/Patched.class": "patched clean a/Patched", "a/Unpatched.class": "clean a/Unpatched", "a/Transformed.class": "transformed"]
+	}
+
+	def "copy data files"() {
+		given:
+		def clean = Files.createTempFile("loom-binpatch-test", ".jar")
+		def output = Files.createTempFile("loom-binpatch-test", ".jar")
+		def patches = Files.createTempFile("loom-binpatch-test", ".lzma")
+
+		new ZipOutputStream(Files.newOutputStream(clean)).withCloseable { zip ->
+			zip.putNextEntry(new ZipEntry("a/Patched.class"))
+			zip.write(bytes("clean a/Patched"))
+			zip.putNextEntry(new ZipEntry("data/file.txt"))
+			zip.write(bytes("data"))
+		}
+
+		writePatches(patches, [patch("a/Patched", bytes("clean a/Patched"), gdiff("patched ", 0, 15))])
+
+		when:
+		BinaryPatcher.read(patches).apply(clean, output, true, true, null)
+		def entries = new ZipFile(output.toFile()).withCloseable { zip ->
+			zip.entries().findAll { !it.directory }.collectEntries { [it.name, new String(zip.getInputStream(it).bytes, StandardCharsets.UTF_8)] }
+		}
+
+		then:
+		entries == ["a/Patched.class": "patched clean a/Patched", "data/file.txt": "data"]
+	}
+
+	def "binary patcher arguments"() {
+		when:
+		def copyData = new ForgeUserdevProvider.BinaryPatcherConfig("net.minecraftforge:binarypatcher:1.0", args).copyData()
+
+		then:
+		copyData == expected
+
+		where:
+		args                                                                                 | expected
+		["--clean", "{clean}", "--output", "{output}", "--apply", "{patch}"]                 | false
+		["--clean={clean}", "--output={output}", "--apply={patch}", "--unpatched", "--data"] | true
+	}
+
+	def "unsupported binary patcher argument"() {
+		when:
+		new ForgeUserdevProvider.BinaryPatcherConfig("net.minecraftforge:binarypatcher:1.0", ["--clean", "{clean}", "--legacy"]).copyData()
+
+		then:
+		def e = thrown(UnsupportedOperationException)
+		e.message.contains("--legacy")
+	}
+
+	def "checksum mismatch"() {
+		given:
+		def clean = Files.createTempFile("loom-binpatch-test", ".jar")
+		def output = Files.createTempFile("loom-binpatch-test", ".jar")
+		def patches = Files.createTempFile("loom-binpatch-test", ".lzma")
+
+		new ZipOutputStream(Files.newOutputStream(clean)).withCloseable { zip ->
+			zip.putNextEntry(new ZipEntry("a/Patched.class"))
+			zip.write(bytes("modified"))
+		}
+
+		writePatches(patches, [patch("a/Patched", bytes("clean"), gdiff("", 0, 5))])
+
+		when:
+		BinaryPatcher.read(patches).apply(clean, output, true)
+
+		then:
+		def e = thrown(RuntimeException)
+		e.cause.message.contains("checksum")
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8)
+	}
+
+	// A GDIFF delta made of some data followed by a copy from the source
+	private static byte[] gdiff(String data, int offset, int length) {
+		def buffer = new ByteArrayOutputStream()
+		def out = new DataOutputStream(buffer)
+		out.writeInt((int) 0xD1FFD1FFL)
+		out.writeByte(4)
+
+		if (!data.isEmpty()) {
+			out.writeByte(data.length())
+			out.write(bytes(data))
+		}
+
+		if (length > 0) {
+			out.writeByte(249)
+			out.writeShort(offset)
+			out.writeByte(length)
+		}
+
+		out.writeByte(0)
+		return buffer.toByteArray()
+	}
+
+	private static Map patch(String name, byte[] clean, byte[] delta) {
+		return [name: name, clean: clean, delta: delta]
+	}
+
+	private static void writePatches(Path path, List<Map> patches) {
+		new JarOutputStream(new LzmaOutputStream(Files.newOutputStream(path), new Encoder())).withCloseable { jar ->
+			for (def patch : patches) {
+				jar.putNextEntry(new ZipEntry("binpatch/${patch.name}.binpatch"))
+				def out = new DataOutputStream(jar)
+				out.writeByte(1)
+				out.writeUTF(patch.name)
+				out.writeUTF(patch.name)
+				out.writeBoolean(patch.clean != null)
+
+				if (patch.clean != null) {
+					def adler = new Adler32()
+					adler.update(patch.clean)
+					out.writeInt((int) adler.value)
+				}
+
+				out.writeInt(patch.delta.length)
+				out.write(patch.delta)
+				out.flush()
+				jar.closeEntry()
+			}
+		}
+	}
+}
@@ -99,4 +99,25 @@ class DependencySetTest extends Specification {
 			'childAB'
 		]
 	}
+
+	def "direct dependencies"() {
+		when:
+		def step = allSteps.find { it.name() == name }
+		def dependencies = dependencySet.getDependencies(step)
+		then:
+		dependencies.toList() == expected
+		where:
+		name      | expected
+		'root'    | []
+		'childA1' | ['root']
+		'childAB' | ['childA2', 'childB']
+	}
+
+	def "direct dependencies with ignore dependencies filter"() {
+		when:
+		dependencySet.ignoreDependenciesFilter = { it.name() == 'childA2' }
+		def dependencies = dependencySet.getDependencies(allSteps.find { it.name() == 'childA2' })
+		then:
+		dependencies.isEmpty()
+	}
 }
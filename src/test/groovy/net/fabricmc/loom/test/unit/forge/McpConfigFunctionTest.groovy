@@ -1,7 +1,7 @@
 /*
  * This file is part of fabric-loom, licensed under the MIT License (MIT).
  *
- * Copyright (c) 2021 FabricMC
+ * Copyright (c) 2023 FabricMC
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -22,16 +22,21 @@
  * SOFTWARE.
  */
 
-package net.fabricmc.loom.util.gradle;
+package net.fabricmc.loom.test.unit.forge
 
-import java.io.IOException;
-import java.util.Locale;
+import spock.lang.Specification
 
-import net.fabricmc.loom.util.IOStringConsumer;
+import net.fabricmc.loom.configuration.providers.forge.mcpconfig.McpConfigFunction
 
-public record ThreadedSimpleProgressLogger(IOStringConsumer parent) implements IOStringConsumer {
-	@Override
-	public void accept(String data) throws IOException {
-		parent.accept(String.format(Locale.ENGLISH, "%d::%s", Thread.currentThread().getId(), data));
+class McpConfigFunctionTest extends Specification {
+	def "download url"() {
+		when:
+		def function = new McpConfigFunction(version, [], [], 'https://maven.minecraftforge.net/')
+		then:
+		function.downloadUrl == 'https://maven.minecraftforge.net/' + path
+		where:
+		version                                              | path
+		'net.minecraftforge:ForgeAutoRenamingTool:0.1.22'    | 'net/minecraftforge/ForgeAutoRenamingTool/0.1.22/ForgeAutoRenamingTool-0.1.22.jar'
+		'net.minecraftforge:installertools:1.3.0:fatjar'     | 'net/minecraftforge/installertools/1.3.0/installertools-1.3.0-fatjar.jar'
 	}
 }
@@ -0,0 +1,117 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit.forge
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Specification
+
+import net.fabricmc.loom.configuration.providers.forge.ConfigValue
+import net.fabricmc.loom.configuration.providers.forge.mcpconfig.DependencySet
+import net.fabricmc.loom.configuration.providers.forge.mcpconfig.McpConfigStep
+import net.fabricmc.loom.configuration.providers.forge.mcpconfig.McpExecutor
+
+class McpExecutorTest extends Specification {
+	/*
+	 root
+	 -> childA -> childAB
+	 -> childB /
+	 */
+	List<McpConfigStep> steps = [
+		new McpConfigStep('foo', 'root', [:]),
+		new McpConfigStep('foo', 'childA', [input: ConfigValue.of('{rootOutput}')]),
+		new McpConfigStep('foo', 'childB', [input: ConfigValue.of('{rootOutput}')]),
+		new McpConfigStep(
+		'foo', 'childAB',
+		[inputA: ConfigValue.of('{childAOutput}'), inputB: ConfigValue.of('{childBOutput}')]
+		),
+	]
+
+	DependencySet dependencySet = new DependencySet(steps)
+	ExecutorService executor = Executors.newFixedThreadPool(4)
+
+	def cleanup() {
+		executor.shutdownNow()
+	}
+
+	def "run steps after their dependencies"() {
+		given:
+		def finished = ConcurrentHashMap.newKeySet()
+		def started = new CopyOnWriteArrayList()
+
+		when:
+		McpExecutor.runSteps(steps, dependencySet::getDependencies, executor) { step ->
+			assert finished.containsAll(dependencySet.getDependencies(step))
+			started << step.name()
+			finished << step.name()
+		}
+
+		then:
+		started.toSet() == ['root', 'childA', 'childB', 'childAB'] as Set
+		started.first() == 'root'
+		started.last() == 'childAB'
+	}
+
+	def "run independent steps concurrently"() {
+		given:
+		def latch = new CountDownLatch(2)
+
+		when:
+		McpExecutor.runSteps(steps, dependencySet::getDependencies, executor) { step ->
+			if (step.name().startsWith('child') && step.name() != 'childAB') {
+				latch.countDown()
+				// Only completes if both children are running at the same time
+				assert latch.await(10, TimeUnit.SECONDS)
+			}
+		}
+
+		then:
+		latch.count == 0
+	}
+
+	def "skip the dependants of failed steps"() {
+		given:
+		def executed = new CopyOnWriteArrayList()
+
+		when:
+		McpExecutor.runSteps(steps, dependencySet::getDependencies, executor) { step ->
+			if (step.name() == 'childA') {
+				throw new IOException("failed")
+			}
+
+			executed << step.name()
+		}
+
+		then:
+		def e = thrown(IOException)
+		e.message == "failed"
+		executed.toSet() == ['root', 'childB'] as Set
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2023 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit.forge
+
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+import org.gradle.api.logging.Logging
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import net.fabricmc.loom.configuration.providers.forge.mcpconfig.McpStepCache
+
+class McpStepCacheTest extends Specification {
+	@TempDir
+	Path dir
+
+	def "get stored outputs"() {
+		given:
+		def cache = new McpStepCache(dir.resolve("cache"), Logging.getLogger(McpStepCacheTest))
+		cache.put("strip", "key", write("work/output.jar", "output"))
+
+		when:
+		def cached = cache.get("strip", "key", dir.resolve("step"))
+
+		then:
+		cached == dir.resolve("step/output.jar")
+		Files.readString(cached) == "output"
+		cache.get("strip", "other", dir.resolve("step")) == null
+		cache.get("inject", "key", dir.resolve("step")) == null
+	}
+
+	def "only keep the latest output of each step"() {
+		given:
+		def cache = new McpStepCache(dir.resolve("cache"), Logging.getLogger(McpStepCacheTest))
+		cache.put("strip", "old", write("work/output.jar", "old"))
+		cache.put("inject", "old", write("work/output.jar", "old"))
+
+		when:
+		cache.put("strip", "new", write("work/output.jar", "new"))
+
+		then:
+		cache.get("strip", "old", dir.resolve("step")) == null
+		Files.readString(cache.get("strip", "new", dir.resolve("step"))) == "new"
+		cache.get("inject", "old", dir.resolve("step")) != null
+	}
+
+	def "don't prune while another build holds the lock"() {
+		given:
+		def cache = new McpStepCache(dir.resolve("cache"), Logging.getLogger(McpStepCacheTest))
+		cache.put("strip", "old", write("work/output.jar", "old"))
+
+		when:
+		FileChannel.open(dir.resolve("cache/strip/.lock"), StandardOpenOption.WRITE).withCloseable { channel ->
+			channel.lock().withCloseable {
+				cache.put("strip", "new", write("work/output.jar", "new"))
+			}
+		}
+
+		then:
+		cache.get("strip", "old", dir.resolve("step")) != null
+		cache.get("strip", "new", dir.resolve("step")) != null
+	}
+
+	private Path write(String path, String content) {
+		def file = dir.resolve(path)
+		Files.createDirectories(file.parent)
+		Files.writeString(file, content)
+		return file
+	}
+}
@@ -24,12 +24,22 @@
 
 package net.fabricmc.loom.test.unit.processor
 
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
 import spock.lang.Specification
 
+import net.fabricmc.loom.api.processor.MinecraftJarProcessor
 import net.fabricmc.loom.api.processor.ProcessorContext
 import net.fabricmc.loom.api.processor.SpecContext
 import net.fabricmc.loom.configuration.processors.MinecraftJarProcessorManager
 import net.fabricmc.loom.test.util.processor.TestMinecraftJarProcessor
+import net.fabricmc.loom.util.ZipUtils
 
 import static net.fabricmc.loom.test.util.ZipTestUtils.createZip
 
@@ -68,4 +78,100 @@ class MinecraftJarProcessorManagerTest extends Specification {
 		then:
 		manager2.requiresProcessingJar(jar)
 	}
+
+	def "Fuses class transforms"() {
+		given:
+		def writer = new ClassWriter(0)
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "test/Example", null, "java/lang/Object", null)
+		writer.visitEnd()
+
+		def jar = createZip(["fabric.mod.json": "{}"])
+		ZipUtils.add(jar, "test/Example.class", writer.toByteArray())
+
+		def transforms = [
+			addInterface("test/Example", "test/First"),
+			addInterface("test/Example", "test/Second"),
+			addInterface("test/Missing", "test/Third")
+		]
+
+		when:
+		MinecraftJarProcessorManager.applyClassTransforms(jar, transforms, ["META-INF/added.txt": "added".bytes])
+		def reader = new ClassReader(ZipUtils.unpack(jar, "test/Example.class"))
+
+		then:
+		reader.interfaces as List == ["test/First", "test/Second"]
+		new String(ZipUtils.unpack(jar, "META-INF/added.txt")) == "added"
+		new String(ZipUtils.unpack(jar, "fabric.mod.json")) == "{}"
+	}
+
+	def "Skips class transforms without targets"() {
+		given:
+		def specContext = Mock(SpecContext)
+		def processorContext = Mock(ProcessorContext)
+
+		def jar = createZip(["fabric.mod.json": "{}"])
+		def lastModified = FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() - 10000)
+		Files.setLastModifiedTime(jar, lastModified)
+
+		def wholeJarProcessor = new WholeJarProcessor()
+		def manager = MinecraftJarProcessorManager.create([new MappingsOnlyProcessor(), wholeJarProcessor], specContext)
+
+		when:
+		manager.processJar(jar, processorContext)
+
+		then:
+		// The jar wasn't rewritten before the processor that needs the whole jar
+		wholeJarProcessor.lastModified == lastModified
+		!manager.requiresProcessingJar(jar)
+	}
+
+	private static MinecraftJarProcessor.ClassTransform addInterface(String target, String iface) {
+		return MinecraftJarProcessor.ClassTransform.of(Set.of(target)) { String className, ClassVisitor next ->
+			new ClassVisitor(Opcodes.ASM9, next) {
+				@Override
+				void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+					super.visit(version, access, name, signature, superName, (interfaces + iface) as String[])
+				}
+			}
+		}
+	}
+
+	static class TestSpec implements MinecraftJarProcessor.Spec {
+	}
+
+	static class MappingsOnlyProcessor implements MinecraftJarProcessor<TestSpec> {
+		final String name = "MappingsOnly"
+
+		@Override
+		TestSpec buildSpec(SpecContext context) {
+			return new TestSpec()
+		}
+
+		@Override
+		void processJar(Path jar, TestSpec spec, ProcessorContext context) {
+			throw new UnsupportedOperationException()
+		}
+
+		@Override
+		MinecraftJarProcessor.ClassTransform createClassTransform(TestSpec spec, ProcessorContext context) {
+			return MinecraftJarProcessor.ClassTransform.of(Set.of()) { String className, ClassVisitor next ->
+				throw new UnsupportedOperationException()
+			}
+		}
+	}
+
+	static class WholeJarProcessor implements MinecraftJarProcessor<TestSpec> {
+		final String name = "WholeJar"
+		FileTime lastModified
+
+		@Override
+		TestSpec buildSpec(SpecContext context) {
+			return new TestSpec()
+		}
+
+		@Override
+		void processJar(Path jar, TestSpec spec, ProcessorContext context) {
+			lastModified = Files.getLastModifiedTime(jar)
+		}
+	}
 }